@@ -8,6 +8,7 @@ import java.util.stream.Collectors;
 
 import hillbillies.common.internal.HillbilliesApplication;
 import hillbillies.common.internal.controller.GameController;
+import hillbillies.model.WorldMap;
 import hillbillies.part2.facade.Facade;
 import hillbillies.part2.facade.IFacade;
 import hillbillies.part2.internal.Part2Options;
@@ -73,7 +74,8 @@ public class Part2 extends HillbilliesApplication<Part2Options, IFacade, IHillbi
 
 	private List<String> getLevelFilenames() {
 		try {
-			return ResourceUtils.listFileNames(LEVELS_PATH).filter(f -> f.toLowerCase().endsWith(LEVEL_FILE_EXTENSION))
+			return ResourceUtils.listFileNames(LEVELS_PATH).filter(f -> f.toLowerCase().endsWith(LEVEL_FILE_EXTENSION)
+					|| f.toLowerCase().endsWith(WorldMap.FILE_SUFFIX))
 					.collect(Collectors.toList());
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -1,10 +1,12 @@
 package hillbillies.part2.facade;
 
+import java.nio.ByteBuffer;
 import java.util.Set;
 
 import hillbillies.model.Faction;
 import hillbillies.model.Unit;
 import hillbillies.model.World;
+import hillbillies.model.WorldMap;
 import hillbillies.model.Boulder;
 import hillbillies.model.Log;
 
@@ -121,6 +123,60 @@ public interface IFacade extends hillbillies.part1.facade.IFacade {
 	 */
 	public World createWorld(int[][][] terrainTypes, TerrainChangeListener modelListener) throws ModelException;
 
+	/**
+	 * Create a new world of the given size, of which the terrain types are read
+	 * from the given buffer.
+	 * 
+	 * @param nbCubesX
+	 *            The number of cubes of the world in the x-direction.
+	 * @param nbCubesY
+	 *            The number of cubes of the world in the y-direction.
+	 * @param nbCubesZ
+	 *            The number of cubes of the world in the z-direction.
+	 * @param terrainTypes
+	 *            A buffer holding one byte for each cube, encoded as in
+	 *            {@link #createWorld(int[][][], TerrainChangeListener)}. The
+	 *            bytes are ordered in slabs of cubes with equal z-coordinate,
+	 *            from z = 0 up, and each slab is ordered by y and then by x.
+	 * @param modelListener
+	 *            See {@link #createWorld(int[][][], TerrainChangeListener)}.
+	 * @return
+	 * @throws ModelException
+	 */
+	public default World createWorld(int nbCubesX, int nbCubesY, int nbCubesZ, ByteBuffer terrainTypes,
+			TerrainChangeListener modelListener) throws ModelException {
+		int[][][] types = new int[nbCubesX][nbCubesY][nbCubesZ];
+		for (int z = 0; z < nbCubesZ; z++)
+			for (int y = 0; y < nbCubesY; y++)
+				for (int x = 0; x < nbCubesX; x++)
+					types[x][y][z] = terrainTypes.get();
+		return createWorld(types, modelListener);
+	}
+
+	/**
+	 * Create a new world from the given map. If the map holds the border
+	 * connectivity of its solid cubes, an implementation can reuse it instead
+	 * of computing it again.
+	 * 
+	 * @param map
+	 *            The map holding the terrain types of the new world, encoded as
+	 *            in {@link #createWorld(int[][][], TerrainChangeListener)}.
+	 * @param modelListener
+	 *            See {@link #createWorld(int[][][], TerrainChangeListener)}.
+	 * @return
+	 * @throws ModelException
+	 */
+	public default World createWorld(WorldMap map, TerrainChangeListener modelListener) throws ModelException {
+		int nbCubesX = map.getNbCubesX(), nbCubesY = map.getNbCubesY(), nbCubesZ = map.getNbCubesZ();
+		ByteBuffer terrainTypes = ByteBuffer.allocate(nbCubesX * nbCubesY * nbCubesZ);
+		for (int z = 0; z < nbCubesZ; z++)
+			for (int y = 0; y < nbCubesY; y++)
+				for (int x = 0; x < nbCubesX; x++)
+					terrainTypes.put((byte) map.getTerrainId(x, y, z));
+		terrainTypes.flip();
+		return createWorld(nbCubesX, nbCubesY, nbCubesZ, terrainTypes, modelListener);
+	}
+
 	/**
 	 * Return the number of cubes in the world in the x-direction.
 	 * 
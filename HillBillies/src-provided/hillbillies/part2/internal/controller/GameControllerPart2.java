@@ -50,18 +50,12 @@ public class GameControllerPart2 extends GameController<IHillbilliesView2> imple
 		super(facade, options);
 		this.map = map;
 
-		int[][][] types = new int[map.getNbTilesX()][map.getNbTilesY()][map.getNbTilesZ()];
-
-		for (int x = 0; x < types.length; x++) {
-			for (int y = 0; y < types[x].length; y++) {
-				for (int z = 0; z < types[x][y].length; z++) {
-					CubeType type = map.getTypeAt(x, y, z);
-					types[x][y][z] = type.getByteValue();
-				}
-			}
-		}
-
-		world = facade.createWorld(types, modelListener);
+		// The byte values of the cube types are the terrain types of the facade
+		if (map.getWorldMap() != null)
+			world = facade.createWorld(map.getWorldMap(), modelListener);
+		else
+			world = facade.createWorld(map.getNbTilesX(), map.getNbTilesY(), map.getNbTilesZ(),
+					map.getMap().asReadOnlyBuffer(), modelListener);
 
 		getSelectionProvider().addListener(e -> selectionUpdated());
 	}
@@ -1,5 +1,6 @@
 package hillbillies.part2.internal.map;
 
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -103,6 +104,14 @@ public class ByteMap3D implements IByteMap3D {
 		}
 	}
 
+	/**
+	 * Return a read-only view on the values of this map, in slabs of equal z
+	 * from z = 0 up, each slab ordered by y and then by x.
+	 */
+	public ByteBuffer asReadOnlyBuffer() {
+		return ByteBuffer.wrap(tileTypes).asReadOnlyBuffer();
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder result = new StringBuilder();
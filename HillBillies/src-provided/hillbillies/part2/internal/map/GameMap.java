@@ -1,5 +1,6 @@
 package hillbillies.part2.internal.map;
 
+import hillbillies.model.WorldMap;
 import hillbillies.part2.internal.map.ByteMap3D;
 
 /**
@@ -14,6 +15,11 @@ public class GameMap {
 
 	private ByteMap3D map;
 
+	/**
+	 * The binary map this game map was read from, or null.
+	 */
+	private WorldMap worldMap;
+
 	public GameMap(int nbTilesX, int nbTilesY, int nbTilesZ) {
 		this.map = new ByteMap3D(nbTilesX, nbTilesY, nbTilesZ);
 	}
@@ -22,6 +28,19 @@ public class GameMap {
 		return map;
 	}
 
+	/**
+	 * Return the binary map this game map was read from, which also holds the
+	 * border connectivity of the map if it was saved, or null if it was read
+	 * from another format.
+	 */
+	public WorldMap getWorldMap() {
+		return worldMap;
+	}
+
+	public void setWorldMap(WorldMap worldMap) {
+		this.worldMap = worldMap;
+	}
+
 	public int getNbTilesX() {
 		return map.getNbX();
 	}
@@ -5,9 +5,11 @@ import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 
+import hillbillies.model.WorldMap;
 import ogp.framework.util.internal.ResourceUtils;
 
 public class GameMapReader {
@@ -41,28 +43,27 @@ public class GameMapReader {
 							throw new EOFException("Unexpected end of file; no data for z=" + z + " and y = " + y);
 						}
 						line = line.trim();
-						String[] chars = line.split("");
-						if (chars.length != nbX) {
+						if (line.length() != nbX) {
 							throw new EOFException("Unexpected end of line; for z=" + z + " and y = " + y
-									+ ", only have " + chars.length + " characters.");
+									+ ", only have " + line.length() + " characters.");
 						}
 						for (int x = 0; x < nbX; x++) {
 							CubeType type;
-							switch (chars[x]) {
-							case ".":
+							switch (line.charAt(x)) {
+							case '.':
 								type = CubeType.EMPTY;
 								break;
-							case "R":
+							case 'R':
 								type = CubeType.ROCKS;
 								break;
-							case "S":
+							case 'S':
 								type = CubeType.TREES;
 								break;
-							case "W":
+							case 'W':
 								type = CubeType.WORKSHOP;
 								break;
 							default:
-								throw new IllegalArgumentException("Unknown type: " + chars[x]);
+								throw new IllegalArgumentException("Unknown type: " + line.charAt(x));
 							}
 							map.setTypeAt(x, y, z, type);
 						}
@@ -82,6 +83,24 @@ public class GameMapReader {
 	}
 
 	public GameMap readFromResource(String resourceURI) throws IOException {
+		if (resourceURI.toLowerCase().endsWith(WorldMap.FILE_SUFFIX)) {
+			try (InputStream in = ResourceUtils.openResource(resourceURI)) {
+				return readFromBinary(in);
+			}
+		}
 		return readFromReader(new InputStreamReader(ResourceUtils.openResource(resourceURI)));
 	}
+
+	/**
+	 * Read a map in the binary format of {@link WorldMap} from the given input.
+	 * The resulting game map keeps the binary map, so the world can be created
+	 * from it without computing its border connectivity again.
+	 */
+	public GameMap readFromBinary(InputStream in) throws IOException {
+		WorldMap worldMap = WorldMap.read(in);
+		GameMap map = new GameMap(worldMap.getNbCubesX(), worldMap.getNbCubesY(), worldMap.getNbCubesZ());
+		map.getMap().fill((x, y, z) -> (byte) worldMap.getTerrainId(x, y, z));
+		map.setWorldMap(worldMap);
+		return map;
+	}
 }
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import hillbillies.model.Task;
 import hillbillies.part3.programs.internal.ParserVisitor;
@@ -13,11 +14,16 @@ import hillbillies.part3.programs.internal.generated.HillbilliesTaskLangParser;
 import ogp.framework.util.internal.ResourceUtils;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 /**
  * Parser for Hillbillies tasks.
@@ -72,6 +78,17 @@ public class TaskParser<E, S, T> {
 
 	private final List<String> errors = new ArrayList<>();
 
+	private final BaseErrorListener errorListener = new BaseErrorListener() {
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+				int charPositionInLine, String msg, RecognitionException e) {
+			errors.add(msg + " (" + line + ", " + charPositionInLine + ")");
+		}
+	};
+
+	private HillbilliesTaskLangLexer lexer;
+	private HillbilliesTaskLangParser parser;
+
 	protected TaskParser(ITaskFactory<E, S, T> factory) {
 		this.factory = factory;
 	}
@@ -110,6 +127,65 @@ public class TaskParser<E, S, T> {
 		return parse(new ANTLRInputStream(ResourceUtils.openResource(filename)), selectedCubes);
 	}
 
+	/**
+	 * Returns the results of parsing the files with the given names, in the
+	 * order of the given names. The files are parsed in parallel, each thread
+	 * using a TaskParser of its own with the factory of this TaskParser, so
+	 * the factory must be thread-safe.
+	 * 
+	 * @param selectedCubes
+	 *            The cubes which should be used as selected cubes in the
+	 *            created tasks.
+	 */
+	public List<ParseResult<T>> parseAll(List<String> filenames, List<int[]> selectedCubes) {
+		ThreadLocal<TaskParser<E, S, T>> parsers = ThreadLocal.withInitial(() -> new TaskParser<>(factory));
+		return filenames.parallelStream().map(filename -> parsers.get().parseFileResult(filename, selectedCubes))
+				.collect(Collectors.toList());
+	}
+
+	private ParseResult<T> parseFileResult(String filename, List<int[]> selectedCubes) {
+		Optional<List<T>> tasks;
+		try {
+			tasks = parseFile(filename, selectedCubes);
+		} catch (IOException e) {
+			reset();
+			errors.add(e.toString());
+			tasks = Optional.empty();
+		}
+		return new ParseResult<>(filename, tasks, new ArrayList<>(errors));
+	}
+
+	/**
+	 * The result of parsing a single file with parseAll.
+	 */
+	public static final class ParseResult<T> {
+
+		private final String filename;
+		private final Optional<List<T>> tasks;
+		private final List<String> errors;
+
+		private ParseResult(String filename, Optional<List<T>> tasks, List<String> errors) {
+			this.filename = filename;
+			this.tasks = tasks;
+			this.errors = Collections.unmodifiableList(errors);
+		}
+
+		public String getFilename() {
+			return filename;
+		}
+
+		/**
+		 * Returns the parsed tasks, or Optional.empty() if parsing has failed.
+		 */
+		public Optional<List<T>> getTasks() {
+			return tasks;
+		}
+
+		public List<String> getErrors() {
+			return errors;
+		}
+	}
+
 	/**
 	 * Returns the tasks that results from parsing the given CharStream, or
 	 * Optional.empty() if parsing has failed.
@@ -130,18 +206,9 @@ public class TaskParser<E, S, T> {
 	protected Optional<List<T>> parse(CharStream input, List<int[]> selectedCubes) {
 		reset();
 
-		HillbilliesTaskLangLexer lexer = new HillbilliesTaskLangLexer(input);
-		HillbilliesTaskLangParser parser = new HillbilliesTaskLangParser(new CommonTokenStream(lexer));
-		parser.addErrorListener(new BaseErrorListener() {
-			@Override
-			public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
-					int charPositionInLine, String msg, RecognitionException e) {
-				errors.add(msg + " (" + line + ", " + charPositionInLine + ")");
-			}
-		});
 		ParserVisitor<E, S, T> visitor = new ParserVisitor<>(factory);
 		try {
-			visitor.visit(parser.task());
+			visitor.visit(parseTask(input));
 			if (errors.isEmpty()) {
 				return Optional.ofNullable(factory.createTasks(visitor.getName(), visitor.getPriority(),
 						visitor.getActivity(), selectedCubes));
@@ -153,6 +220,41 @@ public class TaskParser<E, S, T> {
 		return Optional.empty();
 	}
 
+	/**
+	 * Returns the parse tree of the given CharStream, using the two-stage
+	 * strategy: the input is first parsed in the fast SLL prediction mode,
+	 * bailing out at the first syntax error. Only if that fails, the input is
+	 * parsed again in the full LL prediction mode, which reports the syntax
+	 * errors.
+	 * 
+	 * The lexer and parser of this TaskParser are reused for every input.
+	 * The DFA caches of the generated recognizers are shared by all
+	 * instances, so they stay warm across calls.
+	 */
+	private HillbilliesTaskLangParser.TaskContext parseTask(CharStream input) {
+		if (lexer == null) {
+			lexer = new HillbilliesTaskLangLexer(input);
+			parser = new HillbilliesTaskLangParser(new CommonTokenStream(lexer));
+		} else {
+			lexer.setInputStream(input);
+			// A token stream can't be reused in this ANTLR version, it doesn't reset its EOF flag
+			parser.setInputStream(new CommonTokenStream(lexer));
+		}
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		try {
+			return parser.task();
+		} catch (ParseCancellationException e) {
+			parser.reset();
+			parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+			parser.addErrorListener(errorListener);
+			parser.setErrorHandler(new DefaultErrorStrategy());
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			return parser.task();
+		}
+	}
+
 	protected void reset() {
 		this.errors.clear();
 	}
@@ -186,6 +288,15 @@ public class TaskParser<E, S, T> {
 	 */
 	public static <E> List<Task> parseTasksFromString(String text, ITaskFactory<E, ?, Task> factory,
 			List<int[]> selectedCubes) {
+		TaskLibrary library = getLibrary(factory);
+		if (library != null) {
+			try {
+				return library.parseString(text, selectedCubes);
+			} catch (IllegalArgumentException e) {
+				System.out.println("Parsing failed: " + e.getMessage());
+				return null;
+			}
+		}
 		TaskParser<?, ?, Task> parser = create(factory);
 		Optional<List<Task>> result = parser.parseString(text, selectedCubes);
 		if (result.isPresent()) {
@@ -211,6 +322,15 @@ public class TaskParser<E, S, T> {
 	 */
 	public static <E> List<Task> parseTasksFromFile(String filename, ITaskFactory<E, ?, Task> factory,
 			List<int[]> selectedCubes) throws IOException {
+		TaskLibrary library = getLibrary(factory);
+		if (library != null) {
+			try {
+				return library.parseFile(filename, selectedCubes);
+			} catch (IllegalArgumentException e) {
+				System.out.println("Parsing failed: " + e.getMessage());
+				return null;
+			}
+		}
 		TaskParser<?, ?, Task> parser = create(factory);
 		Optional<List<Task>> result = parser.parseFile(filename, selectedCubes);
 		if (result.isPresent()) {
@@ -220,4 +340,13 @@ public class TaskParser<E, S, T> {
 			return null;
 		}
 	}
+
+	/**
+	 * Return the library caching the tasks loaded with the given factory, or
+	 * null if the factory doesn't cache its tasks. The tasks of a library are
+	 * only parsed the first time their source text is loaded.
+	 */
+	private static TaskLibrary getLibrary(ITaskFactory<?, ?, Task> factory) {
+		return factory instanceof TaskFactory ? ((TaskFactory) factory).getLibrary() : null;
+	}
 }
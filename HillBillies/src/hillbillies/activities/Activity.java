@@ -1,5 +1,10 @@
 package hillbillies.activities;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import hillbillies.model.TickProfiler;
 import hillbillies.model.Unit;
 
 /**
@@ -27,6 +32,10 @@ public abstract class Activity {
      * Final variable referencing this Activity's parentActivity
      */
     protected final Activity parentActivity;
+    /**
+     * List referencing the listeners to notify when this Activity completes.
+     */
+    private final List<Consumer<Activity>> completionListeners = new ArrayList<>();
 
     /**
      * Initialize a new Activity which is bound to the given Unit.
@@ -104,6 +113,29 @@ public abstract class Activity {
      * Stop this Activity
      */
     public final void stop(){
+        this.halt();
+        this.notifyCompletion();
+    }
+
+    /**
+     * Stop this Activity and start it again in the specified default mode. Restarting doesn't
+     * complete this Activity, so the listeners waiting for its completion keep waiting.
+     * @param isDefault Enables/Disables the default mode
+     * @effect Start this Activity again in the specified default mode.
+     *          | this.start(isDefault)
+     * @throws IllegalStateException
+     *          When this Activity can't be started again.
+     *          | (!isDefault && !isAbleTo()) || !unit.isCurrentActivity(this)
+     */
+    public final void restart(boolean isDefault) throws IllegalStateException{
+        this.halt();
+        this.start(isDefault);
+    }
+
+    /**
+     * Stop this Activity without notifying the listeners waiting for its completion.
+     */
+    private void halt(){
         this.interruptActivity();// First interrupt and then stop activity
         this.stopActivity();
         this.activityProgress = 0d;
@@ -129,6 +161,8 @@ public abstract class Activity {
             throw new IllegalStateException("This Activity cannot be interrupted by the next Activity");
         this.interruptActivity();
         this.isActive = false;
+        if(!nextActivity.isParentActivity(this))// The steps of this Activity don't complete it
+            this.notifyCompletion();
     }
 
     /**
@@ -137,15 +171,85 @@ public abstract class Activity {
      */
     protected abstract void interruptActivity();
 
+    /**
+     * Register the given listener to be notified once, the next time this Activity completes.
+     * An Activity completes when it is stopped, or when it is interrupted by an Activity which
+     * isn't one of its own steps.
+     * @param listener The listener to notify, with this Activity as argument.
+     * @throws IllegalArgumentException
+     *          When the given listener is null.
+     *          | listener == null
+     */
+    public void addCompletionListener(Consumer<Activity> listener) throws IllegalArgumentException{
+        if(listener == null)
+            throw new IllegalArgumentException("The listener cannot be null.");
+        this.completionListeners.add(listener);
+    }
+
+    /**
+     * Unregister the given listener, if it wasn't notified yet.
+     * @param listener The listener to unregister.
+     */
+    public void removeCompletionListener(Consumer<Activity> listener){
+        this.completionListeners.remove(listener);
+    }
+
+    /**
+     * Check whether any listener is waiting for the completion of this Activity.
+     */
+    public boolean hasCompletionListeners(){
+        return !this.completionListeners.isEmpty();
+    }
+
+    /**
+     * Notify and unregister all listeners waiting for the completion of this Activity.
+     * Listeners registered while notifying are kept for the next completion.
+     */
+    private void notifyCompletion(){
+        if(this.completionListeners.isEmpty())
+            return;
+        List<Consumer<Activity>> listeners = new ArrayList<>(this.completionListeners);
+        this.completionListeners.clear();
+        for(Consumer<Activity> listener : listeners)
+            listener.accept(this);
+    }
+
     /**
      * Advance the game-time of this Activity
      * @param dt The amount of game-time to progress with
      */
     public final void advanceTime(double dt){
+        TickProfiler profiler = unit.getWorld().getProfiler();
+        if(profiler != null)
+            profiler.countActivity(this.getClass());
         this.advanceActivity(dt);
         this.activityProgress += dt;
     }
 
+    /**
+     * Advance the activity progress of this Activity without advancing the Activity itself.
+     * This is used to catch up on game-time during which the Unit was skipped by its World,
+     * because getTimeUntilNextCheck() indicated advancing was not needed.
+     * @param dt The amount of game-time that passed
+     * @post The activity progress is increased by dt.
+     *      | new.getActivityProgress() == this.getActivityProgress() + dt
+     */
+    public final void skipTime(double dt){
+        this.activityProgress += dt;
+    }
+
+    /**
+     * Return the amount of game-time after which this Activity must be advanced again.
+     * Activities which only wait for their progress to reach a fixed duration can
+     * return the remaining time, so their Unit doesn't have to be advanced during
+     * that time.
+     * @return Zero by default, so the Activity is advanced every tick.
+     *      | result == 0
+     */
+    public double getTimeUntilNextCheck(){
+        return 0d;
+    }
+
     /**
      * Activity specific code which is called when advanceTime of this Activity is called.
      */
@@ -255,4 +359,23 @@ public abstract class Activity {
     public boolean isParentActivity(Activity activity){
         return this.parentActivity==activity;
     }
+
+    /**
+     * Return the success flag of this Activity, which is only reported by wasSuccessful once it is stopped.
+     */
+    boolean isSuccess(){
+        return this.success;
+    }
+
+    /**
+     * Restore the state of this Activity, as it was saved by ActivityCodec. The Activity isn't started again.
+     * @post | new.getActivityProgress() == activityProgress && new.isDefault() == isDefault &&
+     *       | new.isActive() == isActive && new.isSuccess() == success
+     */
+    void restoreState(double activityProgress, boolean isDefault, boolean isActive, boolean success){
+        this.activityProgress = activityProgress;
+        this.isDefault = isDefault;
+        this.isActive = isActive;
+        this.success = success;
+    }
 }
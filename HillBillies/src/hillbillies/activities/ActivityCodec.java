@@ -0,0 +1,231 @@
+package hillbillies.activities;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import hillbillies.model.Cube;
+import hillbillies.model.IWorldObject;
+import hillbillies.model.Unit;
+import hillbillies.utils.Vector;
+
+/**
+ * Compact binary serialization of the Activity stack of a Unit. Each Activity is written as the tag
+ * of its class, followed by the state shared by all Activities and finally the state of its own class.
+ * References to other world objects are written by the given ReferenceWriter, references to other
+ * Activities of the same stack are written as their index in the stack.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class ActivityCodec {
+
+    private ActivityCodec(){
+    }
+
+    /**
+     * Enumeration of the serializable Activity classes. The ordinal of each constant is the tag
+     * of its class, so new constants must only be added at the end.
+     */
+    private enum Tag {
+        NONE(None.class),
+        REST(Rest.class),
+        ADJACENT_MOVE(AdjacentMove.class),
+        TARGET_MOVE(TargetMove.class),
+        FALL(Fall.class),
+        WORK(Work.class),
+        ATTACK(Attack.class);
+
+        private final Class<? extends Activity> type;
+
+        Tag(Class<? extends Activity> type){
+            this.type = type;
+        }
+
+        private static Tag of(Activity activity) throws IllegalArgumentException {
+            for(Tag tag : values())
+                if(tag.type == activity.getClass())
+                    return tag;
+            throw new IllegalArgumentException("Activities of class " + activity.getClass().getSimpleName() + " can't be serialized.");
+        }
+    }
+
+    /**
+     * Interface writing references to the world objects Activities depend on.
+     */
+    public interface ReferenceWriter {
+
+        /**
+         * Write a reference to the given world object, which might be null or terminated.
+         */
+        void write(DataOutput out, IWorldObject object) throws IOException;
+    }
+
+    /**
+     * Interface reading the references written by a ReferenceWriter.
+     */
+    public interface ReferenceReader {
+
+        /**
+         * Read a reference written by a ReferenceWriter, or return null if the referenced object doesn't exist anymore.
+         */
+        IWorldObject read(DataInput in) throws IOException;
+    }
+
+    /**
+     * Write the given Activity stack to the given output.
+     * @param activities The Activities of the stack, from the bottom to the top of the stack.
+     * @throws IllegalArgumentException
+     *         One of the given Activities isn't of a serializable class.
+     */
+    public static void write(DataOutput out, List<Activity> activities, ReferenceWriter references) throws IOException, IllegalArgumentException {
+        out.writeInt(activities.size());
+        for(Activity activity : activities){
+            Tag tag = Tag.of(activity);
+            out.writeByte(tag.ordinal());
+            out.writeDouble(activity.getActivityProgress());
+            out.writeByte((activity.isDefault() ? 1 : 0) | (activity.isActive() ? 2 : 0) | (activity.isSuccess() ? 4 : 0));
+            if(activity instanceof Move){
+                out.writeBoolean(((Move) activity).getSprinting());
+                out.writeDouble(((Move) activity).getCurrentSpeed());
+            }
+            switch (tag){
+                case REST:
+                    out.writeDouble(((Rest) activity).getRestHitpoints());
+                    out.writeDouble(((Rest) activity).getRestStamina());
+                    break;
+                case ADJACENT_MOVE:
+                    writeVector(out, ((AdjacentMove) activity).getNextPosition());
+                    out.writeInt(activities.indexOf(((AdjacentMove) activity).getTargetMove()));
+                    break;
+                case TARGET_MOVE:
+                    TargetMove targetMove = (TargetMove) activity;
+                    List<Vector> path = targetMove.getPathPositions();
+                    out.writeInt(path == null ? -1 : path.size());
+                    if(path != null)
+                        for(Vector position : path)
+                            writeVector(out, position);
+                    references.write(out, targetMove.getNearestObject());
+                    out.writeInt(targetMove.getTargets().size());
+                    for(IWorldObject target : targetMove.getTargets())
+                        references.write(out, target);
+                    break;
+                case FALL:
+                    out.writeInt(((Fall) activity).getFallingLevel());
+                    break;
+                case WORK:
+                    references.write(out, ((Work) activity).getWorkCube());
+                    out.writeFloat(((Work) activity).getWorkDuration());
+                    break;
+                case ATTACK:
+                    references.write(out, ((Attack) activity).getDefender());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Read an Activity stack written by write(DataOutput, List, ReferenceWriter) for the given unit.
+     * The Activities are restored in the state they were written in, they are not started again.
+     * @return The Activities of the stack, from the bottom to the top of the stack.
+     * @throws IOException
+     *         The input could not be read or doesn't contain a valid Activity stack.
+     */
+    public static List<Activity> read(DataInput in, Unit unit, ReferenceReader references) throws IOException {
+        int size = in.readInt();
+        if(size < 0)
+            throw new IOException("Invalid activity stack size " + size + ".");
+        List<Activity> activities = new ArrayList<>(size);
+        for(int i = 0; i < size; i++){
+            int ordinal = in.readUnsignedByte();
+            if(ordinal >= Tag.values().length)
+                throw new IOException("Unknown activity tag " + ordinal + ".");
+            Tag tag = Tag.values()[ordinal];
+            double progress = in.readDouble();
+            int flags = in.readUnsignedByte();
+            boolean sprinting = false;
+            double speed = 0d;
+            if(Move.class.isAssignableFrom(tag.type)){
+                sprinting = in.readBoolean();
+                speed = in.readDouble();
+            }
+            Activity activity;
+            switch (tag){
+                case NONE:
+                    activity = unit.NONE;
+                    break;
+                case REST:
+                    Rest rest = new Rest(unit);
+                    rest.setRestPoints(in.readDouble(), in.readDouble());
+                    activity = rest;
+                    break;
+                case ADJACENT_MOVE:
+                    Vector nextPosition = readVector(in);
+                    int targetMove = in.readInt();
+                    if(targetMove >= i || (targetMove >= 0 && !(activities.get(targetMove) instanceof TargetMove)))
+                        throw new IOException("Invalid extended movement " + targetMove + ".");
+                    activity = new AdjacentMove(unit, nextPosition, targetMove < 0 ? null : (TargetMove) activities.get(targetMove));
+                    break;
+                case TARGET_MOVE:
+                    int pathLength = in.readInt();
+                    List<Vector> path = null;
+                    if(pathLength >= 0){
+                        path = new ArrayList<>(pathLength);
+                        for(int j = 0; j < pathLength; j++)
+                            path.add(readVector(in));
+                    }
+                    IWorldObject leader = references.read(in);
+                    int nbTargets = in.readInt();
+                    Set<IWorldObject> targets = new LinkedHashSet<>();
+                    for(int j = 0; j < nbTargets; j++){
+                        IWorldObject target = references.read(in);
+                        if(target != null)
+                            targets.add(target);
+                    }
+                    activity = new TargetMove(unit, path, leader, targets);
+                    break;
+                case FALL:
+                    Fall fall = new Fall(unit);
+                    fall.setFallingLevel(in.readInt());
+                    activity = fall;
+                    break;
+                case WORK:
+                    IWorldObject workCube = references.read(in);
+                    if(!(workCube instanceof Cube))
+                        throw new IOException("Invalid work cube.");
+                    activity = new Work(unit, (Cube) workCube, in.readFloat());
+                    break;
+                case ATTACK:
+                    IWorldObject defender = references.read(in);
+                    if(defender != null && !(defender instanceof Unit))
+                        throw new IOException("Invalid defender.");// A terminated defender isn't needed anymore once the attack started
+                    activity = new Attack(unit, (Unit) defender);
+                    break;
+                default:
+                    throw new IOException("Unknown activity tag " + ordinal + ".");
+            }
+            if(activity instanceof Move){
+                ((Move) activity).setSprinting(sprinting);
+                ((Move) activity).setCurrentSpeed(speed);
+            }
+            activity.restoreState(progress, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+            activities.add(activity);
+        }
+        return activities;
+    }
+
+    private static void writeVector(DataOutput out, Vector vector) throws IOException {
+        out.writeDouble(vector.X());
+        out.writeDouble(vector.Y());
+        out.writeDouble(vector.Z());
+    }
+
+    private static Vector readVector(DataInput in) throws IOException {
+        return new Vector(in.readDouble(), in.readDouble(), in.readDouble());
+    }
+}
@@ -71,14 +71,25 @@ public class AdjacentMove extends Move {
             throws IllegalArgumentException, NullPointerException{
         super(extendedMovement, unit, sprinting);
         Vector nextPosition = unit.getPosition().getCubeCenterCoordinates().add(direction);
-        if (!isValidNextPosition(unit.getPosition(), nextPosition))
-        	System.out.println("blub");
         if (!isValidNextPosition(unit.getPosition(), nextPosition))
             throw new IllegalArgumentException("Invalid position to move to.");
         this.nextPosition = nextPosition;
         this.targetMove = extendedMovement;
     }
 
+    /**
+     * Create a new AdjacentMove Activity for the given Unit towards the given position, without checking whether
+     * it is reachable. Only used to restore an AdjacentMove from a snapshot.
+     * @param unit The unit which will perform the movement.
+     * @param nextPosition The cube center the unit is moving to.
+     * @param extendedMovement The extended movement this AdjacentMove is a step of, or null.
+     */
+    AdjacentMove(Unit unit, Vector nextPosition, TargetMove extendedMovement){
+        super(extendedMovement, unit, false);
+        this.nextPosition = nextPosition;
+        this.targetMove = extendedMovement;
+    }
+
     /**
      * Activity specific code which is called when the Activity is started.
      */
@@ -167,6 +178,20 @@ public class AdjacentMove extends Move {
         return Move.MOVE_XP;
     }
 
+    /**
+     * Return the cube center the unit is moving to.
+     */
+    Vector getNextPosition(){
+        return this.nextPosition;
+    }
+
+    /**
+     * Return the extended movement this AdjacentMove is a step of, or null if it is an individual movement.
+     */
+    TargetMove getTargetMove(){
+        return this.targetMove;
+    }
+
     @Override
     public void sprint(){
         super.sprint();
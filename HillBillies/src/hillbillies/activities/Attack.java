@@ -39,6 +39,14 @@ public class Attack extends Activity{
         super(attacker);
         this.defender = defender;
     }
+
+    /**
+     * Return the Unit which is attacked by this Activity.
+     */
+    Unit getDefender(){
+        return this.defender;
+    }
+
 	/**
 	 * Let the unit of this activity attack the defender.
 	 * @post   	The orientation of this unit and the defender is changed. 
@@ -51,6 +59,11 @@ public class Attack extends Activity{
 	 * 			| new.getCurrentActivity() == Activity.Attack
 	 * @effect	The defender defends this attack
 	 * 			| defender.defend()	
+	 * @effect	The activity of the defender is restarted, unless the defender died or is attacking itself.
+	 * 			An attack can't be interrupted, so restarting the attack of a defender which attacks this unit back
+	 * 			would let both units attack each other again, until one of them dies.
+	 * 			| if (!defender.isTerminated() && !(defender.getCurrentActivity() instanceof Attack))
+	 * 			|	defender.restartActivity(true)
 	 */
     @Override
     public void startActivity() {
@@ -60,7 +73,8 @@ public class Attack extends Activity{
         unit.setOrientation((float)Math.atan2(dy, dx));
 
         this.defend();
-        defender.restartActivity(true);
+        if(!defender.isTerminated() && !(defender.getCurrentActivity() instanceof Attack))
+            defender.restartActivity(true);
     }
 
     @Override
@@ -79,6 +93,16 @@ public class Attack extends Activity{
             this.requestFinish();
     }
 
+    /**
+     * Return the amount of game-time after which this Activity must be advanced again.
+     * @return The remaining attack duration.
+     *      | result == ATTACK_DURATION - this.getActivityProgress()
+     */
+    @Override
+    public double getTimeUntilNextCheck() {
+        return ATTACK_DURATION - activityProgress;
+    }
+
     @Override
     public String toString() {
         return "attack";
@@ -203,8 +227,6 @@ public class Attack extends Activity{
             unit.addXP(ATTACK_XP);
         }else
             defender.addXP(ATTACK_XP);
-
-        defender.restartActivity();
     }
 
     /**
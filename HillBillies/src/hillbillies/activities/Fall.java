@@ -102,4 +102,18 @@ public class Fall extends Move {
     public int getXp() {
         return 0;
     }
+
+    /**
+     * Return the cube level from which the unit started falling.
+     */
+    int getFallingLevel(){
+        return this.fallingLevel;
+    }
+
+    /**
+     * Set the cube level from which the unit started falling. Only used to restore this Activity from a snapshot.
+     */
+    void setFallingLevel(int fallingLevel){
+        this.fallingLevel = fallingLevel;
+    }
 }
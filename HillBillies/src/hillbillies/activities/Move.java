@@ -160,6 +160,21 @@ public abstract class Move extends Activity {
         this.isSprinting = false;
     }
 
+    /**
+     * Return whether this unit should sprint, even if this Activity isn't active at the moment.
+     */
+    boolean getSprinting(){
+        return this.isSprinting;
+    }
+
+    /**
+     * Set whether this unit should sprint, without checking whether it is able to.
+     * Only used to restore this Activity from a snapshot.
+     */
+    void setSprinting(boolean sprinting){
+        this.isSprinting = sprinting;
+    }
+
     /**
      * Return a boolean indicating whether or not this unit
      * is able to sprint.
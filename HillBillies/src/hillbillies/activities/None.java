@@ -54,15 +54,15 @@ public class None extends Activity {
     protected void advanceActivity(double dt) {
         if(this.isDefault()) {
             if(this.unit.getTask()==null) {
-                Task availableTask = this.unit.getFaction().getScheduler().getHighestPriorityAssignableTask();
+                Task availableTask = this.unit.getFaction().getScheduler().claimHighestPriorityAssignableTask(unit);
                 if (availableTask == null)
                     setDefaultBehaviour();// No task available => do something random
-                else {
-                    this.unit.getFaction().getScheduler().schedule(availableTask, unit);
+                else
                     availableTask.run();
-                }
+            }else if(!this.unit.getTask().isRunning()){
+                this.unit.getTask().run();// Assigned by the scheduler at the start of this tick
             }else{
-                this.unit.getTask().getRunner().advanceTask(dt);
+                this.unit.getTask().getRunner().advanceTask();
             }
         }
     }
@@ -96,6 +96,17 @@ public class None extends Activity {
         return 0;
     }
 
+    /**
+     * Return the amount of game-time after which this Activity must be advanced again.
+     * @return Zero if the default behaviour is activated, positive infinity otherwise,
+     *          as an idle unit only needs to be advanced when something else happens to it.
+     *      | result == (this.isDefault() ? 0 : Double.POSITIVE_INFINITY)
+     */
+    @Override
+    public double getTimeUntilNextCheck() {
+        return this.isDefault() ? 0 : Double.POSITIVE_INFINITY;
+    }
+
     @Override
     public String toString() {
         return "none";
@@ -125,7 +136,6 @@ public class None extends Activity {
         if (units.size() > 0)
             nb +=1;
         int activity = randInt(0,nb);
-        System.out.println(activity);
         if (activity ==0){
             if (unit.getHitpoints() == Unit.getMaxHitpoints(unit.getWeight(), unit.getToughness()) && unit.getStamina() == Unit.getMaxStamina(unit.getWeight(), unit.getToughness()))
                 activity = randInt(1,nb);
@@ -130,6 +130,28 @@ public class Rest extends Activity {
         return this.isActive() && (this.restHitpoints + this.restStamina < 1d);
     }
 
+    /**
+     * Return the hitpoints recovered during the current rest period.
+     */
+    double getRestHitpoints(){
+        return this.restHitpoints;
+    }
+
+    /**
+     * Return the stamina points recovered during the current rest period.
+     */
+    double getRestStamina(){
+        return this.restStamina;
+    }
+
+    /**
+     * Set the points recovered during the current rest period. Only used to restore this Activity from a snapshot.
+     */
+    void setRestPoints(double restHitpoints, double restStamina){
+        this.restHitpoints = restHitpoints;
+        this.restStamina = restStamina;
+    }
+
     private double getRestHitpointsGain(){
         return unit.getToughness()/200d;
     }
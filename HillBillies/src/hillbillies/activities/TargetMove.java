@@ -1,5 +1,6 @@
 package hillbillies.activities;
 
+import hillbillies.events.PathSearchEvent;
 import hillbillies.model.*;
 import hillbillies.utils.Vector;
 
@@ -15,7 +16,7 @@ public class TargetMove extends Move {
 
     private Path path;
 	private IWorldObject leader;
-    private Set<? extends IWorldObject> targets = new HashSet<>();
+    private Set<? extends IWorldObject> targets = new LinkedHashSet<>();
 
 //    public TargetMove(Unit unit, Set<Vector> targets)throws IllegalArgumentException, NullPointerException{
 //    	super(unit);
@@ -57,6 +58,25 @@ public class TargetMove extends Move {
             else
             	throw new IllegalStateException("The given unit cannot reach any other position.");
     }
+
+    /**
+     * Create a new TargetMove Activity for the given Unit along the given path, without searching it again.
+     * Only used to restore a TargetMove from a snapshot.
+     * @param unit The unit which will perform the movement.
+     * @param path The cube coordinates the unit still has to move through, ending at its target, or null if it has no path.
+     * @param leader The object the unit is moving to, or null.
+     * @param targets The objects the unit could move to, if the leader becomes invalid.
+     */
+    TargetMove(Unit unit, List<Vector> path, IWorldObject leader, Set<? extends IWorldObject> targets){
+        super(unit);
+        if(path != null) {
+            this.path = new Path();
+            for(int i = path.size() - 1; i >= 0; i--)
+                this.path.add(path.get(i));
+        }
+        this.leader = leader;
+        this.targets = targets;
+    }
     
     /**
      * Activity specific code which is called when the Activity is started.
@@ -113,7 +133,16 @@ public class TargetMove extends Move {
             }
         }
         if(this.path!=null && this.path.hasNext()){
+            Vector target = path.getTarget();
         	Vector nextblub = path.getNext();
+            if(!isValidNextPosition(unit.getPosition(), unit.getPosition().getCubeCenterCoordinates().add(nextblub.difference(cpos)))){
+                // The path was calculated from another cube, e.g. after a terrain change while the unit was still moving
+                if(!calculatePath(cpos, target) || !this.path.hasNext()){
+                    requestFinish();
+                    return;
+                }
+                nextblub = path.getNext();
+            }
             AdjacentMove nextMove = new AdjacentMove(unit, nextblub.difference(cpos), this.isSprinting(), this);
             unit.requestNewActivity(nextMove);
         }else
@@ -163,6 +192,27 @@ public class TargetMove extends Move {
 		return leader;
 	}
 
+	/**
+	 * Return the number of cubes the unit still has to move through to reach its target.
+	 */
+	public int getPathLength(){
+		return this.path.path.size();
+	}
+
+	/**
+	 * Return the cube coordinates the unit still has to move through, ending at its target, or null if it has no path.
+	 */
+	List<Vector> getPathPositions(){
+		return this.path == null ? null : new ArrayList<>(this.path.path);
+	}
+
+	/**
+	 * Return the objects the unit could move to, if its leader becomes invalid.
+	 */
+	Set<? extends IWorldObject> getTargets(){
+		return this.targets;
+	}
+
     private boolean hasNextLeader(){
         return !this.targets.isEmpty();
     }
@@ -205,9 +255,13 @@ public class TargetMove extends Move {
     private final class PathCalculator {
 
         /**
-         * Set registering the controlled positions.
+         * List registering the controlled positions, in the order they were controlled.
          */
         private List<Vector> controlledPos = new ArrayList<>();
+        /**
+         * Set registering the same positions as controlledPos, for constant time lookups.
+         */
+        private final Set<Vector> controlledPosSet = new HashSet<>();
 
         private final ArrayDeque<Map.Entry<Vector, Integer>> remainingPositions = new ArrayDeque<>();
         private final HashMap<Vector, Integer> positionDistances = new HashMap<>();
@@ -274,28 +328,50 @@ public class TargetMove extends Move {
          * @return
          */
         private Path computePath(Vector fromPosition){
+            PathSearchEvent event = new PathSearchEvent();
+            event.begin();
         	this.add(fromPosition, 0);
             controlledPos.clear();
+            controlledPosSet.clear();
+            Path path;
+            int expanded = 0;
             if(this.targetPositions.contains(fromPosition)) {// Unit already stands on the target
-                ArrayDeque<Vector> path = new ArrayDeque<>();
+                ArrayDeque<Vector> positions = new ArrayDeque<>();
                 HashSet<Vector> pathPositions = new HashSet<>();
-                path.add(fromPosition);
+                positions.add(fromPosition);
                 pathPositions.add(fromPosition);
-                return new Path(path, pathPositions);
+                path = new Path(positions, pathPositions);
+            } else {
+                while (!this.targetFound() && this.hasNext()) {
+                    searchNextPositions(this.getNext());
+                    expanded++;
+                }
+                if (this.targetFound()) {// Path found
+                    path = new Path();
+                    Vector pos = this.target;
+                    while (!fromPosition.equals(pos)) {
+                        path.add(pos);
+                        pos = this.getNextPositionWithLowestDistance(pos);
+                    }
+                } else
+                    path = null;// No path found
             }
-            while (!this.targetFound() && this.hasNext()) {
-                searchNextPositions(this.getNext());
+            TickProfiler profiler = TargetMove.this.unit.getWorld().getProfiler();
+            if(profiler != null)
+                profiler.countPathSearch(expanded);
+            event.end();
+            if(event.shouldCommit()){
+                event.unitId = TargetMove.this.unit.getId();
+                event.startX = (int) fromPosition.X();
+                event.startY = (int) fromPosition.Y();
+                event.startZ = (int) fromPosition.Z();
+                event.targetCount = this.targetPositions.size();
+                event.nodesExpanded = expanded;
+                event.found = path != null;
+                event.pathLength = path == null ? 0 : path.path.size();
+                event.commit();
             }
-            if(this.targetFound()){// Path found
-                Path path = new Path();
-                Vector pos = this.target;
-                while (!fromPosition.equals(pos)) {
-                    path.add(pos);
-                    pos = this.getNextPositionWithLowestDistance(pos);
-                }
-                return path;
-            } else
-                return null;// No path found
+            return path;
         }
 
         private void searchNextPositions(Map.Entry<Vector, Integer> start) {
@@ -303,9 +379,10 @@ public class TargetMove extends Move {
             Iterator<Vector> it = nextPositions.iterator();
             while(it.hasNext() && !this.targetFound()){
                 Vector position = it.next();
-                if (TargetMove.this.isValidNextPosition(start.getKey(), position) && !controlledPos.contains(position)) {
+                if (TargetMove.this.isValidNextPosition(start.getKey(), position) && !controlledPosSet.contains(position)) {
                     this.add(position, start.getValue() + 1);
                     controlledPos.add(position);
+                    controlledPosSet.add(position);
 
                     if(this.targetPositions.contains(position))
                         this.target = position;
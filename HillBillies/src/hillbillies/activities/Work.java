@@ -31,6 +31,19 @@ public class Work extends Activity {
         this.workCube = workCube;
     }
 
+    /**
+     * Create a new Work Activity for the given Unit on the given cube, without checking whether the unit can
+     * reach it. Only used to restore a Work Activity from a snapshot.
+     * @param unit The unit which will work.
+     * @param workCube The cube the unit works on.
+     * @param workDuration The time the unit works, once the Activity is started.
+     */
+    Work(Unit unit, Cube workCube, float workDuration){
+        super(unit);
+        this.workCube = workCube;
+        this.workDuration = workDuration;
+    }
+
     /**
      * Return the time this unit shall be working.
      * @param	strength
@@ -87,6 +100,16 @@ public class Work extends Activity {
         }
     }
 
+    /**
+     * Return the amount of game-time after which this Activity must be advanced again.
+     * @return The remaining work duration.
+     *      | result == this.getWorkDuration() - this.getActivityProgress()
+     */
+    @Override
+    public double getTimeUntilNextCheck() {
+        return this.getWorkDuration() - activityProgress;
+    }
+
     /**
      * Return a boolean indicating whether or not this unit
      * is able to work. (When not in default mode!)
@@ -127,6 +150,13 @@ public class Work extends Activity {
         return this.workDuration;
     }
 
+    /**
+     * Return the cube this unit works on.
+     */
+    Cube getWorkCube(){
+        return this.workCube;
+    }
+
     /**
      * Check whether the given workCube is a valid workCube for
      * this Unit.
@@ -0,0 +1,38 @@
+package hillbillies.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event emitted for every update of the border connectivity of the terrain of a World.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+@Name("hillbillies.BorderConnectivity")
+@Label("Border Connectivity Update")
+@Category({"Hillbillies", "Terrain"})
+@Description("Update of the solid cubes connected to the border after a terrain change")
+public class BorderConnectivityEvent extends jdk.jfr.Event {
+
+    @Label("X")
+    public int x;
+
+    @Label("Y")
+    public int y;
+
+    @Label("Z")
+    public int z;
+
+    @Label("Became Solid")
+    @Description("True if the cube changed from passable to solid, false if it changed from solid to passable")
+    public boolean becameSolid;
+
+    @Label("Cubes Visited")
+    public int cubesVisited;
+
+    @Label("Cubes Changed")
+    @Description("Number of cubes whose connection to the border changed")
+    public int cubesChanged;
+}
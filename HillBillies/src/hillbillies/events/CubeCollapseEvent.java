@@ -0,0 +1,33 @@
+package hillbillies.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event emitted for every cube that collapses in a World.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+@Name("hillbillies.CubeCollapse")
+@Label("Cube Collapse")
+@Category({"Hillbillies", "Terrain"})
+public class CubeCollapseEvent extends jdk.jfr.Event {
+
+    @Label("X")
+    public int x;
+
+    @Label("Y")
+    public int y;
+
+    @Label("Z")
+    public int z;
+
+    @Label("Terrain")
+    public String terrain;
+
+    @Label("Material Dropped")
+    @Description("Simple class name of the material left behind, or null if none was dropped")
+    public String materialDropped;
+}
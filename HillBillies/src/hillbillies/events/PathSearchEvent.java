@@ -0,0 +1,45 @@
+package hillbillies.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Unsigned;
+
+/**
+ * Flight recorder event emitted for every path search of a TargetMove.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+@Name("hillbillies.PathSearch")
+@Label("Path Search")
+@Category({"Hillbillies", "Activities"})
+@Description("Breadth-first search for a path from a unit's cube to one of its target cubes")
+public class PathSearchEvent extends jdk.jfr.Event {
+
+    @Label("Unit Id")
+    @Unsigned
+    public long unitId;
+
+    @Label("Start X")
+    public int startX;
+
+    @Label("Start Y")
+    public int startY;
+
+    @Label("Start Z")
+    public int startZ;
+
+    @Label("Target Count")
+    public int targetCount;
+
+    @Label("Nodes Expanded")
+    public int nodesExpanded;
+
+    @Label("Path Found")
+    public boolean found;
+
+    @Label("Path Length")
+    @Description("Number of cubes in the resulting path, or 0 when no path was found")
+    public int pathLength;
+}
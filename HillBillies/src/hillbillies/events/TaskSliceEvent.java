@@ -0,0 +1,43 @@
+package hillbillies.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Unsigned;
+
+/**
+ * Flight recorder event emitted for every slice of a task executed by a TaskRunner
+ * during a single call to advanceTask.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+@Name("hillbillies.TaskSlice")
+@Label("Task Slice")
+@Category({"Hillbillies", "Tasks"})
+@Description("Interpretation of a task's statements during a single tick")
+public class TaskSliceEvent extends jdk.jfr.Event {
+
+    /**
+     * Values of the pauseReason field.
+     */
+    public static final String FINISHED = "finished", STOPPED = "stopped", PAUSED = "paused",
+            WAITING = "waiting";
+
+    @Label("Unit Id")
+    @Unsigned
+    public long unitId;
+
+    @Label("Task Name")
+    public String taskName;
+
+    @Label("Task Priority")
+    public int taskPriority;
+
+    @Label("Statements Executed")
+    public int statementsExecuted;
+
+    @Label("Pause Reason")
+    @Description("Why the slice ended: finished, stopped, paused (out of time) or waiting (for an activity)")
+    public String pauseReason;
+}
@@ -0,0 +1,373 @@
+package hillbillies.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.part2.listener.TerrainChangeListener;
+
+/**
+ * Class saving snapshots of a World at a fixed interval of game-time, to be recovered after a crash.
+ * The snapshots are captured by the thread advancing the World at the end of a tick, which only copies the
+ * changed terrain chunks and serializes the other state of the World. They are written by a background
+ * thread while the World is advanced further. While a snapshot is being written, the next capture is
+ * postponed to the first tick after the write completed, so at most one snapshot is held in memory.
+ * Each snapshot is written to a temporary file first and then moved in place, so a crash never leaves a
+ * partial snapshot behind. Only the most recent snapshots are retained in the directory.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class Autosave implements AutoCloseable {
+
+    /**
+     * Constant reflecting the prefix of the names of the snapshot files.
+     */
+    public static final String FILE_PREFIX = "autosave-";
+    /**
+     * Constant reflecting the extension of the names of the snapshot files.
+     */
+    public static final String FILE_SUFFIX = ".hbsv";
+
+    /**
+     * Constant reflecting the tolerance on the game-time at which a snapshot is due, which absorbs the
+     * rounding errors of adding up the time steps of the ticks.
+     */
+    private static final double TIME_PRECISION = 1e-9;
+
+    private static final AtomicInteger nbAutosaves = new AtomicInteger();
+
+    /**
+     * The world this Autosave captures snapshots of.
+     */
+    private final World world;
+    private final Path directory;
+    private final double interval;
+    private final int maxRetained;
+    private final ExecutorService executor;
+    /**
+     * The game-time at which the next snapshot is due. Only used by the thread advancing the world.
+     */
+    private double nextSaveTime;
+    /**
+     * Flag indicating a snapshot is being written.
+     */
+    private boolean writing = false;
+    /**
+     * The retained snapshot files, from old to new. Only changed by the background thread.
+     */
+    private final Deque<Path> retained = new ArrayDeque<>();
+    private long nextSequenceNumber = -1L;
+    private long nbCaptured = 0L, nbWritten = 0L;
+    private long lastCaptureNanos = 0L, lastWriteNanos = 0L;
+    private Exception failure = null;
+
+    /**
+     * Initialize a new Autosave for the given world, which starts at the current game-time of the world.
+     * @param world The world to capture snapshots of.
+     * @param directory The directory to write the snapshots to. It is created if it doesn't exist yet.
+     * @param interval The game-time between two snapshots.
+     * @param maxRetained The number of snapshots kept in the directory.
+     * @throws IllegalArgumentException
+     *         When the directory is null, the interval isn't strictly positive or no snapshots would be retained.
+     *         | directory == null || !(interval > 0) || maxRetained < 1
+     */
+    Autosave(World world, Path directory, double interval, int maxRetained) throws IllegalArgumentException {
+        if(directory == null)
+            throw new IllegalArgumentException("The directory can't be null.");
+        if(!(interval > 0))
+            throw new IllegalArgumentException("The autosave interval must be strictly positive.");
+        if(maxRetained < 1)
+            throw new IllegalArgumentException("At least one snapshot must be retained.");
+        this.world = world;
+        this.directory = directory;
+        this.interval = interval;
+        this.maxRetained = maxRetained;
+        this.nextSaveTime = world.getTime() + interval;
+        int id = nbAutosaves.getAndIncrement();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hillbillies-autosave-" + id);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Basic @Immutable
+    public Path getDirectory(){
+        return directory;
+    }
+
+    @Basic @Immutable
+    public double getInterval(){
+        return interval;
+    }
+
+    @Basic @Immutable
+    public int getMaxRetained(){
+        return maxRetained;
+    }
+
+    /**
+     * Capture a snapshot of the world if one is due, and queue it to be written.
+     * This is called by the world at the end of each tick.
+     */
+    void afterTick(){
+        if(world.getTime() < nextSaveTime - TIME_PRECISION || executor.isShutdown())
+            return;
+        synchronized (this) {
+            if(writing)
+                return;// Try again next tick
+        }
+        long start = System.nanoTime();
+        WorldSnapshot snapshot;
+        try {
+            snapshot = WorldSnapshot.capture(world);
+        } catch (IllegalArgumentException e) {
+            synchronized (this) {
+                failure = e;
+            }
+            scheduleNextSave(world.getTime());
+            return;
+        }
+        long captureNanos = System.nanoTime() - start;
+        synchronized (this) {
+            writing = true;
+            nbCaptured++;
+            lastCaptureNanos = captureNanos;
+        }
+        scheduleNextSave(world.getTime());
+        executor.execute(() -> write(snapshot));
+    }
+
+    /**
+     * Schedule the next snapshot one interval after the snapshot which was due, or one interval after the given
+     * time if the snapshot was postponed for longer than an interval.
+     */
+    private void scheduleNextSave(double time){
+        nextSaveTime += interval;
+        if(nextSaveTime < time + TIME_PRECISION)
+            nextSaveTime = time + interval;
+    }
+
+    /**
+     * Write the given snapshot to a new file and delete the snapshots which aren't retained anymore.
+     * This is only called by the background thread.
+     */
+    private void write(WorldSnapshot snapshot){
+        long start = System.nanoTime();
+        Path temporary = null;
+        try {
+            if(nextSequenceNumber < 0)
+                initialize();
+            Path file = directory.resolve(FILE_PREFIX + String.format("%010d", nextSequenceNumber++) + FILE_SUFFIX);
+            temporary = directory.resolve(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                snapshot.write(out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+            synchronized (this) {
+                retained.addLast(file);
+            }
+            while(retained.size() > maxRetained){
+                Path oldest;
+                synchronized (this) {
+                    oldest = retained.removeFirst();
+                }
+                Files.deleteIfExists(oldest);
+            }
+            synchronized (this) {
+                nbWritten++;
+                lastWriteNanos = System.nanoTime() - start;
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                failure = e;
+            }
+            if(temporary != null)
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // The temporary file is overwritten by the next attempt
+                }
+        } finally {
+            synchronized (this) {
+                writing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Create the directory and continue the numbering of the snapshots which are already in it,
+     * which are retained as if they were written by this Autosave.
+     */
+    private void initialize() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> existing = listSnapshots(directory);
+        synchronized (this) {
+            retained.addAll(existing);
+        }
+        nextSequenceNumber = existing.isEmpty() ? 0L : getSequenceNumber(existing.get(existing.size() - 1)) + 1;
+    }
+
+    /**
+     * Return the snapshots retained by this Autosave, from old to new.
+     */
+    public synchronized List<Path> getSnapshots(){
+        return Collections.unmodifiableList(new ArrayList<>(retained));
+    }
+
+    /**
+     * Return the number of snapshots which were captured.
+     */
+    public synchronized long getNbCaptured(){
+        return nbCaptured;
+    }
+
+    /**
+     * Return the number of snapshots which were written successfully.
+     */
+    public synchronized long getNbWritten(){
+        return nbWritten;
+    }
+
+    /**
+     * Return the time the thread advancing the world spent capturing the last snapshot, in nanoseconds.
+     */
+    public synchronized long getLastCaptureNanos(){
+        return lastCaptureNanos;
+    }
+
+    /**
+     * Return the time the background thread spent writing the last snapshot, in nanoseconds.
+     */
+    public synchronized long getLastWriteNanos(){
+        return lastWriteNanos;
+    }
+
+    /**
+     * Return the exception of the last snapshot which could not be captured or written, or null if all succeeded.
+     */
+    public synchronized Exception getFailure(){
+        return failure;
+    }
+
+    /**
+     * Check whether a snapshot is being written.
+     */
+    public synchronized boolean isWriting(){
+        return writing;
+    }
+
+    /**
+     * Wait until no snapshot is being written, or the timeout elapses.
+     * @return True if no snapshot is being written, false if the timeout elapsed.
+     * @throws InterruptedException
+     *         If the current thread is interrupted while waiting.
+     */
+    public synchronized boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while(writing){
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Stop capturing snapshots and shut down the background thread, after the snapshot being written is finished.
+     * If this is still the autosave of its world, autosaving is disabled for the world.
+     * @effect | world.detachAutosave(this)
+     */
+    @Override
+    public void close(){
+        world.detachAutosave(this);
+        executor.shutdown();
+        boolean interrupted = false;
+        while(!executor.isTerminated()){
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Return the snapshot files in the given directory, from old to new.
+     */
+    public static List<Path> listSnapshots(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if(!Files.isDirectory(directory))
+            return snapshots;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for(Path file : files)
+                if(getSequenceNumber(file) >= 0)
+                    snapshots.add(file);
+        }
+        snapshots.sort((first, second) -> Long.compare(getSequenceNumber(first), getSequenceNumber(second)));
+        return snapshots;
+    }
+
+    /**
+     * Restore the world from the most recent snapshot in the given directory which can be read.
+     * @param directory The directory the snapshots were written to.
+     * @param terrainChangeListener The listener of the restored world.
+     * @return The restored world, or null if the directory contains no snapshots.
+     * @throws IOException
+     *         If none of the snapshots in the directory can be read. The exceptions of the other
+     *         snapshots are suppressed by the exception of the most recent one.
+     */
+    public static World restoreLatest(Path directory, TerrainChangeListener terrainChangeListener) throws IOException {
+        List<Path> snapshots = listSnapshots(directory);
+        IOException failure = null;
+        for(int i = snapshots.size() - 1; i >= 0; i--){
+            try (InputStream in = Files.newInputStream(snapshots.get(i))) {
+                return WorldSnapshot.read(in, terrainChangeListener);
+            } catch (IOException | RuntimeException e) {
+                // A corrupt snapshot can fail with any exception, fall back on an older snapshot
+                IOException cause = e instanceof IOException ? (IOException) e
+                        : new IOException("The snapshot " + snapshots.get(i).getFileName() + " can't be read.", e);
+                if(failure == null)
+                    failure = cause;
+                else
+                    failure.addSuppressed(cause);
+            }
+        }
+        if(failure != null)
+            throw failure;
+        return null;
+    }
+
+    /**
+     * Return the sequence number in the name of the given snapshot file, or -1 if it isn't a snapshot file.
+     */
+    private static long getSequenceNumber(Path file){
+        String name = file.getFileName().toString();
+        if(!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX))
+            return -1L;
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
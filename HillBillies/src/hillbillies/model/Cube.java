@@ -20,46 +20,38 @@ public class Cube extends WorldObject {
     private BiConsumer<Terrain, Cube> terrainChangeListener;
 
 
-    public Cube(World world, Vector position, BiConsumer<Terrain, Cube> terrainChangeListener){
-        this(world, position, null, terrainChangeListener);// Null will result in the default Terrain type -> Terrain.AIR
-    }
-
-    @Override
-    public void advanceTime(double dt) {
-        // TODO
-    }
-
     /**
-     * Initialize this new Cube at the given position in the given world with given terrain.
+     * Initialize this new Cube at the given position in the given world. The terrain of the cube is kept by
+     * the terrain store of the world, so a cube can be created whenever it's used.
      *
      * @param world The world this new Cube belongs to.
      * @param position  The position of this new Cube.
-     * @param terrain The terrain for this new Cube.
+     * @param terrainChangeListener The listener called after the terrain of this new Cube changed.
      * @effect This new Cube is initialized as a new WorldObject with
      *         given position in the given world.
      *       | super(world, position)
-     * @post If the given terrain is a valid terrain for any Cube,
-     * the terrain of this new Cube is equal to the given
-     * terrain. Otherwise, the terrain of this new Cube is equal
-     * to Terrain.AIR.
-     * | if (isValidTerrain(terrain))
-     * | then new.getTerrain() == terrain
-     * | else new.getTerrain() == Terrain.AIR
+     * @post The terrain of this new Cube is the terrain stored by the given world at the given position.
+     * | new.getTerrain() == world.getTerrain(position)
      * @post This new cube has no materials yet.
      * | new.getNbMaterials() == 0
      */
-    public Cube(World world, Vector position, Terrain terrain, BiConsumer<Terrain, Cube> terrainChangeListener){
+    public Cube(World world, Vector position, BiConsumer<Terrain, Cube> terrainChangeListener){
         super(world, position);
-        if (! isValidTerrain(terrain))
-            terrain = Terrain.AIR;
+        this.terrainStore = world.getTerrainStore();
+        this.terrainIndex = terrainStore.getIndex(position.cubeX(), position.cubeY(), position.cubeZ());
         this.terrainChangeListener = terrainChangeListener;
-        setTerrain(terrain);
+    }
+
+    @Override
+    public void advanceTime(double dt) {
+        // TODO
     }
 
     @Override
     protected boolean validatePosition(Vector position){
         // TODO
-        return this.getWorld().getCube(position)==null || this.getWorld().getCube(position)==this;
+        Cube cube = ((World) this.getWorld()).getCreatedCube(position);
+        return cube==null || cube==this;
     }
 
     /**
@@ -74,7 +66,7 @@ public class Cube extends WorldObject {
     @Basic
     @Raw
     public Terrain getTerrain() {
-    	return this.terrain;
+    	return this.terrainStore.getTerrain(this.terrainIndex);
     }
     /**
      * Check whether the given terrain is a valid terrain for
@@ -103,8 +95,8 @@ public class Cube extends WorldObject {
     public void setTerrain(Terrain terrain) {
     	if (!isValidTerrain(terrain))
             terrain = Terrain.AIR;
-        Terrain oldTerrain = this.terrain;
-        this.terrain = terrain;
+        Terrain oldTerrain = this.getTerrain();
+        this.terrainStore.setTerrain(this.terrainIndex, terrain);
         if(!this.isPassable() && this.getNbOwnedMaterials()>0){
             for(Material material : this.ownedMaterials)
                 material.terminate();
@@ -113,9 +105,13 @@ public class Cube extends WorldObject {
         this.terrainChangeListener.accept(oldTerrain, this);
     }
     /**
-     * Variable registering the terrain of this Cube.
+     * Variable referencing the store registering the terrain of this Cube.
+     */
+    private final TerrainStore terrainStore;
+    /**
+     * Variable registering the index of this Cube in its terrain store.
      */
-    private Terrain terrain;
+    private final int terrainIndex;
 
     public boolean isPassable(){
         return this.getTerrain().isPassable();
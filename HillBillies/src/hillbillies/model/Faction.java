@@ -1,6 +1,7 @@
 package hillbillies.model;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import be.kuleuven.cs.som.annotate.*;
@@ -19,7 +20,15 @@ import be.kuleuven.cs.som.annotate.*;
  */
 public class Faction {
 	
-	private static final int MAX_UNITS_PER_FACTION = 50;
+	/**
+	 * Constant reflecting the default maximum number of units in a faction.
+	 */
+	public static final int DEFAULT_MAX_UNITS = 50;
+
+	/**
+	 * Variable reflecting the maximum number of units in this faction.
+	 */
+	private final int maxNbUnits;
 
 
 	/**
@@ -51,9 +60,43 @@ public class Faction {
 	 */
 	@Raw
 	public Faction() {
+		this(DEFAULT_MAX_UNITS);
+	}
+
+	/**
+	 * Initialize this new Faction as a non-terminated Faction with
+	 * no units yet, which can contain at most the given number of units.
+	 *
+	 * @param maxNbUnits
+	 * 		  The maximum number of units in this new Faction.
+	 * @post This new faction has no units yet.
+	 * | new.getNbUnits() == 0
+	 * @post The maximum number of units of this new faction is equal to the given maximum.
+	 * | new.getMaxNbUnits() == maxNbUnits
+	 * @post The scheduler of this new Faction is a valid Scheduler for
+	 * this Faction.
+	 * | canHaveAsScheduler(new.getScheduler())
+	 * @throws IllegalArgumentException
+	 * 		   The given maximum is not positive.
+	 * | maxNbUnits < 1
+	 */
+	@Raw
+	public Faction(int maxNbUnits) throws IllegalArgumentException {
+		if(maxNbUnits < 1)
+			throw new IllegalArgumentException("The maximum number of units of a faction must be positive.");
+		this.maxNbUnits = maxNbUnits;
 		this.scheduler = new Scheduler(this);
 	}
 
+	/**
+	 * Return the maximum number of units in this Faction.
+	 */
+	@Basic
+	@Immutable
+	public int getMaxNbUnits() {
+		return this.maxNbUnits;
+	}
+
 
 	/**
 	 * Return the units belonging to this Faction.
@@ -61,25 +104,33 @@ public class Faction {
 	@Basic
 	@Raw
 	public Set<Unit> getUnits() {
-		return new HashSet<>(units);
+		return new LinkedHashSet<>(units);
+	}
+
+	/**
+	 * Return a read-only view on the units belonging to this Faction.
+	 * Unlike getUnits(), the units are not copied.
+	 */
+	public Set<Unit> getUnitsView() {
+		return Collections.unmodifiableSet(units);
 	}
 
 	/**
 	 * Check whether this Faction is a valid Faction.
 	 *
 	 * @return
-	 *       | result == (this.getNbUnits() <= MAX_UNITS_PER_FACTION)
+	 *       | result == (this.getNbUnits() <= this.getMaxNbUnits())
 	*/
 	public boolean isValidFaction() {
-		return (this.getNbUnits() <= MAX_UNITS_PER_FACTION);
+		return (this.getNbUnits() <= this.getMaxNbUnits());
 	}
 
 	/**
 	 * Check whether this Faction can have a new Unit.
-	 * @return True as long as the MAX_UNITS_PER_FACTION limit is not reached.
-	 * 			| result == (this.getNbUnits()+1 <= MAX_UNITS_PER_FACTION)
+	 * @return True as long as the getMaxNbUnits() limit is not reached.
+	 * 			| result == (this.getNbUnits()+1 <= this.getMaxNbUnits())
      */
-	public boolean canHaveNewUnit() { return this.getNbUnits()+1 <= MAX_UNITS_PER_FACTION; }
+	public boolean canHaveNewUnit() { return this.getNbUnits()+1 <= this.getMaxNbUnits(); }
 
 
 
@@ -194,7 +245,7 @@ public class Faction {
 	 * | ( (unit != null) &&
 	 * | (! unit.isTerminated()) )
 	 */
-	private final Set<Unit> units = new HashSet<>();
+	private final Set<Unit> units = new LinkedHashSet<>();
 
 	/**
 	 * Return the scheduler of this Faction.
@@ -1,13 +1,16 @@
 package hillbillies.model;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 import be.kuleuven.cs.som.annotate.Raw;
+import hillbillies.activities.TargetMove;
+import hillbillies.part3.programs.CostModel;
 import hillbillies.utils.Vector;
 
 /**
@@ -80,6 +83,28 @@ public interface IWorld {
 
     public Set<Unit> getUnits();
 
+    /**
+     * Return a read-only view on the units of this world, without copying them.
+     */
+    public default Set<Unit> getUnitsView(){
+        return Collections.unmodifiableSet(getUnits());
+    }
+
+    /**
+     * Return the unit nearest to the given unit, in path distance, which is a candidate of the given query.
+     * @param unit The unit making the query.
+     * @param query The kind of units to search.
+     * @return The nearest reachable candidate, or null if there is none.
+     */
+    public default Unit getNearestUnit(Unit unit, NearestUnitQuery query){
+        Set<Unit> candidates = new LinkedHashSet<>();
+        for(Unit other : getUnitsView())
+            if(query.isCandidate(unit, other))
+                candidates.add(other);
+        TargetMove nearest = UnitIndex.findNearest(unit, candidates);
+        return nearest == null ? null : (Unit) nearest.getNearestObject();
+    }
+
     public Set<Cube> getWorkshops();
 
     public <T> void getNeighbouringCubesSatisfying(Collection<T> collection, Vector cubeCoordinates, Predicate<Cube> condition, Function<Cube, T> mapper);
@@ -88,4 +113,52 @@ public interface IWorld {
 
     public boolean isLowerSolid(Vector position);
 
+    /**
+     * Make sure the given unit is advanced again from the next tick on, because
+     * its activities changed outside of its own advanceTime.
+     * @param unit The unit to wake up.
+     */
+    public default void wakeUnit(Unit unit){
+    }
+
+    /**
+     * Return the cost model used to charge the statements of the tasks executed in this world.
+     */
+    public default CostModel getCostModel(){
+        return CostModel.DEFAULT;
+    }
+
+    /**
+     * Return the number of instructions each task runner of this world can execute per tick.
+     */
+    public default int getTaskBudget(){
+        return World.DEFAULT_TASK_BUDGET;
+    }
+
+    /**
+     * Claim the given number of instructions from the instructions all task runners of this world
+     * can execute together during the current tick.
+     * @param runner The task runner claiming the instructions.
+     * @param cost The number of instructions to claim.
+     * @return True if the instructions are claimed, false if the cap of this tick is reached.
+     */
+    public default boolean claimTaskInstructions(Task.TaskRunner runner, int cost){
+        return true;
+    }
+
+    /**
+     * Register that the given task runner doesn't claim any more instructions during the current tick.
+     * @param runner The task runner which finished its slice.
+     */
+    public default void finishTaskSlice(Task.TaskRunner runner){
+    }
+
+    /**
+     * Get the profiler collecting the tick statistics of this world.
+     * @return The active profiler, or null if profiling is disabled for this world.
+     */
+    public default TickProfiler getProfiler(){
+        return null;
+    }
+
 }
@@ -0,0 +1,164 @@
+package hillbillies.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * Class storing the terrain of a World in a memory-mapped file instead of on the heap, for worlds which are too
+ * large to keep all their cubes in memory.
+ * The file consists of a header with the dimensions of the world, followed by one byte for each cube as stored by
+ * TerrainStore. Opening a file only maps it, so the operating system loads the terrain when it's used and writes the
+ * changes back in the background. Calling flush, or checkpoint on the World, makes sure all changes reached the file.
+ * A MappedTerrain can back only one World, which must not be advanced anymore after the terrain is closed.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class MappedTerrain extends TerrainStore implements AutoCloseable {
+
+    /**
+     * Constant reflecting the first bytes of a terrain file ("HBTR").
+     */
+    public static final int MAGIC = 0x48425452;
+    /**
+     * Constant reflecting the version of the terrain files written by this class.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Constant reflecting the extension of the names of terrain files.
+     */
+    public static final String FILE_SUFFIX = ".hbterrain";
+
+    /**
+     * Constant reflecting the size of the header, after which the terrain of the cubes starts.
+     */
+    private static final int HEADER_SIZE = 32;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private MappedTerrain(Path file, FileChannel channel, int nbCubesX, int nbCubesY, int nbCubesZ) throws IOException {
+        super(nbCubesX, nbCubesY, nbCubesZ, Integer.MAX_VALUE - HEADER_SIZE);
+        this.file = file;
+        this.channel = channel;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + getNbCubes());
+    }
+
+    /**
+     * Open the terrain file at the given path.
+     * @param file The terrain file to open.
+     * @throws IOException
+     *         The file could not be opened or mapped, or isn't a terrain file of a supported version.
+     */
+    public static MappedTerrain open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_SIZE, channel.size()));
+            if(header.capacity() < HEADER_SIZE || header.getInt(0) != MAGIC)
+                throw new IOException(file + " isn't a terrain file.");
+            int version = header.getShort(4) & 0xffff;
+            if(version != VERSION)
+                throw new IOException("Unsupported terrain file version " + version + ".");
+            int nbCubesX = header.getInt(8), nbCubesY = header.getInt(12), nbCubesZ = header.getInt(16);
+            if(nbCubesX < 1 || nbCubesY < 1 || nbCubesZ < 1
+                    || channel.size() != HEADER_SIZE + (long) nbCubesX * nbCubesY * nbCubesZ)
+                throw new IOException("The dimensions of " + file + " don't match its size.");
+            return new MappedTerrain(file, channel, nbCubesX, nbCubesY, nbCubesZ);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Create a terrain file at the given path with the terrain of the given map, replacing any existing file.
+     * The border connectivity of the map is computed if it isn't known yet.
+     * @param file The terrain file to create.
+     * @param map The map with the terrain of the new file.
+     * @throws IOException
+     *         The file could not be created or mapped.
+     * @throws IllegalArgumentException
+     *         The map has too many cubes to be mapped.
+     */
+    public static MappedTerrain create(Path file, WorldMap map) throws IOException, IllegalArgumentException {
+        map.computeConnectivity();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedTerrain terrain = new MappedTerrain(file, channel, map.getNbCubesX(), map.getNbCubesY(), map.getNbCubesZ());
+            terrain.buffer.putInt(0, MAGIC);
+            terrain.buffer.putShort(4, (short) VERSION);
+            terrain.buffer.putInt(8, map.getNbCubesX());
+            terrain.buffer.putInt(12, map.getNbCubesY());
+            terrain.buffer.putInt(16, map.getNbCubesZ());
+            map.copyTo(terrain);
+            terrain.flush();
+            return terrain;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Basic @Immutable
+    public Path getFile(){
+        return file;
+    }
+
+    /**
+     * Return the terrain id of the cube with the given coordinates.
+     * @throws IndexOutOfBoundsException
+     *         The given coordinates are not part of this terrain.
+     */
+    public int getTerrainId(int x, int y, int z) throws IndexOutOfBoundsException {
+        if(x < 0 || x >= getNbCubesX() || y < 0 || y >= getNbCubesY() || z < 0 || z >= getNbCubesZ())
+            throw new IndexOutOfBoundsException("The cube (" + x + ", " + y + ", " + z + ") is not part of the terrain.");
+        return get(getIndex(x, y, z)) & TERRAIN_MASK;
+    }
+
+    @Override
+    int get(int index){
+        return buffer.get(HEADER_SIZE + index) & 0xff;
+    }
+
+    @Override
+    void set(int index, int value){
+        buffer.put(HEADER_SIZE + index, (byte) value);
+    }
+
+    /**
+     * Write all changes to the terrain to the file.
+     * @throws IOException
+     *         The changes could not be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        try {
+            buffer.force();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write all changes to the terrain to the file and close it.
+     * @throws IOException
+     *         The changes could not be written, or the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if(!channel.isOpen())
+            return;
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
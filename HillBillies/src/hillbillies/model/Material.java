@@ -226,6 +226,20 @@ public class Material implements IWorldObject {
     }
     //endregion
 
+    /**
+     * Detach this material from its owner and let it fall from the given position.
+     * Only used to restore a falling material from a snapshot.
+     * @param position The position this material is falling from.
+     * @post | new.getOwner() == null && new.getPosition().equals(position)
+     */
+    void restoreFalling(Vector position){
+        WorldObject owner = this.getOwner();
+        this.setOwner(null);
+        if(owner != null)
+            owner.removeOwnedMaterial(this);
+        this.fallingPosition = position;
+    }
+
     //region Destructor
     /**
      * Terminate this Material.
@@ -0,0 +1,72 @@
+package hillbillies.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+/**
+ * Enumeration of the kinds of nearest-unit queries a task can make.
+ * Each kind determines which units are candidates for the nearest unit of a given unit.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public enum NearestUnitQuery {
+
+    /**
+     * The nearest unit of another faction.
+     */
+    ENEMY {
+        @Override
+        public boolean isCandidate(Unit unit, Unit other) {
+            return other.getFaction() != unit.getFaction() && !other.isFalling();
+        }
+
+        @Override
+        Collection<Faction> getFactions(Unit unit, Collection<Faction> factions) {
+            return factions.stream().filter(faction -> faction != unit.getFaction()).collect(Collectors.toList());
+        }
+    },
+    /**
+     * The nearest other unit of the same faction.
+     */
+    FRIEND {
+        @Override
+        public boolean isCandidate(Unit unit, Unit other) {
+            return other != unit && other.getFaction() == unit.getFaction() && !other.isFalling();
+        }
+
+        @Override
+        Collection<Faction> getFactions(Unit unit, Collection<Faction> factions) {
+            return Collections.singleton(unit.getFaction());
+        }
+    },
+    /**
+     * The nearest other unit of any faction.
+     */
+    ANY {
+        @Override
+        public boolean isCandidate(Unit unit, Unit other) {
+            return other != unit && !other.isFalling();
+        }
+
+        @Override
+        Collection<Faction> getFactions(Unit unit, Collection<Faction> factions) {
+            return factions;
+        }
+    };
+
+    /**
+     * Check whether the given other unit is a candidate answer of this query for the given unit.
+     * Falling units are never candidates.
+     * @param unit The unit making the query.
+     * @param other The unit to check.
+     */
+    public abstract boolean isCandidate(Unit unit, Unit other);
+
+    /**
+     * Return the factions whose units can be candidates of this query for the given unit.
+     * @param unit The unit making the query.
+     * @param factions All factions of the world of the unit.
+     */
+    abstract Collection<Faction> getFactions(Unit unit, Collection<Faction> factions);
+}
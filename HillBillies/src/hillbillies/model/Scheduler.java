@@ -1,13 +1,25 @@
 package hillbillies.model;
 
 import be.kuleuven.cs.som.annotate.*;
+import hillbillies.activities.None;
+import hillbillies.utils.Vector;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
  * Class representing a Faction's Task Scheduler
+ * Tasks can be claimed for units from many threads at the same time: claiming a task is a single
+ * compare-and-set on the assignment of the task, so a task is never assigned to two units. All
+ * other changes, such as adding, removing and descheduling tasks, must be made by one thread at a
+ * time while no tasks are being claimed.
  * @author Kenneth & Bram
  * @version 1.0
  * @invar Each Scheduler can have its faction as faction.
@@ -17,6 +29,19 @@ import java.util.stream.Collectors;
  */
 public class Scheduler implements Iterable<Task> {
 
+    /**
+     * Constant reflecting the number of assignable tasks considered for each idle unit by assignTasks.
+     */
+    public static final int CANDIDATE_TASKS_PER_UNIT = 4;
+    /**
+     * Constant reflecting the maximum number of unit-task pairs sorted at once by assignTasks.
+     */
+    private static final int MAX_PAIRS = 1 << 16;
+    /**
+     * Constant reflecting the number of most recent changes kept by a Scheduler.
+     */
+    public static final int MAX_KEPT_CHANGES = 1024;
+
     /**
      * Variable registering the faction of this Scheduler.
      */
@@ -24,11 +49,12 @@ public class Scheduler implements Iterable<Task> {
     /**
      * Variable referencing a sorted map collecting all
      * the tasks of this scheduler grouped by their
-     * priority.
+     * priority. Within a priority, the tasks are sorted
+     * in the order they were added to this scheduler.
      *
      * @invar The referenced map is effective.
      * | tasks != null
-     * @invar Each HashSet registered in the referenced map
+     * @invar Each set registered in the referenced map
      * is effective and each task in that set is effective
      * and not yet terminated.
      * | for each taskSet in tasks:
@@ -38,11 +64,41 @@ public class Scheduler implements Iterable<Task> {
      * |    (! task.isTerminated()) )
      * | )
      */
-    private final SortedMap<Integer, HashSet<Task>> tasks = new TreeMap<>(Collections.reverseOrder());
+    private final ConcurrentNavigableMap<Integer, NavigableSet<Task>> tasks = new ConcurrentSkipListMap<>(Collections.reverseOrder());
     /**
      * Variable registering the current number of tasks.
      */
     private int nbTasks;
+    /**
+     * Variable registering the sequence number the next task added to this scheduler will get.
+     */
+    private long nextSequenceNumber = 0L;
+    /**
+     * Map registering the sequence number of each task of this scheduler, in the order they were added.
+     */
+    private final Map<Task, Long> sequenceNumbers = new ConcurrentHashMap<>();
+    /**
+     * Variable referencing a heap collecting the tasks of this scheduler which are not assigned to a unit,
+     * ordered by decreasing priority and, within equal priorities, in the order they were added.
+     *
+     * @invar The heap contains exactly the tasks of this scheduler without an assigned unit.
+     * | for each task in tasks:
+     * |    assignableTasks.contains(task) == (task.getAssignedUnit() == null)
+     */
+    private final TaskHeap assignableTasks = new TaskHeap(sequenceNumbers);
+    /**
+     * Variable registering the version of the tasks of this scheduler, which is increased by each change.
+     */
+    private volatile long version = 0L;
+    /**
+     * Variable referencing the most recent snapshot of this scheduler, which might be outdated.
+     */
+    private volatile SchedulerSnapshot snapshot = null;
+    /**
+     * Deque collecting the most recent changes of this scheduler, oldest first.
+     */
+    private final ArrayDeque<SchedulerChange> changes = new ArrayDeque<>();
+    private final List<Consumer<SchedulerChange>> changeListeners = new CopyOnWriteArrayList<>();
 
     /**
      * Initialize this new Scheduler with given faction and no tasks yet.
@@ -101,7 +157,7 @@ public class Scheduler implements Iterable<Task> {
     @Basic
     @Raw
     public boolean hasAsTask(@Raw Task task) throws NullPointerException {
-        return tasks.containsKey(task.getPriority()) && tasks.get(task.getPriority()).contains(task);
+        return sequenceNumbers.containsKey(Objects.requireNonNull(task));// Registers exactly the tasks of this scheduler
     }
 
     /**
@@ -154,7 +210,7 @@ public class Scheduler implements Iterable<Task> {
      * | (task.getScheduler() == this)
      */
     public boolean hasProperTasks() {
-    	for (Map.Entry<Integer, HashSet<Task>> taskSet: tasks.entrySet()) {
+    	for (Map.Entry<Integer, NavigableSet<Task>> taskSet: tasks.entrySet()) {
             for(Task task : taskSet.getValue()) {
                 if (!canHaveAsTask(task))
                     return false;
@@ -191,11 +247,13 @@ public class Scheduler implements Iterable<Task> {
      */
     public void addTask(@Raw Task task) {
     	assert(task != null) && (!task.hasAsScheduler(this));
-        if(!tasks.containsKey(task.getPriority()))
-            tasks.put(task.getPriority(), new HashSet<>());
-        tasks.get(task.getPriority()).add(task);
+        sequenceNumbers.put(task, nextSequenceNumber++);
+        getTaskSet(task.getPriority()).add(task);
         task.addScheduler(this);
         this.nbTasks++;
+        recordChange(SchedulerChange.Kind.ADDED, task, task.getPriority());
+        if(task.getAssignedUnit()==null)
+            assignableTasks.add(task);
     }
 
     /**
@@ -223,12 +281,12 @@ public class Scheduler implements Iterable<Task> {
     	assert this.hasAsTask(task) && (task.hasAsScheduler(this));
         if(task.getAssignedUnit()!=null && task.getAssignedUnit().getFaction().getScheduler()==this)
             deschedule(task);// Deschedule the task
-        HashSet<Task> taskSet = tasks.get(task.getPriority());
-        taskSet.remove(task);
-        if(taskSet.isEmpty())
-            tasks.remove(task.getPriority());
+        removeFromTaskSet(task.getPriority(), task);
+        assignableTasks.remove(task);
+        sequenceNumbers.remove(task);
         task.removeScheduler(this);
         this.nbTasks--;
+        recordChange(SchedulerChange.Kind.REMOVED, task, task.getPriority());
     }
 
     /**
@@ -263,8 +321,8 @@ public class Scheduler implements Iterable<Task> {
      *          | condition == null
      */
     public Collection<Task> getAllTasksSatisfying(Predicate<Task> condition) throws NullPointerException{
-        Set<Task> result = new HashSet<>();
-        for(Map.Entry<Integer,HashSet<Task>> taskSet : tasks.entrySet()){
+        Set<Task> result = new LinkedHashSet<>();
+        for(Map.Entry<Integer,NavigableSet<Task>> taskSet : tasks.entrySet()){
             result.addAll(taskSet.getValue().stream().filter(condition).collect(Collectors.toList()));
         }
         return result;
@@ -290,7 +348,7 @@ public class Scheduler implements Iterable<Task> {
      *          | condition == null
      */
     public Task getTaskSatisfying(Predicate<Task> condition) throws NullPointerException{
-        for(Map.Entry<Integer, HashSet<Task>> taskSet : tasks.entrySet()) {
+        for(Map.Entry<Integer, NavigableSet<Task>> taskSet : tasks.entrySet()) {
             Task result = taskSet.getValue().stream().filter(condition).findFirst().orElse(null);
             if(result!=null)
                 return result;
@@ -300,12 +358,21 @@ public class Scheduler implements Iterable<Task> {
 
     /**
      * @return The task with highest priority in this scheduler which is
-     *          not currently assigned to a Unit.
-     * @effect Get the highest priority task which has no assigned Unit
-     *          | getTaskSatisfying(task -> task.getAssignedUnit()==null)
+     *          not currently assigned to a Unit. Of the tasks with equal priority,
+     *          the task which was added first to this scheduler is returned.
+     *          | result.getAssignedUnit()==null && not exists(Task other in tasks :
+     *          |       other.getAssignedUnit()==null && other.priority > result.priority)
+     * @note The unassigned tasks are kept in a heap, so this method doesn't iterate the tasks.
      */
     public Task getHighestPriorityAssignableTask(){
-        return getTaskSatisfying(task -> task.getAssignedUnit()==null);
+        return assignableTasks.peek();
+    }
+
+    /**
+     * Return the number of tasks in this scheduler which are not currently assigned to a Unit.
+     */
+    public int getNbAssignableTasks(){
+        return assignableTasks.size();
     }
 
     /**
@@ -320,9 +387,95 @@ public class Scheduler implements Iterable<Task> {
 
     /**
      * @return A collection containing all the tasks which are added to this scheduler.
+     * @effect The tasks of the current snapshot of this scheduler, which are not copied.
+     *          | getSnapshot().getTasks()
      */
     public Collection<Task> getAllTasks(){
-        return getAllTasksSatisfying(task -> true);
+        return getSnapshot().getTasks();
+    }
+
+    /**
+     * Return the tasks of this scheduler in the order they were added, which is the order
+     * in which tasks of equal priority are handed out.
+     */
+    List<Task> getTasksInOrder(){
+        List<Task> result = new ArrayList<>(sequenceNumbers.keySet());
+        result.sort(Comparator.comparingLong(task -> sequenceNumbers.getOrDefault(task, Long.MAX_VALUE)));
+        return result;
+    }
+
+    /**
+     * Return the version of the tasks of this scheduler. The version is increased each time a task
+     * is added or removed, or the priority of a task changes. Claiming and descheduling tasks don't
+     * change the version, unless they change the priority of a task.
+     */
+    @Basic
+    public long getVersion(){
+        return version;
+    }
+
+    /**
+     * Return an immutable snapshot of the tasks of this scheduler. A new snapshot is only created
+     * after the tasks changed, so consecutive calls without changes return the same snapshot.
+     * @return | result.getVersion() == getVersion()
+     */
+    public SchedulerSnapshot getSnapshot(){
+        SchedulerSnapshot current = this.snapshot;
+        long version = this.version;
+        if(current == null || current.getVersion() != version){
+            List<Task> tasks = new ArrayList<>(nbTasks);
+            this.forEach(tasks::add);
+            current = new SchedulerSnapshot(this, version, tasks);
+            this.snapshot = current;
+        }
+        return current;
+    }
+
+    /**
+     * Register the given listener, which is notified of each change of the tasks of this scheduler,
+     * right after the change on the thread making it.
+     * @throws IllegalArgumentException
+     *          | listener == null
+     */
+    public void addChangeListener(Consumer<SchedulerChange> listener) throws IllegalArgumentException{
+        if(listener == null)
+            throw new IllegalArgumentException("The listener can't be null.");
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(Consumer<SchedulerChange> listener){
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Return the changes of the tasks of this scheduler after the given version, oldest first.
+     * @param version The version after which the changes are requested.
+     * @return The changes, or null if some of them are not kept anymore, in which case a new
+     *          snapshot must be taken instead.
+     */
+    public synchronized List<SchedulerChange> getChangesSince(long version){
+        if(version >= this.version)
+            return Collections.emptyList();
+        if(changes.isEmpty() || changes.peekFirst().getVersion() > version + 1)
+            return null;
+        List<SchedulerChange> result = new ArrayList<>();
+        for(SchedulerChange change : changes)
+            if(change.getVersion() > version)
+                result.add(change);
+        return result;
+    }
+
+    private void recordChange(SchedulerChange.Kind kind, Task task, int oldPriority){
+        SchedulerChange change;
+        synchronized (this) {
+            change = new SchedulerChange(version + 1, kind, task, oldPriority);
+            changes.addLast(change);
+            if(changes.size() > MAX_KEPT_CHANGES)
+                changes.removeFirst();
+            version = change.getVersion();
+        }
+        for(Consumer<SchedulerChange> listener : changeListeners)
+            listener.accept(change);
     }
 
     /**
@@ -340,10 +493,149 @@ public class Scheduler implements Iterable<Task> {
      *          | task == null || unit == null
      */
     public void schedule(Task task, Unit unit) throws NullPointerException{
-        if(task.hasAsScheduler(this) && task.getAssignedUnit()==null && unit.getFaction().getScheduler()==this && unit.getTask()==null){
-            unit.setTask(task);
-            task.setAssignedUnit(unit);
+        claim(task, unit);
+    }
+
+    /**
+     * Claim the given task for the given unit. This method can be called from many threads at the same time,
+     * as long as each unit is only handled by one thread.
+     * @param task The task to claim
+     * @param unit The unit to assign the task to
+     * @return True if the task is claimed, in which case the unit's Task is set to the given task
+     *         and the task's assigned Unit is set to the given unit. False if the task has another
+     *         scheduler, is already assigned, or the unit has another scheduler or already has a task.
+     *         | result == (unit.getTask() == task && task.getAssignedUnit() == unit)
+     * @throws NullPointerException
+     *          When the given task or unit are not effective
+     *          | task == null || unit == null
+     */
+    public boolean claim(Task task, Unit unit) throws NullPointerException{
+        if(!task.hasAsScheduler(this) || unit.getFaction().getScheduler()!=this || unit.getTask()!=null)
+            return false;
+        if(!task.claim(unit))
+            return false;// Lost the race for this task
+        unit.setTask(task);
+        for(Scheduler s : task.getSchedulers())
+            s.assignableTasks.remove(task);
+        return true;
+    }
+
+    /**
+     * Claim the task with the highest priority in this scheduler which is not assigned yet for the given unit.
+     * This method can be called from many threads at the same time, as long as each unit is only handled by one thread.
+     * @param unit The unit to assign the task to
+     * @return The claimed task, or null if no task could be claimed for the given unit.
+     *          | result == null || (unit.getTask() == result && result.getAssignedUnit() == unit)
+     * @throws NullPointerException
+     *          When the given unit is not effective
+     *          | unit == null
+     */
+    public Task claimHighestPriorityAssignableTask(Unit unit) throws NullPointerException{
+        if(unit.getFaction().getScheduler()!=this)
+            return null;
+        Task task;
+        while(unit.getTask()==null && (task = assignableTasks.peek())!=null){
+            if(claim(task, unit))
+                return task;
+            assignableTasks.remove(task);// Claimed by another unit, which might not have removed it yet
         }
+        return null;
+    }
+
+    /**
+     * Check whether the given unit is idle: it belongs to the faction of this scheduler, its default
+     * behaviour is enabled, it is doing nothing and it has no task.
+     */
+    public boolean isIdle(Unit unit){
+        return !unit.isTerminated() && unit.getFaction().getScheduler()==this && unit.getTask()==null
+                && unit.isDefaultActive() && unit.isExecuting(None.class);
+    }
+
+    /**
+     * Assign the assignable tasks of this scheduler to the idle units among the given units, in one batch.
+     * The tasks are assigned in decreasing order of priority, so a task is never assigned while a task with
+     * a higher priority stays unassigned. Within a priority level, the pairs of an idle unit and a task are
+     * assigned greedily by increasing distance between the unit and the selected cube of the task, which is
+     * an estimate of the length of the path the unit will have to walk. Tasks without a selected cube are at
+     * distance zero of every unit. Ties are broken by the order of the tasks and the ids of the units.
+     * Only the first CANDIDATE_TASKS_PER_UNIT tasks per idle unit are considered.
+     * @param units The units to consider.
+     * @return The number of tasks which were assigned.
+     * @effect Each assigned task is scheduled for its unit.
+     *          | schedule(task, unit)
+     */
+    public int assignTasks(Collection<Unit> units){
+        if(assignableTasks.size()==0)
+            return 0;
+        List<Unit> idleUnits = new ArrayList<>();
+        for(Unit unit : units)
+            if(isIdle(unit))
+                idleUnits.add(unit);
+        if(idleUnits.isEmpty())
+            return 0;
+        idleUnits.sort(Comparator.comparingLong(Unit::getId));
+        List<Task> candidates = assignableTasks.peekFirst(idleUnits.size() * CANDIDATE_TASKS_PER_UNIT);
+        int nbAssigned = 0;
+        int from = 0;
+        while(from < candidates.size() && !idleUnits.isEmpty()){
+            int priority = candidates.get(from).getPriority();
+            int to = from;
+            while(to < candidates.size() && candidates.get(to).getPriority()==priority)
+                to++;
+            // Split large levels, so the tasks of a level are still assigned in order
+            int chunkSize = Math.max(1, MAX_PAIRS / idleUnits.size());
+            for(int chunk = from; chunk < to && !idleUnits.isEmpty(); chunk += chunkSize)
+                nbAssigned += assignNearest(candidates.subList(chunk, Math.min(to, chunk + chunkSize)), idleUnits);
+            from = to;
+        }
+        return nbAssigned;
+    }
+
+    /**
+     * Greedily assign the given tasks of equal priority to the nearest of the given idle units.
+     * The assigned units are removed from the given list.
+     */
+    private int assignNearest(List<Task> levelTasks, List<Unit> idleUnits){
+        // Each pair is packed as distance | task index | unit index, so sorting the pairs orders them by distance
+        long[] pairs = new long[levelTasks.size() * idleUnits.size()];
+        int nbPairs = 0;
+        for(int t = 0; t < levelTasks.size(); t++) {
+            Vector target = levelTasks.get(t).getSelectedCube();
+            for (int u = 0; u < idleUnits.size(); u++) {
+                long distance = target == null ? 0 : (long) estimateDistance(idleUnits.get(u), target);
+                pairs[nbPairs++] = (distance << 42) | ((long) t << 21) | u;
+            }
+        }
+        Arrays.sort(pairs, 0, nbPairs);
+        boolean[] taskDone = new boolean[levelTasks.size()];
+        boolean[] unitDone = new boolean[idleUnits.size()];
+        int nbAssigned = 0;
+        for(int i = 0; i < nbPairs && nbAssigned < Math.min(taskDone.length, unitDone.length); i++){
+            int t = (int) (pairs[i] >>> 21) & ((1 << 21) - 1);
+            int u = (int) pairs[i] & ((1 << 21) - 1);
+            if(taskDone[t] || unitDone[u])
+                continue;
+            taskDone[t] = true;
+            unitDone[u] = true;
+            schedule(levelTasks.get(t), idleUnits.get(u));
+            nbAssigned++;
+        }
+        List<Unit> remaining = new ArrayList<>();
+        for(int u = 0; u < unitDone.length; u++)
+            if(!unitDone[u])
+                remaining.add(idleUnits.get(u));
+        idleUnits.clear();
+        idleUnits.addAll(remaining);
+        return nbAssigned;
+    }
+
+    /**
+     * Return an estimate of the length of the path from the given unit to the given cube:
+     * the number of moves to the cube if no cube is in the way.
+     */
+    private static double estimateDistance(Unit unit, Vector cube){
+        Vector from = unit.getPosition().getCubeCoordinates();
+        return Math.max(Math.abs(from.X() - cube.X()), Math.max(Math.abs(from.Y() - cube.Y()), Math.abs(from.Z() - cube.Z())));
     }
 
     /**
@@ -361,10 +653,13 @@ public class Scheduler implements Iterable<Task> {
      *          | task == null
      */
     public void deschedule(Task task) throws NullPointerException{
-        if(task.hasAsScheduler(this) && task.isRunning()){
-            task.stopRunning();
+        if(task.hasAsScheduler(this) && task.getAssignedUnit()!=null){
+            if(task.isRunning())
+                task.stopRunning();
             task.getAssignedUnit().setTask(null);
             task.setAssignedUnit(null);
+            for(Scheduler s : task.getSchedulers())
+                s.assignableTasks.add(task);
         }
     }
 
@@ -378,44 +673,38 @@ public class Scheduler implements Iterable<Task> {
      * @post The given task is accessible again.
      */
     public void notifyTaskPriorityChange(int oldPriority, Task task){
-        if(task==null || !this.tasks.containsKey(oldPriority) || !this.tasks.get(oldPriority).contains(task))
+        if(task==null || !this.hasAsTask(task) || !this.tasks.containsKey(oldPriority) || !this.tasks.get(oldPriority).contains(task))
             throw new IllegalArgumentException("The given task could not be found inside the TreeMap.");
-        HashSet<Task> taskSet = tasks.get(oldPriority);
+        removeFromTaskSet(oldPriority, task);
+        getTaskSet(task.getPriority()).add(task);
+        assignableTasks.update(task);
+        recordChange(SchedulerChange.Kind.PRIORITY_CHANGED, task, oldPriority);
+    }
+
+    /**
+     * Return the set of tasks with the given priority, creating it if there is none.
+     */
+    private NavigableSet<Task> getTaskSet(int priority){
+        return tasks.computeIfAbsent(priority, p -> new ConcurrentSkipListSet<>(Comparator.comparingLong(sequenceNumbers::get)));
+    }
+
+    private void removeFromTaskSet(int priority, Task task){
+        NavigableSet<Task> taskSet = tasks.get(priority);
         taskSet.remove(task);
         if(taskSet.isEmpty())
-            tasks.remove(oldPriority);
-        if(!tasks.containsKey(task.getPriority()))
-            tasks.put(task.getPriority(), new HashSet<>());
-        tasks.get(task.getPriority()).add(task);
+            tasks.remove(priority);
     }
 
     /**
-     * Returns an iterator over elements of type {@code Task}.
+     * Returns an iterator over the tasks of this scheduler, in decreasing order of priority.
+     * The iterator is weakly consistent: it can be used while tasks are added, removed or claimed,
+     * and it reflects some, but not necessarily all, of those changes.
      *
      * @return an Iterator.
      */
     @Override
     public Iterator<Task> iterator() {
-        return new Iterator<Task>() {
-
-            private Iterator<HashSet<Task>> taskSetIterator = tasks.values().iterator();
-            private Iterator<Task> taskIterator;
-
-            @Override
-            public boolean hasNext() {
-                if(tasks.isEmpty()) return false;
-                return taskSetIterator.hasNext() || taskIterator.hasNext();
-            }
-
-            @Override
-            public Task next() throws NoSuchElementException {
-                if(!hasNext())
-                    throw new NoSuchElementException("The iterator has no more elements to iterate over.");
-                if(taskIterator==null || !taskIterator.hasNext())
-                    taskIterator = taskSetIterator.next().iterator();
-                return taskIterator.next();
-            }
-        };
+        return tasks.values().stream().flatMap(Set::stream).iterator();
     }
 
 }
@@ -0,0 +1,61 @@
+package hillbillies.model;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * Immutable event describing a change of the tasks of a Scheduler.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class SchedulerChange {
+
+    /**
+     * Enumeration of the kinds of changes of the tasks of a Scheduler.
+     */
+    public enum Kind {
+        ADDED, REMOVED, PRIORITY_CHANGED
+    }
+
+    private final long version;
+    private final Kind kind;
+    private final Task task;
+    private final int oldPriority;
+
+    SchedulerChange(long version, Kind kind, Task task, int oldPriority){
+        this.version = version;
+        this.kind = kind;
+        this.task = task;
+        this.oldPriority = oldPriority;
+    }
+
+    /**
+     * Return the version of the scheduler right after this change.
+     */
+    @Basic @Immutable
+    public long getVersion(){
+        return version;
+    }
+
+    @Basic @Immutable
+    public Kind getKind(){
+        return kind;
+    }
+
+    @Basic @Immutable
+    public Task getTask(){
+        return task;
+    }
+
+    /**
+     * Return the priority of the task before this change.
+     */
+    @Basic @Immutable
+    public int getOldPriority(){
+        return oldPriority;
+    }
+
+    @Override
+    public String toString(){
+        return kind + " " + task.getName() + " @" + version;
+    }
+}
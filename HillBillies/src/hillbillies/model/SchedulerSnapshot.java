@@ -0,0 +1,63 @@
+package hillbillies.model;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * Immutable view on the tasks of a Scheduler at a given version.
+ * A Scheduler only creates a new snapshot after its tasks changed, so views polling the
+ * tasks can compare version numbers instead of comparing the tasks themselves.
+ * The snapshot only registers which tasks the scheduler had and in which order. The state
+ * of the tasks themselves, such as their assigned unit, is not copied.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class SchedulerSnapshot implements Iterable<Task> {
+
+    private final Scheduler scheduler;
+    private final long version;
+    private final List<Task> tasks;
+
+    SchedulerSnapshot(Scheduler scheduler, long version, List<Task> tasks){
+        this.scheduler = scheduler;
+        this.version = version;
+        this.tasks = Collections.unmodifiableList(tasks);
+    }
+
+    @Basic @Immutable
+    public Scheduler getScheduler(){
+        return scheduler;
+    }
+
+    /**
+     * Return the version of the scheduler this snapshot was taken at.
+     * Two snapshots of the same scheduler with equal versions hold the same tasks in the same order.
+     */
+    @Basic @Immutable
+    public long getVersion(){
+        return version;
+    }
+
+    /**
+     * Return the tasks of the scheduler, in decreasing order of priority.
+     */
+    @Basic @Immutable
+    public List<Task> getTasks(){
+        return tasks;
+    }
+
+    public int getNbTasks(){
+        return tasks.size();
+    }
+
+    /**
+     * Return an iterator over the tasks of this snapshot, in decreasing order of priority.
+     */
+    @Override
+    public Iterator<Task> iterator(){
+        return tasks.iterator();
+    }
+}
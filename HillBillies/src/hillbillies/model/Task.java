@@ -1,14 +1,20 @@
 package hillbillies.model;
 
 import be.kuleuven.cs.som.annotate.*;
-import hillbillies.part3.programs.VariableCollection;
+import hillbillies.activities.Activity;
+import hillbillies.events.TaskSliceEvent;
+import hillbillies.part3.programs.CostModel;
+import hillbillies.part3.programs.Frame;
+import hillbillies.part3.programs.Program;
 import hillbillies.part3.programs.expressions.Expression;
 
 import java.util.*;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import hillbillies.part3.programs.statements.Statement;
+import hillbillies.utils.Utils;
 import hillbillies.utils.Vector;
 
 /**
@@ -45,7 +51,7 @@ public class Task implements Comparable<Task> {
     /**
      * Variable registering the assignedUnit of this Task.
      */
-    private Unit assignedUnit;
+    private final AtomicReference<Unit> assignedUnit = new AtomicReference<>();
     /**
      * Variable registering the selectedCube of this Task.
      */
@@ -213,7 +219,7 @@ public class Task implements Comparable<Task> {
     @Basic
     @Raw
     public Unit getAssignedUnit() {
-        return this.assignedUnit;
+        return this.assignedUnit.get();
     }
     /**
      * Check whether the given assignedUnit is a valid assignedUnit for
@@ -250,7 +256,24 @@ public class Task implements Comparable<Task> {
     public void setAssignedUnit(Unit assignedUnit) throws IllegalArgumentException {
         if (! isValidAssignedUnit(assignedUnit))
             throw new IllegalArgumentException();
-        this.assignedUnit = assignedUnit;
+        this.assignedUnit.set(assignedUnit);
+    }
+
+    /**
+     * Assign this Task to the given unit, if it isn't assigned yet.
+     * The check and the assignment are a single atomic step, so of many units
+     * claiming this Task at the same time, only one succeeds.
+     * @param unit The unit claiming this Task.
+     * @return True if this Task was not assigned and is now assigned to the given unit.
+     *          | result == (old.getAssignedUnit() == null && new.getAssignedUnit() == unit)
+     * @throws IllegalArgumentException
+     *          The given unit is not a valid assignedUnit for this Task.
+     *          | unit == null || ! isValidAssignedUnit(unit)
+     */
+    boolean claim(Unit unit) throws IllegalArgumentException {
+        if (unit == null || ! isValidAssignedUnit(unit))
+            throw new IllegalArgumentException();
+        return this.assignedUnit.compareAndSet(null, unit);
     }
 
     /**
@@ -355,7 +378,7 @@ public class Task implements Comparable<Task> {
      * @note To remove a scheduler, use the Scheduler's removeTask method.
      */
     protected void removeScheduler(@Raw Scheduler scheduler) {
-    	assert this.hasAsScheduler(scheduler) && (!scheduler.hasAsTask(this)) && !this.isRunning() && this.assignedUnit==null;
+    	assert this.hasAsScheduler(scheduler) && (!scheduler.hasAsTask(this)) && !this.isRunning() && this.assignedUnit.get()==null;
     	schedulers.remove(scheduler);
     }
 
@@ -411,7 +434,7 @@ public class Task implements Comparable<Task> {
             throw new IllegalStateException("This task's activity is not well-formed.");
         if(runner!=null)
             throw new IllegalStateException("This task is already running.");
-        runner = new TaskRunner();
+        runner = new TaskRunner(this.getActivity().getProgram());
     }
 
     public TaskRunner getRunner(){
@@ -442,20 +465,29 @@ public class Task implements Comparable<Task> {
 
     public class TaskRunner{
 
-        private final VariableCollection assignedVariables;
-        private final LinkedList<Integer> savedState;
-        private boolean isStopping, isPausing, isPaused;
+        /**
+         * Variable referencing the frame holding all execution state of this runner.
+         */
+        private final Frame frame;
+        private boolean isStopping, isPausing, isPaused, isWaiting;
 
-        private TaskRunner(){
-            this.assignedVariables = new VariableCollection();
-            this.savedState = new LinkedList<>();
+        private TaskRunner(Program program){
+            this.frame = new Frame(program);
             this.isStopping = false;
             this.isPausing = false;
             this.isPaused = false;
         }
 
+        /**
+         * Return the frame holding the execution state of this runner.
+         */
+        @Basic
+        public Frame getFrame(){
+            return this.frame;
+        }
+
         public Unit getExecutingUnit(){
-            return Task.this.assignedUnit;
+            return Task.this.assignedUnit.get();
         }
 
         public IWorld getExecutingWorld(){
@@ -464,25 +496,33 @@ public class Task implements Comparable<Task> {
 
         public Cube getSelectedCube(){ return getExecutingWorld().getCube(Task.this.getSelectedCube()); }
 
-        public <T> void assignVariable(String variableName, T value) throws ClassCastException{
-            if(!this.assignedVariables.contains(variableName))
-                this.assignedVariables.add(variableName, value);
-            else {
-                this.assignedVariables.assign(variableName, value);
-            }
+        /**
+         * Assign the given value to the variable with the given name.
+         * Compiled programs access their variables by slot, this is a convenience for callers outside a program.
+         * @throws IllegalArgumentException
+         *         If the program of this runner has no variable with the given name.
+         */
+        public <T> void assignVariable(String variableName, T value) throws IllegalArgumentException{
+            this.frame.store(this.getSlot(variableName), value);
         }
 
         public boolean isVariableAssigned(String variableName){
-            return this.assignedVariables.contains(variableName);
+            int slot = this.frame.getProgram().getSlot(variableName);
+            return slot >= 0 && this.frame.isAssigned(slot);
         }
 
         public <T> T getVariableValue(String variableName) throws IllegalArgumentException, ClassCastException{
             if(!this.isVariableAssigned(variableName))
                 throw new IllegalArgumentException("This variable isn't assigned.");
-            return this.assignedVariables.getValue(variableName);
+            return this.frame.load(this.getSlot(variableName));
         }
 
-        public boolean breakLoop = false;
+        private int getSlot(String variableName) throws IllegalArgumentException{
+            int slot = this.frame.getProgram().getSlot(variableName);
+            if(slot < 0)
+                throw new IllegalArgumentException("The program of this task has no variable " + variableName + ".");
+            return slot;
+        }
 
         public void pause(){
             this.isPausing = true;
@@ -490,75 +530,184 @@ public class Task implements Comparable<Task> {
 
         public void resume(){
             this.isPaused = false;
-            this.resumeCondition = unit -> true;
+            this.stopWaiting();
         }
 
         public void stop(){
             this.isStopping = true;
+            this.stopWaiting();
         }
 
-        private boolean isPaused(){ return this.isPaused; }
+        boolean isPaused(){ return this.isPaused; }
 
         public boolean isPausing(){ return this.isPausing; }
 
         public boolean isStopping(){ return this.isStopping; }
 
 
-        public void advanceTask(double dt){
-            if(this.isPaused() && this.resumeCondition.test(this.getExecutingUnit()))
+        /**
+         * Execute the program of this runner until it finishes, pauses or runs out of budget.
+         * Each call adds the task budget of the world to the budget of this runner, but the budget never
+         * exceeds the task budget of the world. Budget overdrawn by an expensive statement is paid back
+         * from the budget of the following ticks, but unused budget is lost: a runner which pauses early,
+         * for instance to wait for an activity, can't save its budget for a later tick.
+         */
+        public void advanceTask(){
+            IWorld world = this.getExecutingWorld();
+            int taskBudget = world.getTaskBudget();
+            this.budget = Math.min(this.budget + taskBudget, taskBudget);
+            if(this.isPaused() && !this.isWaiting)
                 this.resume();
             if(!this.isPaused()) {
-                this.dt = dt;
-                Task.this.getActivity().start(Task.this);
+                this.costModel = world.getCostModel();
+                this.statementsExecuted = 0;
+                TaskSliceEvent event = new TaskSliceEvent();
+                event.begin();
+                TickProfiler profiler = this.getExecutingWorld().getProfiler();
+                long start = profiler == null ? 0L : System.nanoTime();
+                this.frame.getProgram().run(this, this.frame);
+                world.finishTaskSlice(this);
+                if(profiler != null)
+                    profiler.record(TickProfiler.Phase.TASKS, start);
+                event.end();
+                String reason;
+                Unit unit = this.getExecutingUnit();
                 if (this.isStopping()) {
                     // Program called stop => deschedule this task
+                    reason = TaskSliceEvent.STOPPED;
                     Task.this.getAssignedUnit().getFaction().getScheduler().deschedule(Task.this);
                 } else if (this.isPausing()) {
                     // Program called pause => pause this task
+                    reason = this.isWaiting ? TaskSliceEvent.WAITING : TaskSliceEvent.PAUSED;
                     this.isPausing = false;
                     this.isPaused = true;
                 } else {
                     // Program finished successfully
+                    reason = TaskSliceEvent.FINISHED;
                     Task.this.finish();
                 }
+                if(event.shouldCommit()){
+                    event.unitId = unit.getId();
+                    event.taskName = Task.this.getName();
+                    event.taskPriority = Task.this.getPriority();
+                    event.statementsExecuted = this.statementsExecuted;
+                    event.pauseReason = reason;
+                    event.commit();
+                }
             }
         }
 
-        public double getDt(){
-            return dt;// tODO
+        /**
+         * Charge the cost of the given kinds of commands to the budget of this runner and the instruction cap of its world.
+         * @param kinds The classes of the commands to charge.
+         * @return False if this runner has no budget left or the instruction cap of the world is reached
+         *         during this tick, in which case nothing is charged. True otherwise.
+         */
+        public boolean charge(Class<?>[] kinds){
+            if(this.budget <= 0)
+                return false;
+            int cost = this.costModel.getCost(kinds);
+            if(!this.getExecutingWorld().claimTaskInstructions(this, cost))
+                return false;
+            this.budget -= cost;
+            this.statementsExecuted++;
+            return true;
         }
 
-        public void consumeDt(){
-            this.dt -= 0.001;
-            if(this.dt<0d)
-                this.dt = 0d;
+        /**
+         * Return the number of instructions this runner can still execute during this tick.
+         * A negative budget is paid back during the next ticks.
+         */
+        @Basic
+        public int getBudget(){
+            return this.budget;
         }
 
-        private double dt = 0d;
-
-        public void saveState(int index){
-            if(this.savedState.isEmpty())
-                // If it's the first item to add, it's the last statement in stack, so when resuming we should start
-                // at the statement's next child
-                this.savedState.addFirst(++index);
-            else
-                this.savedState.addFirst(index);
+        private int budget = 0;
+
+        /**
+         * Variable referencing the cost model of the world, during the current call to advanceTask.
+         */
+        private CostModel costModel = CostModel.DEFAULT;
+
+        /**
+         * Number of statements executed during the current call to advanceTask.
+         */
+        private int statementsExecuted = 0;
+
+        /**
+         * Pause this runner until the given activity completes.
+         * The runner registers itself as a completion listener of the activity, so it isn't checked
+         * again before the activity is stopped or interrupted. If the activity isn't active anymore,
+         * the runner is only paused until the next tick.
+         * @param activity The activity to wait for.
+         */
+        public void waitForActivity(Activity activity){
+            this.pause();
+            this.stopWaiting();
+            if(activity != null && activity.isActive()) {
+                this.isWaiting = true;
+                this.blockingActivity = activity;
+                activity.addCompletionListener(this.onActivityCompleted);
+            }
         }
 
-        public int resumeState(){
-            return this.savedState.removeFirst();
+        /**
+         * Check whether this runner is paused until an activity completes.
+         */
+        public boolean isWaiting(){ return this.isWaiting; }
+
+        private void stopWaiting(){
+            if(this.blockingActivity != null)
+                this.blockingActivity.removeCompletionListener(this.onActivityCompleted);
+            this.blockingActivity = null;
+            this.isWaiting = false;
         }
 
-        public boolean isResuming(){
-            return !this.savedState.isEmpty();
+        /**
+         * Variable referencing the activity this runner is waiting for, if any.
+         */
+        private Activity blockingActivity = null;
+
+        /**
+         * Return the activity this runner is waiting for, or null if it isn't waiting.
+         */
+        Activity getBlockingActivity(){
+            return this.blockingActivity;
         }
 
-        public void waitFor(Predicate<Unit> resumeCondition){
-            this.pause();
-            this.resumeCondition = resumeCondition;
+        /**
+         * Restore the state of this runner, as it was saved in a snapshot. The state of the program
+         * itself is restored through the frame of this runner.
+         * @param budget The number of instructions this runner can still execute.
+         * @param isStopping Whether the program of this runner stopped.
+         * @param isPausing Whether the program of this runner is pausing.
+         * @param isPaused Whether this runner is paused.
+         * @param blockingActivity The activity this runner is waiting for, or null.
+         */
+        void restore(int budget, boolean isStopping, boolean isPausing, boolean isPaused, Activity blockingActivity){
+            this.budget = budget;
+            this.isStopping = isStopping;
+            this.isPausing = isPausing;
+            this.isPaused = isPaused;
+            this.stopWaiting();
+            if(blockingActivity != null){
+                // The activity might be inactive while its steps are executed, so it is registered unconditionally
+                this.isWaiting = true;
+                this.blockingActivity = blockingActivity;
+                blockingActivity.addCompletionListener(this.onActivityCompleted);
+            }
         }
 
-        private Predicate<Unit> resumeCondition = unit -> true;
+        /**
+         * Listener resuming this runner when the activity it waits for completes.
+         */
+        private final Consumer<Activity> onActivityCompleted = activity -> {
+            if(activity == this.blockingActivity){
+                this.blockingActivity = null;
+                this.resume();
+            }
+        };
 
     }
 }
@@ -0,0 +1,155 @@
+package hillbillies.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Indexed binary heap of tasks, ordered by decreasing priority and, within equal priorities,
+ * by increasing sequence number. Each task knows its index in the heap, so it can be removed
+ * or moved after a change of its priority in logarithmic time.
+ * All operations are synchronized, so a heap can be updated from many threads claiming tasks.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+final class TaskHeap {
+
+    private final List<Task> heap = new ArrayList<>();
+    /**
+     * Map registering the index in the heap of each task in this heap.
+     */
+    private final Map<Task, Integer> indices = new HashMap<>();
+    /**
+     * Map registering the sequence number of each task, which decides the order of tasks with equal priority.
+     */
+    private final Map<Task, Long> sequenceNumbers;
+
+    /**
+     * Initialize a new, empty heap ordering equal priorities by the given sequence numbers.
+     * @param sequenceNumbers Map which must register a sequence number for every task added to this heap.
+     */
+    TaskHeap(Map<Task, Long> sequenceNumbers){
+        this.sequenceNumbers = sequenceNumbers;
+    }
+
+    synchronized boolean contains(Task task){
+        return indices.containsKey(task);
+    }
+
+    synchronized int size(){
+        return heap.size();
+    }
+
+    /**
+     * Return the first task of this heap, or null if it is empty.
+     */
+    synchronized Task peek(){
+        return heap.isEmpty() ? null : heap.get(0);
+    }
+
+    /**
+     * Return the first tasks of this heap, in order, without removing them.
+     * @param n The maximum number of tasks to return.
+     */
+    synchronized List<Task> peekFirst(int n){
+        List<Task> result = new ArrayList<>(Math.min(n, heap.size()));
+        if(heap.isEmpty())
+            return result;
+        // The next task is always one of the children of the tasks returned so far
+        PriorityQueue<Integer> frontier = new PriorityQueue<>((a, b) ->
+                precedes(heap.get(a), heap.get(b)) ? -1 : precedes(heap.get(b), heap.get(a)) ? 1 : 0);
+        frontier.add(0);
+        while(result.size() < n && !frontier.isEmpty()){
+            int index = frontier.poll();
+            result.add(heap.get(index));
+            for(int child = 2 * index + 1; child <= 2 * index + 2 && child < heap.size(); child++)
+                frontier.add(child);
+        }
+        return result;
+    }
+
+    /**
+     * Add the given task to this heap, if it isn't in it yet.
+     */
+    synchronized void add(Task task){
+        if(contains(task))
+            return;
+        heap.add(task);
+        indices.put(task, heap.size() - 1);
+        siftUp(heap.size() - 1);
+    }
+
+    /**
+     * Remove the given task from this heap, if it is in it.
+     */
+    synchronized void remove(Task task){
+        Integer index = indices.remove(task);
+        if(index == null)
+            return;
+        Task last = heap.remove(heap.size() - 1);
+        if(index < heap.size()){
+            heap.set(index, last);
+            indices.put(last, index);
+            siftUp(index);
+            siftDown(indices.get(last));
+        }
+    }
+
+    /**
+     * Restore the order of this heap after the priority of the given task changed.
+     */
+    synchronized void update(Task task){
+        Integer index = indices.get(task);
+        if(index == null)
+            return;
+        siftUp(index);
+        siftDown(indices.get(task));
+    }
+
+    /**
+     * Check whether task a comes before task b.
+     */
+    private boolean precedes(Task a, Task b){
+        if(a.getPriority() != b.getPriority())
+            return a.getPriority() > b.getPriority();
+        return sequenceNumbers.get(a) < sequenceNumbers.get(b);
+    }
+
+    private void siftUp(int index){
+        Task task = heap.get(index);
+        while(index > 0){
+            int parent = (index - 1) / 2;
+            Task parentTask = heap.get(parent);
+            if(!precedes(task, parentTask))
+                break;
+            place(parentTask, index);
+            index = parent;
+        }
+        place(task, index);
+    }
+
+    private void siftDown(int index){
+        Task task = heap.get(index);
+        int size = heap.size();
+        while(true){
+            int child = 2 * index + 1;
+            if(child >= size)
+                break;
+            if(child + 1 < size && precedes(heap.get(child + 1), heap.get(child)))
+                child++;
+            Task childTask = heap.get(child);
+            if(!precedes(childTask, task))
+                break;
+            place(childTask, index);
+            index = child;
+        }
+        place(task, index);
+    }
+
+    private void place(Task task, int index){
+        heap.set(index, task);
+        indices.put(task, index);
+    }
+}
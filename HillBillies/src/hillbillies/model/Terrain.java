@@ -58,6 +58,20 @@ public enum Terrain {
      * @return The corresponding terrain type
      */
     public static Terrain fromId(int id){
-        return Terrain.values()[id];
+        return VALUES[id];
     }
+
+    /**
+     * Check whether the given id is the id of a terrain type.
+     * @param id The id to check
+     * @return | result == (0 <= id && id < values().length)
+     */
+    public static boolean isValidId(int id){
+        return 0 <= id && id < VALUES.length;
+    }
+
+    /**
+     * Constant reflecting all terrain types, indexed by their id.
+     */
+    private static final Terrain[] VALUES = values();
 }
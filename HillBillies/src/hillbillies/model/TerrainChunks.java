@@ -0,0 +1,149 @@
+package hillbillies.model;
+
+import java.util.BitSet;
+
+/**
+ * Class dividing the terrain of a World in cubic chunks, which are shared by all captures of the terrain until
+ * one of their cubes changes. A captured chunk reads its cubes from the terrain store itself, and is only copied
+ * right before the first change to one of its cubes after the capture. Capturing the terrain thus copies no cubes
+ * at all, and the chunks changed while a capture is in use are the only ones ever copied, so also a memory-mapped
+ * terrain is never copied to the heap as a whole.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+final class TerrainChunks implements TerrainStore.ChangeListener {
+
+    /**
+     * Constant reflecting the number of cubes along each side of a chunk.
+     */
+    static final int CHUNK_SIZE = 16;
+
+    private final TerrainStore store;
+    private final int nbChunksX, nbChunksY, nbChunksZ;
+    private final Chunk[] chunks;
+    /**
+     * Set registering the indices of the chunks which changed since the last capture.
+     */
+    private final BitSet dirtyChunks = new BitSet();
+
+    /**
+     * Initialize new TerrainChunks for the given world, which are notified of every change to its terrain store.
+     * No chunk is captured yet.
+     */
+    TerrainChunks(World world){
+        this.store = world.getTerrainStore();
+        this.nbChunksX = nbChunks(store.getNbCubesX());
+        this.nbChunksY = nbChunks(store.getNbCubesY());
+        this.nbChunksZ = nbChunks(store.getNbCubesZ());
+        this.chunks = new Chunk[nbChunksX * nbChunksY * nbChunksZ];
+        this.dirtyChunks.set(0, chunks.length);
+        store.setChangeListener(this);
+    }
+
+    private static int nbChunks(int nbCubes){
+        return (nbCubes + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * Mark the chunk of the cube with the given store index as changed. If the chunk is still shared by the
+     * captures, it is copied first.
+     */
+    @Override
+    public void beforeChange(int index){
+        int nbCubesY = store.getNbCubesY(), nbCubesZ = store.getNbCubesZ();
+        int x = index / nbCubesZ / nbCubesY, y = (index / nbCubesZ) % nbCubesY, z = index % nbCubesZ;
+        int chunkIndex = getChunkIndex(x / CHUNK_SIZE, y / CHUNK_SIZE, z / CHUNK_SIZE);
+        if(dirtyChunks.get(chunkIndex))
+            return;
+        dirtyChunks.set(chunkIndex);
+        chunks[chunkIndex].detach();
+        chunks[chunkIndex] = null;
+    }
+
+    /**
+     * Return the number of chunks which changed since the last capture.
+     */
+    int getNbDirtyChunks(){
+        return dirtyChunks.cardinality();
+    }
+
+    /**
+     * Return the chunks of the terrain as it is now, in the order of getChunkIndex.
+     * The returned array is never changed afterwards, and the cubes of its chunks keep their current
+     * terrain, so they can be read from any thread.
+     */
+    Chunk[] capture(){
+        for(int index = dirtyChunks.nextSetBit(0); index >= 0; index = dirtyChunks.nextSetBit(index + 1))
+            chunks[index] = newChunk(index);
+        dirtyChunks.clear();
+        return chunks.clone();
+    }
+
+    /**
+     * Return the index of the chunk with the given chunk coordinates.
+     */
+    static int getChunkIndex(int chunkX, int chunkY, int chunkZ, int nbChunksY, int nbChunksZ){
+        return (chunkX * nbChunksY + chunkY) * nbChunksZ + chunkZ;
+    }
+
+    private int getChunkIndex(int chunkX, int chunkY, int chunkZ){
+        return getChunkIndex(chunkX, chunkY, chunkZ, nbChunksY, nbChunksZ);
+    }
+
+    private Chunk newChunk(int index){
+        int chunkZ = index % nbChunksZ;
+        int chunkY = (index / nbChunksZ) % nbChunksY;
+        int chunkX = index / nbChunksZ / nbChunksY;
+        int minX = chunkX * CHUNK_SIZE, minY = chunkY * CHUNK_SIZE, minZ = chunkZ * CHUNK_SIZE;
+        return new Chunk(store, minX, minY, minZ, Math.min(CHUNK_SIZE, store.getNbCubesX() - minX),
+                Math.min(CHUNK_SIZE, store.getNbCubesY() - minY), Math.min(CHUNK_SIZE, store.getNbCubesZ() - minZ));
+    }
+
+    /**
+     * Class representing the cubes of a chunk as they were captured. The cubes are read from the terrain store
+     * until the chunk is detached, from then on they are read from a copy in x-major, z-minor order.
+     */
+    static final class Chunk {
+
+        private final TerrainStore store;
+        private final int minX, minY, minZ, sizeX, sizeY, sizeZ;
+        /**
+         * The stored bytes of the cubes of this chunk, or null if this chunk isn't detached yet.
+         * Guarded by this chunk.
+         */
+        private byte[] copy = null;
+
+        private Chunk(TerrainStore store, int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ){
+            this.store = store;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.sizeZ = sizeZ;
+        }
+
+        /**
+         * Copy the cubes of this chunk from the terrain store, which may change them afterwards.
+         */
+        private synchronized void detach(){
+            byte[] bytes = new byte[sizeX * sizeY * sizeZ];
+            int i = 0;
+            for(int x = minX; x < minX + sizeX; x++)
+                for(int y = minY; y < minY + sizeY; y++)
+                    for(int z = minZ; z < minZ + sizeZ; z++, i++)
+                        bytes[i] = (byte) store.get(store.getIndex(x, y, z));
+            copy = bytes;
+        }
+
+        /**
+         * Return the stored byte of the cube with the given coordinates relative to this chunk, as an unsigned value.
+         * @see TerrainStore#get(int)
+         */
+        synchronized int get(int x, int y, int z){
+            if(copy == null)
+                return store.get(store.getIndex(minX + x, minY + y, minZ + z));
+            return copy[(x * sizeY + y) * sizeZ + z] & 0xff;
+        }
+    }
+}
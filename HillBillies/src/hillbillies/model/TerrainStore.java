@@ -0,0 +1,381 @@
+package hillbillies.model;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Class storing the terrain of the cubes of a World as one byte per cube, in x-major, z-minor order.
+ * The lower bits of each byte hold the id of the terrain of the cube, the highest bit is set for the solid
+ * cubes which are not connected to the border. The store keeps this bit up to date itself when a World changes
+ * the terrain, so a stored terrain can be reopened without computing the border connectivity again.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+abstract class TerrainStore {
+
+    /**
+     * Constant reflecting the bits of a stored byte holding the terrain id.
+     */
+    static final int TERRAIN_MASK = 0x7f;
+    /**
+     * Constant reflecting the bit of a stored byte which is set for the solid cubes not connected to the border.
+     */
+    static final int DISCONNECTED = 0x80;
+
+    private final int nbCubesX, nbCubesY, nbCubesZ;
+    /**
+     * Flag indicating this store was given to a World already.
+     */
+    private boolean inUse = false;
+    /**
+     * Variable referencing the listener notified before a stored byte changes, or null if there is none.
+     */
+    private ChangeListener changeListener = null;
+    /**
+     * The number of cubes visited by the last update of the border connectivity.
+     */
+    private int nbCubesVisited = 0;
+
+    /**
+     * Initialize a new TerrainStore with the given dimensions.
+     * @param maxNbCubes The maximum number of cubes the store can hold.
+     * @throws IllegalArgumentException
+     *         One of the dimensions isn't strictly positive, or the store can't hold that many cubes.
+     *         | nbCubesX < 1 || nbCubesY < 1 || nbCubesZ < 1 || nbCubesX * nbCubesY * nbCubesZ > maxNbCubes
+     */
+    TerrainStore(int nbCubesX, int nbCubesY, int nbCubesZ, long maxNbCubes) throws IllegalArgumentException {
+        if(nbCubesX < 1 || nbCubesY < 1 || nbCubesZ < 1)
+            throw new IllegalArgumentException("The dimensions of a world must be strictly positive.");
+        if((long) nbCubesX * nbCubesY * nbCubesZ > maxNbCubes)
+            throw new IllegalArgumentException("A world can't have more than " + maxNbCubes + " cubes.");
+        this.nbCubesX = nbCubesX;
+        this.nbCubesY = nbCubesY;
+        this.nbCubesZ = nbCubesZ;
+    }
+
+    public int getNbCubesX(){
+        return nbCubesX;
+    }
+
+    public int getNbCubesY(){
+        return nbCubesY;
+    }
+
+    public int getNbCubesZ(){
+        return nbCubesZ;
+    }
+
+    int getNbCubes(){
+        return nbCubesX * nbCubesY * nbCubesZ;
+    }
+
+    /**
+     * Return the index of the cube with the given coordinates.
+     */
+    int getIndex(int x, int y, int z){
+        return (x * nbCubesY + y) * nbCubesZ + z;
+    }
+
+    /**
+     * Return the stored byte of the cube with the given index, as an unsigned value.
+     */
+    abstract int get(int index);
+
+    /**
+     * Store the given byte for the cube with the given index.
+     */
+    abstract void set(int index, int value);
+
+    Terrain getTerrain(int index){
+        return Terrain.fromId(get(index) & TERRAIN_MASK);
+    }
+
+    /**
+     * Set the terrain of the cube with the given index. A solid cube which stays solid keeps its connection
+     * to the border, any other cube is registered as connected to the border.
+     */
+    void setTerrain(int index, Terrain terrain){
+        if(changeListener != null)
+            changeListener.beforeChange(index);
+        int value = terrain.getId();
+        if(!terrain.isPassable() && !getTerrain(index).isPassable())
+            value |= get(index) & DISCONNECTED;
+        set(index, value);
+    }
+
+    boolean isDisconnected(int index){
+        return (get(index) & DISCONNECTED) != 0;
+    }
+
+    void setDisconnected(int index, boolean disconnected){
+        int value = get(index);
+        int updated = disconnected ? value | DISCONNECTED : value & TERRAIN_MASK;
+        if(updated != value){
+            if(changeListener != null)
+                changeListener.beforeChange(index);
+            set(index, updated);
+        }
+    }
+
+    /**
+     * Check whether the cube with the given index is solid and connected to the border.
+     */
+    boolean isSolidConnectedToBorder(int index){
+        return !getTerrain(index).isPassable() && !isDisconnected(index);
+    }
+
+    /**
+     * Return the number of cubes visited by the last call to changeSolidToPassable or changePassableToSolid.
+     */
+    int getNbCubesVisited(){
+        return nbCubesVisited;
+    }
+
+    /**
+     * Update the border connectivity after the cube with the given index became passable. Each solid neighbour
+     * of the cube is searched from, depth-first through solid cubes, until a cube at the border is found. The
+     * cubes of a search which found no such cube are registered as disconnected.
+     * @return The indices of the cubes which are no longer connected to the border, in increasing order.
+     */
+    int[] changeSolidToPassable(int index){
+        nbCubesVisited = 0;
+        Set<Integer> connected = new HashSet<>();
+        Set<Integer> disconnected = new HashSet<>();
+        int[] neighbours = new int[6];
+        for(int i = 0, nbNeighbours = getNeighbours(index, neighbours); i < nbNeighbours; i++){
+            int start = neighbours[i];
+            if(getTerrain(start).isPassable() || isDisconnected(start) || connected.contains(start)
+                    || disconnected.contains(start))
+                continue;
+            Set<Integer> visited = new HashSet<>();
+            if(searchBorder(start, visited, connected))
+                connected.addAll(visited);
+            else
+                disconnected.addAll(visited);
+        }
+        for(int cube : disconnected)
+            setDisconnected(cube, true);
+        return sorted(disconnected);
+    }
+
+    /**
+     * Update the border connectivity after the cube with the given index became solid. If the cube is at the border
+     * or next to a connected solid cube, the disconnected solid cubes it now connects are registered as connected.
+     * Otherwise, the cube itself is registered as disconnected.
+     * @return The indices of the cubes other than the given cube which are connected to the border again,
+     *         in increasing order.
+     */
+    int[] changePassableToSolid(int index){
+        nbCubesVisited = 1;
+        int[] neighbours = new int[6];
+        int nbNeighbours = getNeighbours(index, neighbours);
+        boolean isConnected = isAtBorder(index);
+        for(int i = 0; i < nbNeighbours && !isConnected; i++)
+            isConnected = isSolidConnectedToBorder(neighbours[i]);
+        if(!isConnected){
+            setDisconnected(index, true);
+            return new int[0];
+        }
+        setDisconnected(index, false);
+        Set<Integer> reconnected = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(index);
+        while(!stack.isEmpty()){
+            nbNeighbours = getNeighbours(stack.pop(), neighbours);
+            for(int i = 0; i < nbNeighbours; i++){
+                int neighbour = neighbours[i];
+                if(getTerrain(neighbour).isPassable() || !isDisconnected(neighbour))
+                    continue;
+                nbCubesVisited++;
+                setDisconnected(neighbour, false);
+                reconnected.add(neighbour);
+                stack.push(neighbour);
+            }
+        }
+        return sorted(reconnected);
+    }
+
+    /**
+     * Search the solid cubes reachable from the given solid cube for a cube at the border or a cube in the given
+     * set of connected cubes. The searched cubes are added to the given set of visited cubes.
+     * @return True if and only if such a cube was found.
+     */
+    private boolean searchBorder(int start, Set<Integer> visited, Set<Integer> connected){
+        int[] neighbours = new int[6];
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(start);
+        visited.add(start);
+        while(!stack.isEmpty()){
+            int cube = stack.pop();
+            nbCubesVisited++;
+            if(isAtBorder(cube) || connected.contains(cube))
+                return true;
+            for(int i = 0, nbNeighbours = getNeighbours(cube, neighbours); i < nbNeighbours; i++){
+                int neighbour = neighbours[i];
+                if(!getTerrain(neighbour).isPassable() && visited.add(neighbour))
+                    stack.push(neighbour);
+            }
+        }
+        return false;
+    }
+
+    private static int[] sorted(Set<Integer> cubes){
+        int[] result = new int[cubes.size()];
+        int i = 0;
+        for(int cube : cubes)
+            result[i++] = cube;
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Check whether the cube with the given index lies at the border of the terrain.
+     */
+    private boolean isAtBorder(int index){
+        int x = index / nbCubesZ / nbCubesY, y = (index / nbCubesZ) % nbCubesY, z = index % nbCubesZ;
+        return x == 0 || x == nbCubesX - 1 || y == 0 || y == nbCubesY - 1 || z == 0 || z == nbCubesZ - 1;
+    }
+
+    /**
+     * Store the indices of the directly adjacent cubes of the cube with the given index in the given array.
+     * @return The number of stored indices.
+     */
+    private int getNeighbours(int index, int[] neighbours){
+        int nbCubesYZ = nbCubesY * nbCubesZ;
+        int x = index / nbCubesYZ, y = (index / nbCubesZ) % nbCubesY, z = index % nbCubesZ;
+        int nbNeighbours = 0;
+        if(x > 0) neighbours[nbNeighbours++] = index - nbCubesYZ;
+        if(x < nbCubesX - 1) neighbours[nbNeighbours++] = index + nbCubesYZ;
+        if(y > 0) neighbours[nbNeighbours++] = index - nbCubesZ;
+        if(y < nbCubesY - 1) neighbours[nbNeighbours++] = index + nbCubesZ;
+        if(z > 0) neighbours[nbNeighbours++] = index - 1;
+        if(z < nbCubesZ - 1) neighbours[nbNeighbours++] = index + 1;
+        return nbNeighbours;
+    }
+
+    /**
+     * Compute which solid cubes are connected to the border through directly adjacent solid cubes, and register
+     * the other solid cubes as disconnected. The connected cubes are found by a breadth-first search from the solid
+     * cubes at the border, of which the queue only holds the frontier of the search.
+     */
+    void computeConnectivity(){
+        int nbCubesYZ = nbCubesY * nbCubesZ;
+        BitSet connected = new BitSet(getNbCubes());
+        int[] queue = new int[1024];
+        int head = 0, size = 0;
+        for(int index = 0; index < getNbCubes(); index++){
+            int x = index / nbCubesYZ, y = (index / nbCubesZ) % nbCubesY, z = index % nbCubesZ;
+            boolean border = x == 0 || x == nbCubesX - 1 || y == 0 || y == nbCubesY - 1 || z == 0 || z == nbCubesZ - 1;
+            if(border && !getTerrain(index).isPassable()){
+                connected.set(index);
+                if(size == queue.length){
+                    queue = grow(queue, head, size);
+                    head = 0;
+                }
+                queue[(head + size++) % queue.length] = index;
+            }
+        }
+        while(size > 0){
+            int index = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+            int x = index / nbCubesYZ, y = (index / nbCubesZ) % nbCubesY, z = index % nbCubesZ;
+            for(int direction = 0; direction < 6; direction++){
+                int neighbour;
+                switch (direction){
+                    case 0: neighbour = x > 0 ? index - nbCubesYZ : -1; break;
+                    case 1: neighbour = x < nbCubesX - 1 ? index + nbCubesYZ : -1; break;
+                    case 2: neighbour = y > 0 ? index - nbCubesZ : -1; break;
+                    case 3: neighbour = y < nbCubesY - 1 ? index + nbCubesZ : -1; break;
+                    case 4: neighbour = z > 0 ? index - 1 : -1; break;
+                    default: neighbour = z < nbCubesZ - 1 ? index + 1 : -1; break;
+                }
+                if(neighbour < 0 || connected.get(neighbour) || getTerrain(neighbour).isPassable())
+                    continue;
+                connected.set(neighbour);
+                if(size == queue.length){
+                    queue = grow(queue, head, size);
+                    head = 0;
+                }
+                queue[(head + size++) % queue.length] = neighbour;
+            }
+        }
+        for(int index = 0; index < getNbCubes(); index++)
+            setDisconnected(index, !connected.get(index) && !getTerrain(index).isPassable());
+    }
+
+    /**
+     * Return a queue with twice the capacity of the given full circular queue, of which the elements start at 0.
+     */
+    private static int[] grow(int[] queue, int head, int size){
+        int[] grown = new int[2 * queue.length];
+        for(int i = 0; i < size; i++)
+            grown[i] = queue[(head + i) % queue.length];
+        return grown;
+    }
+
+    /**
+     * Interface for listeners which must see the stored byte of a cube before it changes.
+     */
+    interface ChangeListener {
+
+        /**
+         * Handle the coming change of the stored byte of the cube with the given index.
+         */
+        void beforeChange(int index);
+    }
+
+    /**
+     * Set the listener notified before a stored byte changes through setTerrain or setDisconnected.
+     */
+    void setChangeListener(ChangeListener changeListener){
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Register this store is used by a World.
+     * @throws IllegalArgumentException
+     *         This store is used by another World already.
+     */
+    void claim() throws IllegalArgumentException {
+        if(inUse)
+            throw new IllegalArgumentException("The terrain is used by another world already.");
+        inUse = true;
+    }
+
+    /**
+     * Write the changes to this store to its backing storage, if it has any.
+     * @throws IOException
+     *         The changes could not be written.
+     */
+    void flush() throws IOException {
+    }
+
+    /**
+     * Class storing the terrain in an array on the heap.
+     */
+    static final class Heap extends TerrainStore {
+
+        private final byte[] terrain;
+
+        Heap(int nbCubesX, int nbCubesY, int nbCubesZ){
+            super(nbCubesX, nbCubesY, nbCubesZ, Integer.MAX_VALUE - 8);
+            this.terrain = new byte[getNbCubes()];
+        }
+
+        @Override
+        int get(int index){
+            return terrain[index] & 0xff;
+        }
+
+        @Override
+        void set(int index, int value){
+            terrain[index] = (byte) value;
+        }
+    }
+}
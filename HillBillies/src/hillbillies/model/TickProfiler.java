@@ -0,0 +1,267 @@
+package hillbillies.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * Class collecting per-phase timings and counters of the ticks of a single World.
+ * A World only owns a TickProfiler while profiling is enabled, so all instrumentation
+ * points reduce to a single null check when it is disabled.
+ * The timings of each phase are kept in a rolling histogram of the last WINDOW_SIZE ticks.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class TickProfiler implements TickProfilerMXBean {
+
+    /**
+     * Enumeration of the phases of a World tick.
+     * TASKS and LISTENERS are measured while the UNITS and COLLAPSE phases are running,
+     * so their times are included in those phases as well.
+     */
+    public enum Phase {
+        UNITS, MATERIALS, COLLAPSE, TASKS, LISTENERS, AUTOSAVE
+    }
+
+    /**
+     * Constant reflecting the number of ticks kept in the rolling histograms.
+     */
+    public static final int WINDOW_SIZE = 512;
+
+    /**
+     * Variable referencing the ObjectName this profiler is registered with, or null if it isn't registered.
+     */
+    private ObjectName objectName;
+
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder unitsTicked = new LongAdder();
+    private final LongAdder pathSearches = new LongAdder();
+    private final LongAdder nodesExpanded = new LongAdder();
+    private final LongAdder statementsInterpreted = new LongAdder();
+    private final LongAdder cubesCollapsed = new LongAdder();
+    private final Map<String, LongAdder> activityCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Time spent in each phase during the current tick, in nanoseconds.
+     */
+    private final long[] currentTick = new long[Phase.values().length];
+    private final Map<Phase, RollingHistogram> histograms = new EnumMap<>(Phase.class);
+
+    /**
+     * Initialize a new TickProfiler with empty counters and histograms.
+     */
+    public TickProfiler(){
+        for(Phase phase : Phase.values())
+            histograms.put(phase, new RollingHistogram(WINDOW_SIZE));
+    }
+
+    /**
+     * Register this profiler on the platform MBean server under the given name.
+     * @param name The value of the world key of the ObjectName.
+     * @throws IllegalStateException
+     *         If the profiler could not be registered.
+     */
+    void register(String name) throws IllegalStateException{
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("hillbillies:type=TickProfiler,world=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("The profiler could not be registered.", e);
+        }
+    }
+
+    /**
+     * Remove this profiler from the platform MBean server, if it is registered.
+     */
+    void unregister(){
+        if(objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already unregistered
+        }
+        objectName = null;
+    }
+
+    /**
+     * Return the ObjectName this profiler is registered with, or null if it isn't registered.
+     */
+    @Basic
+    public ObjectName getObjectName(){
+        return objectName;
+    }
+
+    /**
+     * Add the time elapsed since the given start time to the given phase of the current tick.
+     * @param phase The phase to record.
+     * @param startNanos The value of System.nanoTime() when the phase started.
+     */
+    public void record(Phase phase, long startNanos){
+        currentTick[phase.ordinal()] += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Close the current tick: push its phase timings to the rolling histograms.
+     */
+    public void endTick(){
+        for(Phase phase : Phase.values()) {
+            histograms.get(phase).add(currentTick[phase.ordinal()]);
+            currentTick[phase.ordinal()] = 0L;
+        }
+        ticks.increment();
+    }
+
+    public void countUnit(){
+        unitsTicked.increment();
+    }
+
+    public void countActivity(Class<?> activityClass){
+        activityCounts.computeIfAbsent(activityClass.getSimpleName(), k -> new LongAdder()).increment();
+    }
+
+    public void countPathSearch(int nodes){
+        pathSearches.increment();
+        nodesExpanded.add(nodes);
+    }
+
+    public void countStatement(){
+        statementsInterpreted.increment();
+    }
+
+    public void countCollapse(){
+        cubesCollapsed.increment();
+    }
+
+    @Override
+    public long getTickCount() {
+        return ticks.sum();
+    }
+
+    @Override
+    public long getUnitsTicked() {
+        return unitsTicked.sum();
+    }
+
+    @Override
+    public Map<String, Long> getActivityCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        activityCounts.forEach((name, count) -> result.put(name, count.sum()));
+        return result;
+    }
+
+    @Override
+    public long getPathSearches() {
+        return pathSearches.sum();
+    }
+
+    @Override
+    public long getNodesExpanded() {
+        return nodesExpanded.sum();
+    }
+
+    @Override
+    public long getStatementsInterpreted() {
+        return statementsInterpreted.sum();
+    }
+
+    @Override
+    public long getCubesCollapsed() {
+        return cubesCollapsed.sum();
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMeanMillis() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        histograms.forEach((phase, histogram) -> result.put(phase.name(), histogram.mean() / 1e6));
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMedianMillis() {
+        return getPhasePercentileMillis(0.5);
+    }
+
+    @Override
+    public Map<String, Double> getPhaseP99Millis() {
+        return getPhasePercentileMillis(0.99);
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMaxMillis() {
+        return getPhasePercentileMillis(1.0);
+    }
+
+    private Map<String, Double> getPhasePercentileMillis(double percentile){
+        Map<String, Double> result = new LinkedHashMap<>();
+        histograms.forEach((phase, histogram) -> result.put(phase.name(), histogram.percentile(percentile) / 1e6));
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        ticks.reset();
+        unitsTicked.reset();
+        pathSearches.reset();
+        nodesExpanded.reset();
+        statementsInterpreted.reset();
+        cubesCollapsed.reset();
+        activityCounts.clear();
+        histograms.values().forEach(RollingHistogram::clear);
+    }
+
+    /**
+     * Fixed size ring buffer of samples, overwriting the oldest sample when full.
+     */
+    private static final class RollingHistogram {
+
+        private final long[] samples;
+        private int next, size;
+
+        private RollingHistogram(int capacity){
+            this.samples = new long[capacity];
+        }
+
+        private synchronized void add(long sample){
+            samples[next] = sample;
+            next = (next + 1) % samples.length;
+            if(size < samples.length)
+                size++;
+        }
+
+        private synchronized double mean(){
+            if(size == 0) return 0d;
+            long sum = 0L;
+            for(int i = 0; i < size; i++)
+                sum += samples[i];
+            return (double) sum / size;
+        }
+
+        private double percentile(double percentile){
+            long[] sorted;
+            synchronized (this) {
+                sorted = Arrays.copyOf(samples, size);
+            }
+            if(sorted.length == 0) return 0d;
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+
+        private synchronized void clear(){
+            next = 0;
+            size = 0;
+        }
+    }
+}
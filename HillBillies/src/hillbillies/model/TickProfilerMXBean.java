@@ -0,0 +1,72 @@
+package hillbillies.model;
+
+import java.util.Map;
+
+/**
+ * Management interface of a TickProfiler, published on the platform MBean server
+ * for every World that has profiling enabled.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public interface TickProfilerMXBean {
+
+    /**
+     * Get the number of ticks (calls to World.advanceTime) recorded by this profiler.
+     */
+    long getTickCount();
+
+    /**
+     * Get the number of unit ticks recorded by this profiler.
+     */
+    long getUnitsTicked();
+
+    /**
+     * Get the number of activity ticks recorded, per simple class name of the Activity.
+     */
+    Map<String, Long> getActivityCounts();
+
+    /**
+     * Get the number of path searches started.
+     */
+    long getPathSearches();
+
+    /**
+     * Get the total number of nodes expanded by all path searches.
+     */
+    long getNodesExpanded();
+
+    /**
+     * Get the number of task statements interpreted.
+     */
+    long getStatementsInterpreted();
+
+    /**
+     * Get the number of cubes that collapsed.
+     */
+    long getCubesCollapsed();
+
+    /**
+     * Get the mean time per tick spent in each phase, over the rolling window, in milliseconds.
+     */
+    Map<String, Double> getPhaseMeanMillis();
+
+    /**
+     * Get the median time per tick spent in each phase, over the rolling window, in milliseconds.
+     */
+    Map<String, Double> getPhaseMedianMillis();
+
+    /**
+     * Get the 99th percentile of the time per tick spent in each phase, over the rolling window, in milliseconds.
+     */
+    Map<String, Double> getPhaseP99Millis();
+
+    /**
+     * Get the maximum time per tick spent in each phase, over the rolling window, in milliseconds.
+     */
+    Map<String, Double> getPhaseMaxMillis();
+
+    /**
+     * Clear all counters and histograms of this profiler.
+     */
+    void reset();
+}
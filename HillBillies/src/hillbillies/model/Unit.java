@@ -8,6 +8,7 @@ import java.util.Stack;
 import static hillbillies.utils.Utils.*;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class representing a Hillbilly unit
@@ -54,7 +55,7 @@ public class Unit extends WorldObject {
 	/**
 	 * Constant reflecting the length of a units ID.     
 	 */
-	private static long ID = 0;
+	private static final AtomicLong ID = new AtomicLong();
 	/**
 	 * Constant reflecting the allowed name pattern    
 	 */
@@ -972,8 +973,7 @@ public class Unit extends WorldObject {
 		super(world, position.add(Cube.CUBE_SIDE_LENGTH/2));
 		world.addUnit(this);
 
-		this.Id = ID;
-		ID++;
+		this.Id = ID.getAndIncrement();
 		// Defensive
 		this.setName(name);
 		
@@ -1005,6 +1005,39 @@ public class Unit extends WorldObject {
 		this.getCurrentActivity().start();
 	}
 
+	/**
+	 * Initialize this new Unit in the given faction of the given world, with the given properties as they
+	 * were saved in a snapshot. The properties are not checked against the initial ranges of a new unit,
+	 * and the position isn't checked either, since the unit might have been falling.
+	 * Only used by WorldSnapshot, which restores the activities of the unit afterwards.
+	 * @param world The world this new Unit belongs to
+	 * @param faction The faction of the given world this new Unit belongs to
+	 * @effect This new Unit is added to the given faction of the given world.
+	 * 			| world.restoreUnit(this, faction)
+	 * @post The properties of this new Unit are equal to the given properties.
+	 * 		| new.getName() == name && new.getPosition().equals(position) && new.getStrength() == strength &&
+	 * 		| new.getAgility() == agility && new.getToughness() == toughness && new.getWeight() == weight &&
+	 * 		| new.getStamina() == stamina && new.getHitpoints() == hitpoints
+	 */
+	@Raw
+	Unit(World world, Faction faction, String name, Vector position, int strength, int agility, int toughness, int weight,
+		 int stamina, int hitpoints) throws IllegalArgumentException {
+		super(world);
+		this.restorePosition(position);
+		this.Id = ID.getAndIncrement();
+		this.setName(name);
+		this.setStrength(strength);
+		this.setAgility(agility);
+		this.setToughness(toughness);
+		this.setWeight(weight);
+		this.setStamina(stamina);
+		this.setHitpoints(hitpoints);
+		world.restoreUnit(this, faction);
+		this.activityStack = new Stack<>();
+		this.activityStack.push(NONE);
+		this.getCurrentActivity().start();
+	}
+
 	//endregion
 
 	//region AdvanceTime
@@ -1030,6 +1063,39 @@ public class Unit extends WorldObject {
 		this.getCurrentActivity().advanceTime(dt);
 	}
 
+	/**
+	 * Return the amount of game-time during which this unit doesn't need to be advanced,
+	 * because its current activity is only waiting to complete and no rest is due.
+	 * @param dt The duration of the ticks by which this unit is advanced.
+	 * @return The time until the current activity needs to be checked again, bounded
+	 * 			by the time until the tick in which the rest timer reaches the rest interval,
+	 * 			if this unit is not resting.
+	 * 		| if(this.isResting())
+	 * 		|	result == this.getCurrentActivity().getTimeUntilNextCheck()
+	 * 		| else
+	 * 		|	result == min(this.getCurrentActivity().getTimeUntilNextCheck(), Rest.REST_INTERVAL - restTimer - dt)
+	 */
+	public double getIdleTime(double dt){
+		double idleTime = this.getCurrentActivity().getTimeUntilNextCheck();
+		if(!this.isResting())
+			// The tick advancing the unit after it wakes up adds dt to the rest timer itself
+			idleTime = Math.min(idleTime, Rest.REST_INTERVAL - restTimer - dt);
+		return idleTime;
+	}
+
+	/**
+	 * Catch up on the given amount of game-time during which this unit was not advanced.
+	 * @param dt The amount of game-time that passed.
+	 * @effect The progress of the current activity is increased by dt.
+	 * 		| this.getCurrentActivity().skipTime(dt)
+	 * @post If this unit is not resting, the rest timer is increased by dt.
+	 */
+	public void skipTime(double dt){
+		if(!this.isResting())
+			restTimer += dt;
+		this.getCurrentActivity().skipTime(dt);
+	}
+
     /**
      * Check whether the given position is a valid position for
      * any unit in the units world.
@@ -1073,8 +1139,11 @@ public class Unit extends WorldObject {
 	 *
 	 * @effect	Default behaviour of this unit is activated.
 	 *       	| new.isDefaultActive() == true
+	 * @effect	This unit is woken up in its world.
+	 * 			| this.getWorld().wakeUnit(this)
 	 */
 	public void startDefaultBehaviour(){
+		this.getWorld().wakeUnit(this);
 		this.getCurrentActivity().setDefault(true);
 	}
 
@@ -1197,7 +1266,7 @@ public class Unit extends WorldObject {
 	public void follow(Unit unit) throws IllegalArgumentException{
 		if(unit==null || unit == this)
 			throw new IllegalArgumentException("The unit is not a valid unit.");
-		Set<Unit> units = new HashSet<>();
+		Set<Unit> units = new LinkedHashSet<>();
 		units.add(unit);
 		requestNewActivity(new TargetMove(this, units));
 	}
@@ -1330,11 +1399,16 @@ public class Unit extends WorldObject {
 	 * @effect The unit is removed from his faction and world.
 	 * | (new this).getFaction().hasAsUnit(this) == false
 	 * | (new this).getWorld().hasAsUnit(this) == false
+	 * @effect The task of this unit is descheduled, which stops its execution.
+	 * | if (this.getTask() != null)
+	 * |	this.getFaction().getScheduler().deschedule(this.getTask())
 	 */
 	@Override
 	public void terminate() {
 	    this.isTerminated = true;
 		this.setHitpoints(0);
+		if(this.getTask() != null)
+			this.getFaction().getScheduler().deschedule(this.getTask());
 		this.getWorld().removeUnit(this);
 		Faction f = this.getFaction();
 		this.faction = null;
@@ -1550,6 +1624,7 @@ public class Unit extends WorldObject {
 		if(!this.getCurrentActivity().isDefault() && !activity.isAbleTo())
 			throw new IllegalStateException("This unit cannot " + activity.toString() + " at this moment");
 
+		this.getWorld().wakeUnit(this);
 		boolean isDefault = this.getCurrentActivity().isDefault();
 		try{
 			this.getCurrentActivity().interrupt(activity);
@@ -1582,6 +1657,7 @@ public class Unit extends WorldObject {
 			throw new IllegalArgumentException("This activity is not bound to this unit.");
 		if(activity!=this.getCurrentActivity() || !activity.isActive())
 			throw new IllegalArgumentException("This activity is not currently active.");
+		this.getWorld().wakeUnit(this);
 		boolean isDefault = this.getCurrentActivity().isDefault();
 		stopCurrentActivity(finishParent);
 		if(this.activityStack.size()==0)
@@ -1594,6 +1670,7 @@ public class Unit extends WorldObject {
 	}
 
 	public void restartActivity(boolean restartParent){
+		this.getWorld().wakeUnit(this);
 		Activity activity = this.getCurrentActivity();
 		boolean isDefault = activity.isDefault();
 		if(restartParent && !activity.isParentActivity(null)){
@@ -1601,8 +1678,7 @@ public class Unit extends WorldObject {
 			this.getCurrentActivity().setDefault(isDefault);
 			restartActivity(true);
 		}else {
-			activity.stop();
-			activity.start(isDefault);
+			activity.restart(isDefault);
 		}
 	}
 
@@ -1617,13 +1693,48 @@ public class Unit extends WorldObject {
 		if(finishParent && oldActivity.isParentActivity(this.getCurrentActivity()))
 			stopCurrentActivity(true);
 	}
+	/**
+	 * Return the activities of this unit, from the bottom to the top of its activity stack.
+	 */
+	List<Activity> getActivities(){
+		return new ArrayList<>(this.activityStack);
+	}
+
+	/**
+	 * Return the time passed since this unit's last rest.
+	 */
+	double getRestTimer(){
+		return this.restTimer;
+	}
+
+	/**
+	 * Restore the state of this unit which can't be set through its other methods, as it was saved in a snapshot.
+	 * The given activities replace the activity stack of this unit without being started again.
+	 * @param experiencePoints The experience points of this unit.
+	 * @param restTimer The time passed since this unit's last rest.
+	 * @param activities The activities of this unit, from the bottom to the top of its activity stack.
+	 * @throws IllegalArgumentException
+	 * 			If the activity stack is empty or doesn't start with the NONE activity of this unit.
+	 */
+	void restore(int experiencePoints, double restTimer, List<Activity> activities) throws IllegalArgumentException{
+		if(activities.isEmpty() || activities.get(0) != NONE)
+			throw new IllegalArgumentException("The activity stack of a unit must start with its NONE activity.");
+		for(Activity activity : activities)
+			if(activity.getUnitId() != this.getId())
+				throw new IllegalArgumentException("This activity is not bound to this unit.");
+		this.experiencePoints = experiencePoints;
+		this.restTimer = restTimer;
+		this.activityStack.clear();
+		this.activityStack.addAll(activities);
+	}
+
 	/**
 	 * Return the current activity of this unit.
 	 * @return This units current activity if the activityStack is not null.
 	 * | if ( !(this.activityStack == null))
 	 * |	result == this.activityStack.peek()
 	 */
-	private Activity getCurrentActivity(){
+	public Activity getCurrentActivity(){
 		if(this.activityStack == null)
 			return null;
 		return this.activityStack.peek();
@@ -1645,9 +1756,11 @@ public class Unit extends WorldObject {
 	 * General method to check whether this Unit is executing an activity of given kind.
 	 * @param activity The kind of activity to check for
 	 * @return True if this Unit's current Activity is of the same kind as activity AND this Activity is active.
+	 * 			A Unit which is still being constructed has no current Activity, so it isn't executing any.
 	 */
 	public boolean isExecuting(Class<? extends Activity> activity){
-		return this.getCurrentActivity().isActive() && activity.isInstance(this.getCurrentActivity());
+		Activity current = this.getCurrentActivity();
+		return current != null && current.isActive() && activity.isInstance(current);
 	}
 	
 	/**
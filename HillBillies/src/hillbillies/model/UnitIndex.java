@@ -0,0 +1,284 @@
+package hillbillies.model;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import hillbillies.activities.TargetMove;
+import hillbillies.utils.Vector;
+
+/**
+ * Spatial index registering the units of a World by cube, both for the whole world
+ * and per faction, together with a cache of the answers to nearest-unit queries.
+ * Nearest-unit queries first search the units of the relevant factions within a bounded
+ * radius around the querying unit, and only fall back to a path search towards all
+ * candidates if no candidate within that radius can be reached quickly enough.
+ * When a unit enters, leaves or changes cube, changes faction or starts or stops falling, only the cached answers
+ * it can affect are forgotten: the answers of its own queries, the answers which are that unit, and the answers of
+ * queries of which it became a candidate which could be nearer than their cached answer. The whole cache is cleared
+ * by the World at every tick and terrain change.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+final class UnitIndex {
+
+    /**
+     * Constant reflecting the default radius, in cubes, of the bounded search of nearest-unit queries.
+     */
+    static final int DEFAULT_SEARCH_RADIUS = 8;
+
+    private final int searchRadius;
+
+    /**
+     * Map registering the units in each cube, in cube coordinates.
+     */
+    private final Map<Vector, Set<Unit>> unitsByCube = new HashMap<>();
+    /**
+     * Map registering the units in each cube, per faction.
+     */
+    private final Map<Faction, Map<Vector, Set<Unit>>> unitsByFaction = new LinkedHashMap<>();
+    /**
+     * Map registering the cube and faction under which each unit is registered.
+     */
+    private final Map<Unit, Registration> registrations = new HashMap<>();
+    /**
+     * Map registering the cached answer of each kind of query, per querying unit.
+     */
+    private final Map<NearestUnitQuery, Map<Unit, Answer>> cache = new EnumMap<>(NearestUnitQuery.class);
+
+    private long cacheHits = 0L, cacheMisses = 0L;
+
+    UnitIndex(int searchRadius){
+        this.searchRadius = searchRadius;
+        for(NearestUnitQuery query : NearestUnitQuery.values())
+            cache.put(query, new HashMap<>());
+    }
+
+    /**
+     * Move the given unit to the right cube of this index after its position, faction or falling state changed,
+     * or remove it if it is terminated.
+     * @return True if the registration of the unit changed, in which case the cached answers it affects are forgotten.
+     */
+    boolean update(Unit unit){
+        Registration old = registrations.get(unit);
+        Vector newCube = unit.isTerminated() ? null : unit.getPosition().getCubeCoordinates();
+        Faction newFaction = unit.getFaction();
+        boolean falling = newCube != null && unit.isFalling();
+        if(old != null && newCube != null && old.cube.equals(newCube) && old.faction == newFaction){
+            if(old.falling == falling)
+                return false;
+            // Only the candidates of queries changed
+            registrations.put(unit, new Registration(newCube, newFaction, falling));
+            invalidate(unit, newCube);
+            return true;
+        }
+        if(old != null){
+            remove(unitsByCube, old.cube, unit);
+            if(old.faction != null) {
+                Map<Vector, Set<Unit>> factionUnits = unitsByFaction.get(old.faction);
+                remove(factionUnits, old.cube, unit);
+                if(factionUnits.isEmpty())
+                    unitsByFaction.remove(old.faction);
+            }
+            registrations.remove(unit);
+        }
+        if(newCube != null){
+            unitsByCube.computeIfAbsent(newCube, cube -> new LinkedHashSet<>()).add(unit);
+            if(newFaction != null)
+                unitsByFaction.computeIfAbsent(newFaction, faction -> new HashMap<>())
+                        .computeIfAbsent(newCube, cube -> new LinkedHashSet<>()).add(unit);
+            registrations.put(unit, new Registration(newCube, newFaction, falling));
+        }
+        invalidate(unit, newCube);
+        return true;
+    }
+
+    /**
+     * Forget the cached answers which may have changed now the given unit is registered in the given cube.
+     * @param cube The cube of the unit, or null if it was removed.
+     */
+    private void invalidate(Unit unit, Vector cube){
+        for(Map.Entry<NearestUnitQuery, Map<Unit, Answer>> answers : cache.entrySet()){
+            NearestUnitQuery query = answers.getKey();
+            Iterator<Map.Entry<Unit, Answer>> it = answers.getValue().entrySet().iterator();
+            while(it.hasNext()){
+                Map.Entry<Unit, Answer> entry = it.next();
+                Unit querier = entry.getKey();
+                Answer answer = entry.getValue();
+                if(querier == unit || answer.unit == unit)
+                    it.remove();
+                // A path is at least as long as the distance between its ends, so a candidate further away can't be nearer
+                else if(cube != null && !querier.isTerminated() && query.isCandidate(querier, unit)
+                        && chebyshevDistance(answer.from, cube) <= answer.distance)
+                    it.remove();
+            }
+        }
+    }
+
+    private static void remove(Map<Vector, Set<Unit>> unitsByCube, Vector cube, Unit unit){
+        Set<Unit> unitsInCube = unitsByCube.get(cube);
+        unitsInCube.remove(unit);
+        if(unitsInCube.isEmpty())
+            unitsByCube.remove(cube);
+    }
+
+    /**
+     * Return the units registered in the given cube, or null if there are none.
+     */
+    Set<Unit> getUnitsInCube(Vector cubeCoordinates){
+        return unitsByCube.get(cubeCoordinates);
+    }
+
+    /**
+     * Forget all cached answers of nearest-unit queries.
+     */
+    void clearCache(){
+        for(Map<Unit, Answer> answers : cache.values())
+            answers.clear();
+    }
+
+    long getCacheHits(){
+        return cacheHits;
+    }
+
+    long getCacheMisses(){
+        return cacheMisses;
+    }
+
+    /**
+     * Return the unit nearest to the given unit, in path distance, which is a candidate of the given query.
+     * @param unit The unit making the query.
+     * @param query The kind of units to search.
+     * @return The nearest reachable candidate, or null if there is none.
+     */
+    Unit getNearestUnit(Unit unit, NearestUnitQuery query){
+        Map<Unit, Answer> answers = cache.get(query);
+        Answer answer = answers.get(unit);
+        if(answer != null){
+            cacheHits++;
+            return answer.unit;
+        }
+        cacheMisses++;
+        Vector from = unit.getPosition().getCubeCoordinates();
+        TargetMove nearest = search(unit, query, from);
+        answer = nearest == null ? new Answer(null, from, Integer.MAX_VALUE)
+                : new Answer((Unit) nearest.getNearestObject(), from, nearest.getPathLength());
+        answers.put(unit, answer);
+        return answer.unit;
+    }
+
+    /**
+     * Search the path from the given unit to the nearest candidate of the given query.
+     * @return The path search towards the nearest candidate, or null if there is no reachable candidate.
+     */
+    private TargetMove search(Unit unit, NearestUnitQuery query, Vector from){
+        Collection<Faction> factions = query.getFactions(unit, unitsByFaction.keySet());
+        Set<Unit> nearby = new LinkedHashSet<>();
+        for(Faction faction : factions)
+            collectWithinRadius(nearby, unitsByFaction.get(faction), unit, query, from);
+        TargetMove nearest = findNearest(unit, nearby);
+        // Any candidate outside the radius needs more than searchRadius steps, so it can't be nearer
+        if(nearest != null && nearest.getPathLength() <= searchRadius)
+            return nearest;
+        Set<Unit> candidates = new LinkedHashSet<>();
+        for(Faction faction : factions)
+            for(Set<Unit> unitsInCube : unitsByFaction.getOrDefault(faction, new HashMap<>()).values())
+                for(Unit other : unitsInCube)
+                    if(query.isCandidate(unit, other))
+                        candidates.add(other);
+        if(candidates.size() != nearby.size())
+            nearest = findNearest(unit, candidates);
+        return nearest;
+    }
+
+    /**
+     * Add the candidates of the given query within the search radius around the given cube to the given set.
+     * Either the cubes within the radius or the occupied cubes of the faction are visited, whichever are fewer.
+     */
+    private void collectWithinRadius(Set<Unit> result, Map<Vector, Set<Unit>> factionUnits, Unit unit, NearestUnitQuery query, Vector from){
+        if(factionUnits == null)
+            return;
+        int side = 2 * searchRadius + 1;
+        if(factionUnits.size() < side * side * side){
+            for(Map.Entry<Vector, Set<Unit>> entry : factionUnits.entrySet())
+                if(chebyshevDistance(from, entry.getKey()) <= searchRadius)
+                    addCandidates(result, entry.getValue(), unit, query);
+        }else{
+            for(int dx = -searchRadius; dx <= searchRadius; dx++)
+                for(int dy = -searchRadius; dy <= searchRadius; dy++)
+                    for(int dz = -searchRadius; dz <= searchRadius; dz++){
+                        Set<Unit> unitsInCube = factionUnits.get(from.add(new Vector(dx, dy, dz)));
+                        if(unitsInCube != null)
+                            addCandidates(result, unitsInCube, unit, query);
+                    }
+        }
+    }
+
+    private static void addCandidates(Set<Unit> result, Set<Unit> units, Unit unit, NearestUnitQuery query){
+        for(Unit other : units)
+            if(query.isCandidate(unit, other))
+                result.add(other);
+    }
+
+    private static double chebyshevDistance(Vector a, Vector b){
+        return Math.max(Math.abs(a.X() - b.X()), Math.max(Math.abs(a.Y() - b.Y()), Math.abs(a.Z() - b.Z())));
+    }
+
+    /**
+     * Search the path from the given unit to the nearest of the given candidates.
+     * @return The path search towards the nearest candidate, or null if none of the candidates is reachable.
+     */
+    static TargetMove findNearest(Unit unit, Set<Unit> candidates){
+        if(candidates.isEmpty())
+            return null;
+        try {
+            return new TargetMove(unit, candidates);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cube, faction and falling state under which a unit is registered.
+     */
+    private static final class Registration {
+
+        private final Vector cube;
+        private final Faction faction;
+        private final boolean falling;
+
+        private Registration(Vector cube, Faction faction, boolean falling){
+            this.cube = cube;
+            this.faction = faction;
+            this.falling = falling;
+        }
+    }
+
+    /**
+     * Cached answer of a nearest-unit query, together with the cube of the querying unit and
+     * the length of the path to the answer.
+     */
+    private static final class Answer {
+
+        /**
+         * The nearest candidate, or null if there is no reachable candidate.
+         */
+        private final Unit unit;
+        private final Vector from;
+        /**
+         * The length of the path to the nearest candidate, or Integer.MAX_VALUE if there is none.
+         */
+        private final int distance;
+
+        private Answer(Unit unit, Vector from, int distance){
+            this.unit = unit;
+            this.from = from;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package hillbillies.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Discrete-event queue registering the units of a World that are waiting for
+ * a time-bounded activity to complete (or for their next rest check), and
+ * at which game-time they need to be advanced again.
+ * Units registered in this queue are skipped by the tick loop of their World.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+final class WakeUpQueue {
+
+    /**
+     * Tolerance used when comparing wake-up times with the game-time, to
+     * compensate for rounding errors when accumulating dt.
+     */
+    static final double EPSILON = 1e-9;
+
+    private final PriorityQueue<WakeUp> queue = new PriorityQueue<>();
+    /**
+     * Map registering the pending WakeUp of each sleeping unit.
+     * Entries of the priority queue which are no longer registered here are stale and ignored.
+     */
+    private final Map<Unit, WakeUp> sleeping = new HashMap<>();
+
+    /**
+     * Register the given unit as sleeping from the given time until the given wake-up time.
+     * @param unit The unit to register.
+     * @param since The game-time from which the unit is not advanced anymore.
+     * @param until The game-time at which the unit should be advanced again.
+     */
+    void sleep(Unit unit, double since, double until){
+        WakeUp wakeUp = new WakeUp(unit, since, until);
+        sleeping.put(unit, wakeUp);
+        queue.add(wakeUp);
+    }
+
+    /**
+     * Check whether the given unit is sleeping.
+     */
+    boolean isSleeping(Unit unit){
+        return sleeping.containsKey(unit);
+    }
+
+    /**
+     * Remove the given unit from this queue.
+     * @param unit The unit to remove.
+     * @return The game-time since which the given unit is sleeping, or NaN if it isn't sleeping.
+     */
+    double remove(Unit unit){
+        WakeUp wakeUp = sleeping.remove(unit);
+        return wakeUp == null ? Double.NaN : wakeUp.since;
+    }
+
+    /**
+     * Remove all units which should be woken up at the given time from this queue and pass them to the given consumer.
+     * @param time The current game-time.
+     * @param consumer The consumer receiving the registrations of the units to wake up.
+     */
+    void pollDue(double time, Consumer<WakeUp> consumer){
+        while(!queue.isEmpty() && queue.peek().until <= time + EPSILON){
+            WakeUp wakeUp = queue.poll();
+            if(sleeping.get(wakeUp.unit) == wakeUp) {
+                sleeping.remove(wakeUp.unit);
+                consumer.accept(wakeUp);
+            }
+        }
+    }
+
+    /**
+     * Return the game-time since which the given unit is sleeping, or NaN if it isn't sleeping.
+     */
+    double getSince(Unit unit){
+        WakeUp wakeUp = sleeping.get(unit);
+        return wakeUp == null ? Double.NaN : wakeUp.since;
+    }
+
+    /**
+     * Return the number of sleeping units.
+     */
+    int size(){
+        return sleeping.size();
+    }
+
+    /**
+     * Registration of a sleeping unit.
+     */
+    static final class WakeUp implements Comparable<WakeUp> {
+
+        final Unit unit;
+        final double since, until;
+
+        private WakeUp(Unit unit, double since, double until){
+            this.unit = unit;
+            this.since = since;
+            this.until = until;
+        }
+
+        @Override
+        public int compareTo(WakeUp o) {
+            return Double.compare(this.until, o.until);
+        }
+    }
+}
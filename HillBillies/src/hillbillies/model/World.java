@@ -3,14 +3,23 @@ package hillbillies.model;
 
 import static hillbillies.utils.Utils.*;
 
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 import be.kuleuven.cs.som.annotate.*;
 import hillbillies.activities.AdjacentMove;
+import hillbillies.events.BorderConnectivityEvent;
+import hillbillies.events.CubeCollapseEvent;
 import hillbillies.part2.listener.TerrainChangeListener;
-import hillbillies.util.ConnectedToBorder;
+import hillbillies.part3.programs.CostModel;
+import hillbillies.utils.Utils;
 import hillbillies.utils.Vector;
 
 /**
@@ -27,13 +36,34 @@ import hillbillies.utils.Vector;
  */
 public class World implements IWorld {
 	/**
-	 * Constant reflecting the maximum units in a world.    
+	 * Constant reflecting the default maximum units in a world.
 	 */
-	private static final int MAX_UNITS = 100;
+	public static final int DEFAULT_MAX_UNITS = 100;
 	/**
-	 * Constant reflecting the maximum factions in a world.    
+	 * Constant reflecting the default maximum factions in a world.
 	 */
-	private static final int MAX_FACTIONS = 5;
+	public static final int DEFAULT_MAX_FACTIONS = 5;
+	/**
+	 * Constant reflecting the default number of instructions each task runner can execute per tick.
+	 */
+	public static final int DEFAULT_TASK_BUDGET = 100;
+	/**
+	 * Constant reflecting the default number of instructions all task runners together can execute per tick.
+	 */
+	public static final long DEFAULT_MAX_TASK_INSTRUCTIONS = 50_000L;
+
+	/**
+	 * Variable reflecting the maximum units in this world.
+	 */
+	private final int maxUnits;
+	/**
+	 * Variable reflecting the maximum factions in this world.
+	 */
+	private final int maxFactions;
+	/**
+	 * Variable reflecting the maximum units in each faction of this world.
+	 */
+	private final int maxUnitsPerFaction;
 	
 	/**
 	 * A list of vectors reflecting the directly adjacent directions of a cube.    
@@ -53,10 +83,9 @@ public class World implements IWorld {
 	 */
 	private static final int NB_NEIGHBOURING_DIRECTIONS = 26;
 	/**
-	 * A map of all passable positions.
-	 * Vector in CubeCoordinates.
+	 * Constant reflecting the number of random cubes getSpawnPosition tries, before it counts the passable cubes.
 	 */
-	private List<Vector> passableList = new ArrayList<>();
+	private static final int NB_SPAWN_SAMPLES = 64;
 
 	/**
 	 * Static initializer to set-up DIRECTLY_ADJACANT_ and NEIGHBOURING_ DIRECTIONS
@@ -111,7 +140,7 @@ public class World implements IWorld {
 	 * | for each faction in factions:
 	 * | ( (faction != null) )
 	 */
-	private final Set <Faction> factions = new HashSet<>(MAX_FACTIONS);
+	private final Set <Faction> factions = new LinkedHashSet<>();
 
 	/**
 	 * Initialize this new World with given Terrain Matrix and terrainChangeListener.
@@ -144,35 +173,123 @@ public class World implements IWorld {
 	 */
 	public World(int[][][] terrainTypes, TerrainChangeListener terrainChangeListener)
 			throws IllegalArgumentException {
-		this.terrainChangeListener = terrainChangeListener;
-		this.NbCubesX = terrainTypes.length;
-		this.NbCubesY = terrainTypes[0].length;
-		this.NbCubesZ = terrainTypes[0][0].length;
-		connectedToBorder = new ConnectedToBorder(this.getNbCubesX(), this.getNbCubesY(), this.getNbCubesZ());// Initialize connectedToBorder
-
-		// Construct this world:
-		for (int x = 0; x < getNbCubesX(); x++) {
-			for (int y = 0; y < getNbCubesY(); y++) {
-				if (terrainTypes[x].length != getNbCubesY())
-					throw new IllegalArgumentException("The Terrain Matrix' dimensions do not match.");
+		this(terrainTypes, terrainChangeListener, DEFAULT_MAX_UNITS, DEFAULT_MAX_FACTIONS, Faction.DEFAULT_MAX_UNITS);
+	}
 
-				for (int z = 0; z < getNbCubesZ(); z++) {
-					if (terrainTypes[x][y].length != getNbCubesZ())
-						throw new IllegalArgumentException("The Terrain Matrix' dimensions do not match.");
+	/**
+	 * Initialize this new World with given Terrain Matrix, terrainChangeListener and unit limits.
+	 *
+	 * @param  terrainTypes
+	 *         The Terrain Matrix for this new World.
+	 * @param  terrainChangeListener
+	 * 			The TerrainChangeListener which should be called when the Terrain of
+	 * 			a Cube in this World is changed.
+	 * @param  maxUnits
+	 * 			The maximum number of units in this new World.
+	 * @param  maxFactions
+	 * 			The maximum number of factions in this new World.
+	 * @param  maxUnitsPerFaction
+	 * 			The maximum number of units in each faction of this new World.
+	 * @effect The world is constructed based on the terrain types inside the Terrain Matrix,
+	 * 			as described in World(terrainTypes, terrainChangeListener).
+	 * @post The limits of this new world are set to the given limits.
+	 * 		| new.getMaxUnits() == maxUnits && new.getMaxFactions() == maxFactions &&
+	 * 		| new.getMaxUnitsPerFaction() == maxUnitsPerFaction
+	 * @throws IllegalArgumentException
+	 * 			When the given terrain matrix is not valid, or when one of the given limits is not positive.
+	 * 			| maxUnits < 1 || maxFactions < 1 || maxUnitsPerFaction < 1
+	 */
+	public World(int[][][] terrainTypes, TerrainChangeListener terrainChangeListener, int maxUnits, int maxFactions,
+				 int maxUnitsPerFaction) throws IllegalArgumentException {
+		this(toTerrainStore(terrainTypes), false, terrainChangeListener, maxUnits, maxFactions, maxUnitsPerFaction);
+	}
+
+	/**
+	 * Initialize this new World with the terrain of the given memory-mapped file and the default unit limits.
+	 * The terrain stays in the file: changes to the terrain of this world are written to it, and are guaranteed
+	 * to have reached it after a checkpoint.
+	 *
+	 * @param  terrain
+	 *         The memory-mapped terrain for this new World.
+	 * @param  terrainChangeListener
+	 * 			The TerrainChangeListener which should be called when the Terrain of
+	 * 			a Cube in this World is changed.
+	 * @effect The world is constructed with the terrain of the given file, as described in
+	 * 			World(terrain, terrainChangeListener, DEFAULT_MAX_UNITS, DEFAULT_MAX_FACTIONS, Faction.DEFAULT_MAX_UNITS)
+	 */
+	public World(MappedTerrain terrain, TerrainChangeListener terrainChangeListener) throws IllegalArgumentException {
+		this(terrain, terrainChangeListener, DEFAULT_MAX_UNITS, DEFAULT_MAX_FACTIONS, Faction.DEFAULT_MAX_UNITS);
+	}
+
+	/**
+	 * Initialize this new World with the terrain of the given memory-mapped file and the given unit limits.
+	 *
+	 * @param  terrain
+	 *         The memory-mapped terrain for this new World.
+	 * @effect The world is constructed as described in World(terrainTypes, terrainChangeListener, maxUnits,
+	 * 			maxFactions, maxUnitsPerFaction), with the terrain and border connectivity stored in the given file.
+	 * @throws IllegalArgumentException
+	 * 			When the given terrain backs another world already, or when one of the given limits is not positive.
+	 * 			| maxUnits < 1 || maxFactions < 1 || maxUnitsPerFaction < 1
+	 */
+	public World(MappedTerrain terrain, TerrainChangeListener terrainChangeListener, int maxUnits, int maxFactions,
+				 int maxUnitsPerFaction) throws IllegalArgumentException {
+		this(terrain, true, terrainChangeListener, maxUnits, maxFactions, maxUnitsPerFaction);
+	}
 
-					Vector position = new Vector(x, y, z);
-					Terrain terrain = Terrain.fromId(terrainTypes[x][y][z]);
-					Cube cube = new Cube(this, position, terrain, this::onTerrainChange);
-					CubeMap.put(position, cube);
-					if (terrain == Terrain.WORKSHOP)
-						this.workshops.add(cube);
+	/**
+	 * Initialize this new World with the terrain of the given store and the given unit limits.
+	 *
+	 * @param  connectivityKnown
+	 * 			Whether the store registers which solid cubes are not connected to the border. If not, the border
+	 * 			connectivity is computed from the terrain.
+	 */
+	World(TerrainStore terrain, boolean connectivityKnown, TerrainChangeListener terrainChangeListener,
+		  int maxUnits, int maxFactions, int maxUnitsPerFaction) throws IllegalArgumentException {
+		if(maxUnits < 1 || maxFactions < 1 || maxUnitsPerFaction < 1)
+			throw new IllegalArgumentException("The unit and faction limits of a world must be positive.");
+		terrain.claim();
+		this.maxUnits = maxUnits;
+		this.maxFactions = maxFactions;
+		this.maxUnitsPerFaction = maxUnitsPerFaction;
+		this.terrainChangeListener = terrainChangeListener;
+		this.terrain = terrain;
+		this.NbCubesX = terrain.getNbCubesX();
+		this.NbCubesY = terrain.getNbCubesY();
+		this.NbCubesZ = terrain.getNbCubesZ();
+		if (!connectivityKnown)
+			terrain.computeConnectivity();
 
-					if (cube.isPassable()) {
-						this.passableList.add(position);
-					}
+		// Construct this world, the cubes themselves are only created when they're used:
+		int index = 0;
+		for (int x = 0; x < getNbCubesX(); x++)
+			for (int y = 0; y < getNbCubesY(); y++)
+				for (int z = 0; z < getNbCubesZ(); z++, index++) {
+					if (terrain.getTerrain(index) == Terrain.WORKSHOP)
+						this.workshops.add(getCube(new Vector(x, y, z)));
 				}
+	}
+
+	/**
+	 * Return a new store on the heap with the terrain of the given Terrain Matrix.
+	 *
+	 * @throws IllegalArgumentException
+	 * 			When the given terrain matrix is not valid.
+	 */
+	private static TerrainStore toTerrainStore(int[][][] terrainTypes) throws IllegalArgumentException {
+		TerrainStore terrain = new TerrainStore.Heap(terrainTypes.length, terrainTypes[0].length, terrainTypes[0][0].length);
+		int index = 0;
+		for (int x = 0; x < terrain.getNbCubesX(); x++) {
+			if (terrainTypes[x].length != terrain.getNbCubesY())
+				throw new IllegalArgumentException("The Terrain Matrix' dimensions do not match.");
+			for (int y = 0; y < terrain.getNbCubesY(); y++) {
+				if (terrainTypes[x][y].length != terrain.getNbCubesZ())
+					throw new IllegalArgumentException("The Terrain Matrix' dimensions do not match.");
+				for (int z = 0; z < terrain.getNbCubesZ(); z++, index++)
+					terrain.setTerrain(index, Terrain.fromId(terrainTypes[x][y][z]));
 			}
 		}
+		return terrain;
 	}
 		
 
@@ -191,6 +308,157 @@ public class World implements IWorld {
 		return position.isInBetweenStrict(this.getMinPosition(), this.getMaxPosition());
 	}
 
+	/**
+	 * Return the maximum number of units in this world.
+	 */
+	@Basic
+	@Immutable
+	public int getMaxUnits(){
+		return this.maxUnits;
+	}
+
+	/**
+	 * Return the maximum number of factions in this world.
+	 */
+	@Basic
+	@Immutable
+	public int getMaxFactions(){
+		return this.maxFactions;
+	}
+
+	/**
+	 * Return the maximum number of units in each faction of this world.
+	 */
+	@Basic
+	@Immutable
+	public int getMaxUnitsPerFaction(){
+		return this.maxUnitsPerFaction;
+	}
+
+	/**
+	 * Variable referencing the cost model of the tasks executed in this world.
+	 */
+	private CostModel costModel = CostModel.DEFAULT;
+	/**
+	 * Variable registering the number of instructions each task runner can execute per tick.
+	 */
+	private int taskBudget = DEFAULT_TASK_BUDGET;
+	/**
+	 * Variable registering the number of instructions all task runners together can execute per tick.
+	 */
+	private long maxTaskInstructions = DEFAULT_MAX_TASK_INSTRUCTIONS;
+	/**
+	 * Variable registering the number of instructions claimed by task runners during the current tick.
+	 */
+	private long taskInstructions = 0L;
+	/**
+	 * Set registering the task runners which were refused instructions by the cap during the previous tick.
+	 * They can claim the instructions reserved for them before all other task runners during this tick.
+	 */
+	private Set<Task.TaskRunner> deferredTaskRunners = new HashSet<>();
+	/**
+	 * Set registering the task runners which were refused instructions by the cap during the current tick,
+	 * before they could claim any.
+	 */
+	private Set<Task.TaskRunner> refusedTaskRunners = new HashSet<>();
+	/**
+	 * Set registering the task runners which claimed a positive number of instructions during the current tick.
+	 */
+	private final Set<Task.TaskRunner> servedTaskRunners = new HashSet<>();
+	/**
+	 * Variable registering the number of instructions reserved for the deferred task runners which didn't
+	 * finish their slice yet during the current tick.
+	 */
+	private long reservedTaskInstructions = 0L;
+
+	@Override @Basic
+	public CostModel getCostModel(){
+		return this.costModel;
+	}
+
+	/**
+	 * Set the cost model of the tasks executed in this world.
+	 * @param costModel The new cost model.
+	 * @post | new.getCostModel() == costModel
+	 * @throws IllegalArgumentException
+	 * 			| costModel == null
+	 */
+	public void setCostModel(CostModel costModel) throws IllegalArgumentException {
+		if(costModel == null)
+			throw new IllegalArgumentException("The cost model can't be null.");
+		this.costModel = costModel;
+	}
+
+	@Override @Basic
+	public int getTaskBudget(){
+		return this.taskBudget;
+	}
+
+	/**
+	 * Return the number of instructions all task runners of this world together can execute per tick.
+	 */
+	@Basic
+	public long getMaxTaskInstructions(){
+		return this.maxTaskInstructions;
+	}
+
+	/**
+	 * Set the instruction budgets of the tasks executed in this world.
+	 * @param taskBudget The number of instructions each task runner can execute per tick.
+	 * @param maxTaskInstructions The number of instructions all task runners together can execute per tick.
+	 * @post | new.getTaskBudget() == taskBudget && new.getMaxTaskInstructions() == maxTaskInstructions
+	 * @throws IllegalArgumentException
+	 * 			When one of the budgets is not positive.
+	 * 			| taskBudget < 1 || maxTaskInstructions < 1
+	 */
+	public void setTaskBudgets(int taskBudget, long maxTaskInstructions) throws IllegalArgumentException {
+		if(taskBudget < 1 || maxTaskInstructions < 1)
+			throw new IllegalArgumentException("The task budgets must be strictly positive.");
+		this.taskBudget = taskBudget;
+		this.maxTaskInstructions = maxTaskInstructions;
+	}
+
+	/**
+	 * Claim the given number of instructions from the instruction cap of the current tick for the given runner.
+	 * A claim never exceeds the cap, except the first claim of a tick, so a statement costing more than
+	 * the cap can't block forever. Each runner refused by the cap before it claimed any instructions during
+	 * the current tick gets a reservation of one task budget for the next tick, which other runners can't claim
+	 * until it finished its slice. The runners advanced last in a tick thus run first in the next tick,
+	 * instead of being refused each tick.
+	 */
+	@Override
+	public boolean claimTaskInstructions(Task.TaskRunner runner, int cost){
+		long available = maxTaskInstructions - taskInstructions;
+		boolean isDeferred = deferredTaskRunners.contains(runner);
+		if(!isDeferred)
+			available -= reservedTaskInstructions;
+		if(cost > available && (taskInstructions > 0 || (!isDeferred && reservedTaskInstructions > 0))){
+			if(!servedTaskRunners.contains(runner))
+				refusedTaskRunners.add(runner);
+			return false;
+		}
+		taskInstructions += cost;
+		if(cost > 0)
+			servedTaskRunners.add(runner);
+		return true;
+	}
+
+	/**
+	 * Release the instructions reserved for the given runner during the current tick, because it finished its slice.
+	 */
+	@Override
+	public void finishTaskSlice(Task.TaskRunner runner){
+		if(deferredTaskRunners.remove(runner))
+			reservedTaskInstructions = Math.max(0L, reservedTaskInstructions - taskBudget);
+	}
+
+	/**
+	 * Return the number of instructions claimed by task runners during the current tick.
+	 */
+	public long getNbTaskInstructions(){
+		return this.taskInstructions;
+	}
+
 	/**
 	 * Return the number of x-cubes of this world.
 	 */
@@ -242,11 +510,16 @@ public class World implements IWorld {
 	 * 			| result.isDefaultActive() == enableDefaultBehavior
      */
 	public Unit spawnUnit(boolean enableDefaultBehavior){
-		// addUnit is called inside Unit's constructor
-		Unit unit = new Unit(this);
-		if(enableDefaultBehavior)
-			unit.startDefaultBehaviour();
-		return unit;
+		Random previousRandom = bindRandom();
+		try {
+			// addUnit is called inside Unit's constructor
+			Unit unit = new Unit(this);
+			if(enableDefaultBehavior)
+				unit.startDefaultBehaviour();
+			return unit;
+		} finally {
+			Utils.bindRandom(previousRandom);
+		}
 	}
 
 	/**
@@ -265,9 +538,9 @@ public class World implements IWorld {
 	 * 		 Otherwise the unit is added to the faction containing
 	 * 		 the least units.
 	 * 		 | Faction f = this.getFactionWithLeastUnits()
-	 * 		 | if(this.factions.size()<MAX_FACTIONS)
+	 * 		 | if(this.factions.size()<this.getMaxFactions())
 	 * 		 |		(new this).getNbFactions() == this.getNbFactions()+1
-	 * 		 |		f = new Faction()
+	 * 		 |		f = new Faction(this.getMaxUnitsPerFaction())
 	 * 		 | unit.getFaction() == f
 	 */
 	@Override
@@ -276,10 +549,11 @@ public class World implements IWorld {
 		// Bind unit to this world
 		unit.setWorld(this);
 		units.add(unit);
+		activeUnits.add(unit);
 
 		Faction f;
-		if(this.factions.size()<MAX_FACTIONS) {
-			f = new Faction();
+		if(this.factions.size()<this.getMaxFactions()) {
+			f = new Faction(this.getMaxUnitsPerFaction());
 			this.addFaction(f);
 		}else {
 			f = getFactionWithLeastUnits();
@@ -287,6 +561,24 @@ public class World implements IWorld {
 		// Bind unit to its faction
 		f.addUnit(unit);
 		unit.setFaction(f);
+		updateUnitCube(unit);
+	}
+
+	/**
+	 * Add the given unit, restored from a snapshot, to this world and to the given faction of this world.
+	 * Unlike addUnit, the faction isn't chosen by this world.
+	 * @param unit The unit to be added.
+	 * @param faction The faction of this world the unit belongs to.
+	 * @pre | canHaveAsUnit(unit) && hasAsFaction(faction) && faction.canHaveNewUnit()
+	 * @post | new.hasAsUnit(unit) && unit.getFaction() == faction
+	 */
+	void restoreUnit(Unit unit, Faction faction){
+		assert canHaveAsUnit(unit) && hasAsFaction(faction) && faction.canHaveNewUnit();
+		units.add(unit);
+		activeUnits.add(unit);
+		faction.addUnit(unit);
+		unit.setFaction(faction);
+		updateUnitCube(unit);
 	}
 
 	/**
@@ -328,10 +620,10 @@ public class World implements IWorld {
 	 * | for each faction in Faction:
 	 * | if (hasAsFaction(faction))
 	 * | then canHaveAsFaction(faction)
-	 * | if(this.getNbFactions()>MAX_FACTIONS) result == false
+	 * | if(this.getNbFactions()>this.getMaxFactions()) result == false
 	 */
 	public boolean hasProperFactions() {
-		if(this.getNbFactions()>MAX_FACTIONS) return false;
+		if(this.getNbFactions()>this.getMaxFactions()) return false;
 		for (Faction faction: factions) {
 			if (!canHaveAsFaction(faction))
 			    return false;
@@ -359,12 +651,12 @@ public class World implements IWorld {
 	 * this world. And this world has not the maximum number of
 	 * allowed factions yet.
 	 * | (faction != null) && (faction.getWorld() == this) &&
-	 * | this.getNbFactions()<MAX_FACTIONS
+	 * | this.getNbFactions()<this.getMaxFactions()
 	 * @post This world has the given faction as one of its factions.
 	 * | new.hasAsFaction(faction)
 	 */
 	public void addFaction(Faction faction) {
-		assert canHaveAsFaction(faction) && this.getNbFactions()<MAX_FACTIONS;
+		assert canHaveAsFaction(faction) && this.getNbFactions()<this.getMaxFactions();
 		this.factions.add(faction);
 	}
 
@@ -386,7 +678,14 @@ public class World implements IWorld {
 	 * 			| foreach(Faction f in result : this.hasAsFaction(f))
      */
 	public Set<Faction> getFactions(){
-		return new HashSet<>(factions);
+		return new LinkedHashSet<>(factions);
+	}
+
+	/**
+	 * Return a read-only view on the factions of this world, in the order they were added.
+	 */
+	Set<Faction> getFactionsView(){
+		return Collections.unmodifiableSet(factions);
 	}
 
 	/**
@@ -416,7 +715,7 @@ public class World implements IWorld {
 	 */
 	@Raw
 	public boolean canHaveAsUnit(Unit unit) {
-		return (unit != null) && (this.getNbUnits() < MAX_UNITS);// TODO: dit klopt niet
+		return (unit != null) && (this.getNbUnits() < this.getMaxUnits());// TODO: dit klopt niet
 	}
 	/**
 	 * Check whether this world has proper units attached to it.
@@ -467,6 +766,9 @@ public class World implements IWorld {
 	public void removeUnit(Unit unit) {
 		assert this.hasAsUnit(unit) && unit.isTerminated();
 		units.remove(unit);
+		activeUnits.remove(unit);
+		wakeUpQueue.remove(unit);
+		updateUnitCube(unit);
 	}
 	/**
 	 * Variable referencing a set collecting all the units
@@ -480,11 +782,21 @@ public class World implements IWorld {
 	 * | ( (unit != null) &&
 	 * | (! unit.isTerminated()) )
 	 */
-	private final Set<Unit> units = new HashSet <>(MAX_UNITS);
+	private final Set<Unit> units = new LinkedHashSet<>();
 	
 	@Override
 	public Set<Unit> getUnits(){
-		return new HashSet<>(units);
+		return new LinkedHashSet<>(units);
+	}
+
+	/**
+	 * Return a read-only view on the units of this world.
+	 * Unlike getUnits(), the units are not copied, so the result must not be
+	 * iterated while units are added to or removed from this world.
+	 */
+	@Override
+	public Set<Unit> getUnitsView(){
+		return Collections.unmodifiableSet(units);
 	}
 
 	/**
@@ -496,10 +808,10 @@ public class World implements IWorld {
 	 * | ( (workshop != null) &&
 	 * | (! workshop == Terrain.WORKSHOP) )
 	 */
-	private final Set<Cube> workshops = new HashSet<>();
+	private final Set<Cube> workshops = new LinkedHashSet<>();
 	
 	public Set<Cube> getWorkshops(){
-		return new HashSet<>(workshops);
+		return new LinkedHashSet<>(workshops);
 	}
 	/**
 	 * Remove the given workshop from the set of workshops of this world.
@@ -520,22 +832,96 @@ public class World implements IWorld {
 		workshops.remove(workshop);
 	}
 	
-	private Map<Vector, Cube> CubeMap = new HashMap<Vector , Cube>();
-	
+	/**
+	 * Variable referencing the store keeping the terrain of the cubes of this world.
+	 */
+	private final TerrainStore terrain;
+
+	TerrainStore getTerrainStore(){
+		return terrain;
+	}
+
+	/**
+	 * Map registering the cubes of this world which have been used. The other cubes only exist in the terrain store.
+	 * The cubes are only referenced weakly, so a cube is only kept as long as it's used elsewhere, for instance as
+	 * the owner of a material or as a workshop. Otherwise it's created again from the terrain store when needed.
+	 */
+	private final Map<Vector, CubeReference> CubeMap = new HashMap<>();
+	/**
+	 * Queue collecting the references of the cubes which are no longer used, so they can be removed from CubeMap.
+	 */
+	private final ReferenceQueue<Cube> releasedCubes = new ReferenceQueue<>();
+
+	/**
+	 * Class referencing a cube of CubeMap weakly, together with its key.
+	 */
+	private static final class CubeReference extends WeakReference<Cube> {
+
+		private final Vector cubeCoordinates;
+
+		private CubeReference(Cube cube, ReferenceQueue<Cube> queue){
+			super(cube, queue);
+			this.cubeCoordinates = cube.getPosition();
+		}
+	}
+
+	/**
+	 * Return the cube at the given cube coordinates if it has been created already and is still used, or null otherwise.
+	 */
+	Cube getCreatedCube(Vector cubeCoordinates){
+		CubeReference reference = this.CubeMap.get(cubeCoordinates);
+		return reference == null ? null : reference.get();
+	}
+
+	/**
+	 * Remove the cubes which are no longer used from CubeMap.
+	 */
+	private void removeReleasedCubes(){
+		CubeReference reference;
+		while((reference = (CubeReference) releasedCubes.poll()) != null)
+			CubeMap.remove(reference.cubeCoordinates, reference);
+	}
+
+	/**
+	 * Return the cube coordinates of the cube with the given index in the terrain store.
+	 */
+	private Vector getCubeCoordinates(int index){
+		return new Vector(index / getNbCubesZ() / getNbCubesY(), (index / getNbCubesZ()) % getNbCubesY(), index % getNbCubesZ());
+	}
+
+	/**
+	 * Get the terrain of the cube at the given position, without creating the cube.
+	 * @param cubeCoordinates The position of the cube
+	 * @return The terrain of the cube at the given position
+	 * @throws IllegalArgumentException
+	 * 			When the given position is not a valid position in this World.
+	 * 			| !isValidPosition(cubeCoordinates)
+	 */
+	public Terrain getTerrain(Vector cubeCoordinates) throws IllegalArgumentException {
+		if(!isValidPosition(cubeCoordinates))
+			throw new IllegalArgumentException("The given coordinates do not reference a valid position.");
+		return terrain.getTerrain(terrain.getIndex(cubeCoordinates.cubeX(), cubeCoordinates.cubeY(), cubeCoordinates.cubeZ()));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see hillbillies.model.IWorld#isCubePassable(hillbillies.utils.Vector)
 	 */
 	@Override
 	public boolean isCubePassable(Vector cubeCoordinates){
-		return getCube(cubeCoordinates).isPassable();
+		return getTerrain(cubeCoordinates).isPassable();
 	}
 	
+	/**
+	 * Return a random position of a unit standing in this world. The cube of the position is found by trying
+	 * random cubes until a passable one is found. After NB_SPAWN_SAMPLES tries, the passable cubes are counted
+	 * and one of them is picked at random, so each passable cube is equally likely either way.
+	 * @throws IllegalStateException
+	 * 			When there are no passable cubes in this world.
+	 */
 	@Override
 	public Vector getSpawnPosition() throws IllegalStateException{
-		if(passableList.isEmpty())
-			throw new IllegalStateException("There are no passable cube in this world");
-		Vector position = passableList.get(randInt(0, passableList.size()-1));
+		Vector position = getCubeCoordinates(getRandomPassableCube());
 		Vector lower = new Vector(0,0,-Cube.CUBE_SIDE_LENGTH);
 		while(!CorrectSpawnPosition(position)){
 			position = position.add(lower);
@@ -548,6 +934,31 @@ public class World implements IWorld {
 	}
 	
 	
+	/**
+	 * Return the index in the terrain store of a random passable cube.
+	 * @throws IllegalStateException
+	 * 			When there are no passable cubes in this world.
+	 */
+	private int getRandomPassableCube() throws IllegalStateException {
+		int nbCubes = terrain.getNbCubes();
+		for(int i = 0; i < NB_SPAWN_SAMPLES; i++){
+			int index = randInt(0, nbCubes-1);
+			if(terrain.getTerrain(index).isPassable())
+				return index;
+		}
+		int nbPassableCubes = 0;
+		for(int index = 0; index < nbCubes; index++)
+			if(terrain.getTerrain(index).isPassable())
+				nbPassableCubes++;
+		if(nbPassableCubes == 0)
+			throw new IllegalStateException("There are no passable cube in this world");
+		int remaining = randInt(0, nbPassableCubes-1);
+		int index = 0;
+		while(!terrain.getTerrain(index).isPassable() || remaining-- > 0)
+			index++;
+		return index;
+	}
+
 	protected boolean CorrectSpawnPosition(Vector position) {// TODO: waarom dit niet vervangen door unit.isValidPosition?
 		if(this.isValidPosition(position) && this.isCubePassable(position) && (position.cubeZ() ==0 || !this.isCubePassable(new Vector(position.X(),position.Y(),position.Z()-1))))
 			return true;
@@ -565,18 +976,28 @@ public class World implements IWorld {
 	public Cube getCube(Vector cubeCoordinates) throws IllegalArgumentException{
 		if(!isValidPosition(cubeCoordinates))
 			throw new IllegalArgumentException("The given coordinates do not reference a valid position.");
-		return this.CubeMap.get(cubeCoordinates);
+		Cube cube = getCreatedCube(cubeCoordinates);
+		if(cube == null){
+			Vector position = new Vector(cubeCoordinates.cubeX(), cubeCoordinates.cubeY(), cubeCoordinates.cubeZ());
+			cube = getCreatedCube(position);
+			if(cube == null){
+				removeReleasedCubes();
+				cube = new Cube(this, position, this::onTerrainChange);
+				this.CubeMap.put(position, new CubeReference(cube, releasedCubes));
+			}
+		}
+		return cube;
 	}
 
 	@Override
 	public Set<Cube> getDirectlyAdjacentCubes(Vector cubeCoordinates){
-		Set<Cube> result = new HashSet<>(NB_DIRECTLY_ADJACENT_DIRECTIONS);
+		Set<Cube> result = new LinkedHashSet<>(NB_DIRECTLY_ADJACENT_DIRECTIONS);
 		getDirectlyAdjacentCubesSatisfying(result, cubeCoordinates, cube -> true, cube -> cube);
 		return result;
 	}
 
 	public Set<Cube> getNeighbouringCubes(Vector cubeCoordinates){
-		Set<Cube> result = new HashSet<>(NB_NEIGHBOURING_DIRECTIONS);
+		Set<Cube> result = new LinkedHashSet<>(NB_NEIGHBOURING_DIRECTIONS);
 		getNeighbouringCubesSatisfying(result, cubeCoordinates, cube -> true, cube -> cube);
 		return result;
 	}
@@ -611,8 +1032,11 @@ public class World implements IWorld {
 	public <T> void getDirectlyAdjacentCubesSatisfying(Collection<T> collection, Vector cubeCoordinates, Predicate<Cube> condition, Function<Cube, T> mapper){
 		for(Vector adjacentDirection : DIRECTLY_ADJACENT_DIRECTIONS) {
 			Vector adjacentPos = cubeCoordinates.add(adjacentDirection);
-			if (isValidPosition(adjacentPos) && condition.test(this.getCube(adjacentPos)))
-				collection.add(mapper.apply(this.getCube(adjacentPos)));
+			if (isValidPosition(adjacentPos)) {
+				Cube cube = this.getCube(adjacentPos);
+				if (condition.test(cube))
+					collection.add(mapper.apply(cube));
+			}
 		}
 	}
 
@@ -638,8 +1062,11 @@ public class World implements IWorld {
 	public <T> void getNeighbouringCubesSatisfying(Collection<T> collection, Vector cubeCoordinates, Predicate<Cube> condition, Function<Cube, T> mapper){
 		for(Vector neighbouringDirection : NEIGHBOURING_DIRECTIONS) {
 			Vector neighbouringPos = cubeCoordinates.add(neighbouringDirection);
-			if (isValidPosition(neighbouringPos) && condition.test(this.getCube(neighbouringPos)))
-				collection.add(mapper.apply(this.getCube(neighbouringPos)));
+			if (isValidPosition(neighbouringPos)) {
+				Cube cube = this.getCube(neighbouringPos);
+				if (condition.test(cube))
+					collection.add(mapper.apply(cube));
+			}
 		}
 	}
 
@@ -671,32 +1098,78 @@ public class World implements IWorld {
 	public boolean isAdjacentSolid(Vector position){
 		if(position.cubeZ() == 0)
 			return true;
-		Collection<Cube> solidAdjacentCubes = new ArrayList<>();
-		this.getDirectlyAdjacentCubesSatisfying(
-				solidAdjacentCubes, position.getCubeCoordinates(), cube -> !cube.isPassable(), cube -> cube
-		);
-		return !solidAdjacentCubes.isEmpty();
+		for(Vector adjacentPos : getDirectlyAdjacentCubesPositions(position.getCubeCoordinates()))
+			if(!this.isCubePassable(adjacentPos))
+				return true;
+		return false;
 	}
 
 	public boolean isLowerSolid(Vector position){
 		if(position.cubeZ() == 0)
 			return true;
-		if(!this.getCube(position.getCubeCoordinates().add(new Vector(0,0,-1))).isPassable())
+		if(!this.isCubePassable(position.getCubeCoordinates().add(new Vector(0,0,-1))))
 			return true;
 		return false;
 	}
 
-	public void advanceTime(double dt){
-		unitsByCubePosition.clear();
-		for(Unit unit : units){
+	public void advanceTime(double dt) throws IllegalStateException{
+		if(this.isTerminated)
+			throw new IllegalStateException("A terminated world can't be advanced.");
+		Random previousRandom = bindRandom();
+		try {
+			advanceTick(dt);
+		} finally {
+			Utils.bindRandom(previousRandom);
+		}
+	}
+
+	/**
+	 * Advance the state of this world by a single tick of the given time period.
+	 */
+	private void advanceTick(double dt){
+		TickProfiler profiler = this.profiler;
+		long phaseStart = profiler == null ? 0L : System.nanoTime();
+		double tickStart = this.time;
+		this.time += dt;
+		unitIndex.clearCache();
+		taskInstructions = 0L;
+		deferredTaskRunners = refusedTaskRunners;
+		refusedTaskRunners = new HashSet<>();
+		servedTaskRunners.clear();
+		reservedTaskInstructions = Math.min(maxTaskInstructions, (long) deferredTaskRunners.size() * taskBudget);
+		// Wake up the units whose activity needs to be checked again during this tick
+		wakeUpQueue.pollDue(tickStart, wakeUp -> {
+			wakeUp.unit.skipTime(tickStart - wakeUp.since);
+			activeUnits.add(wakeUp.unit);
+		});
+		// Hand out the assignable tasks to the idle units, before they look for a task themselves
+		for(Faction faction : factions)
+			faction.getScheduler().assignTasks(faction.getUnitsView());
+		for(Unit unit : activeUnits.toArray(new Unit[activeUnits.size()])){
+			if(unit.isTerminated())
+				continue;
 			unit.advanceTime(dt);
-			if(!unitsByCubePosition.containsKey(unit.getPosition().getCubeCoordinates()))
-				unitsByCubePosition.put(unit.getPosition().getCubeCoordinates(), new HashSet<>());
-			unitsByCubePosition.get(unit.getPosition().getCubeCoordinates()).add(unit);
+			updateUnitCube(unit);
+			if(profiler != null)
+				profiler.countUnit();
+			double idleTime = unit.getIdleTime(dt);
+			if(idleTime > dt && !unit.isTerminated()){
+				// Only waiting for its activity to complete => skip this unit until then
+				activeUnits.remove(unit);
+				wakeUpQueue.sleep(unit, this.time, this.time + idleTime);
+			}
+		}
+		if(profiler != null){
+			profiler.record(TickProfiler.Phase.UNITS, phaseStart);
+			phaseStart = System.nanoTime();
 		}
 		for(Material m : materials){
 			m.advanceTime(dt);
 		}
+		if(profiler != null){
+			profiler.record(TickProfiler.Phase.MATERIALS, phaseStart);
+			phaseStart = System.nanoTime();
+		}
 		//COLLAPSING CUBES
 		Iterator<Vector> cubeIterator = CollapsingCubes.keySet().iterator();
 		while(cubeIterator.hasNext()){
@@ -711,63 +1184,442 @@ public class World implements IWorld {
 				CollapsingCubes.replace(cube, time+dt);
 
 		}
+		if(profiler != null){
+			profiler.record(TickProfiler.Phase.COLLAPSE, phaseStart);
+			phaseStart = System.nanoTime();
+		}
+		if(autosave != null)
+			autosave.afterTick();
+		if(profiler != null){
+			profiler.record(TickProfiler.Phase.AUTOSAVE, phaseStart);
+			profiler.endTick();
+		}
 	}
 
 	public void collapse(Vector coordinate) {
+		CubeCollapseEvent event = new CubeCollapseEvent();
+		event.begin();
 		Vector CubeCoor = coordinate.getCubeCoordinates();
 		Cube cube  = getCube(CubeCoor);
 		Terrain cubeTerrain = cube.getTerrain();
+		Material dropped = null;
 		if (cubeTerrain == Terrain.ROCK){
 			if (randInt(0, 99) < 25)
 				//cubeTerrain = Terrain.AIR;
-				new Boulder(this,cube);
+				dropped = new Boulder(this,cube);
 		}
 		else if (cubeTerrain == Terrain.WOOD){
 			if (randInt(0, 99) < 25)
 				//cubeTerrain = Terrain.AIR;
-				new Log(this,cube);
+				dropped = new Log(this,cube);
 		}
 		else if (cubeTerrain == Terrain.WORKSHOP){
 			this.removeWorkshop(cube);			
 		}
 		cube.setTerrain(Terrain.AIR);
-		this.passableList.add(CubeCoor);
+		event.end();
+		if(event.shouldCommit()){
+			event.x = CubeCoor.cubeX();
+			event.y = CubeCoor.cubeY();
+			event.z = CubeCoor.cubeZ();
+			event.terrain = cubeTerrain.name();
+			event.materialDropped = dropped == null ? null : dropped.getClass().getSimpleName();
+			event.commit();
+		}
+		if(profiler != null)
+			profiler.countCollapse();
+	}
+
+	/**
+	 * Variable referencing the profiler of this world, or null if profiling is disabled.
+	 */
+	private TickProfiler profiler = null;
+
+	/**
+	 * Counter used to give each profiled world a unique name.
+	 */
+	private static final AtomicLong profiledWorlds = new AtomicLong();
+
+	/**
+	 * Get the profiler collecting the tick statistics of this world.
+	 * @return The active profiler, or null if profiling is disabled for this world.
+	 */
+	@Basic
+	@Override
+	public TickProfiler getProfiler(){
+		return this.profiler;
+	}
+
+	/**
+	 * Check whether profiling is enabled for this world.
+	 */
+	public boolean isProfilingEnabled(){
+		return this.profiler != null;
+	}
+
+	/**
+	 * Start profiling the ticks of this world and publish the profiler on the platform MBean server.
+	 * @post Profiling is enabled for this world.
+	 * 		| new.isProfilingEnabled()
+	 * @throws IllegalStateException
+	 * 			When the profiler could not be registered on the platform MBean server.
+	 */
+	public void enableProfiling() throws IllegalStateException{
+		if(this.profiler != null) return;
+		TickProfiler profiler = new TickProfiler();
+		profiler.register("world-" + profiledWorlds.getAndIncrement());
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Stop profiling the ticks of this world and remove its profiler from the platform MBean server.
+	 * @post Profiling is disabled for this world.
+	 * 		| !new.isProfilingEnabled()
+	 */
+	public void disableProfiling(){
+		if(this.profiler == null) return;
+		this.profiler.unregister();
+		this.profiler = null;
+	}
+
+
+	/**
+	 * Variable referencing the autosave of this world, or null if autosaving is disabled.
+	 */
+	private Autosave autosave = null;
+
+	/**
+	 * Get the autosave capturing snapshots of this world.
+	 * @return The active autosave, or null if autosaving is disabled for this world.
+	 */
+	@Basic
+	public Autosave getAutosave(){
+		return this.autosave;
+	}
+
+	/**
+	 * Start saving snapshots of this world to the given directory, each time the given amount of game-time has passed.
+	 * The snapshots are captured at the end of a tick and written by a background thread, while this world is advanced further.
+	 * An autosave which was enabled before is disabled first.
+	 * @param directory The directory to write the snapshots to.
+	 * @param interval The game-time between two snapshots.
+	 * @param maxRetained The number of snapshots kept in the directory, older snapshots are deleted.
+	 * @return The new autosave of this world.
+	 * @effect | disableAutosave()
+	 * @post | new.getAutosave() != null
+	 * @throws IllegalArgumentException
+	 * 			When the directory is null, the interval isn't strictly positive or no snapshots would be retained.
+	 */
+	public Autosave enableAutosave(Path directory, double interval, int maxRetained) throws IllegalArgumentException{
+		Autosave autosave = new Autosave(this, directory, interval, maxRetained);
+		this.disableAutosave();
+		this.autosave = autosave;
+		return autosave;
+	}
+
+	/**
+	 * Stop saving snapshots of this world. Snapshots which are being written are finished first.
+	 * @post | new.getAutosave() == null
+	 */
+	public void disableAutosave(){
+		if(this.autosave == null) return;
+		this.autosave.close();
+	}
+
+	/**
+	 * Stop using the given autosave, if it is the autosave of this world. This is called by the
+	 * autosave when it is closed.
+	 * @post | if (getAutosave() == autosave) new.getAutosave() == null
+	 */
+	void detachAutosave(Autosave autosave){
+		if(this.autosave == autosave)
+			this.autosave = null;
+	}
+
+	/**
+	 * Terminate this world. The tasks of its units are descheduled, which stops their execution, and its
+	 * autosave is disabled. A terminated world can't be advanced anymore.
+	 * @effect | for each unit in units:
+	 * 		   |	if (unit.getTask() != null)
+	 * 		   |		unit.getFaction().getScheduler().deschedule(unit.getTask())
+	 * @effect | disableAutosave()
+	 * @post | new.isTerminated()
+	 */
+	public void terminate(){
+		this.isTerminated = true;
+		for(Unit unit : units)
+			if(unit.getTask() != null)
+				unit.getFaction().getScheduler().deschedule(unit.getTask());
+		this.disableAutosave();
+	}
+
+	/**
+	 * Check whether this world is terminated.
+	 */
+	@Basic
+	public boolean isTerminated(){
+		return this.isTerminated;
+	}
+
+	/**
+	 * Variable registering whether this world is terminated.
+	 */
+	private boolean isTerminated = false;
+
+	/**
+	 * Index registering the units of this world by cube and faction, and caching nearest-unit queries.
+	 */
+	private final UnitIndex unitIndex = new UnitIndex(UnitIndex.DEFAULT_SEARCH_RADIUS);
+
+	/**
+	 * Move the given unit to the right cube in unitIndex after its position, faction or falling state changed.
+	 */
+	private void updateUnitCube(Unit unit){
+		unitIndex.update(unit);
+	}
+
+	/**
+	 * Return the unit nearest to the given unit, in path distance, which is a candidate of the given query.
+	 * Answers are cached until the next tick or terrain change, or until a unit which can change the answer
+	 * enters, leaves or changes cube, or changes faction or falling state.
+	 * Candidates within a bounded radius are searched first, before searching a path towards all candidates.
+	 * @param unit The unit making the query.
+	 * @param query The kind of units to search.
+	 * @return The nearest reachable candidate, or null if there is none.
+	 */
+	@Override
+	public Unit getNearestUnit(Unit unit, NearestUnitQuery query){
+		return unitIndex.getNearestUnit(unit, query);
+	}
+
+	/**
+	 * Return the number of nearest-unit queries of this world which were answered from the cache.
+	 */
+	public long getNbCachedUnitQueries(){
+		return unitIndex.getCacheHits();
+	}
+
+	/**
+	 * Return the number of nearest-unit queries of this world which needed a search.
+	 */
+	public long getNbSearchedUnitQueries(){
+		return unitIndex.getCacheMisses();
+	}
+
+	/**
+	 * Variable registering the game-time of this world, which is the sum of all dt's given to advanceTime.
+	 */
+	private double time = 0d;
+
+	/**
+	 * Return the game-time of this world.
+	 */
+	@Basic
+	public double getTime(){
+		return this.time;
+	}
+
+	/**
+	 * Set the game-time of this world. Only used to restore a world from a snapshot.
+	 */
+	void restoreTime(double time){
+		this.time = time;
+	}
+
+	/**
+	 * Variable registering the seed of the random generator of this world.
+	 */
+	private long seed = ThreadLocalRandom.current().nextLong();
+
+	/**
+	 * Variable referencing the random generator of this world, which generates all random values used while
+	 * this world is advanced or while units are spawned in it.
+	 */
+	private Random random = new Random(seed);
+
+	/**
+	 * Return the seed of the random generator of this world.
+	 * A world whose random generator is reset with this seed behaves the same when it's given the same
+	 * commands between the same ticks.
+	 */
+	@Basic
+	public long getSeed(){
+		return this.seed;
+	}
+
+	/**
+	 * Reset the random generator of this world with the given seed.
+	 * @post The seed of this world equals the given seed.
+	 * 		| new.getSeed() == seed
+	 */
+	public void setSeed(long seed){
+		this.seed = seed;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Bind the random generator of this world to the current thread, so the random values generated by
+	 * commands given to this world are reproducible from its seed.
+	 * @return The generator which was bound to the current thread before, which must be restored
+	 * 			with Utils.bindRandom afterwards.
+	 */
+	public Random bindRandom(){
+		return Utils.bindRandom(random);
+	}
+
+	/**
+	 * Set collecting the units of this world which are advanced every tick.
+	 * The other units of this world are registered in wakeUpQueue.
+	 */
+	private final Set<Unit> activeUnits = new LinkedHashSet<>();
+
+	/**
+	 * Queue registering the units of this world which are waiting for an activity to complete.
+	 */
+	private final WakeUpQueue wakeUpQueue = new WakeUpQueue();
+
+	/**
+	 * Make sure the given unit is advanced again from the next tick on, because
+	 * its activities changed outside of its own advanceTime.
+	 * @param unit The unit to wake up.
+	 * @effect If the unit was sleeping, it catches up on the game-time it was skipped.
+	 * 		| unit.skipTime(this.getTime() - sleepStart)
+	 */
+	@Override
+	public void wakeUnit(Unit unit){
+		double since = wakeUpQueue.remove(unit);
+		if(!Double.isNaN(since)){
+			unit.skipTime(this.time - since);
+			activeUnits.add(unit);
+		}
+	}
+
+	private void wakeUnitsInCube(Vector cubeCoordinates){
+		Set<Unit> unitsInCube = unitIndex.getUnitsInCube(cubeCoordinates);
+		if(unitsInCube != null)
+			for(Unit unit : unitsInCube)
+				wakeUnit(unit);
+	}
+
+	/**
+	 * Return the game-time the given unit has been skipped by advanceTime, which it will catch up on when it
+	 * wakes up, or zero if it isn't sleeping.
+	 */
+	double getSkippedTime(Unit unit){
+		double since = wakeUpQueue.getSince(unit);
+		return Double.isNaN(since) ? 0d : this.time - since;
+	}
+
+	/**
+	 * Return the number of units of this world which are currently skipped by advanceTime.
+	 */
+	public int getNbSleepingUnits(){
+		return wakeUpQueue.size();
 	}
 
 
-	private final Map<Vector, Set<Unit>> unitsByCubePosition = new HashMap<>();
-	
 	@Override
 	public Set<Unit> getUnitsInCube(Cube cube){
-		return unitsByCubePosition.getOrDefault(cube.getPosition(), new HashSet<>());
+		Set<Unit> unitsInCube = unitIndex.getUnitsInCube(cube.getPosition());
+		return unitsInCube == null ? new LinkedHashSet<>() : unitsInCube;
 	}
 
-	public final ConnectedToBorder connectedToBorder;
+	/**
+	 * Check whether the cube at the given cube coordinates is solid and connected to the border through directly
+	 * adjacent solid cubes.
+	 * @throws IllegalArgumentException
+	 * 			When the given coordinates do not reference a cube of this world.
+	 */
+	public boolean isSolidConnectedToBorder(int x, int y, int z) throws IllegalArgumentException {
+		if(x < 0 || x >= getNbCubesX() || y < 0 || y >= getNbCubesY() || z < 0 || z >= getNbCubesZ())
+			throw new IllegalArgumentException("The given coordinates do not reference a valid position.");
+		return terrain.isSolidConnectedToBorder(terrain.getIndex(x, y, z));
+	}
 
 	public void onTerrainChange(Terrain oldTerrain, Cube cube){
+		// Paths between units might have changed
+		unitIndex.clearCache();
 		int x = (int)cube.getPosition().X();
 		int y = (int)cube.getPosition().Y();
 		int z = (int)cube.getPosition().Z();
 		if(oldTerrain!=null) {
+			int index = terrain.getIndex(x, y, z);
+			long listenerStart = profiler == null ? 0L : System.nanoTime();
 			terrainChangeListener.notifyTerrainChanged(x, y, z);
+			if(profiler != null)
+				profiler.record(TickProfiler.Phase.LISTENERS, listenerStart);
 			if (cube.isPassable() && !oldTerrain.isPassable()){
-				List<int[]> changingCubes = connectedToBorder.changeSolidToPassable(x, y, z);
-				for (int[] coord : changingCubes){
-					Vector coordi = new Vector(coord[0], coord[1], coord[2]);
+				BorderConnectivityEvent event = new BorderConnectivityEvent();
+				event.begin();
+				int[] changingCubes = terrain.changeSolidToPassable(index);
+				event.end();
+				commitBorderConnectivityEvent(event, x, y, z, false, changingCubes.length);
+				for (int changingCube : changingCubes){
+					Vector coordi = getCubeCoordinates(changingCube);
 					if(!CollapsingCubes.containsKey(coordi))
 							CollapsingCubes.put(coordi, 0d);
 				}
 			}
-			else if (!cube.isPassable() && oldTerrain.isPassable())
-				connectedToBorder.changePassableToSolid(x, y, z);
-			for(Unit unit : units){
+			else if (!cube.isPassable() && oldTerrain.isPassable()) {
+				BorderConnectivityEvent event = new BorderConnectivityEvent();
+				event.begin();
+				int[] changingCubes = terrain.changePassableToSolid(index);
+				event.end();
+				commitBorderConnectivityEvent(event, x, y, z, true, changingCubes.length);
+			}
+			listenerStart = profiler == null ? 0L : System.nanoTime();
+			// Sleeping units around the changed cube might not have a valid position anymore
+			Vector cubePosition = cube.getPosition();
+			wakeUnitsInCube(cubePosition);
+			for(Vector neighbour : getNeighbouringCubesPositions(cubePosition))
+				wakeUnitsInCube(neighbour);
+			// Sleeping units are not moving, so only active units can have a path depending on this cube
+			for(Unit unit : activeUnits.toArray(new Unit[activeUnits.size()])){
 				unit.notifyTerrainChange(oldTerrain, cube);
 			}
-		}else if(cube.isPassable()){
-			connectedToBorder.changeSolidToPassable(x, y, z);
+			if(profiler != null)
+				profiler.record(TickProfiler.Phase.LISTENERS, listenerStart);
 		}
 	}
+
+	/**
+	 * Make sure all changes to the terrain of this world have reached its backing storage. This only has an effect
+	 * for worlds of which the terrain is memory-mapped, the terrain of other worlds is only saved by snapshots.
+	 * @throws IOException
+	 * 			The changes could not be written.
+	 */
+	public void checkpoint() throws IOException {
+		terrain.flush();
+	}
 	
+	/**
+	 * Variable referencing the copy-on-write chunks of the terrain of this world, or null if the terrain
+	 * was never captured.
+	 */
+	private TerrainChunks terrainChunks = null;
+
+	/**
+	 * Return the copy-on-write chunks of the terrain of this world, which keep track of the changed chunks
+	 * from now on.
+	 */
+	TerrainChunks getTerrainChunks(){
+		if(terrainChunks == null)
+			terrainChunks = new TerrainChunks(this);
+		return terrainChunks;
+	}
+
+	private void commitBorderConnectivityEvent(BorderConnectivityEvent event, int x, int y, int z, boolean becameSolid, int cubesChanged){
+		if(event.shouldCommit()){
+			event.x = x;
+			event.y = y;
+			event.z = z;
+			event.becameSolid = becameSolid;
+			event.cubesVisited = terrain.getNbCubesVisited();
+			event.cubesChanged = cubesChanged;
+			event.commit();
+		}
+	}
+
 	/**
 	 * Check whether this world has the given material as one of its
 	 * materials.
@@ -870,7 +1722,7 @@ public class World implements IWorld {
 	 * | ( (material != null) &&
 	 * | (! material.isTerminated()) )
 	 */
-	private final Set<Material> materials = new HashSet<>();
+	private final Set<Material> materials = new LinkedHashSet<>();
 
 	/**
 	 * Get all materials of the given type in this world. If inCube
@@ -888,7 +1740,7 @@ public class World implements IWorld {
 	 * 		 | foreach(T material in result : if(inCube) T.getOwner instanceof Cube)
      */
 	public <T extends Material> Set<T> getMaterials(Class<T> type, boolean inCube){
-		Set<T> result = new HashSet<>();
+		Set<T> result = new LinkedHashSet<>();
 		for(Material m : materials){
 			if(type.isInstance(m) && (!inCube || m.getOwner() instanceof Cube || m.getOwner() == null))
 				result.add((T)m);
@@ -928,9 +1780,9 @@ public class World implements IWorld {
 
 	public void checkWorld(){
 		for(int x = 0; x < this.getNbCubesX(); x++){
-			for(int y = 0; y < this.getNbCubesX(); y++){
-				for(int z = 0; z < this.getNbCubesX(); z++){
-					if( !connectedToBorder.isSolidConnectedToBorder(x, y, z))
+			for(int y = 0; y < this.getNbCubesY(); y++){
+				for(int z = 0; z < this.getNbCubesZ(); z++){
+					if( !isSolidConnectedToBorder(x, y, z))
 						CollapsingCubes.put(new Vector(x,y,z), 0d);
 
 				}
@@ -940,4 +1792,19 @@ public class World implements IWorld {
 
 	private Map<Vector, Double> CollapsingCubes = new HashMap<Vector , Double>();
 
+	/**
+	 * Return the cubes of this world which are about to collapse, together with the time they have been collapsing.
+	 */
+	Map<Vector, Double> getCollapsingCubes(){
+		return new HashMap<>(CollapsingCubes);
+	}
+
+	/**
+	 * Let the given cube collapse after it has been collapsing for the given time.
+	 * Only used to restore a world from a snapshot.
+	 */
+	void restoreCollapsingCube(Vector cubeCoordinates, double time){
+		CollapsingCubes.put(cubeCoordinates, time);
+	}
+
 }
@@ -0,0 +1,175 @@
+package hillbillies.model;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.part2.listener.TerrainChangeListener;
+import hillbillies.utils.Vector;
+
+/**
+ * Class building a World of which the terrain is given piece by piece, for instance while it's read from a map.
+ * The terrain is written directly to the terrain store of the new World, so it never has to be held as a whole in
+ * another structure. It can be given per cube or per z-slab, a slab being the terrain ids of all cubes with the same
+ * z-coordinate ordered by y and then by x, as in the map files. Cubes of which no terrain is given are air.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class WorldBuilder {
+
+    private final TerrainStore terrain;
+    private int maxUnits = World.DEFAULT_MAX_UNITS;
+    private int maxFactions = World.DEFAULT_MAX_FACTIONS;
+    private int maxUnitsPerFaction = Faction.DEFAULT_MAX_UNITS;
+    /**
+     * Flag indicating the border connectivity of the solid cubes is registered in the terrain store.
+     */
+    private boolean connectivityKnown = false;
+    private boolean built = false;
+
+    /**
+     * Initialize a new WorldBuilder for a world with the given dimensions.
+     * @throws IllegalArgumentException
+     *         One of the dimensions isn't strictly positive, or the world would have too many cubes.
+     */
+    public WorldBuilder(int nbCubesX, int nbCubesY, int nbCubesZ) throws IllegalArgumentException {
+        this.terrain = new TerrainStore.Heap(nbCubesX, nbCubesY, nbCubesZ);
+    }
+
+    @Basic @Immutable
+    public int getNbCubesX(){
+        return terrain.getNbCubesX();
+    }
+
+    @Basic @Immutable
+    public int getNbCubesY(){
+        return terrain.getNbCubesY();
+    }
+
+    @Basic @Immutable
+    public int getNbCubesZ(){
+        return terrain.getNbCubesZ();
+    }
+
+    /**
+     * Set the unit limits of the world.
+     * @return This builder.
+     * @throws IllegalArgumentException
+     *         One of the given limits is not positive.
+     *         | maxUnits < 1 || maxFactions < 1 || maxUnitsPerFaction < 1
+     * @throws IllegalStateException
+     *         The world was built already.
+     */
+    public WorldBuilder setLimits(int maxUnits, int maxFactions, int maxUnitsPerFaction)
+            throws IllegalArgumentException, IllegalStateException {
+        checkNotBuilt();
+        if(maxUnits < 1 || maxFactions < 1 || maxUnitsPerFaction < 1)
+            throw new IllegalArgumentException("The unit and faction limits of a world must be positive.");
+        this.maxUnits = maxUnits;
+        this.maxFactions = maxFactions;
+        this.maxUnitsPerFaction = maxUnitsPerFaction;
+        return this;
+    }
+
+    /**
+     * Set the terrain of the cube with the given coordinates.
+     * @return This builder.
+     * @throws IndexOutOfBoundsException
+     *         The given coordinates are not part of the world.
+     * @throws IllegalArgumentException
+     *         The given terrain id is not the id of a terrain type.
+     * @throws IllegalStateException
+     *         The world was built already.
+     */
+    public WorldBuilder setTerrain(int x, int y, int z, int terrainId)
+            throws IndexOutOfBoundsException, IllegalArgumentException, IllegalStateException {
+        checkNotBuilt();
+        if(x < 0 || x >= getNbCubesX() || y < 0 || y >= getNbCubesY() || z < 0 || z >= getNbCubesZ())
+            throw new IndexOutOfBoundsException("The cube (" + x + ", " + y + ", " + z + ") is not part of the world.");
+        terrain.set(terrain.getIndex(x, y, z), checkTerrainId(terrainId));
+        return this;
+    }
+
+    /**
+     * Set the terrain of the cubes with the given z-coordinate to the terrain ids read from the given buffer.
+     * The buffer is read from its position on, which is advanced past the slab.
+     * @return This builder.
+     * @throws IndexOutOfBoundsException
+     *         The given z-coordinate is not part of the world.
+     * @throws BufferUnderflowException
+     *         The buffer has less remaining bytes than the number of cubes in a slab.
+     * @throws IllegalArgumentException
+     *         The slab contains a value which is not the id of a terrain type.
+     * @throws IllegalStateException
+     *         The world was built already.
+     */
+    public WorldBuilder setSlab(int z, ByteBuffer slab)
+            throws IndexOutOfBoundsException, IllegalArgumentException, IllegalStateException {
+        checkNotBuilt();
+        if(z < 0 || z >= getNbCubesZ())
+            throw new IndexOutOfBoundsException("The slab " + z + " is not part of the world.");
+        if(slab.remaining() < getNbCubesX() * getNbCubesY())
+            throw new BufferUnderflowException();
+        for(int y = 0; y < getNbCubesY(); y++)
+            for(int x = 0; x < getNbCubesX(); x++)
+                terrain.set(terrain.getIndex(x, y, z), checkTerrainId(slab.get()));
+        return this;
+    }
+
+    /**
+     * Set the terrain of all cubes to the terrain ids read from the given buffer, as consecutive slabs from
+     * the lowest z-coordinate up.
+     * @return This builder.
+     * @effect Each slab is set as by setSlab.
+     *         | for z in 0..getNbCubesZ()-1: setSlab(z, terrain)
+     */
+    public WorldBuilder setSlabs(ByteBuffer terrain)
+            throws IllegalArgumentException, IllegalStateException {
+        for(int z = 0; z < getNbCubesZ(); z++)
+            setSlab(z, terrain);
+        return this;
+    }
+
+    /**
+     * Register the given cubes as the solid cubes which are not connected to the border, so the border
+     * connectivity isn't computed from the terrain when the world is built. Only used to restore a world
+     * of which the connectivity was saved, after its terrain is set.
+     * @throws IllegalArgumentException
+     *         One of the given cubes is not part of the world.
+     */
+    WorldBuilder restoreConnectivity(Collection<Vector> disconnectedCubes) throws IllegalArgumentException {
+        checkNotBuilt();
+        for(Vector cube : disconnectedCubes){
+            int x = cube.cubeX(), y = cube.cubeY(), z = cube.cubeZ();
+            if(x < 0 || x >= getNbCubesX() || y < 0 || y >= getNbCubesY() || z < 0 || z >= getNbCubesZ())
+                throw new IllegalArgumentException("The cube " + cube + " is not part of the world.");
+            terrain.setDisconnected(terrain.getIndex(x, y, z), true);
+        }
+        connectivityKnown = true;
+        return this;
+    }
+
+    /**
+     * Build the world with the given terrain and limits. A builder can build only one world.
+     * @param terrainChangeListener The listener of the new world.
+     * @throws IllegalStateException
+     *         The world was built already.
+     */
+    public World build(TerrainChangeListener terrainChangeListener) throws IllegalStateException {
+        checkNotBuilt();
+        built = true;
+        return new World(terrain, connectivityKnown, terrainChangeListener, maxUnits, maxFactions, maxUnitsPerFaction);
+    }
+
+    private void checkNotBuilt() throws IllegalStateException {
+        if(built)
+            throw new IllegalStateException("The world was built already.");
+    }
+
+    private static int checkTerrainId(int terrainId) throws IllegalArgumentException {
+        if(!Terrain.isValidId(terrainId))
+            throw new IllegalArgumentException("Unknown terrain id " + terrainId + ".");
+        return terrainId;
+    }
+}
@@ -0,0 +1,362 @@
+package hillbillies.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * Class hosting many independent worlds, which are advanced concurrently on a shared thread pool.
+ * Each hosted world is advanced in slices of at most a fixed number of ticks and a fixed amount
+ * of wall-clock time. After each slice the world is queued again behind all other hosted worlds,
+ * so every world gets a fair share of the threads.
+ * A world is only ever queued or running once, so it is advanced by one thread at a time and
+ * doesn't need any locking. Worlds must not be accessed from other threads while they are hosted.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class WorldHost implements AutoCloseable {
+
+    /**
+     * Constant reflecting the default game-time advanced in each tick.
+     */
+    public static final double DEFAULT_DT = 0.1;
+    /**
+     * Constant reflecting the default maximum number of ticks in a slice.
+     */
+    public static final int DEFAULT_TICKS_PER_SLICE = 10;
+    /**
+     * Constant reflecting the default wall-clock budget of a slice, in nanoseconds.
+     */
+    public static final long DEFAULT_SLICE_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final ExecutorService executor;
+    private final double dt;
+    private final int ticksPerSlice;
+    private final long sliceBudgetNanos;
+    private final Map<World, HostedWorld> hostedWorlds = new LinkedHashMap<>();
+    /**
+     * The registrations which were removed, but of which the world may still be advanced by a slice.
+     */
+    private final Map<World, HostedWorld> removedWorlds = new LinkedHashMap<>();
+    /**
+     * Number of hosted worlds which are not finished yet.
+     */
+    private int nbRunningWorlds = 0;
+    private boolean closed = false;
+
+    /**
+     * Initialize a new WorldHost with the given number of threads and the default tick and slice settings.
+     * @param nbThreads The number of threads of the pool.
+     * @effect | this(nbThreads, DEFAULT_DT, DEFAULT_TICKS_PER_SLICE, DEFAULT_SLICE_BUDGET_NANOS)
+     */
+    public WorldHost(int nbThreads) throws IllegalArgumentException {
+        this(nbThreads, DEFAULT_DT, DEFAULT_TICKS_PER_SLICE, DEFAULT_SLICE_BUDGET_NANOS);
+    }
+
+    /**
+     * Initialize a new WorldHost.
+     * @param nbThreads The number of threads of the pool.
+     * @param dt The game-time advanced in each tick of a hosted world.
+     * @param ticksPerSlice The maximum number of ticks a world is advanced before it is queued again.
+     * @param sliceBudgetNanos The wall-clock time after which a slice ends, even if it has ticks left.
+     * @throws IllegalArgumentException
+     *         If the number of threads, ticks per slice or slice budget isn't strictly positive,
+     *         or if dt isn't a valid time step for a world.
+     *         | nbThreads < 1 || ticksPerSlice < 1 || sliceBudgetNanos < 1 || dt <= 0 || dt > 0.2
+     */
+    public WorldHost(int nbThreads, double dt, int ticksPerSlice, long sliceBudgetNanos) throws IllegalArgumentException {
+        if(nbThreads < 1 || ticksPerSlice < 1 || sliceBudgetNanos < 1)
+            throw new IllegalArgumentException("The number of threads, ticks per slice and slice budget must be strictly positive.");
+        if(dt <= 0 || dt > 0.2)
+            throw new IllegalArgumentException("The parameter dt must be in the range ]0;0.2]");
+        this.dt = dt;
+        this.ticksPerSlice = ticksPerSlice;
+        this.sliceBudgetNanos = sliceBudgetNanos;
+        this.executor = Executors.newFixedThreadPool(nbThreads, new HostThreadFactory());
+    }
+
+    @Basic @Immutable
+    public double getDt(){
+        return dt;
+    }
+
+    @Basic @Immutable
+    public int getTicksPerSlice(){
+        return ticksPerSlice;
+    }
+
+    @Basic @Immutable
+    public long getSliceBudgetNanos(){
+        return sliceBudgetNanos;
+    }
+
+    /**
+     * Start hosting the given world until it has been advanced the given number of ticks.
+     * @param world The world to host.
+     * @param maxTicks The number of ticks after which the world is finished, or Long.MAX_VALUE to host it until it is removed.
+     * @return The registration of the given world in this host.
+     * @throws IllegalArgumentException
+     *         If the world is null or already hosted, or if maxTicks is negative. A removed world is hosted
+     *         until the slice advancing it is finished.
+     * @throws IllegalStateException
+     *         If this host is closed.
+     */
+    public synchronized HostedWorld host(World world, long maxTicks) throws IllegalArgumentException, IllegalStateException {
+        if(closed)
+            throw new IllegalStateException("This host is closed.");
+        if(world == null || hostedWorlds.containsKey(world) || removedWorlds.containsKey(world))
+            throw new IllegalArgumentException("The world is null or already hosted.");
+        if(maxTicks < 0)
+            throw new IllegalArgumentException("The number of ticks can't be negative.");
+        HostedWorld hostedWorld = new HostedWorld(world, maxTicks);
+        hostedWorlds.put(world, hostedWorld);
+        nbRunningWorlds++;
+        if(maxTicks == 0)
+            hostedWorld.finish(null);
+        else
+            submit(hostedWorld);
+        return hostedWorld;
+    }
+
+    /**
+     * Stop hosting the given world. A slice of the world which is running finishes its current tick first,
+     * the world can't be hosted again before the registration is finished.
+     * @param world The world to remove.
+     * @return The removed registration, or null if the world wasn't hosted.
+     */
+    public synchronized HostedWorld remove(World world){
+        HostedWorld hostedWorld = hostedWorlds.remove(world);
+        if(hostedWorld != null){
+            hostedWorld.cancelled = true;
+            if(!hostedWorld.finished)
+                removedWorlds.put(world, hostedWorld);
+        }
+        return hostedWorld;
+    }
+
+    /**
+     * Return the registration of the given world, or null if it isn't hosted.
+     */
+    public synchronized HostedWorld getHostedWorld(World world){
+        return hostedWorlds.get(world);
+    }
+
+    /**
+     * Return a snapshot of all hosted worlds and their registrations.
+     */
+    public synchronized Map<World, HostedWorld> getHostedWorlds(){
+        return Collections.unmodifiableMap(new LinkedHashMap<>(hostedWorlds));
+    }
+
+    /**
+     * Return the number of hosted worlds which are not finished yet.
+     */
+    public synchronized int getNbRunningWorlds(){
+        return nbRunningWorlds;
+    }
+
+    /**
+     * Return the total throughput of this host: the sum of the throughputs of all hosted worlds, in ticks per second.
+     */
+    public synchronized double getTicksPerSecond(){
+        return hostedWorlds.values().stream().mapToDouble(HostedWorld::getTicksPerSecond).sum();
+    }
+
+    /**
+     * Wait until all hosted worlds are finished or removed, or the timeout elapses.
+     * @param timeout The maximum time to wait.
+     * @param unit The unit of the timeout.
+     * @return True if all hosted worlds are finished, false if the timeout elapsed.
+     * @throws InterruptedException
+     *         If the current thread is interrupted while waiting.
+     */
+    public synchronized boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while(nbRunningWorlds > 0){
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Stop hosting all worlds and shut down the thread pool. Running slices finish their current tick first.
+     */
+    @Override
+    public void close(){
+        synchronized (this) {
+            closed = true;
+            hostedWorlds.values().forEach(hostedWorld -> hostedWorld.cancelled = true);
+        }
+        executor.shutdown();
+    }
+
+    private void submit(HostedWorld hostedWorld){
+        try {
+            executor.execute(hostedWorld::runSlice);
+        } catch (RejectedExecutionException e) {
+            hostedWorld.finish(null);
+        }
+    }
+
+    private synchronized void onFinished(HostedWorld hostedWorld){
+        removedWorlds.remove(hostedWorld.world, hostedWorld);
+        nbRunningWorlds--;
+        notifyAll();
+    }
+
+    /**
+     * Class registering a world hosted by a WorldHost, together with its throughput statistics.
+     */
+    public final class HostedWorld {
+
+        private final World world;
+        private final long maxTicks;
+        /**
+         * Flag indicating the world should not be advanced anymore. Read by the thread running the slice.
+         */
+        private volatile boolean cancelled = false;
+        private volatile boolean finished = false;
+        private volatile Throwable failure = null;
+        private volatile long tickCount = 0L;
+        private volatile long busyNanos = 0L;
+        private volatile long nbSlices = 0L;
+        private final long hostedSince = System.nanoTime();
+        private volatile long finishedAt = 0L;
+
+        private HostedWorld(World world, long maxTicks){
+            this.world = world;
+            this.maxTicks = maxTicks;
+        }
+
+        /**
+         * Advance the world until its tick or time budget for this slice is used up,
+         * then queue it again if it isn't finished. An error thrown by the world finishes it
+         * like any exception, so it is never left running.
+         */
+        private void runSlice(){
+            long start = System.nanoTime();
+            long ticks = tickCount;
+            int sliceTicks = 0;
+            try {
+                while(!cancelled && ticks < maxTicks && sliceTicks < ticksPerSlice
+                        && System.nanoTime() - start < sliceBudgetNanos){
+                    world.advanceTime(dt);
+                    ticks++;
+                    sliceTicks++;
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+            tickCount = ticks;
+            busyNanos += System.nanoTime() - start;
+            nbSlices++;
+            if(failure != null || cancelled || ticks >= maxTicks)
+                finish(failure);
+            else
+                submit(this);
+        }
+
+        private void finish(Throwable failure){
+            this.failure = failure;
+            this.finishedAt = System.nanoTime();
+            this.finished = true;
+            onFinished(this);
+        }
+
+        @Basic @Immutable
+        public World getWorld(){
+            return world;
+        }
+
+        @Basic @Immutable
+        public long getMaxTicks(){
+            return maxTicks;
+        }
+
+        /**
+         * Return the number of ticks the world has been advanced by this host.
+         */
+        @Basic
+        public long getTickCount(){
+            return tickCount;
+        }
+
+        /**
+         * Return the number of slices the world has been advanced in.
+         */
+        @Basic
+        public long getNbSlices(){
+            return nbSlices;
+        }
+
+        /**
+         * Return the wall-clock time spent advancing the world, in nanoseconds.
+         */
+        @Basic
+        public long getBusyNanos(){
+            return busyNanos;
+        }
+
+        /**
+         * Check whether the world is finished: it reached its maximum number of ticks, was removed or failed.
+         */
+        @Basic
+        public boolean isFinished(){
+            return finished;
+        }
+
+        /**
+         * Return the exception or error thrown while advancing the world, or null if it didn't fail.
+         */
+        @Basic
+        public Throwable getFailure(){
+            return failure;
+        }
+
+        /**
+         * Return the number of ticks per second of wall-clock time since the world is hosted (until it finished).
+         */
+        public double getTicksPerSecond(){
+            long end = finished ? finishedAt : System.nanoTime();
+            long elapsed = end - hostedSince;
+            return elapsed <= 0 ? 0d : tickCount * 1e9 / elapsed;
+        }
+
+        /**
+         * Return the number of ticks per second of wall-clock time spent advancing the world.
+         * This is the throughput the world would reach if it had a thread to itself.
+         */
+        public double getBusyTicksPerSecond(){
+            long busy = busyNanos;
+            return busy <= 0 ? 0d : tickCount * 1e9 / busy;
+        }
+    }
+
+    /**
+     * Factory creating the named daemon threads of the pool.
+     */
+    private static final class HostThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger nbHosts = new AtomicInteger();
+        private final int hostId = nbHosts.getAndIncrement();
+        private final AtomicInteger nbThreads = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "hillbillies-host-" + hostId + "-" + nbThreads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
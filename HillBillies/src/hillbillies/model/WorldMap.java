@@ -0,0 +1,331 @@
+package hillbillies.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.part2.listener.TerrainChangeListener;
+
+/**
+ * Class representing the initial terrain of a World, as it's read from a map file.
+ * Maps can be read from the text format of the .wrld files, or from a compact binary format. The binary format
+ * consists of a header with the dimensions of the map, followed by the terrain ids of the cubes in runs of equal
+ * ids, and optionally a bitmap of the solid cubes which are not connected to the border. A World created from a
+ * map with this bitmap doesn't have to compute the border connectivity of its cubes again.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class WorldMap {
+
+    /**
+     * Constant reflecting the first bytes of a binary map ("HBMP").
+     */
+    public static final int MAGIC = 0x48424d50;
+    /**
+     * Constant reflecting the version of the binary maps written by this class.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Constant reflecting the extension of the names of binary map files.
+     */
+    public static final String FILE_SUFFIX = ".hbmap";
+
+    private static final int FLAG_CONNECTIVITY = 1;
+
+    private final int nbCubesX, nbCubesY, nbCubesZ;
+    /**
+     * The terrain ids of the cubes, in x-major, z-minor order.
+     */
+    private final byte[] terrain;
+    /**
+     * The indices of the solid cubes which are not connected to the border, or null if they aren't computed yet.
+     */
+    private BitSet disconnectedCubes;
+
+    private WorldMap(int nbCubesX, int nbCubesY, int nbCubesZ, byte[] terrain, BitSet disconnectedCubes){
+        this.nbCubesX = nbCubesX;
+        this.nbCubesY = nbCubesY;
+        this.nbCubesZ = nbCubesZ;
+        this.terrain = terrain;
+        this.disconnectedCubes = disconnectedCubes;
+    }
+
+    @Basic @Immutable
+    public int getNbCubesX(){
+        return nbCubesX;
+    }
+
+    @Basic @Immutable
+    public int getNbCubesY(){
+        return nbCubesY;
+    }
+
+    @Basic @Immutable
+    public int getNbCubesZ(){
+        return nbCubesZ;
+    }
+
+    private int getIndex(int x, int y, int z){
+        return (x * nbCubesY + y) * nbCubesZ + z;
+    }
+
+    /**
+     * Return the terrain id of the cube with the given coordinates.
+     * @throws IndexOutOfBoundsException
+     *         The given coordinates are not part of this map.
+     */
+    public int getTerrainId(int x, int y, int z) throws IndexOutOfBoundsException {
+        if(x < 0 || x >= nbCubesX || y < 0 || y >= nbCubesY || z < 0 || z >= nbCubesZ)
+            throw new IndexOutOfBoundsException("The cube (" + x + ", " + y + ", " + z + ") is not part of the map.");
+        return terrain[getIndex(x, y, z)];
+    }
+
+    /**
+     * Check whether the border connectivity of the solid cubes of this map is known.
+     */
+    public boolean hasConnectivity(){
+        return disconnectedCubes != null;
+    }
+
+    /**
+     * Return the terrain of this map as a new array structured as [x][y][z], as it's given to the constructor of World.
+     */
+    public int[][][] getTerrainTypes(){
+        int[][][] terrainTypes = new int[nbCubesX][nbCubesY][nbCubesZ];
+        int index = 0;
+        for(int x = 0; x < nbCubesX; x++)
+            for(int y = 0; y < nbCubesY; y++){
+                int[] column = terrainTypes[x][y];
+                for(int z = 0; z < nbCubesZ; z++)
+                    column[z] = terrain[index++];
+            }
+        return terrainTypes;
+    }
+
+    /**
+     * Create a new World with the terrain of this map and the default unit limits. If the border connectivity of
+     * this map is known, it isn't computed again.
+     * @param terrainChangeListener The listener of the new world.
+     */
+    public World createWorld(TerrainChangeListener terrainChangeListener){
+        TerrainStore store = new TerrainStore.Heap(nbCubesX, nbCubesY, nbCubesZ);
+        copyTo(store);
+        return new World(store, hasConnectivity(), terrainChangeListener, World.DEFAULT_MAX_UNITS,
+                World.DEFAULT_MAX_FACTIONS, Faction.DEFAULT_MAX_UNITS);
+    }
+
+    /**
+     * Copy the terrain of this map to the given store, which has the same dimensions, together with the border
+     * connectivity if it's known.
+     * @throws IllegalArgumentException
+     *         The map contains an unknown terrain id.
+     */
+    void copyTo(TerrainStore store) throws IllegalArgumentException {
+        assert store.getNbCubes() == terrain.length;
+        for(int index = 0; index < terrain.length; index++){
+            int id = terrain[index];
+            if(!Terrain.isValidId(id))
+                throw new IllegalArgumentException("Unknown terrain id " + id + ".");
+            store.set(index, disconnectedCubes != null && disconnectedCubes.get(index) ? id | TerrainStore.DISCONNECTED : id);
+        }
+    }
+
+    /**
+     * Compute the border connectivity of the solid cubes of this map, if it isn't known yet.
+     */
+    public void computeConnectivity(){
+        if(disconnectedCubes != null)
+            return;
+        TerrainStore store = new TerrainStore.Heap(nbCubesX, nbCubesY, nbCubesZ);
+        copyTo(store);
+        store.computeConnectivity();
+        BitSet disconnected = new BitSet();
+        for(int index = 0; index < terrain.length; index++)
+            if(store.isDisconnected(index))
+                disconnected.set(index);
+        disconnectedCubes = disconnected;
+    }
+
+    /**
+     * Write this map in the binary format to the given output.
+     * @param out The output to write to. It isn't closed by this method.
+     * @param withConnectivity Whether the border connectivity is written, which is computed first if it isn't known.
+     */
+    public void write(OutputStream out, boolean withConnectivity) throws IOException {
+        if(withConnectivity)
+            computeConnectivity();
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeByte(withConnectivity ? FLAG_CONNECTIVITY : 0);
+        data.writeInt(nbCubesX);
+        data.writeInt(nbCubesY);
+        data.writeInt(nbCubesZ);
+        int previous = terrain[0], run = 0;
+        for(byte id : terrain){
+            if(id != previous){
+                data.writeByte(previous);
+                WorldSnapshot.writeVarInt(data, run);
+                previous = id;
+                run = 0;
+            }
+            run++;
+        }
+        data.writeByte(previous);
+        WorldSnapshot.writeVarInt(data, run);
+        if(withConnectivity){
+            byte[] bitmap = disconnectedCubes.toByteArray();
+            WorldSnapshot.writeVarInt(data, bitmap.length);
+            data.write(bitmap);
+        }
+        data.flush();
+    }
+
+    /**
+     * Read a map in the binary format from the given input.
+     * @param in The input to read from. It isn't closed by this method, but it might be read past the map.
+     * @throws IOException
+     *         The input could not be read, or isn't a binary map of a supported version.
+     */
+    public static WorldMap read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if(data.readInt() != MAGIC)
+            throw new IOException("The input isn't a binary map.");
+        int version = data.readUnsignedShort();
+        if(version != VERSION)
+            throw new IOException("Unsupported binary map version " + version + ".");
+        int flags = data.readUnsignedByte();
+        int nbCubesX = data.readInt(), nbCubesY = data.readInt(), nbCubesZ = data.readInt();
+        byte[] terrain = new byte[checkDimensions(nbCubesX, nbCubesY, nbCubesZ)];
+        int index = 0;
+        while(index < terrain.length){
+            int id = data.readUnsignedByte();
+            int run = WorldSnapshot.readVarInt(data);
+            if(id >= Terrain.values().length || run < 1 || run > terrain.length - index)
+                throw new IOException("Invalid terrain run.");
+            Arrays.fill(terrain, index, index + run, (byte) id);
+            index += run;
+        }
+        BitSet disconnectedCubes = null;
+        if((flags & FLAG_CONNECTIVITY) != 0){
+            int length = WorldSnapshot.readVarInt(data);
+            if(length > (terrain.length + 7) / 8)
+                throw new IOException("Invalid connectivity bitmap.");
+            byte[] bitmap = new byte[length];
+            data.readFully(bitmap);
+            disconnectedCubes = BitSet.valueOf(bitmap);
+        }
+        return new WorldMap(nbCubesX, nbCubesY, nbCubesZ, terrain, disconnectedCubes);
+    }
+
+    /**
+     * Read a map in the text format of the .wrld files from the given reader.
+     * The first line holds the dimensions of the map. It's followed by a layer for each z-coordinate, from the top
+     * layer down. Each layer is an empty line followed by a line for each y-coordinate, with a character for each
+     * cube: '.' for air, 'R' for rock, 'S' for wood and 'W' for a workshop.
+     * @param reader The reader to read from. It isn't closed by this method.
+     * @throws IOException
+     *         The reader could not be read, or its text isn't a valid map.
+     */
+    public static WorldMap readText(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String line = lines.readLine();
+        if(line == null)
+            throw new IOException("The map is empty.");
+        String[] dimensions = line.trim().split(" +");
+        if(dimensions.length != 3)
+            throw new IOException("Invalid map dimensions: " + line);
+        int nbCubesX, nbCubesY, nbCubesZ;
+        try {
+            nbCubesX = Integer.parseInt(dimensions[0]);
+            nbCubesY = Integer.parseInt(dimensions[1]);
+            nbCubesZ = Integer.parseInt(dimensions[2]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid map dimensions: " + line, e);
+        }
+        byte[] terrain = new byte[checkDimensions(nbCubesX, nbCubesY, nbCubesZ)];
+        for(int z = nbCubesZ - 1; z >= 0; z--){
+            line = lines.readLine();
+            if(line == null)
+                throw new IOException("Unexpected end of the map; no data for z=" + z + ".");
+            if(!line.trim().isEmpty())
+                throw new IOException("Expected an empty line before z=" + z + ".");
+            for(int y = 0; y < nbCubesY; y++){
+                line = lines.readLine();
+                if(line == null)
+                    throw new IOException("Unexpected end of the map; no data for z=" + z + " and y=" + y + ".");
+                line = line.trim();
+                if(line.length() != nbCubesX)
+                    throw new IOException("Unexpected end of line; for z=" + z + " and y=" + y + ", only have "
+                            + line.length() + " characters.");
+                for(int x = 0; x < nbCubesX; x++)
+                    terrain[(x * nbCubesY + y) * nbCubesZ + z] = (byte) getTerrainId(line.charAt(x));
+            }
+        }
+        return new WorldMap(nbCubesX, nbCubesY, nbCubesZ, terrain, null);
+    }
+
+    private static int getTerrainId(char c) throws IOException {
+        switch (c){
+            case '.': return Terrain.AIR.getId();
+            case 'R': return Terrain.ROCK.getId();
+            case 'S': return Terrain.WOOD.getId();
+            case 'W': return Terrain.WORKSHOP.getId();
+            default: throw new IOException("Unknown cube type: " + c);
+        }
+    }
+
+    private static int checkDimensions(int nbCubesX, int nbCubesY, int nbCubesZ) throws IOException {
+        long nbCubes = (long) nbCubesX * nbCubesY * nbCubesZ;
+        if(nbCubesX < 1 || nbCubesY < 1 || nbCubesZ < 1 || nbCubes > Integer.MAX_VALUE - 8)
+            throw new IOException("Invalid map dimensions " + nbCubesX + "x" + nbCubesY + "x" + nbCubesZ + ".");
+        return (int) nbCubes;
+    }
+
+    /**
+     * Read the map from the given file, in the binary format if its name ends with FILE_SUFFIX and in the text
+     * format otherwise.
+     */
+    public static WorldMap readFile(Path file) throws IOException {
+        if(file.getFileName().toString().endsWith(FILE_SUFFIX))
+            try (InputStream in = Files.newInputStream(file)) {
+                return read(in);
+            }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return readText(reader);
+        }
+    }
+
+    /**
+     * Convert maps in the text format to the binary format, including their border connectivity.
+     * Each given .wrld file is written next to it, with the extension replaced by FILE_SUFFIX.
+     *
+     * Usage: WorldMap file.wrld...
+     */
+    public static void main(String[] args) throws IOException {
+        for(String name : args){
+            Path source = Paths.get(name);
+            String fileName = source.getFileName().toString();
+            int extension = fileName.lastIndexOf('.');
+            Path target = source.resolveSibling((extension < 0 ? fileName : fileName.substring(0, extension)) + FILE_SUFFIX);
+            WorldMap map = readFile(source);
+            try (OutputStream out = Files.newOutputStream(target)) {
+                map.write(out, true);
+            }
+            System.out.println(source + " -> " + target + " (" + Files.size(source) + " -> " + Files.size(target) + " bytes)");
+        }
+    }
+}
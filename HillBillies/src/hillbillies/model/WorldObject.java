@@ -46,6 +46,18 @@ public abstract class WorldObject implements IWorldObject {
         this.setPosition(position);
     }
 
+    /**
+     * Initialize this new WorldObject in the given world without a position yet.
+     * Only used to restore world objects from a snapshot, which set their position
+     * with restorePosition right away.
+     *
+     * @param world The World this WorldObject belongs to.
+     */
+    @Raw
+    WorldObject(IWorld world){
+        this.world = world;
+    }
+
     @Override
     public abstract void advanceTime(double dt);
 
@@ -108,6 +120,21 @@ public abstract class WorldObject implements IWorldObject {
      */
     private Vector position;
 
+    /**
+     * Set the position of this WorldObject to the given position, without checking whether it is
+     * valid for this WorldObject. Only used to restore world objects from a snapshot, for instance
+     * falling units, which are not at a valid position for a standing unit.
+     *
+     * @param position The new position for this WorldObject.
+     * @pre The given position is effective.
+     * | position != null
+     */
+    @Raw
+    void restorePosition(Vector position){
+        assert position != null;
+        this.position = position;
+    }
+
     /**
      * Return the world of this WorldObject.
      */
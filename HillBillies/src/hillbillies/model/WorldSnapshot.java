@@ -0,0 +1,795 @@
+package hillbillies.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.activities.Activity;
+import hillbillies.activities.ActivityCodec;
+import hillbillies.part2.listener.TerrainChangeListener;
+import hillbillies.part3.programs.CommandCodec;
+import hillbillies.part3.programs.Command;
+import hillbillies.part3.programs.Frame;
+import hillbillies.part3.programs.statements.Statement;
+import hillbillies.utils.Vector;
+
+/**
+ * Compact binary snapshot format of a World, from which the World can be restored in the state it was saved in:
+ * its terrain, the cubes about to collapse, its factions, its units with their activity stacks, its materials
+ * with their owners, and the tasks of the schedulers of its factions together with the execution state of
+ * the running tasks.
+ * A snapshot consists of a header followed by sections. Each section starts with its tag and its length, so a
+ * reader can skip the sections it doesn't know. The header holds the version of the writer and the oldest
+ * version of a reader which can still read the snapshot, so new sections can be added without breaking
+ * older readers.
+ * The border connectivity of the solid cubes is written together with the terrain, so it doesn't have to be
+ * computed again when the World is restored. The cost model of the World and the change history of its
+ * schedulers are not part of a snapshot.
+ * An instance of this class is a point-in-time view of a World, captured while the World isn't advanced.
+ * The terrain of the view shares the chunks which didn't change since the previous capture, all other state
+ * is serialized right away. The view can then be written from any thread while the World is advanced further.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class WorldSnapshot {
+
+    /**
+     * Constant reflecting the first bytes of a world snapshot ("HBSV").
+     */
+    public static final int MAGIC = 0x48425356;
+    /**
+     * Constant reflecting the version of the snapshots written by this class.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Constant reflecting the oldest version of a reader which can read the snapshots written by this class.
+     */
+    public static final int COMPATIBLE_VERSION = 1;
+
+    private static final int SECTION_END = 0;
+    private static final int SECTION_WORLD = 1;
+    private static final int SECTION_TERRAIN = 2;
+    private static final int SECTION_COLLAPSING_CUBES = 3;
+    private static final int SECTION_FACTIONS = 4;
+    private static final int SECTION_UNITS = 5;
+    private static final int SECTION_MATERIALS = 6;
+    private static final int SECTION_ACTIVITIES = 7;
+    private static final int SECTION_TASKS = 8;
+
+    private static final int REFERENCE_NULL = 0, REFERENCE_UNIT = 1, REFERENCE_MATERIAL = 2, REFERENCE_CUBE = 3;
+    private static final int OWNER_CUBE = 0, OWNER_UNIT = 1, OWNER_NONE = 2;
+    private static final int MATERIAL_BOULDER = 0, MATERIAL_LOG = 1;
+    private static final int VALUE_NULL = 0, VALUE_BOOLEAN = 1, VALUE_VECTOR = 2, VALUE_UNIT = 3;
+
+    private final int nbCubesX, nbCubesY, nbCubesZ;
+    private final double time;
+    /**
+     * The serialized world section, which precedes the terrain.
+     */
+    private final byte[] worldSection;
+    private final TerrainChunks.Chunk[] chunks;
+    /**
+     * The serialized sections following the terrain.
+     */
+    private final byte[] objectSections;
+
+    private WorldSnapshot(World world, byte[] worldSection, TerrainChunks.Chunk[] chunks, byte[] objectSections){
+        this.nbCubesX = world.getNbCubesX();
+        this.nbCubesY = world.getNbCubesY();
+        this.nbCubesZ = world.getNbCubesZ();
+        this.time = world.getTime();
+        this.worldSection = worldSection;
+        this.chunks = chunks;
+        this.objectSections = objectSections;
+    }
+
+    /**
+     * Capture a point-in-time view of the given world, which can be written later on.
+     * The world must not be advanced while it is captured.
+     * @param world The world to capture.
+     * @return A view of the given world as it is now, which isn't affected by later changes of the world.
+     * @throws IllegalArgumentException
+     *         One of the activities of the units or tasks of the world can't be serialized.
+     */
+    public static WorldSnapshot capture(World world) throws IllegalArgumentException {
+        return new Writer(world).capture();
+    }
+
+    /**
+     * Return the game-time of the world when this snapshot was captured.
+     */
+    @Basic @Immutable
+    public double getTime(){
+        return time;
+    }
+
+    /**
+     * Write this snapshot to the given output. This method can be called from any thread.
+     * @param out The output to write to. It isn't closed by this method.
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeShort(COMPATIBLE_VERSION);
+        data.write(worldSection);
+        ByteArrayOutputStream terrain = new ByteArrayOutputStream();
+        writeTerrain(new DataOutputStream(terrain));
+        data.writeByte(SECTION_TERRAIN);
+        data.writeInt(terrain.size());
+        terrain.writeTo(data);
+        data.write(objectSections);
+        data.writeByte(SECTION_END);
+        data.flush();
+    }
+
+    /**
+     * Return the bytes of this snapshot.
+     * @see #write(OutputStream)
+     */
+    public byte[] toByteArray(){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);// Can't happen for a ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write the terrain as runs of equal terrain types, in x-major, z-minor order, followed by the
+     * solid cubes which are not connected to the border.
+     */
+    private void writeTerrain(DataOutputStream out) throws IOException {
+        int size = TerrainChunks.CHUNK_SIZE;
+        int nbChunksY = (nbCubesY + size - 1) / size, nbChunksZ = (nbCubesZ + size - 1) / size;
+        int previous = -1, run = 0;
+        List<Vector> disconnectedCubes = new ArrayList<>();
+        for(int x = 0; x < nbCubesX; x++)
+            for(int y = 0; y < nbCubesY; y++)
+                for(int z = 0; z < nbCubesZ; z++){
+                    TerrainChunks.Chunk chunk = chunks[TerrainChunks.getChunkIndex(x / size, y / size, z / size, nbChunksY, nbChunksZ)];
+                    int value = chunk.get(x % size, y % size, z % size);
+                    int terrain = value & TerrainStore.TERRAIN_MASK;
+                    if((value & TerrainStore.DISCONNECTED) != 0)
+                        disconnectedCubes.add(new Vector(x, y, z));
+                    if(terrain != previous && run > 0){
+                        out.writeByte(previous);
+                        writeVarInt(out, run);
+                        run = 0;
+                    }
+                    previous = terrain;
+                    run++;
+                }
+        if(run > 0){
+            out.writeByte(previous);
+            writeVarInt(out, run);
+        }
+        out.writeInt(disconnectedCubes.size());
+        for(Vector cube : disconnectedCubes)
+            writeCubeCoordinates(out, cube);
+        out.flush();
+    }
+
+    /**
+     * Write a snapshot of the given world to the given output.
+     * The world must not be advanced while its snapshot is written.
+     * @param world The world to write.
+     * @param out The output to write to. It isn't closed by this method.
+     * @effect | capture(world).write(out)
+     */
+    public static void write(World world, OutputStream out) throws IOException, IllegalArgumentException {
+        capture(world).write(out);
+    }
+
+    /**
+     * Return a snapshot of the given world.
+     * @effect | capture(world).toByteArray()
+     */
+    public static byte[] toByteArray(World world) throws IllegalArgumentException {
+        return capture(world).toByteArray();
+    }
+
+    /**
+     * Restore a world from the snapshot written by write(World, OutputStream) on the given input.
+     * All units of the restored world are awake, units which were skipped by the saved world catch
+     * up on the time they were skipped right away.
+     * @param in The input to read from. It isn't closed by this method, but it might be read past the snapshot.
+     * @param terrainChangeListener The listener of the restored world.
+     * @return A new world in the state the snapshot was written in.
+     * @throws IOException
+     *         The input could not be read, isn't a world snapshot of a compatible version, or contains invalid data.
+     */
+    public static World read(InputStream in, TerrainChangeListener terrainChangeListener) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if(data.readInt() != MAGIC)
+            throw new IOException("The input isn't a world snapshot.");
+        int version = data.readUnsignedShort();
+        int compatibleVersion = data.readUnsignedShort();
+        if(compatibleVersion > VERSION)
+            throw new IOException("Unsupported world snapshot version " + version + ".");
+        try {
+            return new Reader(terrainChangeListener).read(data);
+        } catch (IllegalArgumentException | IllegalStateException | ClassCastException | IndexOutOfBoundsException e) {
+            throw new IOException("The world snapshot contains invalid data.", e);
+        }
+    }
+
+    /**
+     * Restore a world from the given snapshot.
+     * @see #read(InputStream, TerrainChangeListener)
+     */
+    public static World fromByteArray(byte[] snapshot, TerrainChangeListener terrainChangeListener) throws IOException {
+        return read(new ByteArrayInputStream(snapshot), terrainChangeListener);
+    }
+
+    private static void writeVector(DataOutput out, Vector vector) throws IOException {
+        out.writeDouble(vector.X());
+        out.writeDouble(vector.Y());
+        out.writeDouble(vector.Z());
+    }
+
+    private static Vector readVector(DataInput in) throws IOException {
+        return new Vector(in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
+    private static void writeCubeCoordinates(DataOutput out, Vector cubeCoordinates) throws IOException {
+        out.writeInt(cubeCoordinates.cubeX());
+        out.writeInt(cubeCoordinates.cubeY());
+        out.writeInt(cubeCoordinates.cubeZ());
+    }
+
+    private static Vector readCubeCoordinates(DataInput in) throws IOException {
+        return new Vector(in.readInt(), in.readInt(), in.readInt());
+    }
+
+    /**
+     * Write the given non-negative integer in 7-bit groups, least significant group first.
+     */
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while((value & ~0x7f) != 0){
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7){
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Invalid variable length integer.");
+    }
+
+    /**
+     * Class writing the sections of a snapshot of a single world, which assigns an index to each
+     * faction, unit and material of the world to refer to them.
+     */
+    private static final class Writer implements ActivityCodec.ReferenceWriter {
+
+        private final World world;
+        private final List<Faction> factions;
+        private final List<Unit> units;
+        private final List<Material> materials;
+        private final Map<Faction, Integer> factionIndices = new HashMap<>();
+        private final Map<Unit, Integer> unitIndices = new HashMap<>();
+        private final Map<Material, Integer> materialIndices = new HashMap<>();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final DataOutputStream section = new DataOutputStream(buffer);
+
+        private Writer(World world){
+            this.world = world;
+            this.factions = new ArrayList<>(world.getFactionsView());
+            this.units = new ArrayList<>(world.getUnitsView());
+            this.materials = new ArrayList<>(world.getMaterials(Material.class, false));
+            for(int i = 0; i < factions.size(); i++)
+                factionIndices.put(factions.get(i), i);
+            for(int i = 0; i < units.size(); i++)
+                unitIndices.put(units.get(i), i);
+            for(int i = 0; i < materials.size(); i++)
+                materialIndices.put(materials.get(i), i);
+        }
+
+        private WorldSnapshot capture(){
+            try {
+                ByteArrayOutputStream head = new ByteArrayOutputStream();
+                DataOutputStream headOut = new DataOutputStream(head);
+                writeWorld();
+                flushSection(headOut, SECTION_WORLD);
+                ByteArrayOutputStream tail = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(tail);
+                writeCollapsingCubes();
+                flushSection(out, SECTION_COLLAPSING_CUBES);
+                writeFactions();
+                flushSection(out, SECTION_FACTIONS);
+                writeUnits();
+                flushSection(out, SECTION_UNITS);
+                writeMaterials();
+                flushSection(out, SECTION_MATERIALS);
+                writeActivities();
+                flushSection(out, SECTION_ACTIVITIES);
+                writeTasks();
+                flushSection(out, SECTION_TASKS);
+                return new WorldSnapshot(world, head.toByteArray(), world.getTerrainChunks().capture(), tail.toByteArray());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);// Can't happen for a ByteArrayOutputStream
+            }
+        }
+
+        private void flushSection(DataOutputStream out, int tag) throws IOException {
+            section.flush();
+            out.writeByte(tag);
+            out.writeInt(buffer.size());
+            buffer.writeTo(out);
+            buffer.reset();
+        }
+
+        private void writeWorld() throws IOException {
+            section.writeInt(world.getMaxUnits());
+            section.writeInt(world.getMaxFactions());
+            section.writeInt(world.getMaxUnitsPerFaction());
+            section.writeInt(world.getNbCubesX());
+            section.writeInt(world.getNbCubesY());
+            section.writeInt(world.getNbCubesZ());
+            section.writeDouble(world.getTime());
+            section.writeByte(0);// Former task execution mode, all programs are interpreted
+            section.writeInt(world.getTaskBudget());
+            section.writeLong(world.getMaxTaskInstructions());
+        }
+
+        private void writeCollapsingCubes() throws IOException {
+            Map<Vector, Double> collapsingCubes = world.getCollapsingCubes();
+            section.writeInt(collapsingCubes.size());
+            for(Map.Entry<Vector, Double> entry : collapsingCubes.entrySet()){
+                writeCubeCoordinates(section, entry.getKey());
+                section.writeDouble(entry.getValue());
+            }
+        }
+
+        private void writeFactions() throws IOException {
+            section.writeInt(factions.size());
+            for(Faction faction : factions)
+                section.writeInt(faction.getMaxNbUnits());
+        }
+
+        private void writeUnits() throws IOException {
+            section.writeInt(units.size());
+            for(Unit unit : units){
+                section.writeInt(factionIndices.get(unit.getFaction()));
+                section.writeUTF(unit.getName());
+                writeVector(section, unit.getPosition());
+                section.writeInt(unit.getStrength());
+                section.writeInt(unit.getAgility());
+                section.writeInt(unit.getToughness());
+                section.writeInt(unit.getWeight());
+                section.writeInt(unit.getStamina());
+                section.writeInt(unit.getHitpoints());
+                section.writeFloat(unit.getOrientation());
+                section.writeInt(unit.getXP());
+                section.writeDouble(unit.getRestTimer());
+            }
+        }
+
+        private void writeMaterials() throws IOException {
+            section.writeInt(materials.size());
+            for(Material material : materials){
+                section.writeByte(material instanceof Log ? MATERIAL_LOG : MATERIAL_BOULDER);
+                WorldObject owner = material.getOwner();
+                if(owner instanceof Cube){
+                    section.writeByte(OWNER_CUBE);
+                    writeCubeCoordinates(section, owner.getPosition());
+                }else if(owner instanceof Unit && unitIndices.containsKey(owner)){
+                    section.writeByte(OWNER_UNIT);
+                    section.writeInt(unitIndices.get(owner));
+                }else{
+                    section.writeByte(OWNER_NONE);
+                    writeVector(section, material.getPosition());
+                }
+            }
+        }
+
+        private void writeActivities() throws IOException {
+            for(Unit unit : units){
+                section.writeDouble(world.getSkippedTime(unit));
+                ActivityCodec.write(section, unit.getActivities(), this);
+            }
+        }
+
+        private void writeTasks() throws IOException {
+            List<Task> tasks = new ArrayList<>();
+            Map<Task, Integer> taskIndices = new HashMap<>();
+            List<List<Task>> schedules = new ArrayList<>(factions.size());
+            for(Faction faction : factions){
+                List<Task> schedule = faction.getScheduler().getTasksInOrder();
+                schedules.add(schedule);
+                for(Task task : schedule)
+                    if(taskIndices.putIfAbsent(task, tasks.size()) == null)
+                        tasks.add(task);
+            }
+            section.writeInt(tasks.size());
+            for(Task task : tasks)
+                writeTask(task);
+            for(List<Task> schedule : schedules){
+                section.writeInt(schedule.size());
+                for(Task task : schedule)
+                    section.writeInt(taskIndices.get(task));
+            }
+        }
+
+        private void writeTask(Task task) throws IOException {
+            section.writeUTF(task.getName());
+            section.writeInt(task.getPriority());
+            CommandCodec.write(section, task.getActivity());
+            section.writeBoolean(task.getSelectedCube() != null);
+            if(task.getSelectedCube() != null)
+                writeCubeCoordinates(section, task.getSelectedCube());
+            Unit unit = task.getAssignedUnit();
+            Integer unitIndex = unit == null ? null : unitIndices.get(unit);
+            section.writeInt(unitIndex == null ? -1 : unitIndex);
+            boolean running = unitIndex != null && task.isRunning();
+            section.writeBoolean(running);
+            if(!running)
+                return;
+            Task.TaskRunner runner = task.getRunner();
+            Frame frame = runner.getFrame();
+            section.writeInt(frame.getProgramCounter());
+            int nbSlots = frame.getProgram().getNbSlots();
+            section.writeInt(nbSlots);
+            for(int slot = 0; slot < nbSlots; slot++)
+                writeValue(frame.isAssigned(slot) ? frame.load(slot) : null);
+            Object[] operands = frame.getOperandStack().toArray();
+            section.writeInt(operands.length);
+            for(Object operand : operands)
+                writeValue(operand);
+            section.writeInt(runner.getBudget());
+            section.writeByte((runner.isStopping() ? 1 : 0) | (runner.isPausing() ? 2 : 0) | (runner.isPaused() ? 4 : 0));
+            section.writeByte(0);// Former execution mode of the runner
+            section.writeInt(unit.getActivities().indexOf(runner.getBlockingActivity()));
+        }
+
+        /**
+         * Write a value of a variable or operand of a program. Units which are not part of the
+         * world anymore are written as null.
+         * @throws IllegalArgumentException
+         *         The value isn't of a type a program can compute.
+         */
+        private void writeValue(Object value) throws IOException, IllegalArgumentException {
+            if(value instanceof Unit && unitIndices.containsKey(value)){
+                section.writeByte(VALUE_UNIT);
+                section.writeInt(unitIndices.get(value));
+            }else if(value == null || value instanceof Unit){
+                section.writeByte(VALUE_NULL);
+            }else if(value instanceof Boolean){
+                section.writeByte(VALUE_BOOLEAN);
+                section.writeBoolean((Boolean) value);
+            }else if(value instanceof Vector){
+                section.writeByte(VALUE_VECTOR);
+                writeVector(section, (Vector) value);
+            }else
+                throw new IllegalArgumentException("Values of class " + value.getClass().getSimpleName() + " can't be serialized.");
+        }
+
+        @Override
+        public void write(DataOutput out, IWorldObject object) throws IOException {
+            if(object instanceof Unit && unitIndices.containsKey(object)){
+                out.writeByte(REFERENCE_UNIT);
+                out.writeInt(unitIndices.get(object));
+            }else if(object instanceof Material && materialIndices.containsKey(object)){
+                out.writeByte(REFERENCE_MATERIAL);
+                out.writeInt(materialIndices.get(object));
+            }else if(object instanceof Cube){
+                out.writeByte(REFERENCE_CUBE);
+                writeCubeCoordinates(out, object.getPosition());
+            }else
+                out.writeByte(REFERENCE_NULL);// Terminated objects can't be referred to anymore
+        }
+    }
+
+    /**
+     * Class restoring a world from the sections of its snapshot. The sections must appear in the order
+     * they are written in, sections with an unknown tag are skipped.
+     */
+    private static final class Reader implements ActivityCodec.ReferenceReader {
+
+        private final TerrainChangeListener terrainChangeListener;
+        private int maxUnits, maxFactions, maxUnitsPerFaction, nbCubesX, nbCubesY, nbCubesZ;
+        private double time;
+        private int taskBudget;
+        private long maxTaskInstructions;
+        private World world = null;
+        private final List<Faction> factions = new ArrayList<>();
+        private final List<Unit> units = new ArrayList<>();
+        private final List<Material> materials = new ArrayList<>();
+        private boolean hasConfiguration = false;
+
+        private Reader(TerrainChangeListener terrainChangeListener){
+            this.terrainChangeListener = terrainChangeListener;
+        }
+
+        private World read(DataInputStream in) throws IOException {
+            int tag;
+            while((tag = in.readUnsignedByte()) != SECTION_END){
+                int length = in.readInt();
+                if(length < 0)
+                    throw new IOException("Invalid section length " + length + ".");
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                DataInputStream section = new DataInputStream(new ByteArrayInputStream(payload));
+                switch (tag){
+                    case SECTION_WORLD: readWorld(section); break;
+                    case SECTION_TERRAIN: readTerrain(section); break;
+                    case SECTION_COLLAPSING_CUBES: readCollapsingCubes(section); break;
+                    case SECTION_FACTIONS: readFactions(section); break;
+                    case SECTION_UNITS: readUnits(section); break;
+                    case SECTION_MATERIALS: readMaterials(section); break;
+                    case SECTION_ACTIVITIES: readActivities(section); break;
+                    case SECTION_TASKS: readTasks(section); break;
+                    default: break;// Section of a newer version
+                }
+            }
+            return requireWorld();
+        }
+
+        private World requireWorld() throws IOException {
+            if(world == null)
+                throw new IOException("The world snapshot has no terrain.");
+            return world;
+        }
+
+        private void readWorld(DataInput in) throws IOException {
+            maxUnits = in.readInt();
+            maxFactions = in.readInt();
+            maxUnitsPerFaction = in.readInt();
+            nbCubesX = in.readInt();
+            nbCubesY = in.readInt();
+            nbCubesZ = in.readInt();
+            time = in.readDouble();
+            in.readUnsignedByte();// Former task execution mode, all programs are interpreted
+            taskBudget = in.readInt();
+            maxTaskInstructions = in.readLong();
+            if(nbCubesX < 1 || nbCubesY < 1 || nbCubesZ < 1)
+                throw new IOException("Invalid world dimensions.");
+            hasConfiguration = true;
+        }
+
+        private void readTerrain(DataInput in) throws IOException {
+            if(!hasConfiguration)
+                throw new IOException("The world snapshot has no world section before its terrain.");
+            WorldBuilder builder;
+            try {
+                builder = new WorldBuilder(nbCubesX, nbCubesY, nbCubesZ).setLimits(maxUnits, maxFactions, maxUnitsPerFaction);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid world configuration.", e);
+            }
+            long nbCubes = (long) nbCubesX * nbCubesY * nbCubesZ;
+            long index = 0;
+            while(index < nbCubes){
+                int terrain = in.readUnsignedByte();
+                int run = readVarInt(in);
+                if(terrain >= Terrain.values().length || run < 1 || index + run > nbCubes)
+                    throw new IOException("Invalid terrain run.");
+                for(int i = 0; i < run; i++, index++){
+                    int z = (int) (index % nbCubesZ);
+                    long xy = index / nbCubesZ;
+                    builder.setTerrain((int) (xy / nbCubesY), (int) (xy % nbCubesY), z, terrain);
+                }
+            }
+            int nbDisconnectedCubes = in.readInt();
+            if(nbDisconnectedCubes < 0 || nbDisconnectedCubes > nbCubes)
+                throw new IOException("Invalid number of disconnected cubes " + nbDisconnectedCubes + ".");
+            Set<Vector> disconnectedCubes = new HashSet<>();
+            for(int i = 0; i < nbDisconnectedCubes; i++)
+                disconnectedCubes.add(readCubeCoordinates(in));
+            try {
+                builder.restoreConnectivity(disconnectedCubes);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid disconnected cube.", e);
+            }
+            world = builder.build(terrainChangeListener);
+            world.restoreTime(time);
+            world.setTaskBudgets(taskBudget, maxTaskInstructions);
+        }
+
+        private void readCollapsingCubes(DataInput in) throws IOException {
+            World world = requireWorld();
+            int count = in.readInt();
+            for(int i = 0; i < count; i++){
+                Vector cube = readCubeCoordinates(in);
+                world.getCube(cube);// Check the cube is part of the world
+                world.restoreCollapsingCube(cube, in.readDouble());
+            }
+        }
+
+        private void readFactions(DataInput in) throws IOException {
+            World world = requireWorld();
+            int count = in.readInt();
+            if(count < 0 || count > world.getMaxFactions())
+                throw new IOException("Invalid number of factions " + count + ".");
+            for(int i = 0; i < count; i++){
+                Faction faction = new Faction(in.readInt());
+                world.addFaction(faction);
+                factions.add(faction);
+            }
+        }
+
+        private void readUnits(DataInput in) throws IOException {
+            World world = requireWorld();
+            int count = in.readInt();
+            if(count < 0 || count > world.getMaxUnits())
+                throw new IOException("Invalid number of units " + count + ".");
+            for(int i = 0; i < count; i++){
+                Faction faction = factions.get(in.readInt());
+                if(!faction.canHaveNewUnit())
+                    throw new IOException("The faction of a unit is full.");
+                Unit unit = new Unit(world, faction, in.readUTF(), readVector(in),
+                        in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                unit.setOrientation(in.readFloat());
+                unit.restore(in.readInt(), in.readDouble(), unit.getActivities());
+                units.add(unit);
+            }
+        }
+
+        private void readMaterials(DataInput in) throws IOException {
+            World world = requireWorld();
+            int count = in.readInt();
+            for(int i = 0; i < count; i++){
+                int kind = in.readUnsignedByte();
+                int ownerKind = in.readUnsignedByte();
+                WorldObject owner;
+                Vector fallingPosition = null;
+                if(ownerKind == OWNER_CUBE)
+                    owner = world.getCube(readCubeCoordinates(in));
+                else if(ownerKind == OWNER_UNIT)
+                    owner = units.get(in.readInt());
+                else if(ownerKind == OWNER_NONE){
+                    fallingPosition = readVector(in);
+                    owner = world.getCube(fallingPosition.getCubeCoordinates());
+                }else
+                    throw new IOException("Unknown material owner " + ownerKind + ".");
+                Material material;
+                if(kind == MATERIAL_BOULDER)
+                    material = new Boulder(world, owner);
+                else if(kind == MATERIAL_LOG)
+                    material = new Log(world, owner);
+                else
+                    throw new IOException("Unknown material " + kind + ".");
+                if(fallingPosition != null)
+                    material.restoreFalling(fallingPosition);
+                materials.add(material);
+            }
+        }
+
+        private void readActivities(DataInput in) throws IOException {
+            for(Unit unit : units){
+                double skippedTime = in.readDouble();
+                List<Activity> activities = ActivityCodec.read(in, unit, this);
+                unit.restore(unit.getXP(), unit.getRestTimer(), activities);
+                if(skippedTime > 0d)
+                    unit.skipTime(skippedTime);// Catch up on the time the unit was sleeping in the saved world
+            }
+        }
+
+        private void readTasks(DataInput in) throws IOException {
+            int count = in.readInt();
+            if(count < 0)
+                throw new IOException("Invalid number of tasks " + count + ".");
+            List<Task> tasks = new ArrayList<>(count);
+            int[] assignedUnits = new int[count];
+            RunnerState[] runners = new RunnerState[count];
+            for(int i = 0; i < count; i++){
+                String name = in.readUTF();
+                int priority = in.readInt();
+                Command<?> activity = CommandCodec.read(in);
+                if(!(activity instanceof Statement) || !((Statement) activity).check())
+                    throw new IOException("The activity of task " + name + " isn't well-formed.");
+                int[] selectedCube = null;
+                if(in.readBoolean())
+                    selectedCube = new int[]{in.readInt(), in.readInt(), in.readInt()};
+                tasks.add(new Task(name, priority, (Statement) activity, selectedCube));
+                assignedUnits[i] = in.readInt();
+                if(in.readBoolean())
+                    runners[i] = readRunner(in);
+            }
+            for(Faction faction : factions){
+                int nbTasks = in.readInt();
+                for(int j = 0; j < nbTasks; j++)
+                    faction.getScheduler().addTask(tasks.get(in.readInt()));
+            }
+            // Tasks can only be claimed through a scheduler they are part of
+            for(int i = 0; i < count; i++){
+                if(assignedUnits[i] < 0)
+                    continue;
+                Task task = tasks.get(i);
+                Unit unit = units.get(assignedUnits[i]);
+                if(!unit.getFaction().getScheduler().claim(task, unit))
+                    throw new IOException("Task " + task.getName() + " can't be assigned to its unit.");
+                if(runners[i] != null)
+                    runners[i].restore(task, unit);
+            }
+        }
+
+        private RunnerState readRunner(DataInput in) throws IOException {
+            RunnerState state = new RunnerState();
+            state.programCounter = in.readInt();
+            int nbSlots = in.readInt();
+            if(nbSlots < 0)
+                throw new IOException("Invalid number of slots " + nbSlots + ".");
+            state.slots = new Object[nbSlots];
+            for(int slot = 0; slot < nbSlots; slot++)
+                state.slots[slot] = readValue(in);
+            int nbOperands = in.readInt();
+            if(nbOperands < 0)
+                throw new IOException("Invalid number of operands " + nbOperands + ".");
+            state.operands = new Object[nbOperands];
+            for(int i = 0; i < nbOperands; i++)
+                state.operands[i] = readValue(in);
+            state.budget = in.readInt();
+            state.flags = in.readUnsignedByte();
+            in.readUnsignedByte();// Former execution mode of the runner
+            state.blockingActivity = in.readInt();
+            return state;
+        }
+
+        private Object readValue(DataInput in) throws IOException {
+            int kind = in.readUnsignedByte();
+            switch (kind){
+                case VALUE_NULL: return null;
+                case VALUE_BOOLEAN: return in.readBoolean();
+                case VALUE_VECTOR: return readVector(in);
+                case VALUE_UNIT: return units.get(in.readInt());
+                default: throw new IOException("Unknown value kind " + kind + ".");
+            }
+        }
+
+        @Override
+        public IWorldObject read(DataInput in) throws IOException {
+            int kind = in.readUnsignedByte();
+            switch (kind){
+                case REFERENCE_NULL: return null;
+                case REFERENCE_UNIT: return units.get(in.readInt());
+                case REFERENCE_MATERIAL: return materials.get(in.readInt());
+                case REFERENCE_CUBE: return requireWorld().getCube(readCubeCoordinates(in));
+                default: throw new IOException("Unknown reference kind " + kind + ".");
+            }
+        }
+    }
+    /**
+     * Class registering the execution state of a running task until the task is claimed by its unit.
+     */
+    private static final class RunnerState {
+
+        private int programCounter, budget, flags, blockingActivity;
+        private Object[] slots, operands;
+
+        /**
+         * Run the given task, which is claimed by the given unit, and restore its execution state.
+         */
+        private void restore(Task task, Unit unit){
+            task.run();
+            Task.TaskRunner runner = task.getRunner();
+            runner.getFrame().restore(programCounter, slots, operands);
+            runner.restore(budget, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0,
+                    blockingActivity < 0 ? null : unit.getActivities().get(blockingActivity));
+        }
+    }
+}
@@ -7,6 +7,8 @@ import hillbillies.utils.Utils;
 import hillbillies.utils.Vector;
 import ogp.framework.util.ModelException;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Set;
 
 /**
@@ -48,6 +50,32 @@ public class Facade implements IFacade {// TODO: check if some methods throw Exc
         return new World(terrainTypes, modelListener);
     }
 
+    /**
+     * Create a new world of the given size from the terrain types in the given buffer, which is read slab by slab
+     * into the terrain of the world, without converting it to an array first.
+     */
+    @Override
+    public World createWorld(int nbCubesX, int nbCubesY, int nbCubesZ, ByteBuffer terrainTypes,
+                             TerrainChangeListener modelListener) throws ModelException {
+        try {
+            return new WorldBuilder(nbCubesX, nbCubesY, nbCubesZ).setSlabs(terrainTypes).build(modelListener);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new ModelException("The given terrain is not valid.", e);
+        }
+    }
+
+    /**
+     * Create a new world from the given map, which reuses the border connectivity of the map if it has one.
+     */
+    @Override
+    public World createWorld(WorldMap map, TerrainChangeListener modelListener) throws ModelException {
+        try {
+            return map.createWorld(modelListener);
+        } catch (IllegalArgumentException e) {
+            throw new ModelException("The given terrain is not valid.", e);
+        }
+    }
+
     /**
      * Return the number of cubes in the world in the x-direction.
      *
@@ -114,7 +142,7 @@ public class Facade implements IFacade {// TODO: check if some methods throw Exc
     @Override
     public int getCubeType(World world, int x, int y, int z) throws ModelException {
         try {
-            return world.getCube(new Vector(x, y, z)).getTerrain().getId();
+            return world.getTerrain(new Vector(x, y, z)).getId();
         }catch(IllegalArgumentException e){
             throw new ModelException("The given coordinates do not reference a valid position in this world.",e);
         }
@@ -156,7 +184,11 @@ public class Facade implements IFacade {// TODO: check if some methods throw Exc
      */
     @Override
     public boolean isSolidConnectedToBorder(World world, int x, int y, int z) throws ModelException {
-        return world.connectedToBorder.isSolidConnectedToBorder(x,y,z);
+        try {
+            return world.isSolidConnectedToBorder(x,y,z);
+        }catch(IllegalArgumentException e){
+            throw new ModelException("The given coordinates do not reference a valid position in this world.",e);
+        }
     }
 
     /**
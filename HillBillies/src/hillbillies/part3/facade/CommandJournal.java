@@ -0,0 +1,356 @@
+package hillbillies.part3.facade;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.Faction;
+import hillbillies.model.Scheduler;
+import hillbillies.model.Task;
+import hillbillies.model.Terrain;
+import hillbillies.model.Unit;
+import hillbillies.model.World;
+import hillbillies.model.WorldBuilder;
+import hillbillies.part3.programs.CommandCodec;
+import hillbillies.utils.Vector;
+
+/**
+ * Append-only binary log of the commands given to a single World through the facade.
+ * The journal starts with a header holding the seed of the World, its unit limits and its initial terrain,
+ * followed by one record for each command. Each record holds the opcode of the command, the number of ticks
+ * since the previous record and the arguments of the command. Units are referred to by the order in which they
+ * were created, factions by the order in which they were added to the World and tasks by the order in which
+ * they were first scheduled; the definition of a task follows its first reference.
+ * Since the World generates all its random values from its seed, replaying the commands between the same ticks
+ * reconstructs the same match, see Replay.
+ * Commands which are rejected by the model are not recorded. When a record can't be written, the failure is
+ * registered and no further commands are recorded, so the game itself is never interrupted by the journal.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class CommandJournal implements AutoCloseable {
+
+    /**
+     * Constant reflecting the first bytes of a command journal ("HBJR").
+     */
+    public static final int MAGIC = 0x48424a52;
+    /**
+     * Constant reflecting the version of the journals written by this class.
+     */
+    public static final int VERSION = 1;
+
+    static final int ADVANCE_TIME = 0;
+    static final int SET_CUBE_TYPE = 1;
+    static final int SPAWN_UNIT = 2;
+    static final int CREATE_UNIT = 3;
+    static final int ADD_UNIT = 4;
+    static final int WORK_AT = 5;
+    static final int SET_NAME = 6;
+    static final int SET_WEIGHT = 7;
+    static final int SET_STRENGTH = 8;
+    static final int SET_AGILITY = 9;
+    static final int SET_TOUGHNESS = 10;
+    static final int MOVE_TO_ADJACENT = 11;
+    static final int START_SPRINTING = 12;
+    static final int STOP_SPRINTING = 13;
+    static final int MOVE_TO = 14;
+    static final int FIGHT = 15;
+    static final int REST = 16;
+    static final int SET_DEFAULT_BEHAVIOR = 17;
+    static final int SCHEDULE = 18;
+    static final int REPLACE = 19;
+
+    private final World world;
+    private final DataOutputStream out;
+    /**
+     * Buffer collecting the arguments of a record, so no partial record is written when they can't be written.
+     */
+    private final ByteArrayOutputStream arguments = new ByteArrayOutputStream();
+    private final DataOutputStream argumentsOut = new DataOutputStream(arguments);
+    private final Map<Unit, Integer> unitIndices = new HashMap<>();
+    private final Map<Task, Integer> taskIndices = new HashMap<>();
+    /**
+     * The number of ticks the world was advanced since the journal started.
+     */
+    private long tick = 0L;
+    private long lastRecordTick = 0L;
+    private long nbRecords = 0L;
+    private Exception failure = null;
+
+    /**
+     * Initialize a new CommandJournal for the given world, which is written to the given output.
+     * The header is written right away, so the world must not have been changed since it was created.
+     * @param world The world to journal.
+     * @param out The output to write the journal to. It's closed when this journal is closed.
+     * @throws IOException
+     *         The header could not be written.
+     */
+    public CommandJournal(World world, OutputStream out) throws IOException {
+        this.world = world;
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeShort(VERSION);
+        this.out.writeLong(world.getSeed());
+        this.out.writeInt(world.getMaxUnits());
+        this.out.writeInt(world.getMaxFactions());
+        this.out.writeInt(world.getMaxUnitsPerFaction());
+        writeTerrain(this.out, world);
+        this.out.flush();
+    }
+
+    @Basic @Immutable
+    public World getWorld(){
+        return world;
+    }
+
+    /**
+     * Return the number of ticks the world was advanced since this journal started.
+     */
+    @Basic
+    public long getTick(){
+        return tick;
+    }
+
+    /**
+     * Return the number of commands recorded by this journal.
+     */
+    @Basic
+    public long getNbRecords(){
+        return nbRecords;
+    }
+
+    /**
+     * Return the exception which stopped this journal, or null if all commands were recorded.
+     */
+    @Basic
+    public Exception getFailure(){
+        return failure;
+    }
+
+    /**
+     * Check whether the given unit was created by a command recorded in this journal.
+     */
+    public boolean hasAsUnit(Unit unit){
+        return unitIndices.containsKey(unit);
+    }
+
+    /**
+     * Check whether the given scheduler belongs to a faction of the journaled world.
+     */
+    public boolean hasAsScheduler(Scheduler scheduler){
+        for(Faction faction : world.getFactions())
+            if(faction.getScheduler() == scheduler)
+                return true;
+        return false;
+    }
+
+    /**
+     * Interface for writing the arguments of a single record.
+     */
+    @FunctionalInterface
+    interface Arguments {
+        void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * Record the command with the given opcode and arguments, given at the current tick.
+     */
+    void record(int opcode, Arguments arguments){
+        if(failure != null)
+            return;
+        try {
+            this.arguments.reset();
+            arguments.write(argumentsOut);
+            out.writeByte(opcode);
+            writeVarInt(out, (int) (tick - lastRecordTick));
+            this.arguments.writeTo(out);
+            lastRecordTick = tick;
+            nbRecords++;
+            if(opcode == ADVANCE_TIME){
+                tick++;
+                // A crash loses at most the commands of the current tick
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Record that the world was advanced by the given time period.
+     */
+    void recordAdvanceTime(double dt){
+        record(ADVANCE_TIME, out -> out.writeDouble(dt));
+    }
+
+    /**
+     * Register the given unit, which was created by the command recorded last, under the next unit index.
+     */
+    void registerUnit(Unit unit){
+        unitIndices.putIfAbsent(unit, unitIndices.size());
+    }
+
+    /**
+     * Write the index of the given unit.
+     * @throws IllegalArgumentException
+     *         The given unit wasn't created by a command recorded in this journal.
+     */
+    void writeUnit(DataOutput out, Unit unit) throws IOException, IllegalArgumentException {
+        Integer index = unitIndices.get(unit);
+        if(index == null)
+            throw new IllegalArgumentException("The unit " + unit.getName() + " wasn't created through the journal.");
+        writeVarInt(out, index);
+    }
+
+    /**
+     * Write the index of the faction of the given scheduler.
+     * @throws IllegalArgumentException
+     *         The given scheduler doesn't belong to a faction of the journaled world.
+     */
+    void writeScheduler(DataOutput out, Scheduler scheduler) throws IOException, IllegalArgumentException {
+        int index = 0;
+        for(Faction faction : world.getFactions()){
+            if(faction.getScheduler() == scheduler){
+                writeVarInt(out, index);
+                return;
+            }
+            index++;
+        }
+        throw new IllegalArgumentException("The scheduler doesn't belong to the journaled world.");
+    }
+
+    /**
+     * Write the index of the given task, followed by its definition if it's referenced for the first time.
+     */
+    void writeTask(DataOutput out, Task task) throws IOException, IllegalArgumentException {
+        Integer index = taskIndices.get(task);
+        if(index != null){
+            writeVarInt(out, index);
+            return;
+        }
+        writeVarInt(out, taskIndices.size());
+        out.writeUTF(task.getName());
+        out.writeInt(task.getPriority());
+        CommandCodec.write(out, task.getActivity());
+        Vector selectedCube = task.getSelectedCube();
+        out.writeBoolean(selectedCube != null);
+        if(selectedCube != null){
+            out.writeInt(selectedCube.cubeX());
+            out.writeInt(selectedCube.cubeY());
+            out.writeInt(selectedCube.cubeZ());
+        }
+        taskIndices.put(task, taskIndices.size());
+    }
+
+    /**
+     * Flush the records written so far to the output.
+     */
+    public void flush(){
+        if(failure != null)
+            return;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Stop recording and close the output of this journal.
+     * @throws IOException
+     *         The output could not be flushed or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if(failure == null)
+            failure = new IllegalStateException("The journal is closed.");
+        out.close();
+    }
+
+    /**
+     * Write the terrain of the given world as its dimensions followed by runs of equal terrain types, in x-major,
+     * z-minor order.
+     */
+    private static void writeTerrain(DataOutput out, World world) throws IOException {
+        int nbX = world.getNbCubesX(), nbY = world.getNbCubesY(), nbZ = world.getNbCubesZ();
+        out.writeInt(nbX);
+        out.writeInt(nbY);
+        out.writeInt(nbZ);
+        int runType = -1, runLength = 0;
+        for(int x = 0; x < nbX; x++)
+            for(int y = 0; y < nbY; y++)
+                for(int z = 0; z < nbZ; z++){
+                    int type = world.getTerrain(new Vector(x, y, z)).getId();
+                    if(type == runType){
+                        runLength++;
+                        continue;
+                    }
+                    if(runLength > 0){
+                        out.writeByte(runType);
+                        writeVarInt(out, runLength);
+                    }
+                    runType = type;
+                    runLength = 1;
+                }
+        out.writeByte(runType);
+        writeVarInt(out, runLength);
+    }
+
+    /**
+     * Read a terrain written by writeTerrain into a new WorldBuilder.
+     */
+    static WorldBuilder readTerrain(DataInput in) throws IOException {
+        int nbX = in.readInt(), nbY = in.readInt(), nbZ = in.readInt();
+        WorldBuilder builder;
+        try {
+            builder = new WorldBuilder(nbX, nbY, nbZ);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid terrain dimensions " + nbX + "x" + nbY + "x" + nbZ + ".", e);
+        }
+        int runType = 0, runLength = 0;
+        for(int x = 0; x < nbX; x++)
+            for(int y = 0; y < nbY; y++)
+                for(int z = 0; z < nbZ; z++){
+                    if(runLength == 0){
+                        runType = in.readUnsignedByte();
+                        runLength = readVarInt(in);
+                        if(runLength == 0 || !Terrain.isValidId(runType))
+                            throw new IOException("Invalid terrain run.");
+                    }
+                    builder.setTerrain(x, y, z, runType);
+                    runLength--;
+                }
+        if(runLength != 0)
+            throw new IOException("The terrain runs exceed the terrain dimensions.");
+        return builder;
+    }
+
+    /**
+     * Write the given non-negative integer in 7-bit groups, least significant group first.
+     */
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while((value & ~0x7f) != 0){
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7){
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Invalid variable length integer.");
+    }
+}
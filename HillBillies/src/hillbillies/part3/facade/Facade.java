@@ -6,11 +6,14 @@ import hillbillies.part3.programs.ITaskFactory;
 import hillbillies.model.Scheduler;
 import hillbillies.model.Task;
 import hillbillies.part3.programs.TaskFactory;
+import hillbillies.part3.programs.TaskLibrary;
 import hillbillies.part3.programs.TaskParser;
 import hillbillies.tests.facade.Part3TestPartial;
 import hillbillies.utils.*;
 import ogp.framework.util.ModelException;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
@@ -53,6 +56,32 @@ public class Facade implements IFacade {// TODO: check if some methods throw Exc
         return new World(terrainTypes, modelListener);
     }
 
+    /**
+     * Create a new world of the given size from the terrain types in the given buffer, which is read slab by slab
+     * into the terrain of the world, without converting it to an array first.
+     */
+    @Override
+    public World createWorld(int nbCubesX, int nbCubesY, int nbCubesZ, ByteBuffer terrainTypes,
+                             TerrainChangeListener modelListener) throws ModelException {
+        try {
+            return new WorldBuilder(nbCubesX, nbCubesY, nbCubesZ).setSlabs(terrainTypes).build(modelListener);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new ModelException("The given terrain is not valid.", e);
+        }
+    }
+
+    /**
+     * Create a new world from the given map, which reuses the border connectivity of the map if it has one.
+     */
+    @Override
+    public World createWorld(WorldMap map, TerrainChangeListener modelListener) throws ModelException {
+        try {
+            return map.createWorld(modelListener);
+        } catch (IllegalArgumentException e) {
+            throw new ModelException("The given terrain is not valid.", e);
+        }
+    }
+
     /**
      * Return the number of cubes in the world in the x-direction.
      *
@@ -119,7 +148,7 @@ public class Facade implements IFacade {// TODO: check if some methods throw Exc
     @Override
     public int getCubeType(World world, int x, int y, int z) throws ModelException {
         try {
-            return world.getCube(new Vector(x, y, z)).getTerrain().getId();
+            return world.getTerrain(new Vector(x, y, z)).getId();
         }catch(IllegalArgumentException e){
             throw new ModelException("The given coordinates do not reference a valid position in this world.",e);
         }
@@ -161,7 +190,11 @@ public class Facade implements IFacade {// TODO: check if some methods throw Exc
      */
     @Override
     public boolean isSolidConnectedToBorder(World world, int x, int y, int z) throws ModelException {
-        return world.connectedToBorder.isSolidConnectedToBorder(x,y,z);
+        try {
+            return world.isSolidConnectedToBorder(x,y,z);
+        }catch(IllegalArgumentException e){
+            throw new ModelException("The given coordinates do not reference a valid position in this world.",e);
+        }
     }
 
     /**
@@ -838,9 +871,15 @@ public class Facade implements IFacade {// TODO: check if some methods throw Exc
      */
     @Override
     public ITaskFactory<?, ?, Task> createTaskFactory() {
-        return new TaskFactory();
+        return new TaskFactory(taskLibrary);
     }
 
+    /**
+     * Variable referencing the library caching the tasks loaded with the factories of this facade,
+     * so a task file is only parsed the first time it is loaded.
+     */
+    private final TaskLibrary taskLibrary = new TaskLibrary();
+
     /**
      * Returns whether the given task is well-formed.
      * <p>
@@ -932,7 +971,7 @@ public class Facade implements IFacade {// TODO: check if some methods throw Exc
      */
     @Override
     public Iterator<Task> getAllTasksIterator(Scheduler scheduler) throws ModelException {
-        return scheduler.iterator();
+        return scheduler.getSnapshot().iterator();
     }
 
     /**
@@ -0,0 +1,360 @@
+package hillbillies.part3.facade;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.Scheduler;
+import hillbillies.model.Task;
+import hillbillies.model.Unit;
+import hillbillies.model.World;
+import hillbillies.model.WorldMap;
+import hillbillies.part2.listener.TerrainChangeListener;
+import hillbillies.utils.Utils;
+import ogp.framework.util.ModelException;
+
+/**
+ * Facade recording the commands given to the world it creates in a CommandJournal, from which the match
+ * can be reconstructed by a Replay.
+ * Only the first world created by this facade is journaled. The commands are executed with the random
+ * generator of that world bound to the current thread, so the random values they use are reproducible
+ * from the seed of the world.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public class JournalingFacade extends Facade implements AutoCloseable {
+
+    private final OutputStream out;
+    /**
+     * The seed given to the journaled world, or null to keep the seed it was created with.
+     */
+    private final Long seed;
+    private CommandJournal journal = null;
+
+    /**
+     * Initialize a new JournalingFacade writing its journal to the given output.
+     * @param out The output to write the journal to, once a world is created.
+     */
+    public JournalingFacade(OutputStream out){
+        this.out = out;
+        this.seed = null;
+    }
+
+    /**
+     * Initialize a new JournalingFacade writing its journal to the given output, of which the journaled world
+     * is seeded with the given seed, so the same match can be played again.
+     * @param out The output to write the journal to, once a world is created.
+     * @param seed The seed of the journaled world.
+     */
+    public JournalingFacade(OutputStream out, long seed){
+        this.out = out;
+        this.seed = seed;
+    }
+
+    /**
+     * Return the journal of this facade, or null if no world was created yet.
+     */
+    @Basic
+    public CommandJournal getJournal(){
+        return journal;
+    }
+
+    /**
+     * Stop recording and close the output of this facade.
+     * @throws IOException
+     *         The output could not be flushed or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if(journal != null)
+            journal.close();
+        else
+            out.close();
+    }
+
+    /**
+     * Interface for a command executed by the methods of the superclass.
+     */
+    @FunctionalInterface
+    private interface FacadeCommand {
+        void execute() throws ModelException;
+    }
+
+    /**
+     * Execute the given command with the random generator of the journaled world bound to the current thread.
+     */
+    private void execute(FacadeCommand command) throws ModelException {
+        if(journal == null){
+            command.execute();
+            return;
+        }
+        Random previous = journal.getWorld().bindRandom();
+        try {
+            command.execute();
+        } finally {
+            Utils.bindRandom(previous);
+        }
+    }
+
+    private boolean isJournaled(World world){
+        return journal != null && world == journal.getWorld();
+    }
+
+    private boolean isJournaled(Unit unit){
+        return journal != null && (journal.hasAsUnit(unit) || unit.getWorld() == journal.getWorld());
+    }
+
+    private boolean isJournaled(Scheduler scheduler){
+        return journal != null && journal.hasAsScheduler(scheduler);
+    }
+
+    private static void writeCube(DataOutput out, int x, int y, int z) throws IOException {
+        out.writeInt(x);
+        out.writeInt(y);
+        out.writeInt(z);
+    }
+
+    /**
+     * Create a new world as described in Facade, and start journaling it if it's the first world of this facade.
+     * @throws ModelException
+     *         The journal could not be started.
+     */
+    @Override
+    public World createWorld(int[][][] terrainTypes, TerrainChangeListener modelListener) throws ModelException {
+        return startJournal(super.createWorld(terrainTypes, modelListener));
+    }
+
+    /**
+     * Create a new world as described in Facade, and start journaling it if it's the first world of this facade.
+     * @throws ModelException
+     *         The journal could not be started.
+     */
+    @Override
+    public World createWorld(int nbCubesX, int nbCubesY, int nbCubesZ, ByteBuffer terrainTypes,
+                             TerrainChangeListener modelListener) throws ModelException {
+        return startJournal(super.createWorld(nbCubesX, nbCubesY, nbCubesZ, terrainTypes, modelListener));
+    }
+
+    /**
+     * Create a new world as described in Facade, and start journaling it if it's the first world of this facade.
+     * @throws ModelException
+     *         The journal could not be started.
+     */
+    @Override
+    public World createWorld(WorldMap map, TerrainChangeListener modelListener) throws ModelException {
+        return startJournal(super.createWorld(map, modelListener));
+    }
+
+    /**
+     * Start journaling the given new world, if no world was journaled yet.
+     */
+    private World startJournal(World world) throws ModelException {
+        if(journal == null)
+            try {
+                if(seed != null)
+                    world.setSeed(seed);
+                journal = new CommandJournal(world, out);
+            } catch (IOException e) {
+                throw new ModelException("The journal could not be started.", e);
+            }
+        return world;
+    }
+
+    @Override
+    public void advanceTime(World world, double dt) throws ModelException {
+        super.advanceTime(world, dt);
+        if(isJournaled(world))
+            journal.recordAdvanceTime(dt);
+    }
+
+    @Override
+    public void setCubeType(World world, int x, int y, int z, int value) throws ModelException {
+        execute(() -> super.setCubeType(world, x, y, z, value));
+        if(isJournaled(world))
+            journal.record(CommandJournal.SET_CUBE_TYPE, out -> {
+                writeCube(out, x, y, z);
+                out.writeInt(value);
+            });
+    }
+
+    @Override
+    public Unit spawnUnit(World world, boolean enableDefaultBehavior) throws ModelException {
+        Unit unit = super.spawnUnit(world, enableDefaultBehavior);
+        if(isJournaled(world)){
+            journal.record(CommandJournal.SPAWN_UNIT, out -> out.writeBoolean(enableDefaultBehavior));
+            journal.registerUnit(unit);
+        }
+        return unit;
+    }
+
+    @Override
+    public void addUnit(Unit unit, World world) throws ModelException {
+        execute(() -> super.addUnit(unit, world));
+        if(isJournaled(world))
+            journal.record(CommandJournal.ADD_UNIT, out -> journal.writeUnit(out, unit));
+    }
+
+    @Override
+    public Unit createUnit(String name, int[] initialPosition, int weight, int agility, int strength, int toughness,
+                           boolean enableDefaultBehavior) throws ModelException {
+        if(journal == null)
+            return super.createUnit(name, initialPosition, weight, agility, strength, toughness, enableDefaultBehavior);
+        Unit unit;
+        Random previous = journal.getWorld().bindRandom();
+        try {
+            unit = super.createUnit(name, initialPosition, weight, agility, strength, toughness, enableDefaultBehavior);
+        } finally {
+            Utils.bindRandom(previous);
+        }
+        journal.record(CommandJournal.CREATE_UNIT, out -> {
+            out.writeUTF(name);
+            writeCube(out, initialPosition[0], initialPosition[1], initialPosition[2]);
+            out.writeInt(weight);
+            out.writeInt(agility);
+            out.writeInt(strength);
+            out.writeInt(toughness);
+            out.writeBoolean(enableDefaultBehavior);
+        });
+        journal.registerUnit(unit);
+        return unit;
+    }
+
+    @Override
+    public void workAt(Unit unit, int x, int y, int z) throws ModelException {
+        execute(() -> super.workAt(unit, x, y, z));
+        if(isJournaled(unit))
+            journal.record(CommandJournal.WORK_AT, out -> {
+                journal.writeUnit(out, unit);
+                writeCube(out, x, y, z);
+            });
+    }
+
+    @Override
+    public void setName(Unit unit, String newName) throws ModelException {
+        execute(() -> super.setName(unit, newName));
+        if(isJournaled(unit))
+            journal.record(CommandJournal.SET_NAME, out -> {
+                journal.writeUnit(out, unit);
+                out.writeUTF(newName);
+            });
+    }
+
+    @Override
+    public void setWeight(Unit unit, int newValue) throws ModelException {
+        execute(() -> super.setWeight(unit, newValue));
+        recordAttribute(CommandJournal.SET_WEIGHT, unit, newValue);
+    }
+
+    @Override
+    public void setStrength(Unit unit, int newValue) throws ModelException {
+        execute(() -> super.setStrength(unit, newValue));
+        recordAttribute(CommandJournal.SET_STRENGTH, unit, newValue);
+    }
+
+    @Override
+    public void setAgility(Unit unit, int newValue) throws ModelException {
+        execute(() -> super.setAgility(unit, newValue));
+        recordAttribute(CommandJournal.SET_AGILITY, unit, newValue);
+    }
+
+    @Override
+    public void setToughness(Unit unit, int newValue) throws ModelException {
+        execute(() -> super.setToughness(unit, newValue));
+        recordAttribute(CommandJournal.SET_TOUGHNESS, unit, newValue);
+    }
+
+    private void recordAttribute(int opcode, Unit unit, int newValue){
+        if(isJournaled(unit))
+            journal.record(opcode, out -> {
+                journal.writeUnit(out, unit);
+                out.writeInt(newValue);
+            });
+    }
+
+    @Override
+    public void moveToAdjacent(Unit unit, int dx, int dy, int dz) throws ModelException {
+        execute(() -> super.moveToAdjacent(unit, dx, dy, dz));
+        if(isJournaled(unit))
+            journal.record(CommandJournal.MOVE_TO_ADJACENT, out -> {
+                journal.writeUnit(out, unit);
+                out.writeByte(dx);
+                out.writeByte(dy);
+                out.writeByte(dz);
+            });
+    }
+
+    @Override
+    public void startSprinting(Unit unit) throws ModelException {
+        execute(() -> super.startSprinting(unit));
+        if(isJournaled(unit))
+            journal.record(CommandJournal.START_SPRINTING, out -> journal.writeUnit(out, unit));
+    }
+
+    @Override
+    public void stopSprinting(Unit unit) throws ModelException {
+        execute(() -> super.stopSprinting(unit));
+        if(isJournaled(unit))
+            journal.record(CommandJournal.STOP_SPRINTING, out -> journal.writeUnit(out, unit));
+    }
+
+    @Override
+    public void moveTo(Unit unit, int[] cube) throws ModelException {
+        execute(() -> super.moveTo(unit, cube));
+        if(isJournaled(unit))
+            journal.record(CommandJournal.MOVE_TO, out -> {
+                journal.writeUnit(out, unit);
+                writeCube(out, cube[0], cube[1], cube[2]);
+            });
+    }
+
+    @Override
+    public void fight(Unit attacker, Unit defender) throws ModelException {
+        execute(() -> super.fight(attacker, defender));
+        if(isJournaled(attacker))
+            journal.record(CommandJournal.FIGHT, out -> {
+                journal.writeUnit(out, attacker);
+                journal.writeUnit(out, defender);
+            });
+    }
+
+    @Override
+    public void rest(Unit unit) throws ModelException {
+        execute(() -> super.rest(unit));
+        if(isJournaled(unit))
+            journal.record(CommandJournal.REST, out -> journal.writeUnit(out, unit));
+    }
+
+    @Override
+    public void setDefaultBehaviorEnabled(Unit unit, boolean value) throws ModelException {
+        execute(() -> super.setDefaultBehaviorEnabled(unit, value));
+        if(isJournaled(unit))
+            journal.record(CommandJournal.SET_DEFAULT_BEHAVIOR, out -> {
+                journal.writeUnit(out, unit);
+                out.writeBoolean(value);
+            });
+    }
+
+    @Override
+    public void schedule(Scheduler scheduler, Task task) throws ModelException {
+        super.schedule(scheduler, task);
+        if(isJournaled(scheduler))
+            journal.record(CommandJournal.SCHEDULE, out -> {
+                journal.writeScheduler(out, scheduler);
+                journal.writeTask(out, task);
+            });
+    }
+
+    @Override
+    public void replace(Scheduler scheduler, Task original, Task replacement) throws ModelException {
+        super.replace(scheduler, original, replacement);
+        if(isJournaled(scheduler))
+            journal.record(CommandJournal.REPLACE, out -> {
+                journal.writeScheduler(out, scheduler);
+                journal.writeTask(out, original);
+                journal.writeTask(out, replacement);
+            });
+    }
+}
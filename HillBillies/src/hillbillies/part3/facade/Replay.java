@@ -0,0 +1,292 @@
+package hillbillies.part3.facade;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.Faction;
+import hillbillies.model.Scheduler;
+import hillbillies.model.Task;
+import hillbillies.model.Unit;
+import hillbillies.model.World;
+import hillbillies.model.WorldBuilder;
+import hillbillies.part2.listener.TerrainChangeListener;
+import hillbillies.part3.programs.Command;
+import hillbillies.part3.programs.CommandCodec;
+import hillbillies.part3.programs.statements.Statement;
+import hillbillies.utils.Utils;
+import ogp.framework.util.ModelException;
+
+/**
+ * Class reconstructing a match from a CommandJournal, without a user interface.
+ * The world is created from the header of the journal and reseeded with the seed of the journaled world, after
+ * which the recorded commands are given to it through a Facade between the same ticks as they were recorded.
+ * The ticks are advanced as fast as possible, so the replay can be fast-forwarded to any tick of the match.
+ * The records are read on demand, so a replay can also follow a journal which is still being written.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class Replay implements AutoCloseable {
+
+    private final DataInputStream in;
+    private final Facade facade = new Facade();
+    private final World world;
+    private final List<Unit> units = new ArrayList<>();
+    private final List<Task> tasks = new ArrayList<>();
+    /**
+     * The number of ticks the world was advanced by this replay.
+     */
+    private long tick = 0L;
+    /**
+     * The opcode and tick of the next record, if it has been read already.
+     */
+    private int nextOpcode = -1;
+    private long nextTick = 0L;
+    private boolean finished = false;
+
+    /**
+     * Initialize a new Replay of the journal read from the given input.
+     * @param in The input to read the journal from. It's closed when this replay is closed.
+     * @param terrainChangeListener The listener of the replayed world.
+     * @throws IOException
+     *         The input could not be read, or isn't a command journal of a supported version.
+     */
+    public Replay(InputStream in, TerrainChangeListener terrainChangeListener) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        if(this.in.readInt() != CommandJournal.MAGIC)
+            throw new IOException("The input isn't a command journal.");
+        int version = this.in.readUnsignedShort();
+        if(version != CommandJournal.VERSION)
+            throw new IOException("Unsupported command journal version " + version + ".");
+        long seed = this.in.readLong();
+        int maxUnits = this.in.readInt(), maxFactions = this.in.readInt(), maxUnitsPerFaction = this.in.readInt();
+        WorldBuilder builder = CommandJournal.readTerrain(this.in);
+        try {
+            this.world = builder.setLimits(maxUnits, maxFactions, maxUnitsPerFaction).build(terrainChangeListener);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("The journal contains an invalid world.", e);
+        }
+        this.world.setSeed(seed);
+    }
+
+    @Basic @Immutable
+    public World getWorld(){
+        return world;
+    }
+
+    /**
+     * Return the number of ticks the world was advanced by this replay.
+     */
+    @Basic
+    public long getTick(){
+        return tick;
+    }
+
+    /**
+     * Return the units created by the replayed commands, in the order they were created.
+     */
+    public List<Unit> getUnits(){
+        return Collections.unmodifiableList(units);
+    }
+
+    /**
+     * Check whether all records of the journal have been replayed.
+     */
+    @Basic
+    public boolean isFinished(){
+        return finished;
+    }
+
+    /**
+     * Replay the journal until the world has been advanced the given number of ticks. The commands recorded
+     * after that tick aren't replayed yet.
+     * @param tick The tick to fast-forward to.
+     * @return True if the given tick was reached, false if the journal ended before.
+     * @throws IllegalArgumentException
+     *         The given tick was already passed.
+     *         | tick < getTick()
+     * @throws IOException
+     *         The journal could not be read, or the model rejected a recorded command, which means the
+     *         replayed match diverged from the recorded one.
+     */
+    public boolean advanceTo(long tick) throws IllegalArgumentException, IOException {
+        if(tick < this.tick)
+            throw new IllegalArgumentException("The replay already passed tick " + tick + ".");
+        while(readNextRecordHeader() && nextTick < tick)
+            replayNextRecord();
+        return this.tick == tick;
+    }
+
+    /**
+     * Replay all remaining records of the journal.
+     * @return The number of ticks the world was advanced by this replay.
+     * @throws IOException
+     *         See advanceTo.
+     */
+    public long advanceToEnd() throws IOException {
+        while(readNextRecordHeader())
+            replayNextRecord();
+        return tick;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Read the opcode and tick of the next record, if they weren't read yet.
+     * @return False if the journal ends before the next record.
+     */
+    private boolean readNextRecordHeader() throws IOException {
+        if(nextOpcode >= 0)
+            return true;
+        if(finished)
+            return false;
+        int opcode = in.read();
+        if(opcode < 0){
+            finished = true;
+            return false;
+        }
+        nextTick += CommandJournal.readVarInt(in);
+        nextOpcode = opcode;
+        return true;
+    }
+
+    private void replayNextRecord() throws IOException {
+        int opcode = nextOpcode;
+        // Commands given after the tick they were recorded at mean the journal is corrupt
+        if(nextTick != tick)
+            throw new IOException("The record at tick " + nextTick + " can't be replayed at tick " + tick + ".");
+        nextOpcode = -1;
+        Random previous = world.bindRandom();
+        try {
+            replay(opcode);
+        } catch (ModelException | RuntimeException e) {
+            throw new IOException("The replay diverged at tick " + tick + ".", e);
+        } catch (EOFException e) {
+            throw new IOException("The journal ends in the middle of a record.", e);
+        } finally {
+            Utils.bindRandom(previous);
+        }
+    }
+
+    private void replay(int opcode) throws IOException, ModelException {
+        switch (opcode){
+            case CommandJournal.ADVANCE_TIME:
+                facade.advanceTime(world, in.readDouble());
+                tick++;
+                break;
+            case CommandJournal.SET_CUBE_TYPE:
+                facade.setCubeType(world, in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                break;
+            case CommandJournal.SPAWN_UNIT:
+                units.add(facade.spawnUnit(world, in.readBoolean()));
+                break;
+            case CommandJournal.CREATE_UNIT:
+                String name = in.readUTF();
+                int[] position = readCube();
+                int weight = in.readInt(), agility = in.readInt(), strength = in.readInt(), toughness = in.readInt();
+                units.add(facade.createUnit(name, position, weight, agility, strength, toughness, in.readBoolean()));
+                break;
+            case CommandJournal.ADD_UNIT:
+                facade.addUnit(readUnit(), world);
+                break;
+            case CommandJournal.WORK_AT:
+                Unit worker = readUnit();
+                int[] cube = readCube();
+                facade.workAt(worker, cube[0], cube[1], cube[2]);
+                break;
+            case CommandJournal.SET_NAME:
+                facade.setName(readUnit(), in.readUTF());
+                break;
+            case CommandJournal.SET_WEIGHT:
+                facade.setWeight(readUnit(), in.readInt());
+                break;
+            case CommandJournal.SET_STRENGTH:
+                facade.setStrength(readUnit(), in.readInt());
+                break;
+            case CommandJournal.SET_AGILITY:
+                facade.setAgility(readUnit(), in.readInt());
+                break;
+            case CommandJournal.SET_TOUGHNESS:
+                facade.setToughness(readUnit(), in.readInt());
+                break;
+            case CommandJournal.MOVE_TO_ADJACENT:
+                facade.moveToAdjacent(readUnit(), in.readByte(), in.readByte(), in.readByte());
+                break;
+            case CommandJournal.START_SPRINTING:
+                facade.startSprinting(readUnit());
+                break;
+            case CommandJournal.STOP_SPRINTING:
+                facade.stopSprinting(readUnit());
+                break;
+            case CommandJournal.MOVE_TO:
+                facade.moveTo(readUnit(), readCube());
+                break;
+            case CommandJournal.FIGHT:
+                facade.fight(readUnit(), readUnit());
+                break;
+            case CommandJournal.REST:
+                facade.rest(readUnit());
+                break;
+            case CommandJournal.SET_DEFAULT_BEHAVIOR:
+                facade.setDefaultBehaviorEnabled(readUnit(), in.readBoolean());
+                break;
+            case CommandJournal.SCHEDULE:
+                facade.schedule(readScheduler(), readTask());
+                break;
+            case CommandJournal.REPLACE:
+                facade.replace(readScheduler(), readTask(), readTask());
+                break;
+            default:
+                throw new IOException("Unknown command " + opcode + " at tick " + tick + ".");
+        }
+    }
+
+    private int[] readCube() throws IOException {
+        return new int[]{in.readInt(), in.readInt(), in.readInt()};
+    }
+
+    private Unit readUnit() throws IOException {
+        int index = CommandJournal.readVarInt(in);
+        if(index >= units.size())
+            throw new IOException("Unknown unit " + index + " at tick " + tick + ".");
+        return units.get(index);
+    }
+
+    private Scheduler readScheduler() throws IOException {
+        int index = CommandJournal.readVarInt(in);
+        for(Faction faction : world.getFactions())
+            if(index-- == 0)
+                return faction.getScheduler();
+        throw new IOException("Unknown faction at tick " + tick + ".");
+    }
+
+    /**
+     * Read a reference to a task, followed by its definition if it's referenced for the first time.
+     */
+    private Task readTask() throws IOException {
+        int index = CommandJournal.readVarInt(in);
+        if(index < tasks.size())
+            return tasks.get(index);
+        if(index > tasks.size())
+            throw new IOException("Unknown task " + index + " at tick " + tick + ".");
+        String name = in.readUTF();
+        int priority = in.readInt();
+        Command<?> activity = CommandCodec.read(in);
+        if(!(activity instanceof Statement) || !((Statement) activity).check())
+            throw new IOException("The activity of task " + name + " isn't well-formed.");
+        int[] selectedCube = in.readBoolean() ? readCube() : null;
+        Task task = new Task(name, priority, (Statement) activity, selectedCube);
+        tasks.add(task);
+        return task;
+    }
+}
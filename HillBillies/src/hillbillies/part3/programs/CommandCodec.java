@@ -0,0 +1,153 @@
+package hillbillies.part3.programs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import hillbillies.part3.programs.expressions.*;
+import hillbillies.part3.programs.statements.*;
+import hillbillies.utils.Vector;
+
+/**
+ * Compact binary serialization of Commands. Each Command is written as the tag of its class,
+ * followed by its children and finally the data of the Command itself (variable names and
+ * literal positions). Only Sequences have a variable number of children, which is written
+ * right after their tag.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class CommandCodec {
+
+    private CommandCodec(){
+    }
+
+    /**
+     * Enumeration of the serializable Command classes. The ordinal of each constant is the tag
+     * of its class, so new constants must only be added at the end.
+     */
+    private enum Tag {
+        TRUE(True.class, 0, (in, c) -> new True()),
+        FALSE(False.class, 0, (in, c) -> new False()),
+        NOT(Not.class, 1, (in, c) -> new Not(expression(c[0]))),
+        AND(And.class, 2, (in, c) -> new And(expression(c[0]), expression(c[1]))),
+        OR(Or.class, 2, (in, c) -> new Or(expression(c[0]), expression(c[1]))),
+        READ_VARIABLE(ReadVariable.class, 0, (in, c) -> new ReadVariable<>(in.readUTF())),
+        IS_SOLID(IsSolid.class, 1, (in, c) -> new IsSolid(expression(c[0]))),
+        IS_PASSABLE(IsPassable.class, 1, (in, c) -> new IsPassable(expression(c[0]))),
+        IS_FRIEND(IsFriend.class, 1, (in, c) -> new IsFriend(expression(c[0]))),
+        IS_ENEMY(IsEnemy.class, 1, (in, c) -> new IsEnemy(expression(c[0]))),
+        IS_ALIVE(IsAlive.class, 1, (in, c) -> new IsAlive(expression(c[0]))),
+        CARRIES_ITEM(CarriesItem.class, 1, (in, c) -> new CarriesItem(expression(c[0]))),
+        HERE_POSITION(HerePosition.class, 0, (in, c) -> new HerePosition()),
+        LOG_POSITION(LogPosition.class, 0, (in, c) -> new LogPosition()),
+        BOULDER_POSITION(BoulderPosition.class, 0, (in, c) -> new BoulderPosition()),
+        WORKSHOP_POSITION(WorkshopPosition.class, 0, (in, c) -> new WorkshopPosition()),
+        SELECTED_POSITION(SelectedPosition.class, 0, (in, c) -> new SelectedPosition()),
+        NEXT_TO_POSITION(NextToPosition.class, 1, (in, c) -> new NextToPosition(expression(c[0]))),
+        POSITION_OF_UNIT(PositionOfUnit.class, 1, (in, c) -> new PositionOfUnit(expression(c[0]))),
+        LITERAL_POSITION(LiteralPosition.class, 0, (in, c) -> new LiteralPosition(in.readInt(), in.readInt(), in.readInt())),
+        THIS(This.class, 0, (in, c) -> new This()),
+        FRIEND(Friend.class, 0, (in, c) -> new Friend()),
+        ENEMY(Enemy.class, 0, (in, c) -> new Enemy()),
+        ANY(Any.class, 0, (in, c) -> new Any()),
+        ASSIGNMENT(Assignment.class, 1, (in, c) -> new Assignment<>(in.readUTF(), expression(c[0]))),
+        WHILE(While.class, 2, (in, c) -> new While(expression(c[0]), statement(c[1]))),
+        IF(If.class, 2, (in, c) -> new If(expression(c[0]), statement(c[1]))),
+        IF_ELSE(IfElse.class, 3, (in, c) -> new IfElse(expression(c[0]), statement(c[1]), statement(c[2]))),
+        BREAK(Break.class, 0, (in, c) -> new Break()),
+        PRINT(Print.class, 1, (in, c) -> new Print(expression(c[0]))),
+        SEQUENCE(Sequence.class, -1, (in, c) -> {
+            List<Statement> statements = new ArrayList<>(c.length);
+            for(Command<?> child : c)
+                statements.add(statement(child));
+            return new Sequence(statements);
+        }),
+        MOVE_TO(MoveTo.class, 1, (in, c) -> new MoveTo(expression(c[0]))),
+        WORK_AT(WorkAt.class, 1, (in, c) -> new WorkAt(expression(c[0]))),
+        FOLLOW_UNIT(FollowUnit.class, 1, (in, c) -> new FollowUnit(expression(c[0]))),
+        ATTACK_UNIT(AttackUnit.class, 1, (in, c) -> new AttackUnit(expression(c[0])));
+
+        private final Class<?> type;
+        /**
+         * The number of children of the Commands of this tag, or -1 if it is variable.
+         */
+        private final int arity;
+        private final Decoder decoder;
+
+        Tag(Class<?> type, int arity, Decoder decoder){
+            this.type = type;
+            this.arity = arity;
+            this.decoder = decoder;
+        }
+
+        private static Tag of(Command<?> command) throws IllegalArgumentException {
+            for(Tag tag : values())
+                if(tag.type == command.getClass())
+                    return tag;
+            throw new IllegalArgumentException("Commands of class " + command.getClass().getSimpleName() + " can't be serialized.");
+        }
+    }
+
+    @FunctionalInterface
+    private interface Decoder {
+        Command<?> decode(DataInput in, Command<?>[] children) throws IOException;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Expression<T> expression(Command<?> command){
+        return (Expression<T>) command;
+    }
+
+    private static Statement statement(Command<?> command){
+        return (Statement) command;
+    }
+
+    /**
+     * Write the given Command and all its children to the given output.
+     * @throws IllegalArgumentException
+     *         The given Command, or one of its children, isn't of a serializable class.
+     */
+    public static void write(DataOutput out, Command<?> command) throws IOException, IllegalArgumentException {
+        Tag tag = Tag.of(command);
+        out.writeByte(tag.ordinal());
+        if(tag.arity < 0)
+            out.writeInt(command.getNbChildren());
+        for(Command<?> child : command.getChildren())
+            write(out, child);
+        if(command instanceof Assignment)
+            out.writeUTF(((Assignment<?>) command).getVariableName());
+        else if(command instanceof ReadVariable)
+            out.writeUTF(((ReadVariable<?>) command).getVariableName());
+        else if(command instanceof LiteralPosition){
+            Vector position = ((LiteralPosition) command).getPosition();
+            out.writeInt((int) position.X());
+            out.writeInt((int) position.Y());
+            out.writeInt((int) position.Z());
+        }
+    }
+
+    /**
+     * Read a Command written by write(DataOutput, Command) from the given input.
+     * @throws IOException
+     *         The input could not be read or doesn't contain a valid Command.
+     */
+    public static Command<?> read(DataInput in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if(ordinal >= Tag.values().length)
+            throw new IOException("Unknown command tag " + ordinal + ".");
+        Tag tag = Tag.values()[ordinal];
+        int nbChildren = tag.arity < 0 ? in.readInt() : tag.arity;
+        if(nbChildren < 0)
+            throw new IOException("Invalid number of children " + nbChildren + ".");
+        Command<?>[] children = new Command<?>[nbChildren];
+        for(int i = 0; i < nbChildren; i++)
+            children[i] = read(in);
+        try {
+            return tag.decoder.decode(in, children);
+        } catch (ClassCastException | IllegalArgumentException e) {
+            throw new IOException("Invalid children for a command of class " + tag.type.getSimpleName() + ".", e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package hillbillies.part3.programs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import hillbillies.part3.programs.expressions.*;
+import hillbillies.part3.programs.statements.*;
+
+/**
+ * Immutable class assigning the number of budget instructions each kind of Command costs.
+ * A statement is charged once, at its start, for itself and for all expressions it evaluates
+ * directly. The statements nested in it are charged separately.
+ * By default each statement costs one instruction and expressions are free, except for the
+ * expressions searching the world and the statements starting a path search.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class CostModel {
+
+    /**
+     * Constant reflecting the default cost of a statement.
+     */
+    public static final int DEFAULT_STATEMENT_COST = 1;
+    /**
+     * Constant reflecting the default cost of an expression.
+     */
+    public static final int DEFAULT_EXPRESSION_COST = 0;
+    /**
+     * Constant reflecting the default cost of the commands searching the world for the nearest unit, material or workshop.
+     */
+    public static final int DEFAULT_SEARCH_COST = 10;
+    /**
+     * Constant reflecting the default cost of the statements starting a path search.
+     */
+    public static final int DEFAULT_PATH_COST = 5;
+
+    /**
+     * The default cost model.
+     */
+    public static final CostModel DEFAULT = new CostModel(new HashMap<>())
+            .withCost(Enemy.class, DEFAULT_SEARCH_COST)
+            .withCost(Friend.class, DEFAULT_SEARCH_COST)
+            .withCost(Any.class, DEFAULT_SEARCH_COST)
+            .withCost(LogPosition.class, DEFAULT_SEARCH_COST)
+            .withCost(BoulderPosition.class, DEFAULT_SEARCH_COST)
+            .withCost(WorkshopPosition.class, DEFAULT_SEARCH_COST)
+            .withCost(MoveTo.class, DEFAULT_PATH_COST)
+            .withCost(FollowUnit.class, DEFAULT_PATH_COST);
+
+    /**
+     * Map registering the cost of the kinds of commands which don't have the default cost.
+     */
+    private final Map<Class<?>, Integer> costs;
+
+    private CostModel(Map<Class<?>, Integer> costs){
+        this.costs = costs;
+    }
+
+    /**
+     * Return the cost of the given kind of command.
+     * @param kind The class of the command.
+     */
+    public int getCost(Class<?> kind){
+        Integer cost = costs.get(kind);
+        if(cost != null)
+            return cost;
+        return Statement.class.isAssignableFrom(kind) ? DEFAULT_STATEMENT_COST : DEFAULT_EXPRESSION_COST;
+    }
+
+    /**
+     * Return the total cost of the given kinds of commands.
+     */
+    public int getCost(Class<?>[] kinds){
+        int cost = 0;
+        for(Class<?> kind : kinds)
+            cost += getCost(kind);
+        return cost;
+    }
+
+    /**
+     * Return a cost model equal to this cost model, except for the cost of the given kind of command.
+     * @param kind The class of the command.
+     * @param cost The new cost of the command.
+     * @return | result.getCost(kind) == cost
+     * @throws IllegalArgumentException
+     *         The kind isn't a command class or the cost is negative.
+     *         | !Command.class.isAssignableFrom(kind) || cost < 0
+     */
+    public CostModel withCost(Class<?> kind, int cost) throws IllegalArgumentException {
+        if(kind == null || !Command.class.isAssignableFrom(kind))
+            throw new IllegalArgumentException("The kind must be a command class.");
+        if(cost < 0)
+            throw new IllegalArgumentException("The cost can't be negative.");
+        Map<Class<?>, Integer> costs = new HashMap<>(this.costs);
+        costs.put(kind, cost);
+        return new CostModel(costs);
+    }
+}
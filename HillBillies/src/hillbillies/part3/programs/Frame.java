@@ -0,0 +1,116 @@
+package hillbillies.part3.programs;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * Class representing the execution state of a single execution of a Program:
+ * its program counter, its operand stack and its variables. The variables are
+ * stored in slots, of which the indices are resolved when the Program is compiled.
+ * Programs and the activities they are compiled from are immutable and can be shared
+ * by any number of tasks, each executing the Program with a Frame of its own.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class Frame {
+
+    private final Program program;
+    private final OperandStack operandStack = new OperandStack();
+    /**
+     * Array holding the value of each variable, or null for variables which aren't assigned yet.
+     */
+    private final Object[] slots;
+    /**
+     * Variable registering the index of the next instruction of the program to execute.
+     */
+    private int programCounter = 0;
+
+    /**
+     * Initialize a new Frame executing the given Program from its first instruction.
+     * @param program The program to execute.
+     * @throws IllegalArgumentException
+     *         If the given program is null.
+     */
+    public Frame(Program program) throws IllegalArgumentException{
+        if(program == null)
+            throw new IllegalArgumentException("A frame must execute a program.");
+        this.program = program;
+        this.slots = new Object[program.getNbSlots()];
+    }
+
+    @Basic @Immutable
+    public Program getProgram(){
+        return program;
+    }
+
+    @Basic @Immutable
+    public OperandStack getOperandStack(){
+        return operandStack;
+    }
+
+    /**
+     * Return the value of the variable in the given slot.
+     * @throws IllegalStateException
+     *         If the variable isn't assigned yet.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(int slot) throws IllegalStateException{
+        Object value = slots[slot];
+        if(value == null)
+            throw new IllegalStateException("The variable " + program.getSlotName(slot) + " isn't assigned.");
+        return (T) value;
+    }
+
+    /**
+     * Assign the given value to the variable in the given slot.
+     */
+    public void store(int slot, Object value){
+        slots[slot] = value;
+    }
+
+    /**
+     * Check whether the variable in the given slot is assigned.
+     */
+    public boolean isAssigned(int slot){
+        return slots[slot] != null;
+    }
+
+    @Basic
+    public int getProgramCounter(){
+        return programCounter;
+    }
+
+    void setProgramCounter(int programCounter){
+        this.programCounter = programCounter;
+    }
+
+    /**
+     * Restore the execution state of this frame, as it was saved from a frame executing the same program.
+     * @param programCounter The index of the next instruction to execute.
+     * @param slotValues The values of the variables, or null for the variables which aren't assigned.
+     * @param operands The values on the operand stack, from the bottom to the top of the stack.
+     * @post | new.getProgramCounter() == programCounter
+     * @throws IllegalArgumentException
+     *         If the program counter isn't an index in the program of this frame, or the number
+     *         of values doesn't match the number of variables of the program.
+     *         | programCounter < 0 || programCounter > getProgram().getNbInstructions()
+     *         | || slotValues.length != getProgram().getNbSlots()
+     */
+    public void restore(int programCounter, Object[] slotValues, Object[] operands) throws IllegalArgumentException{
+        if(programCounter < 0 || programCounter > program.getNbInstructions())
+            throw new IllegalArgumentException("The program counter " + programCounter + " isn't an index in the program.");
+        if(slotValues.length != slots.length)
+            throw new IllegalArgumentException("The program has " + slots.length + " variables.");
+        this.programCounter = programCounter;
+        System.arraycopy(slotValues, 0, slots, 0, slots.length);
+        operandStack.clear();
+        for(Object operand : operands)
+            operandStack.push(operand);
+    }
+
+    /**
+     * Check whether the program of this frame has executed its last instruction.
+     */
+    public boolean isFinished(){
+        return program.isFinished(programCounter);
+    }
+}
@@ -0,0 +1,26 @@
+package hillbillies.part3.programs;
+
+import hillbillies.model.Task.TaskRunner;
+
+/**
+ * Interface representing a single instruction of a compiled Program.
+ * Instructions are linked when the Program is built, so jumps refer to
+ * the index of their target instruction directly.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface Instruction {
+
+    /**
+     * Execute this instruction.
+     * @param runner The runner executing the program.
+     * @param stack The operand stack of the runner.
+     * @param pc The index of this instruction in its program.
+     * @return The index of the next instruction to execute. An instruction which pauses
+     *          the runner and has to be executed again on resume returns the given index.
+     * @throws NullPointerException
+     *         If an operand of this instruction is null, which only happens when the runner is stopping.
+     */
+    int execute(TaskRunner runner, OperandStack stack, int pc) throws NullPointerException;
+}
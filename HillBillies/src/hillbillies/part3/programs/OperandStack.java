@@ -0,0 +1,53 @@
+package hillbillies.part3.programs;
+
+import java.util.Arrays;
+
+/**
+ * Class representing the operand stack on which compiled expressions
+ * push their values and from which statements pop their arguments.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class OperandStack {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public void push(Object value){
+        if(size == values.length)
+            values = Arrays.copyOf(values, 2 * size);
+        values[size++] = value;
+    }
+
+    /**
+     * Remove the value on top of this stack and return it.
+     * @throws IllegalStateException
+     *         If this stack is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T pop() throws IllegalStateException{
+        if(size == 0)
+            throw new IllegalStateException("The operand stack is empty.");
+        T value = (T) values[--size];
+        values[size] = null;
+        return value;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Return the values on this stack, from the bottom to the top of the stack.
+     */
+    public Object[] toArray(){
+        return Arrays.copyOf(values, size);
+    }
+
+    public void clear(){
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+}
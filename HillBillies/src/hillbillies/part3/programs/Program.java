@@ -0,0 +1,108 @@
+package hillbillies.part3.programs;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.statements.Statement;
+
+/**
+ * Class representing a task activity compiled to a flat array of instructions.
+ * A Program is immutable and holds no execution state, so it can be executed by many
+ * TaskRunners at the same time. Each execution keeps its state in a Frame.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class Program {
+
+    private final Instruction[] instructions;
+    /**
+     * The names of the variables of this Program, indexed by the frame slot holding them.
+     */
+    private final String[] slotNames;
+
+    Program(Instruction[] instructions, String[] slotNames){
+        this.instructions = instructions;
+        this.slotNames = slotNames;
+    }
+
+    /**
+     * Compile the given activity.
+     * @param activity The activity to compile.
+     * @return The compiled Program.
+     * @throws IllegalStateException
+     *         If the activity is not well-formed: it reads a variable before assigning it,
+     *         or it contains a Break statement outside of a loop.
+     *         | !activity.check()
+     */
+    public static Program compile(Statement activity) throws IllegalStateException{
+        if(!activity.check())
+            throw new IllegalStateException("The activity is not well-formed.");
+        ProgramBuilder builder = new ProgramBuilder();
+        builder.compile(activity);
+        return builder.build();
+    }
+
+    /**
+     * Return the number of instructions of this Program.
+     */
+    @Basic @Immutable
+    public int getNbInstructions(){
+        return instructions.length;
+    }
+
+    /**
+     * Return the number of variables of this Program, which is the number of slots of its frames.
+     */
+    @Basic @Immutable
+    public int getNbSlots(){
+        return slotNames.length;
+    }
+
+    /**
+     * Return the name of the variable in the given slot.
+     */
+    public String getSlotName(int slot){
+        return slotNames[slot];
+    }
+
+    /**
+     * Return the index of the slot holding the variable with the given name, or -1 if this Program has no such variable.
+     */
+    public int getSlot(String variableName){
+        for(int i = 0; i < slotNames.length; i++)
+            if(slotNames[i].equals(variableName))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Check whether the given program counter is past the last instruction of this Program.
+     */
+    public boolean isFinished(int pc){
+        return pc >= instructions.length;
+    }
+
+    /**
+     * Execute this Program in the given frame, until it is finished or until the given
+     * runner is pausing or stopping. The program counter of the frame is updated, so a next
+     * call resumes the execution.
+     * @param runner The runner executing this Program.
+     * @param frame The frame of the execution.
+     * @throws IllegalArgumentException
+     *         If the given frame doesn't execute this Program.
+     */
+    public void run(TaskRunner runner, Frame frame) throws IllegalArgumentException{
+        if(frame.getProgram() != this)
+            throw new IllegalArgumentException("The frame doesn't execute this program.");
+        OperandStack stack = frame.getOperandStack();
+        int pc = frame.getProgramCounter();
+        try {
+            while (pc < instructions.length && !runner.isPausing() && !runner.isStopping())
+                pc = instructions[pc].execute(runner, stack, pc);
+        }catch(NullPointerException e){
+            if(!runner.isPausing() && !runner.isStopping())
+                throw new NullPointerException("Strange NullPointerException occurred.");
+            // Nothing wrong, an expression paused or stopped the runner and yielded null
+        }
+        frame.setProgramCounter(pc);
+    }
+}
@@ -0,0 +1,233 @@
+package hillbillies.part3.programs;
+
+import hillbillies.model.TickProfiler;
+import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.expressions.Expression;
+import hillbillies.part3.programs.statements.Statement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class used by Commands to lower themselves into the flat instruction array of a Program.
+ * Forward jumps are emitted with a Label, which is resolved to an instruction index when
+ * the Program is built.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class ProgramBuilder {
+
+    private final List<Instruction> instructions = new ArrayList<>();
+    private final List<Jump> jumps = new ArrayList<>();
+    /**
+     * Stack of the end labels of the loops enclosing the statement being compiled.
+     */
+    private final Deque<Label> loops = new ArrayDeque<>();
+    /**
+     * Map registering the slot index of each variable of the program, in order of first use.
+     */
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+
+    /**
+     * Append the instructions of the given command to the program.
+     */
+    public void compile(Command<?> command){
+        command.compile(this);
+    }
+
+    /**
+     * Append the given instruction to the program.
+     * @return The index of the appended instruction.
+     */
+    public int emit(Instruction instruction){
+        instructions.add(instruction);
+        return instructions.size() - 1;
+    }
+
+    /**
+     * Append the instruction starting the given statement to the program. It charges the cost of the
+     * statement and of the expressions it charges at its start to the runner, or pauses the runner at
+     * this statement if the runner can't execute any more instructions during this tick.
+     */
+    public void emitStep(Statement statement){
+        List<Class<?>> kinds = new ArrayList<>();
+        kinds.add(statement.getClass());
+        for(Expression<?> expression : statement.getChargedExpressions())
+            addExpressionKinds(expression, kinds);
+        emitStep(kinds, true);
+    }
+
+    /**
+     * Append an instruction charging the cost of the given expression to the runner, for a statement
+     * which evaluates the expression more than once, such as the condition of a loop. Like the step
+     * of a statement, it pauses the runner at this instruction if the runner can't execute any more
+     * instructions during this tick.
+     */
+    public void emitStep(Expression<?> expression){
+        List<Class<?>> kinds = new ArrayList<>();
+        addExpressionKinds(expression, kinds);
+        emitStep(kinds, false);
+    }
+
+    private void emitStep(List<Class<?>> kinds, boolean isStatement){
+        Class<?>[] chargedKinds = kinds.toArray(new Class<?>[kinds.size()]);
+        emit((runner, stack, pc) -> {
+            if(!runner.charge(chargedKinds)) {
+                runner.pause();
+                return pc;// Execute this step again on resume
+            }
+            TickProfiler profiler = runner.getExecutingWorld().getProfiler();
+            if(isStatement && profiler != null)
+                profiler.countStatement();
+            return pc + 1;
+        });
+    }
+
+    private static void addExpressionKinds(Command<?> expression, List<Class<?>> kinds){
+        kinds.add(expression.getClass());
+        for(Command<?> child : expression.getChildren())
+            addExpressionKinds(child, kinds);
+    }
+
+    /**
+     * Append an instruction pushing the given constant on the operand stack.
+     */
+    public void emitConstant(Object value){
+        emit((runner, stack, pc) -> {
+            stack.push(value);
+            return pc + 1;
+        });
+    }
+
+    public void emitJump(Label target){
+        emitJump(target, null);
+    }
+
+    /**
+     * Append an instruction popping a boolean and jumping to the given label if it is false.
+     */
+    public void emitJumpIfFalse(Label target){
+        emitJump(target, false);
+    }
+
+    /**
+     * Append an instruction popping a boolean and jumping to the given label if it is true.
+     */
+    public void emitJumpIfTrue(Label target){
+        emitJump(target, true);
+    }
+
+    private void emitJump(Label target, Boolean condition){
+        Jump jump = new Jump(target, condition);
+        jumps.add(jump);
+        emit(jump);
+    }
+
+    /**
+     * Return the index of the frame slot holding the variable with the given name.
+     * Each variable name of a program is resolved to the same slot.
+     */
+    public int getSlot(String variableName){
+        return slots.computeIfAbsent(variableName, name -> slots.size());
+    }
+
+    /**
+     * Create a new label, which has to be placed before the program is built.
+     */
+    public Label newLabel(){
+        return new Label();
+    }
+
+    /**
+     * Place the given label at the next instruction that will be emitted.
+     * @throws IllegalStateException
+     *         If the label is already placed.
+     */
+    public void placeLabel(Label label) throws IllegalStateException{
+        if(label.index >= 0)
+            throw new IllegalStateException("The label is already placed.");
+        label.index = instructions.size();
+    }
+
+    /**
+     * Register the start of a loop ending at the given label, so Break statements
+     * compiled before the matching exitLoop jump to it.
+     */
+    public void enterLoop(Label end){
+        loops.push(end);
+    }
+
+    public void exitLoop() throws IllegalStateException{
+        if(loops.isEmpty())
+            throw new IllegalStateException("There is no loop to exit.");
+        loops.pop();
+    }
+
+    /**
+     * Append a jump to the end of the innermost enclosing loop.
+     * @throws IllegalStateException
+     *         If there is no enclosing loop.
+     */
+    public void emitBreak() throws IllegalStateException{
+        if(loops.isEmpty())
+            throw new IllegalStateException("A break statement must be enclosed by a loop.");
+        emitJump(loops.peek());
+    }
+
+    /**
+     * Link all jumps to their target instruction and return the resulting Program.
+     * @throws IllegalStateException
+     *         If a label isn't placed or a loop isn't exited.
+     */
+    public Program build() throws IllegalStateException{
+        if(!loops.isEmpty())
+            throw new IllegalStateException("Not all loops are exited.");
+        for(Jump jump : jumps){
+            if(jump.label.index < 0)
+                throw new IllegalStateException("A jump target is not placed.");
+            jump.target = jump.label.index;
+        }
+        return new Program(instructions.toArray(new Instruction[0]), slots.keySet().toArray(new String[0]));
+    }
+
+    /**
+     * Class representing the target of a jump. A label is placed at an instruction index once.
+     */
+    public static final class Label {
+
+        private int index = -1;
+
+        private Label(){
+        }
+    }
+
+    /**
+     * Class representing an unconditional jump, or a jump depending on the boolean popped from the operand stack.
+     */
+    private static final class Jump implements Instruction {
+
+        private final Label label;
+        /**
+         * The value of the condition for which the jump is taken, or null for an unconditional jump.
+         */
+        private final Boolean condition;
+        private int target;
+
+        private Jump(Label label, Boolean condition){
+            this.label = label;
+            this.condition = condition;
+        }
+
+        @Override
+        public int execute(TaskRunner runner, OperandStack stack, int pc) throws NullPointerException {
+            if(condition == null)
+                return target;
+            Boolean value = stack.pop();
+            return value.equals(condition) ? target : pc + 1;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package hillbillies.part3.programs;
 
+import be.kuleuven.cs.som.annotate.*;
 import hillbillies.model.Task;
 import hillbillies.part3.programs.expressions.*;
 import hillbillies.part3.programs.statements.*;
@@ -12,7 +13,30 @@ import java.util.List;
  */
 public class TaskFactory implements ITaskFactory<Expression<?>, Statement, Task> {
 
+    /**
+     * Variable referencing the library caching the tasks loaded with this factory, or null if they aren't cached.
+     */
+    private final TaskLibrary library;
+
     public TaskFactory(){
+        this(null);
+    }
+
+    /**
+     * Initialize a new TaskFactory of which the tasks loaded through TaskParser.parseTasksFromString and
+     * TaskParser.parseTasksFromFile are parsed only once, and then taken from the given library.
+     * @param library The library caching the loaded tasks, or null if they aren't cached.
+     */
+    public TaskFactory(TaskLibrary library){
+        this.library = library;
+    }
+
+    /**
+     * Return the library caching the tasks loaded with this factory, or null if they aren't cached.
+     */
+    @Basic @Immutable
+    public TaskLibrary getLibrary(){
+        return library;
     }
 
     /**
@@ -31,6 +55,22 @@ public class TaskFactory implements ITaskFactory<Expression<?>, Statement, Task>
      */
     @Override
     public List<Task> createTasks(String name, int priority, Statement activity, List<int[]> selectedCubes) {
+        activity = optimize(activity);
+        activity.getProgram();// Compile the activity once for all tasks, failing early if it isn't well-formed
+        return instantiate(name, priority, activity, selectedCubes);
+    }
+
+    /**
+     * Create a task executing the given activity for each of the given selected cubes,
+     * or a single task without selected cube if no cubes are given.
+     * All tasks share the given activity, the selected cubes are only bound to the tasks.
+     * @param name The name of the tasks.
+     * @param priority The initial priority of the tasks.
+     * @param activity The activity of the tasks.
+     * @param selectedCubes The cube coordinates selected for the tasks.
+     * @return A list of new task instances.
+     */
+    public static List<Task> instantiate(String name, int priority, Statement activity, List<int[]> selectedCubes) {
         List<Task> tasks = new ArrayList<>();
         for(int[] cubeCoordinates : selectedCubes)
             tasks.add(new Task(name, priority, activity, cubeCoordinates));
@@ -39,6 +79,24 @@ public class TaskFactory implements ITaskFactory<Expression<?>, Statement, Task>
         return tasks;
     }
 
+    /**
+     * Return an optimized activity which is equivalent to the given activity.
+     * An activity which isn't well-formed is not optimized, so it is still rejected when it is compiled.
+     * The activity is neither optimized if the optimized activity isn't well-formed anymore, which
+     * happens when an assignment in a dead branch is removed while its variable is read later on.
+     * @param activity The activity to optimize.
+     * @return The optimized activity if it is well-formed, the given activity otherwise.
+     *       | if(activity.check() && activity.optimize().check())
+     *       |   then result == activity.optimize()
+     *       |   else result == activity
+     */
+    public static Statement optimize(Statement activity){
+        if(!activity.check())
+            return activity;
+        Statement optimized = activity.optimize();
+        return optimized.check() ? optimized : activity;
+    }
+
     /**
      * Create a statement that represents the assignment of a variable.
      *
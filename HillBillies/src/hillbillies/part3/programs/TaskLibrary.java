@@ -0,0 +1,282 @@
+package hillbillies.part3.programs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.Task;
+import hillbillies.part3.programs.statements.Statement;
+import ogp.framework.util.internal.ResourceUtils;
+
+/**
+ * Cache of parsed tasks, keyed by the hash of their source text. Each entry holds the
+ * validated and optimized activity of a task, together with its name and priority, so the
+ * same source text is only parsed once. The selected cubes are not part of the entries,
+ * they are only bound when the entry is instantiated.
+ * A library can be written to a compact binary format and read back without parsing.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public final class TaskLibrary {
+
+    /**
+     * Constant reflecting the first bytes of a binary task library ("HBTL").
+     */
+    public static final int MAGIC = 0x4842544c;
+    /**
+     * Constant reflecting the version of the binary format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    private final Map<String, CompiledTask> entries = new LinkedHashMap<>();
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    /**
+     * Initialize a new, empty TaskLibrary.
+     */
+    public TaskLibrary(){
+    }
+
+    /**
+     * Return the tasks described by the given source text, one for each of the given selected cubes.
+     * @param text The source text of the task.
+     * @param selectedCubes The cube coordinates selected for the tasks.
+     * @return The tasks, as created by TaskFactory.instantiate.
+     * @throws IllegalArgumentException
+     *         The source text could not be parsed, or its activity isn't well-formed.
+     */
+    public List<Task> parseString(String text, List<int[]> selectedCubes) throws IllegalArgumentException {
+        return compile(text).instantiate(selectedCubes);
+    }
+
+    /**
+     * Return the tasks described by the resource with the given name, one for each of the given selected cubes.
+     * @see #parseString(String, List)
+     * @throws IOException
+     *         The resource could not be read.
+     */
+    public List<Task> parseFile(String filename, List<int[]> selectedCubes) throws IOException, IllegalArgumentException {
+        try (InputStream in = ResourceUtils.openResource(filename)) {
+            return parseString(new String(in.readAllBytes(), StandardCharsets.UTF_8), selectedCubes);
+        }
+    }
+
+    /**
+     * Return the entry of this library for the given source text, parsing it if it isn't registered yet.
+     * @param text The source text of the task.
+     * @throws IllegalArgumentException
+     *         The source text could not be parsed, or its activity isn't well-formed.
+     */
+    public CompiledTask compile(String text) throws IllegalArgumentException {
+        String hash = hash(text);
+        CompiledTask compiledTask = get(hash);
+        if(compiledTask != null){
+            hits.increment();
+            return compiledTask;
+        }
+        misses.increment();
+        // Parse outside the lock, other threads can still use this library meanwhile
+        CapturingFactory factory = new CapturingFactory();
+        TaskParser<?, ?, Task> parser = TaskParser.create(factory);
+        Optional<List<Task>> result = parser.parseString(text, Collections.emptyList());
+        if(!result.isPresent() || factory.activity == null)
+            throw new IllegalArgumentException("The task could not be parsed: " + parser.getErrors());
+        return add(hash, new CompiledTask(factory.name, factory.priority, factory.activity));
+    }
+
+    private synchronized CompiledTask add(String hash, CompiledTask compiledTask){
+        CompiledTask existing = entries.putIfAbsent(hash, compiledTask);
+        return existing == null ? compiledTask : existing;
+    }
+
+    /**
+     * Return the entry of this library with the given hash, or null if there is none.
+     */
+    public synchronized CompiledTask get(String hash){
+        return entries.get(hash);
+    }
+
+    /**
+     * Return the hashes of all entries of this library, in the order they were added.
+     */
+    public synchronized List<String> getHashes(){
+        return Collections.unmodifiableList(new ArrayList<>(entries.keySet()));
+    }
+
+    /**
+     * Return the number of entries of this library.
+     */
+    public synchronized int getNbEntries(){
+        return entries.size();
+    }
+
+    /**
+     * Return the number of source texts which were found in this library.
+     */
+    public long getNbHits(){
+        return hits.sum();
+    }
+
+    /**
+     * Return the number of source texts which had to be parsed.
+     */
+    public long getNbMisses(){
+        return misses.sum();
+    }
+
+    /**
+     * Return the hash identifying the given source text in a library: the hexadecimal SHA-256 digest of its UTF-8 bytes.
+     */
+    public static String hash(String text){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported.", e);// Every Java platform supports SHA-256
+        }
+    }
+
+    /**
+     * Write all entries of this library to the given output, in the binary library format.
+     * @param out The output to write to. It isn't closed by this method.
+     */
+    public void write(OutputStream out) throws IOException {
+        Map<String, CompiledTask> entries;
+        synchronized (this) {
+            entries = new LinkedHashMap<>(this.entries);
+        }
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeInt(entries.size());
+        for(Map.Entry<String, CompiledTask> entry : entries.entrySet()){
+            data.write(HexFormat.of().parseHex(entry.getKey()));
+            data.writeUTF(entry.getValue().getName());
+            data.writeInt(entry.getValue().getPriority());
+            CommandCodec.write(data, entry.getValue().getActivity());
+        }
+        data.flush();
+    }
+
+    /**
+     * Return the binary library format of this library.
+     */
+    public byte[] toByteArray(){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);// Can't happen for a ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Read a library written by write(OutputStream) from the given input. The tasks are not parsed again.
+     * @param in The input to read from. It isn't closed by this method, but it might be read past the library.
+     * @return A new library containing the read entries.
+     * @throws IOException
+     *         The input could not be read, isn't a task library of a supported version, or contains
+     *         an activity which isn't well-formed.
+     */
+    public static TaskLibrary read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if(data.readInt() != MAGIC)
+            throw new IOException("The input isn't a task library.");
+        int version = data.readUnsignedShort();
+        if(version != VERSION)
+            throw new IOException("Unsupported task library version " + version + ".");
+        int nbEntries = data.readInt();
+        TaskLibrary library = new TaskLibrary();
+        byte[] hash = new byte[32];
+        for(int i = 0; i < nbEntries; i++){
+            data.readFully(hash);
+            String name = data.readUTF();
+            int priority = data.readInt();
+            Command<?> activity = CommandCodec.read(data);
+            if(!(activity instanceof Statement) || !((Statement) activity).check())
+                throw new IOException("The activity of task " + name + " isn't well-formed.");
+            library.add(HexFormat.of().formatHex(hash), new CompiledTask(name, priority, (Statement) activity));
+        }
+        return library;
+    }
+
+    /**
+     * Class representing a parsed task, without its selected cubes.
+     */
+    public static final class CompiledTask {
+
+        private final String name;
+        private final int priority;
+        private final Statement activity;
+
+        private CompiledTask(String name, int priority, Statement activity){
+            this.name = name;
+            this.priority = priority;
+            this.activity = activity;
+        }
+
+        @Basic @Immutable
+        public String getName(){
+            return name;
+        }
+
+        @Basic @Immutable
+        public int getPriority(){
+            return priority;
+        }
+
+        /**
+         * Return the optimized activity of this task, which is shared by all its instances.
+         */
+        @Basic @Immutable
+        public Statement getActivity(){
+            return activity;
+        }
+
+        /**
+         * Create the tasks of this entry for the given selected cubes.
+         * @effect | TaskFactory.instantiate(getName(), getPriority(), getActivity(), selectedCubes)
+         */
+        public List<Task> instantiate(List<int[]> selectedCubes){
+            return TaskFactory.instantiate(name, priority, activity, selectedCubes);
+        }
+    }
+
+    /**
+     * TaskFactory registering the activity it is asked to create tasks for, instead of creating them.
+     */
+    private static final class CapturingFactory extends TaskFactory {
+
+        private String name;
+        private int priority;
+        private Statement activity;
+
+        @Override
+        public List<Task> createTasks(String name, int priority, Statement activity, List<int[]> selectedCubes) {
+            activity = optimize(activity);
+            activity.getProgram();// Reject activities which aren't well-formed
+            this.name = name;
+            this.priority = priority;
+            this.activity = activity;
+            return Collections.emptyList();
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package hillbillies.part3.programs.expressions;
 
-import java.util.Set;
-
-import hillbillies.activities.TargetMove;
+import hillbillies.model.Task.TaskRunner;
+import hillbillies.model.NearestUnitQuery;
 import hillbillies.model.Unit;
 
 
@@ -20,18 +19,10 @@ public class Any extends Expression<Unit> {
 	}
 
 	@Override
-	public Unit evaluate() throws NullPointerException {
-		Unit thisUnit = this.getRunner().getExecutingUnit();
-		Set<Unit> units = this.getRunner().getExecutingWorld().getUnits();
-		units.removeIf(unit -> unit == thisUnit || unit.isFalling());
-		if (units.isEmpty()){
-			this.getRunner().stop();
-			return null;
-		}
-		TargetMove targetmove = new TargetMove(this.getRunner().getExecutingUnit(), units);
-		Unit NearestUnit = (Unit) targetmove.getNearestObject();
-		if(NearestUnit == null)
-			this.getRunner().stop();
-		return NearestUnit;
+	public Unit evaluate(TaskRunner runner) throws NullPointerException {
+		Unit nearestUnit = runner.getExecutingWorld().getNearestUnit(runner.getExecutingUnit(), NearestUnitQuery.ANY);
+		if(nearestUnit == null)
+			runner.stop();
+		return nearestUnit;
 	}
 }
\ No newline at end of file
@@ -1,12 +1,15 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
+
 /**
  * Created by Bram on 14-5-2016.
  */
 public abstract class BinaryExpression<L,R,T> extends Expression<T> {
 
-    private Expression<L> leftExpression;
-    private Expression<R> rightExpression;
+    private final Expression<L> leftExpression;
+    private final Expression<R> rightExpression;
 
     public BinaryExpression(Expression<L> left, Expression<R> right) throws IllegalArgumentException{
         super(left, right);
@@ -15,13 +18,35 @@ public abstract class BinaryExpression<L,R,T> extends Expression<T> {
     }
 
     @Override
-    public T evaluate() throws NullPointerException {
-        L leftValue = this.runChild(leftExpression);
-        R rightValue = this.runChild(rightExpression);
+    public T evaluate(TaskRunner runner) throws NullPointerException {
+        L leftValue = leftExpression.evaluate(runner);
+        R rightValue = rightExpression.evaluate(runner);
         if(leftValue==null || rightValue==null)
-            throw new NullPointerException("The left or right expression yield null.");// Is catched inside Expression's process method
-        return combine(leftValue, rightValue);
+            throw new NullPointerException("The left or right expression yield null.");// Is catched by the Program running this expression
+        return combine(runner, leftValue, rightValue);
+    }
+
+    @Override
+    protected void compile(ProgramBuilder builder) {
+        builder.compile(leftExpression);
+        builder.compile(rightExpression);
+        builder.emit((runner, stack, pc) -> {
+            R rightValue = stack.pop();
+            L leftValue = stack.pop();
+            if(leftValue==null || rightValue==null)
+                throw new NullPointerException("The left or right expression yield null.");
+            stack.push(combine(runner, leftValue, rightValue));
+            return pc + 1;
+        });
+    }
+
+    protected Expression<L> getLeftExpression(){
+        return this.leftExpression;
+    }
+
+    protected Expression<R> getRightExpression(){
+        return this.rightExpression;
     }
 
-    protected abstract T combine(L leftValue, R rightValue);
+    protected abstract T combine(TaskRunner runner, L leftValue, R rightValue);
 }
@@ -1,5 +1,6 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 import java.util.Set;
 
 import hillbillies.activities.TargetMove;
@@ -20,16 +21,16 @@ public class BoulderPosition extends Expression<Vector> {
 	}
 
 	@Override
-	public Vector evaluate() throws NullPointerException {
-		Set<Boulder> boulders = this.getRunner().getExecutingWorld().getBoulders(true);
+	public Vector evaluate(TaskRunner runner) throws NullPointerException {
+		Set<Boulder> boulders = runner.getExecutingWorld().getBoulders(true);
 		if (boulders.isEmpty()){
-			this.getRunner().stop();
+			runner.stop();
 			return null;
 		}
-		TargetMove targetmove = new TargetMove(this.getRunner().getExecutingUnit(), boulders);
+		TargetMove targetmove = new TargetMove(runner.getExecutingUnit(), boulders);
 		Vector nearestPos = targetmove.getNearestPos();
 		if(nearestPos == null)
-			this.getRunner().stop();
+			runner.stop();
 		return nearestPos;
 	}
 
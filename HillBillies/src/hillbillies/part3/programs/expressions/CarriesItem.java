@@ -3,6 +3,7 @@
  */
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 import hillbillies.model.Unit;
 
 /**
@@ -19,7 +20,7 @@ public class CarriesItem extends UnaryExpression<Unit, Boolean> {
 	}
 
 	@Override
-	protected Boolean compute(Unit unit) {
+	protected Boolean compute(TaskRunner runner, Unit unit) {
 		return unit.isCarryingMaterial();
 	}
 
@@ -1,10 +1,8 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 
-import java.util.Set;
-
-import hillbillies.activities.TargetMove;
-import hillbillies.model.Faction;
+import hillbillies.model.NearestUnitQuery;
 import hillbillies.model.Unit;
 
 
@@ -22,18 +20,10 @@ public class Enemy extends Expression<Unit> {
 	}
 
 	@Override
-	public Unit evaluate() throws NullPointerException {
-		Faction thisFaction = this.getRunner().getExecutingUnit().getFaction();
-		Set<Unit> units = this.getRunner().getExecutingWorld().getUnits();
-		units.removeIf(unit -> unit.getFaction()==thisFaction || unit.isFalling());
-		if (units.isEmpty()){
-			this.getRunner().stop();
-			return null;
-		}
-		TargetMove targetmove = new TargetMove(this.getRunner().getExecutingUnit(), units);
-		Unit NearestUnit = (Unit) targetmove.getNearestObject();
-		if(NearestUnit == null)
-			this.getRunner().stop();
-		return NearestUnit;
+	public Unit evaluate(TaskRunner runner) throws NullPointerException {
+		Unit nearestUnit = runner.getExecutingWorld().getNearestUnit(runner.getExecutingUnit(), NearestUnitQuery.ENEMY);
+		if(nearestUnit == null)
+			runner.stop();
+		return nearestUnit;
 	}
 }
\ No newline at end of file
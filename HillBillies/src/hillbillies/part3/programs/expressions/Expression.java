@@ -1,6 +1,10 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 import hillbillies.part3.programs.Command;
+import hillbillies.part3.programs.ProgramBuilder;
+
+import java.util.HashSet;
 
 /**
  * Created by Bram on 27-4-2016.
@@ -11,16 +15,46 @@ public abstract class Expression<T> extends Command<T>{
         super(subExpressions);
     }
 
+    /**
+     * Append an instruction pushing the value of this expression on the operand stack.
+     * Expressions with subexpressions override this, so their subexpressions are
+     * evaluated by instructions of their own.
+     */
     @Override
-    public final T process() throws NullPointerException{
-        try {
-            return evaluate();
-        }catch(NullPointerException e){
-            if(this.getRunner().isPausing() || this.getRunner().isStopping()) return null;// Nothing wrong, runner is pausing or stopping
-            throw new NullPointerException("Strange NullPointerException occurred.");
-        }
+    protected void compile(ProgramBuilder builder) {
+        builder.emit((runner, stack, pc) -> {
+            stack.push(evaluate(runner));
+            return pc + 1;
+        });
+    }
+
+    /**
+     * Check whether this expression only reads variables which are in the given set of assigned variables.
+     * @param assignedVariables The names of the variables which are assigned before this expression is evaluated.
+     */
+    public boolean checkVariableAccess(HashSet<String> assignedVariables){
+        for(Command<?> child : this.getChildren())
+            if(!((Expression<?>)child).checkVariableAccess(assignedVariables))
+                return false;
+        return true;
     }
 
-    public abstract T evaluate() throws NullPointerException;
+    /**
+     * Return an expression which is equivalent to this expression, but cheaper to execute.
+     * Constant parts of the expression are folded, but subexpressions which might stop the
+     * runner or yield null are never removed.
+     * @return This expression, or a new equivalent expression.
+     */
+    public Expression<T> optimize(){
+        return this;
+    }
 
+    /**
+     * Evaluate this expression for the given runner.
+     * @param runner The runner executing this expression.
+     * @return The value of this expression, or null if it stopped the given runner.
+     * @throws NullPointerException
+     *         A subexpression yields null.
+     */
+    public abstract T evaluate(TaskRunner runner) throws NullPointerException;
 }
@@ -3,6 +3,8 @@
  */
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 /**
  * @author kenneth
  *
@@ -17,9 +19,12 @@ public class False extends Expression<Boolean> {
     }
 
     @Override
-    public Boolean evaluate() throws NullPointerException {
+    public Boolean evaluate(TaskRunner runner) throws NullPointerException {
         return false;
     }
 
-
+    @Override
+    protected void compile(ProgramBuilder builder) {
+        builder.emitConstant(false);
+    }
 }
@@ -1,5 +1,6 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 import hillbillies.utils.Vector;
 
 /**
@@ -16,8 +17,8 @@ public class HerePosition extends Expression<Vector> {
     }
 
     @Override
-    public Vector evaluate() throws NullPointerException {
-        return (this.getRunner().getExecutingUnit().getPosition());
+    public Vector evaluate(TaskRunner runner) throws NullPointerException {
+        return (runner.getExecutingUnit().getPosition());
     }
 
 
@@ -3,6 +3,7 @@
  */
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 import hillbillies.model.Unit;
 
 /**
@@ -28,7 +29,7 @@ public class IsAlive extends UnaryExpression<Unit, Boolean> {
 	 * of its child expression.
 	 */
 	@Override
-	protected Boolean compute(Unit unit) {
+	protected Boolean compute(TaskRunner runner, Unit unit) {
 		return !unit.isTerminated();
 	}
 
@@ -1,5 +1,6 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 import hillbillies.model.Unit;
 
 /**
@@ -25,7 +26,7 @@ public class IsEnemy extends UnaryExpression<Unit, Boolean> {
 	 * of its child expression.
 	 */
 	@Override
-	protected Boolean compute(Unit unit) {
-		return !this.getRunner().getExecutingUnit().getFaction().equals(unit.getFaction());
+	protected Boolean compute(TaskRunner runner, Unit unit) {
+		return !runner.getExecutingUnit().getFaction().equals(unit.getFaction());
 	}
 }
@@ -1,5 +1,6 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 import hillbillies.utils.Vector;
 
 /**
@@ -25,8 +26,8 @@ public class IsPassable extends UnaryExpression<Vector, Boolean> {
 	 * of its child expression.
 	 */
 	@Override
-	protected Boolean compute(Vector position) {
-		return this.getRunner().getExecutingWorld().getCube(position).isPassable();
+	protected Boolean compute(TaskRunner runner, Vector position) {
+		return runner.getExecutingWorld().getCube(position).isPassable();
 	}
 
 }
@@ -1,5 +1,7 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 import hillbillies.utils.Vector;
 
 
@@ -9,7 +11,7 @@ import hillbillies.utils.Vector;
  */
 public class LiteralPosition extends Expression<Vector> {
 
-	private Vector position;
+	private final Vector position;
 	/**
 	 * 
 	 */
@@ -18,9 +20,21 @@ public class LiteralPosition extends Expression<Vector> {
 		this.position = new Vector(x,y,z);
 	}
 
+	public Vector getPosition(){
+		return this.position;
+	}
+
 	@Override
-	public Vector evaluate() {
+	public Vector evaluate(TaskRunner runner) {
 		return position;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Append an instruction pushing the position of this literal, which is created only once.
+	 */
+	@Override
+	protected void compile(ProgramBuilder builder) {
+		builder.emitConstant(position);
+	}
+
+}
@@ -1,5 +1,6 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 import java.util.Set;
 
 import hillbillies.activities.TargetMove;
@@ -20,16 +21,16 @@ public class LogPosition extends Expression<Vector> {
 	}
 
 	@Override
-	public Vector evaluate() throws NullPointerException {
-		Set<Log> logs = this.getRunner().getExecutingWorld().getLogs(true);
+	public Vector evaluate(TaskRunner runner) throws NullPointerException {
+		Set<Log> logs = runner.getExecutingWorld().getLogs(true);
 		if (logs.isEmpty()){
-			this.getRunner().stop();
+			runner.stop();
 			return null;
 		}
-		TargetMove targetmove = new TargetMove(this.getRunner().getExecutingUnit(), logs);
+		TargetMove targetmove = new TargetMove(runner.getExecutingUnit(), logs);
 		Vector nearestPos = targetmove.getNearestPos();
 		if(nearestPos == null)
-			this.getRunner().stop();
+			runner.stop();
 		return nearestPos;
 	}
 
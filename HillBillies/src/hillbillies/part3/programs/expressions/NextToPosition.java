@@ -1,6 +1,7 @@
 package hillbillies.part3.programs.expressions;
 
-import java.util.HashSet;
+import hillbillies.model.Task.TaskRunner;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import hillbillies.activities.TargetMove;
@@ -31,23 +32,23 @@ public class NextToPosition extends UnaryExpression<Vector, Vector> {
 	 * of its child expression.
 	 */
 	@Override
-	protected Vector compute(Vector position) {
-		Set<Cube> positions = new HashSet<>();
-		this.getRunner().getExecutingWorld().getNeighbouringCubesSatisfying(
+	protected Vector compute(TaskRunner runner, Vector position) {
+		Set<Cube> positions = new LinkedHashSet<>();
+		runner.getExecutingWorld().getNeighbouringCubesSatisfying(
 				positions,
 				position,
-				cube -> this.getRunner().getExecutingUnit().isValidPosition(cube.getPosition()),
+				cube -> runner.getExecutingUnit().isValidPosition(cube.getPosition()),
 				cube -> cube
 		);
 		try {
-			Vector nextTo = new TargetMove(this.getRunner().getExecutingUnit(), positions).getNearestPos();
+			Vector nextTo = new TargetMove(runner.getExecutingUnit(), positions).getNearestPos();
 			if (nextTo == null) {
 				// No accessible positions available => stop activity
-				this.getRunner().stop();
+				runner.stop();
 			}
 			return nextTo;
 		}catch(IllegalArgumentException | NullPointerException e){
-			this.getRunner().stop();// No reachable positions available
+			runner.stop();// No reachable positions available
 			return null;
 		}
 	}
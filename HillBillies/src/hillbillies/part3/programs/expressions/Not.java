@@ -3,6 +3,7 @@
  */
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 /**
  * @author kenneth
  *
@@ -16,8 +17,23 @@ public class Not extends UnaryExpression<Boolean, Boolean> {
 		super(expression);
 	}
 
+	/**
+	 * Fold the negation of a constant, and cancel out double negations.
+	 */
+	@Override
+	public Expression<Boolean> optimize() {
+		Expression<Boolean> expression = this.getExpression().optimize();
+		if(expression instanceof True)
+			return new False();
+		if(expression instanceof False)
+			return new True();
+		if(expression instanceof Not)
+			return ((Not) expression).getExpression();
+		return expression == this.getExpression() ? this : new Not(expression);
+	}
+
 	@Override
-	protected Boolean compute(Boolean value) {
+	protected Boolean compute(TaskRunner runner, Boolean value) {
 		return !value;
 	}
 
@@ -3,7 +3,9 @@
  */
 package hillbillies.part3.programs.expressions;
 
-import hillbillies.part3.programs.SourceLocation;
+import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
+
 
 /**
  * @author kenneth
@@ -19,9 +21,58 @@ public class Or extends BinaryExpression<Boolean, Boolean, Boolean> {
     }
 
     @Override
-    protected Boolean combine(Boolean leftValue, Boolean rightValue) {
+    protected Boolean combine(TaskRunner runner, Boolean leftValue, Boolean rightValue) {
         return leftValue || rightValue;
     }
 
+    /**
+     * Fold a constant left expression, and drop a right expression which is always false.
+     * A right expression which is always true can't be folded, since the left expression
+     * might stop the runner.
+     */
+    @Override
+    public Expression<Boolean> optimize() {
+        Expression<Boolean> left = this.getLeftExpression().optimize();
+        Expression<Boolean> right = this.getRightExpression().optimize();
+        if(left instanceof True)
+            return left;
+        if(left instanceof False)
+            return right;
+        if(right instanceof False)
+            return left;
+        return left == this.getLeftExpression() && right == this.getRightExpression() ? this : new Or(left, right);
+    }
+
+    /**
+     * Evaluate this expression for the given runner. The right expression is only
+     * evaluated if the left expression doesn't yield true.
+     */
+    @Override
+    public Boolean evaluate(TaskRunner runner) throws NullPointerException {
+        Boolean leftValue = this.getLeftExpression().evaluate(runner);
+        if(leftValue==null)
+            throw new NullPointerException("The left expression yields null.");
+        if(leftValue)
+            return true;
+        Boolean rightValue = this.getRightExpression().evaluate(runner);
+        if(rightValue==null)
+            throw new NullPointerException("The right expression yields null.");
+        return rightValue;
+    }
 
+    /**
+     * Append the instructions of this expression, jumping over the right expression
+     * if the left expression yields true.
+     */
+    @Override
+    protected void compile(ProgramBuilder builder) {
+        ProgramBuilder.Label shortCircuit = builder.newLabel(), end = builder.newLabel();
+        builder.compile(this.getLeftExpression());
+        builder.emitJumpIfTrue(shortCircuit);
+        builder.compile(this.getRightExpression());
+        builder.emitJump(end);
+        builder.placeLabel(shortCircuit);
+        builder.emitConstant(true);
+        builder.placeLabel(end);
+    }
 }
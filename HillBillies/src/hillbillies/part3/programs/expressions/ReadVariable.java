@@ -1,6 +1,9 @@
 package hillbillies.part3.programs.expressions;
 
-import hillbillies.part3.programs.SourceLocation;
+import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
+
+import java.util.HashSet;
 
 /**
  * 
@@ -22,10 +25,27 @@ public class ReadVariable<T> extends Expression<T> {
 		return this.variableName;
 	}
 
+	/**
+	 * Append an instruction pushing the value of the frame slot of this variable.
+	 */
+	@Override
+	protected void compile(ProgramBuilder builder) {
+		int slot = builder.getSlot(variableName);
+		builder.emit((runner, stack, pc) -> {
+			stack.push(runner.getFrame().load(slot));
+			return pc + 1;
+		});
+	}
+
+	@Override
+	public boolean checkVariableAccess(HashSet<String> assignedVariables) {
+		return assignedVariables.contains(variableName);
+	}
+
 	@Override
-	public T evaluate() throws NullPointerException {
+	public T evaluate(TaskRunner runner) throws NullPointerException {
 		try {
-			return this.getRunner().getVariableValue(variableName);
+			return runner.getVariableValue(variableName);
 		}catch(IllegalArgumentException e){
 			throw new IllegalStateException("The variable to evaluate isn't assigned. This may not happen?", e);
 		}
@@ -3,6 +3,7 @@
  */
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 import hillbillies.utils.Vector;
 
 /**
@@ -19,8 +20,8 @@ public class SelectedPosition extends Expression<Vector> {
 	}
 
 	@Override
-	public Vector evaluate() throws NullPointerException {
-		return this.getRunner().getSelectedCube().getPosition();//TODO
+	public Vector evaluate(TaskRunner runner) throws NullPointerException {
+		return runner.getSelectedCube().getPosition();//TODO
 	}
 
 }
@@ -3,6 +3,8 @@
  */
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 /**
  * @author kenneth
  *
@@ -17,9 +19,12 @@ public class True extends Expression<Boolean> {
     }
 
     @Override
-    public Boolean evaluate() {
+    public Boolean evaluate(TaskRunner runner) {
         return true;
     }
 
-
+    @Override
+    protected void compile(ProgramBuilder builder) {
+        builder.emitConstant(true);
+    }
 }
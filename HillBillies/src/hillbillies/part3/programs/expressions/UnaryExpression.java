@@ -1,11 +1,14 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
+
 /**
  * Created by Bram on 14-5-2016.
  */
 public abstract class UnaryExpression<E, T> extends Expression<T> {
 
-    private Expression<E> expression;
+    private final Expression<E> expression;
 
     public UnaryExpression(Expression<E> expression) throws IllegalArgumentException {
         super(expression);
@@ -13,21 +16,38 @@ public abstract class UnaryExpression<E, T> extends Expression<T> {
     }
 
     @Override
-    public T evaluate() throws NullPointerException {
-        E value = this.runChild(expression);
+    public T evaluate(TaskRunner runner) throws NullPointerException {
+        E value = expression.evaluate(runner);
         if(value==null)
-            throw new NullPointerException("The expression yields null.");// Is catched inside Expression's process method
-        return compute(value);
+            throw new NullPointerException("The expression yields null.");// Is catched by the Program running this expression
+        return compute(runner, value);
+    }
+
+    @Override
+    protected void compile(ProgramBuilder builder) {
+        builder.compile(expression);
+        builder.emit((runner, stack, pc) -> {
+            E value = stack.pop();
+            if(value==null)
+                throw new NullPointerException("The expression yields null.");
+            stack.push(compute(runner, value));
+            return pc + 1;
+        });
+    }
+
+    public Expression<E> getExpression(){
+        return this.expression;
     }
 
     /**
      * Compute the value to be returned by this expression, given the value
      * of its child expression.
+     * @param runner The runner executing this expression.
      * @param value The value of the child expression. This value is guaranteed
      *              to be not null.
      * @return The value this expression should return based on the given value
      *          of its child expression.
      */
-    protected abstract T compute(E value);
+    protected abstract T compute(TaskRunner runner, E value);
 
 }
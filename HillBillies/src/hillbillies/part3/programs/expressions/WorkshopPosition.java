@@ -1,5 +1,6 @@
 package hillbillies.part3.programs.expressions;
 
+import hillbillies.model.Task.TaskRunner;
 import java.util.Set;
 
 import hillbillies.activities.TargetMove;
@@ -20,16 +21,16 @@ public class WorkshopPosition extends Expression<Vector> {
 	}
 
 	@Override
-	public Vector evaluate() throws NullPointerException {
-		Set<Cube> workshops = this.getRunner().getExecutingWorld().getWorkshops();
+	public Vector evaluate(TaskRunner runner) throws NullPointerException {
+		Set<Cube> workshops = runner.getExecutingWorld().getWorkshops();
 		if (workshops.isEmpty()){
-			this.getRunner().stop();
+			runner.stop();
 			return null;
 		}
-		TargetMove targetmove = new TargetMove(this.getRunner().getExecutingUnit(), workshops);
+		TargetMove targetmove = new TargetMove(runner.getExecutingUnit(), workshops);
 		Vector nearestPos = targetmove.getNearestPos();
 		if(nearestPos == null)
-			this.getRunner().stop();
+			runner.stop();
 		return nearestPos;
 	}
 
@@ -1,7 +1,6 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.part3.programs.SourceLocation;
-import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 import hillbillies.part3.programs.expressions.Expression;
 
 /**
@@ -23,7 +22,18 @@ public class Assignment<T> extends Statement {
     }
 
     @Override
-    protected void execute() {
-        this.getRunner().assignVariable(variableName, this.runChild(value));
+    public Statement optimize() {
+        Expression<T> value = this.value.optimize();
+        return value == this.value ? this : new Assignment<>(variableName, value);
+    }
+
+    @Override
+    protected void compileBody(ProgramBuilder builder) {
+        int slot = builder.getSlot(variableName);
+        builder.compile(value);
+        builder.emit((runner, stack, pc) -> {
+            runner.getFrame().store(slot, stack.pop());
+            return pc + 1;
+        });
     }
 }
@@ -1,9 +1,7 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.activities.None;
+import hillbillies.part3.programs.ProgramBuilder;
 import hillbillies.model.Unit;
-import hillbillies.part3.programs.SourceLocation;
-import hillbillies.model.Task.TaskRunner;
 import hillbillies.part3.programs.expressions.Expression;
 
 /**
@@ -21,12 +19,16 @@ public class AttackUnit extends Statement{
 	}
 
 	@Override
-	protected void execute() {
-		Unit attacker = this.getRunner().getExecutingUnit();
-		Unit defender = this.runChild(unit);
+	protected void compileBody(ProgramBuilder builder) {
+		builder.compile(unit);
+		builder.emit((runner, stack, pc) -> {
+			Unit attacker = runner.getExecutingUnit();
+			Unit defender = stack.pop();
 
-		attacker.attack(defender);
-		this.getRunner().waitFor(unit -> unit.isExecuting(None.class));
+			attacker.attack(defender);
+			runner.waitForActivity(runner.getExecutingUnit().getCurrentActivity());
+			return pc + 1;
+		});
 	}
 
 }
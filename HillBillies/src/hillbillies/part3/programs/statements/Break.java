@@ -1,7 +1,6 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.part3.programs.SourceLocation;
-import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 
 /**
  * Created by Bram on 28-4-2016.
@@ -13,7 +12,7 @@ public class Break extends Statement {
     }
 
     @Override
-    public void execute() {
-        this.getRunner().breakLoop = true;
+    protected void compileBody(ProgramBuilder builder) {
+        builder.emitBreak();
     }
 }
@@ -1,9 +1,7 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.activities.None;
+import hillbillies.part3.programs.ProgramBuilder;
 import hillbillies.model.Unit;
-import hillbillies.part3.programs.SourceLocation;
-import hillbillies.model.Task.TaskRunner;
 import hillbillies.part3.programs.expressions.Expression;
 
 /**
@@ -24,10 +22,14 @@ public class FollowUnit extends Statement{
 	}
 
 	@Override
-	protected void execute() {
-		Unit leader = this.runChild(unit);
-		this.getRunner().getExecutingUnit().follow(leader);// TODO: since we have access to the Task, getExecutingUnit is no longer needed
-		this.getRunner().waitFor(unit -> unit.isExecuting(None.class));
+	protected void compileBody(ProgramBuilder builder) {
+		builder.compile(unit);
+		builder.emit((runner, stack, pc) -> {
+			Unit leader = stack.pop();
+			runner.getExecutingUnit().follow(leader);
+			runner.waitForActivity(runner.getExecutingUnit().getCurrentActivity());
+			return pc + 1;
+		});
 	}
 
 }
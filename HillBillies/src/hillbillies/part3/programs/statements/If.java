@@ -1,6 +1,11 @@
 package hillbillies.part3.programs.statements;
 
+import hillbillies.part3.programs.ProgramBuilder;
 import hillbillies.part3.programs.expressions.Expression;
+import hillbillies.part3.programs.expressions.False;
+import hillbillies.part3.programs.expressions.True;
+
+import java.util.Collections;
 
 /**
  * Created by Bram on 14-5-2016.
@@ -17,9 +22,23 @@ public class If extends Statement {
     }
 
     @Override
-    public void execute() {
-        if(this.getCurrentChild()==1 || this.runChild(condition))
-            this.runChild(ifBody);
+    public Statement optimize() {
+        Expression<Boolean> condition = this.condition.optimize();
+        Statement ifBody = this.ifBody.optimize();
+        if(condition instanceof True)
+            return ifBody;
+        if(condition instanceof False)
+            return new Sequence(Collections.emptyList());
+        return condition == this.condition && ifBody == this.ifBody ? this : new If(condition, ifBody);
+    }
+
+    @Override
+    protected void compileBody(ProgramBuilder builder) {
+        ProgramBuilder.Label end = builder.newLabel();
+        builder.compile(condition);
+        builder.emitJumpIfFalse(end);
+        builder.compile(ifBody);
+        builder.placeLabel(end);
     }
 
 }
@@ -1,8 +1,10 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.part3.programs.SourceLocation;
-import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 import hillbillies.part3.programs.expressions.Expression;
+import hillbillies.part3.programs.expressions.False;
+import hillbillies.part3.programs.expressions.Not;
+import hillbillies.part3.programs.expressions.True;
 
 /**
  * Created by Bram on 28-4-2016.
@@ -20,11 +22,34 @@ public class IfElse extends Statement {
         this.elseBody = elseBody;
     }
 
+    /**
+     * Only keep the body which is executed if the condition is constant,
+     * and swap the bodies instead of negating the condition.
+     */
     @Override
-    public void execute() {
-        if(this.getCurrentChild()!=ELSE_INDEX && (this.getCurrentChild()==IF_INDEX || this.runChild(condition)))
-            this.runChild(ifBody);
-        else
-            this.runChild(elseBody);
+    public Statement optimize() {
+        Expression<Boolean> condition = this.condition.optimize();
+        Statement ifBody = this.ifBody.optimize(), elseBody = this.elseBody.optimize();
+        if(condition instanceof True)
+            return ifBody;
+        if(condition instanceof False)
+            return elseBody;
+        if(condition instanceof Not)
+            return new IfElse(((Not) condition).getExpression(), elseBody, ifBody);
+        if(condition == this.condition && ifBody == this.ifBody && elseBody == this.elseBody)
+            return this;
+        return new IfElse(condition, ifBody, elseBody);
+    }
+
+    @Override
+    protected void compileBody(ProgramBuilder builder) {
+        ProgramBuilder.Label elseStart = builder.newLabel(), end = builder.newLabel();
+        builder.compile(condition);
+        builder.emitJumpIfFalse(elseStart);
+        builder.compile(ifBody);
+        builder.emitJump(end);
+        builder.placeLabel(elseStart);
+        builder.compile(elseBody);
+        builder.placeLabel(end);
     }
 }
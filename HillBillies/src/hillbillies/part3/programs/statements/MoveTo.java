@@ -1,8 +1,6 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.activities.None;
-import hillbillies.part3.programs.SourceLocation;
-import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 import hillbillies.part3.programs.expressions.Expression;
 import hillbillies.utils.Vector;
 
@@ -23,10 +21,14 @@ public class MoveTo extends Statement{
 	}
 
 	@Override
-	public void execute() {
-		Vector target = this.runChild(position);
-		this.getRunner().getExecutingUnit().moveToTarget(target.getCubeCoordinates());
-		this.getRunner().waitFor(unit -> unit.isExecuting(None.class));
+	protected void compileBody(ProgramBuilder builder) {
+		builder.compile(position);
+		builder.emit((runner, stack, pc) -> {
+			Vector target = stack.pop();
+			runner.getExecutingUnit().moveToTarget(target.getCubeCoordinates());
+			runner.waitForActivity(runner.getExecutingUnit().getCurrentActivity());
+			return pc + 1;
+		});
 	}
 
 }
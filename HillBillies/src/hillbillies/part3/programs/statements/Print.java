@@ -1,7 +1,6 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.part3.programs.SourceLocation;
-import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 import hillbillies.part3.programs.expressions.Expression;
 /**
  * 
@@ -17,8 +16,19 @@ public class Print extends Statement {
 	}
 
 	@Override
-	public void execute() {
-		System.out.println(this.runChild(value));
+	public Statement optimize() {
+		Expression<?> value = this.value.optimize();
+		return value == this.value ? this : new Print(value);
+	}
+
+	@Override
+	protected void compileBody(ProgramBuilder builder) {
+		builder.compile(value);
+		builder.emit((runner, stack, pc) -> {
+			Object printed = stack.pop();
+			System.out.println(printed);
+			return pc + 1;
+		});
 	}
 
 }
@@ -1,8 +1,9 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.part3.programs.SourceLocation;
-import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -14,13 +15,35 @@ public class Sequence extends Statement {
 
     public Sequence(List<Statement> statements) throws IllegalArgumentException{
         super(statements.toArray(new Statement[]{}));
-        this.statements = statements;
+        this.statements = Collections.unmodifiableList(new ArrayList<>(statements));
     }
 
+    /**
+     * Optimize the statements of this sequence, and merge the statements of nested sequences into it.
+     * A sequence of a single statement is replaced by that statement.
+     */
     @Override
-    public void execute() {
-        int i = this.getCurrentChild();
-        while(i < statements.size())
-            this.runChild(statements.get(i++));
+    public Statement optimize() {
+        List<Statement> optimized = new ArrayList<>();
+        boolean changed = false;
+        for(Statement statement : statements){
+            Statement result = statement.optimize();
+            if(result instanceof Sequence){
+                optimized.addAll(((Sequence) result).statements);
+                changed = true;
+            }else{
+                optimized.add(result);
+                changed |= result != statement;
+            }
+        }
+        if(optimized.size() == 1)
+            return optimized.get(0);
+        return changed ? new Sequence(optimized) : this;
+    }
+
+    @Override
+    protected void compileBody(ProgramBuilder builder) {
+        for(Statement statement : statements)
+            builder.compile(statement);
     }
 }
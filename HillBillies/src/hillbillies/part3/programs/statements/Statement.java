@@ -1,10 +1,13 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.model.Task.TaskRunner;
 import hillbillies.part3.programs.Command;
-import hillbillies.part3.programs.expressions.ReadVariable;
+import hillbillies.part3.programs.Program;
+import hillbillies.part3.programs.ProgramBuilder;
+import hillbillies.part3.programs.expressions.Expression;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * Abstract class representing a single statement.
@@ -21,38 +24,64 @@ public abstract class Statement extends Command<Void> {
         super(children);
     }
 
+    /**
+     * Variable referencing the Program compiled from this statement, or null if it isn't compiled yet.
+     * Since statements are immutable, the Program is compiled once and shared by all tasks executing this statement.
+     */
+    private volatile Program program;
+
+    /**
+     * Return the Program compiled from this statement.
+     * @return The compiled Program.
+     *          | result == Program.compile(this)
+     * @throws IllegalStateException
+     *         If this statement contains a Break statement outside of a loop.
+     */
+    public final Program getProgram() throws IllegalStateException{
+        Program result = program;
+        if(result == null)
+            program = result = Program.compile(this);
+        return result;
+    }
+
+    /**
+     * Append the instructions of this statement to the program being built: the instruction
+     * charging the cost of this statement, followed by the instructions of the statement itself.
+     */
     @Override
-    protected final Void process() {
-        TaskRunner runner = this.getRunner();
-        if(runner.isResuming()){
-            this.setCurrentChild(runner.resumeState());
-            if(this.getCurrentChild()>=this.getNbChildren())
-                return null;// This Statement is finished
-            safeExecute();// Execute without consuming dt
-        }
-        else if(!runner.breakLoop && runner.getDt()>0) {
-            this.getRunner().consumeDt();
-            safeExecute();// Otherwise execute and consume dt
-        }
-        else if(this.getRunner().getDt()==0d){
-            this.getRunner().pause();// If all dt is consumed, start pausing
-        }
-        if(this.getRunner().isPausing()) {
-            this.getRunner().saveState(this.getCurrentChild());// If we are interrupting, save the current state
-        }
-        return null;
+    protected final void compile(ProgramBuilder builder) {
+        builder.emitStep(this);
+        compileBody(builder);
     }
 
-    private void safeExecute(){
-        try{
-            execute();
-        }catch(NullPointerException e){
-            if(this.getRunner().isPausing() || this.getRunner().isStopping()) return;// Nothing wrong, runner is pausing or stopping
-            throw new NullPointerException("Strange NullPointerException occurred.");
-        }
+    /**
+     * Return the expressions whose cost is charged together with this statement, at its start.
+     * By default these are all expressions this statement evaluates directly.
+     */
+    public List<Expression<?>> getChargedExpressions(){
+        List<Expression<?>> result = new ArrayList<>();
+        for(Command<?> child : this.getChildren())
+            if(child instanceof Expression)
+                result.add((Expression<?>)child);
+        return result;
     }
 
-    protected abstract void execute() throws NullPointerException;
+    /**
+     * Append the instructions executing this statement to the program being built.
+     * @param builder The builder of the program.
+     */
+    protected abstract void compileBody(ProgramBuilder builder);
+
+    /**
+     * Return a statement which is equivalent to this statement, but cheaper to execute.
+     * Constant conditions are folded, and statements which can never be executed are removed.
+     * The result might not pass check() anymore if assignments were removed with the dead
+     * statements, so the caller has to fall back on this statement in that case.
+     * @return This statement, or a new equivalent statement.
+     */
+    public Statement optimize(){
+        return this;
+    }
 
     public final boolean check(){
         return checkVariableAccess() && checkBreak();
@@ -64,7 +93,7 @@ public abstract class Statement extends Command<Void> {
 
     protected boolean checkVariableAccess(HashSet<String> assignedVariables){
         for(Command child : this.getChildren()){
-            if(child instanceof ReadVariable && !assignedVariables.contains(((ReadVariable)child).getVariableName()))
+            if(child instanceof Expression && !((Expression<?>)child).checkVariableAccess(assignedVariables))
                 return false;
             if(child instanceof Statement && !((Statement)child).checkVariableAccess(assignedVariables))
                 return false;
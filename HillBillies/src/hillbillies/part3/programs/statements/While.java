@@ -1,8 +1,11 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.part3.programs.SourceLocation;
-import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 import hillbillies.part3.programs.expressions.Expression;
+import hillbillies.part3.programs.expressions.False;
+
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by Bram on 27-4-2016.
@@ -20,16 +23,34 @@ public class While extends Statement {
     }
 
     @Override
-    public void execute() {
-        boolean resuming = this.getCurrentChild()==BODY_INDEX;
-        while(resuming || runChild(condition)){
-            resuming = false;
-            runChild(body);
-            if(this.getRunner().breakLoop){
-                this.getRunner().breakLoop = false;
-                break;
-            }
-        }
+    public Statement optimize() {
+        Expression<Boolean> condition = this.condition.optimize();
+        if(condition instanceof False)
+            return new Sequence(Collections.emptyList());
+        Statement body = this.body.optimize();
+        return condition == this.condition && body == this.body ? this : new While(condition, body);
+    }
+
+    /**
+     * The condition is evaluated once per iteration, so it is charged by a step of its own.
+     */
+    @Override
+    public List<Expression<?>> getChargedExpressions() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    protected void compileBody(ProgramBuilder builder) {
+        ProgramBuilder.Label start = builder.newLabel(), end = builder.newLabel();
+        builder.placeLabel(start);
+        builder.emitStep(condition);
+        builder.compile(condition);
+        builder.emitJumpIfFalse(end);
+        builder.enterLoop(end);
+        builder.compile(body);
+        builder.exitLoop();
+        builder.emitJump(start);
+        builder.placeLabel(end);
     }
 
     @Override
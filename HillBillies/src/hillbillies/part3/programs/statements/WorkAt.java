@@ -1,8 +1,6 @@
 package hillbillies.part3.programs.statements;
 
-import hillbillies.activities.None;
-import hillbillies.part3.programs.SourceLocation;
-import hillbillies.model.Task.TaskRunner;
+import hillbillies.part3.programs.ProgramBuilder;
 import hillbillies.part3.programs.expressions.Expression;
 import hillbillies.utils.Vector;
 /**
@@ -19,10 +17,14 @@ public class WorkAt extends Statement{
 		this.position = position;
 	}
 	@Override
-	public void execute() {
-		Vector workPosition = this.runChild(position);
-		this.getRunner().getExecutingUnit().work(workPosition);
-		this.getRunner().waitFor(unit -> unit.isExecuting(None.class));
+	protected void compileBody(ProgramBuilder builder) {
+		builder.compile(position);
+		builder.emit((runner, stack, pc) -> {
+			Vector workPosition = stack.pop();
+			runner.getExecutingUnit().work(workPosition);
+			runner.waitForActivity(runner.getExecutingUnit().getCurrentActivity());
+			return pc + 1;
+		});
 	}
 
 }
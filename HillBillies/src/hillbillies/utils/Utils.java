@@ -3,6 +3,7 @@ package hillbillies.utils;
 import hillbillies.model.IWorld;
 import hillbillies.model.World;
 
+import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
@@ -12,6 +13,38 @@ import java.util.concurrent.ThreadLocalRandom;
  */
 public final class Utils {
 
+    /**
+     * The random generator bound to each thread, or null if the thread uses its ThreadLocalRandom.
+     */
+    private static final ThreadLocal<Random> boundRandom = new ThreadLocal<>();
+
+    /**
+     * Bind the given random generator to the current thread, so the random values returned by this class
+     * on the current thread are generated by it, until another generator is bound.
+     * This makes the outcome of a simulation reproducible from the seed of the generator.
+     *
+     * @param   random
+     *          The generator to bind, or null to use the ThreadLocalRandom of the current thread again.
+     * @return  The generator which was bound to the current thread before, or null if there was none.
+     *          The caller should restore it with this method when it's done.
+     */
+    public static Random bindRandom(Random random){
+        Random previous = boundRandom.get();
+        if(random == null)
+            boundRandom.remove();
+        else
+            boundRandom.set(random);
+        return previous;
+    }
+
+    /**
+     * Return the random generator bound to the current thread, or its ThreadLocalRandom if none is bound.
+     */
+    public static Random getRandom(){
+        Random random = boundRandom.get();
+        return random == null ? ThreadLocalRandom.current() : random;
+    }
+
     /**
      * Returns a random integer between min and max, inclusive.
      *
@@ -28,7 +61,7 @@ public final class Utils {
     public static int randInt(int min, int max) throws IllegalArgumentException {
         if (max < min)
             throw new IllegalArgumentException();
-        return ThreadLocalRandom.current().nextInt(min, max + 1);
+        return getRandom().nextInt(min, max + 1);
     }
     
     /**
@@ -47,7 +80,7 @@ public final class Utils {
     public static double randDouble(double min, double max) throws IllegalArgumentException {
         if (max < min)
             throw new IllegalArgumentException();
-        return ThreadLocalRandom.current().nextDouble(min, max);
+        return getRandom().nextDouble(min, max);
     }
 
     
@@ -257,11 +257,8 @@ public class Vector {
      *          | result.equals(this) == true
      */
     public Vector clone() {
-        try {
-            return (Vector)super.clone();
-        }catch(CloneNotSupportedException e){
-            return new Vector(this.vectorList);
-        }
+        // Vector is not Cloneable, so super.clone() would always throw (and would share vectorList)
+        return new Vector(this.vectorList);
     }
 
     /**
@@ -301,8 +298,12 @@ public class Vector {
     @Override
     public int hashCode(){
         int hashCode = 17;
-        for(double d : vectorList)
-            hashCode = hashCode*31 + Double.valueOf(d).hashCode();
+        for(double d : vectorList){
+            // Mix the high bits into the low bits, the low bits of integral coordinates are all zero
+            long bits = Double.doubleToLongBits(d);
+            bits = (bits ^ (bits >>> 33)) * 0xff51afd7ed558ccdL;
+            hashCode = hashCode*31 + (int) (bits ^ (bits >>> 33));
+        }
         return hashCode;
     }
 
@@ -19,8 +19,13 @@ import org.junit.runners.Suite;
         UnitTest.class,
         UtilsTest.class,
         WorldTest.class,
+        WorldHostTest.class,
+        JournalingFacadeTest.class,
         SchedulerTest.class,
-        TaskFactoryTest.class
+        TaskFactoryTest.class,
+        TaskLibraryTest.class,
+        TaskParserTest.class,
+        ProgramTest.class
 })
 public class TestSuite {
 }
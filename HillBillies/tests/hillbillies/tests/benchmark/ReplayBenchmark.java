@@ -0,0 +1,79 @@
+package hillbillies.tests.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import hillbillies.model.World;
+import hillbillies.part2.listener.DefaultTerrainChangeListener;
+import hillbillies.part3.facade.JournalingFacade;
+import hillbillies.part3.facade.Replay;
+import ogp.framework.util.ModelException;
+
+/**
+ * Headless benchmark replaying a command journal as fast as possible, to compare the speed of builds on the
+ * same recorded session. When no journal file is given, a session is recorded first, in which units with their
+ * default behaviour enabled are advanced on a world which is a cube of the given size.
+ * The result is printed as one line with the number of ticks and the mean replay time.
+ *
+ * Usage: ReplayBenchmark [journal | worldSize units ticks] [repetitions]
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public class ReplayBenchmark {
+
+    private static final double DT = 0.1;
+
+    public static void main(String[] args) throws IOException, ModelException {
+        byte[] journal;
+        int repetitions;
+        if(args.length > 0 && !args[0].matches("\\d+")){
+            journal = Files.readAllBytes(Paths.get(args[0]));
+            repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        } else {
+            int worldSize = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+            int nbUnits = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+            int nbTicks = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            repetitions = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+            journal = recordSession(worldSize, nbUnits, nbTicks);
+        }
+        replay(journal);// Warm up
+        long replayTime = 0, ticks = 0;
+        for (int i = 0; i < repetitions; i++) {
+            long start = System.nanoTime();
+            ticks = replay(journal);
+            replayTime += System.nanoTime() - start;
+        }
+        System.out.println("bytes\tticks\treplay ms\tticks/s");
+        double replayMillis = replayTime / 1e6 / repetitions;
+        System.out.printf("%d\t%d\t%.3f\t%.1f%n", journal.length, ticks, replayMillis, ticks / replayMillis * 1e3);
+    }
+
+    private static long replay(byte[] journal) throws IOException {
+        try (Replay replay = new Replay(new ByteArrayInputStream(journal), new DefaultTerrainChangeListener())) {
+            return replay.advanceToEnd();
+        }
+    }
+
+    private static byte[] recordSession(int worldSize, int nbUnits, int nbTicks) throws IOException, ModelException {
+        int[][][] terrainTypes = new int[worldSize][worldSize][worldSize];
+        Random random = new Random(worldSize);
+        int surface = worldSize / 2;
+        for (int x = 0; x < worldSize; x++)
+            for (int y = 0; y < worldSize; y++)
+                for (int z = 0; z < surface; z++)
+                    terrainTypes[x][y][z] = random.nextInt(50) == 0 ? 2 : 1;
+        ByteArrayOutputStream journal = new ByteArrayOutputStream();
+        try (JournalingFacade facade = new JournalingFacade(journal, worldSize)) {
+            World world = facade.createWorld(terrainTypes, new DefaultTerrainChangeListener());
+            for (int i = 0; i < nbUnits; i++)
+                facade.spawnUnit(world, true);
+            for (int i = 0; i < nbTicks; i++)
+                facade.advanceTime(world, DT);
+        }
+        return journal.toByteArray();
+    }
+}
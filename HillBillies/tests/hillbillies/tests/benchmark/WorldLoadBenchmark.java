@@ -0,0 +1,69 @@
+package hillbillies.tests.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import hillbillies.model.World;
+import hillbillies.part2.facade.Facade;
+import hillbillies.part2.internal.map.GameMap;
+import hillbillies.part2.internal.map.GameMapReader;
+import hillbillies.part2.listener.DefaultTerrainChangeListener;
+import ogp.framework.util.ModelException;
+
+/**
+ * Headless benchmark measuring the time and memory needed to create a World from a map which was read already,
+ * as the user interface does. The World is created once from a terrain matrix of int arrays, as the user interface
+ * did before, and once from the slabs of the map itself through a WorldBuilder.
+ * The memory is measured as the number of bytes allocated while creating the World.
+ * The result is printed as one line for each way of creating the World with its mean time and allocated bytes.
+ *
+ * Usage: WorldLoadBenchmark [mapFile] [repetitions]
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public class WorldLoadBenchmark {
+
+    public static void main(String[] args) throws IOException, ModelException {
+        String mapFile = args.length > 0 ? args[0] : "src-provided/resources/80x80x80.wrld";
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        GameMap map = new GameMapReader().readFromFile(mapFile);
+        Facade facade = new Facade();
+        System.out.println("path\tcubes\tms\tallocated MB");
+        measure("array", map, repetitions, () -> facade.createWorld(toTerrainTypes(map), new DefaultTerrainChangeListener()));
+        measure("slabs", map, repetitions, () -> facade.createWorld(map.getNbTilesX(), map.getNbTilesY(), map.getNbTilesZ(),
+                map.getMap().asReadOnlyBuffer(), new DefaultTerrainChangeListener()));
+    }
+
+    @FunctionalInterface
+    private interface WorldFactory {
+        World create() throws ModelException;
+    }
+
+    private static void measure(String name, GameMap map, int repetitions, WorldFactory factory) throws ModelException {
+        factory.create();// Warm up
+        long time = 0, allocated = 0;
+        for (int i = 0; i < repetitions; i++) {
+            long startAllocated = getAllocatedBytes();
+            long start = System.nanoTime();
+            factory.create();
+            time += System.nanoTime() - start;
+            allocated += getAllocatedBytes() - startAllocated;
+        }
+        System.out.printf("%s\t%d\t%.3f\t%.1f%n", name, map.getNbTilesX() * map.getNbTilesY() * map.getNbTilesZ(),
+                time / 1e6 / repetitions, allocated / 1e6 / repetitions);
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static int[][][] toTerrainTypes(GameMap map) {
+        int[][][] types = new int[map.getNbTilesX()][map.getNbTilesY()][map.getNbTilesZ()];
+        for (int x = 0; x < types.length; x++)
+            for (int y = 0; y < types[x].length; y++)
+                for (int z = 0; z < types[x][y].length; z++)
+                    types[x][y][z] = map.getTypeAt(x, y, z).getByteValue();
+        return types;
+    }
+}
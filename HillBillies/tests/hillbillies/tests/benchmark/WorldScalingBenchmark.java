@@ -0,0 +1,61 @@
+package hillbillies.tests.benchmark;
+
+import hillbillies.model.Unit;
+import hillbillies.model.World;
+import hillbillies.part2.listener.DefaultTerrainChangeListener;
+import hillbillies.utils.Vector;
+
+import java.util.Random;
+
+/**
+ * Headless benchmark measuring the cost of a World tick for an increasing number of units.
+ * By default every unit is working, so the benchmark measures the cost of the tick loop and the unit registries.
+ * With the "default" argument every unit has its default behaviour enabled instead. The units are spread over the
+ * default number of factions, so the default behaviour also lets units of different factions attack each other.
+ * The result is printed as one line per number of units, which can be plotted to show the scaling curve.
+ *
+ * Usage: WorldScalingBenchmark [maxUnits] [ticks] [default]
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public class WorldScalingBenchmark {
+
+    private static final int[] UNIT_COUNTS = {100, 250, 500, 1000, 2500, 5000, 10000};
+    private static final int WORLD_SIZE = 64;
+    private static final double DT = 0.1;
+
+    public static void main(String[] args) {
+        int maxUnits = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        boolean defaultBehaviour = args.length > 2 && args[2].equals("default");
+        System.out.println("units\tms/tick\tticks/s\tsleeping");
+        for (int nbUnits : UNIT_COUNTS) {
+            if (nbUnits > maxUnits)
+                break;
+            World world = createWorld(nbUnits, defaultBehaviour);
+            // Warm up
+            for (int i = 0; i < ticks / 10; i++)
+                world.advanceTime(DT);
+            long start = System.nanoTime();
+            for (int i = 0; i < ticks; i++)
+                world.advanceTime(DT);
+            double msPerTick = (System.nanoTime() - start) / 1e6 / ticks;
+            System.out.printf("%d\t%.3f\t%.1f\t%d%n", nbUnits, msPerTick, 1000 / msPerTick, world.getNbSleepingUnits());
+        }
+    }
+
+    private static World createWorld(int nbUnits, boolean defaultBehaviour) {
+        int[][][] terrainTypes = new int[WORLD_SIZE][WORLD_SIZE][2];
+        World world = new World(terrainTypes, new DefaultTerrainChangeListener(), nbUnits, World.DEFAULT_MAX_FACTIONS, nbUnits);
+        Random random = new Random(nbUnits);
+        for (int i = 0; i < nbUnits; i++) {
+            Vector position = new Vector(random.nextInt(WORLD_SIZE), random.nextInt(WORLD_SIZE), 0);
+            Unit unit = new Unit(world, "Unit", position, 50, 50, 50, 50);
+            if (defaultBehaviour)
+                unit.startDefaultBehaviour();
+            else
+                unit.work(position);
+        }
+        return world;
+    }
+}
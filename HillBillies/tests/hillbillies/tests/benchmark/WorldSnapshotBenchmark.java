@@ -0,0 +1,71 @@
+package hillbillies.tests.benchmark;
+
+import hillbillies.model.Unit;
+import hillbillies.model.World;
+import hillbillies.model.WorldSnapshot;
+import hillbillies.part2.listener.DefaultTerrainChangeListener;
+import hillbillies.utils.Vector;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Headless benchmark measuring the time needed to save a World to a snapshot and to restore it again.
+ * The World is a cube of the given size, of which the lower half is rock with a few tunnels of wood and workshops,
+ * populated by units with their default behaviour enabled, which are advanced for a few seconds before saving.
+ * The World is advanced a tick before each snapshot, so the capture time shows the cost of a point-in-time view
+ * of which only the changed terrain chunks are copied, as it is taken by an autosave on the simulation thread.
+ * The result is printed as one line with the snapshot size and the mean capture, save and restore times.
+ *
+ * Usage: WorldSnapshotBenchmark [worldSize] [units] [repetitions]
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public class WorldSnapshotBenchmark {
+
+    private static final double DT = 0.1;
+
+    public static void main(String[] args) throws IOException {
+        int worldSize = args.length > 0 ? Integer.parseInt(args[0]) : 80;
+        int nbUnits = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        World world = createWorld(worldSize, nbUnits);
+        byte[] snapshot = WorldSnapshot.toByteArray(world);
+        WorldSnapshot.fromByteArray(snapshot, new DefaultTerrainChangeListener());// Warm up
+        long captureTime = 0, saveTime = 0, restoreTime = 0;
+        for (int i = 0; i < repetitions; i++) {
+            world.advanceTime(DT);
+            long start = System.nanoTime();
+            WorldSnapshot view = WorldSnapshot.capture(world);
+            captureTime += System.nanoTime() - start;
+            snapshot = view.toByteArray();
+            saveTime += System.nanoTime() - start;
+            start = System.nanoTime();
+            WorldSnapshot.fromByteArray(snapshot, new DefaultTerrainChangeListener());
+            restoreTime += System.nanoTime() - start;
+        }
+        System.out.println("cubes\tunits\tbytes\tcapture ms\tsave ms\trestore ms");
+        System.out.printf("%d\t%d\t%d\t%.3f\t%.3f\t%.3f%n", worldSize * worldSize * worldSize, nbUnits, snapshot.length,
+                captureTime / 1e6 / repetitions, saveTime / 1e6 / repetitions, restoreTime / 1e6 / repetitions);
+    }
+
+    private static World createWorld(int worldSize, int nbUnits) {
+        int[][][] terrainTypes = new int[worldSize][worldSize][worldSize];
+        Random random = new Random(worldSize);
+        int surface = worldSize / 2;
+        for (int x = 0; x < worldSize; x++)
+            for (int y = 0; y < worldSize; y++)
+                for (int z = 0; z < surface; z++)
+                    terrainTypes[x][y][z] = random.nextInt(50) == 0 ? 2 : 1;
+        for (int x = 0; x < worldSize; x += 8)
+            terrainTypes[x][x][surface] = 3;
+        World world = new World(terrainTypes, new DefaultTerrainChangeListener(), nbUnits, 1, nbUnits);
+        for (int i = 0; i < nbUnits; i++) {
+            Vector position = new Vector(random.nextInt(worldSize), random.nextInt(worldSize), surface);
+            new Unit(world, "Unit", position, 50, 50, 50, 50).startDefaultBehaviour();
+        }
+        for (int i = 0; i < 50; i++)
+            world.advanceTime(DT);
+        return world;
+    }
+}
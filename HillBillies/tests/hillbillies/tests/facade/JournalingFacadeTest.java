@@ -0,0 +1,145 @@
+package hillbillies.tests.facade;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import hillbillies.model.Material;
+import hillbillies.model.Task;
+import hillbillies.model.Unit;
+import hillbillies.model.World;
+import hillbillies.part2.listener.DefaultTerrainChangeListener;
+import hillbillies.part3.facade.JournalingFacade;
+import hillbillies.part3.facade.Replay;
+import hillbillies.part3.programs.TaskParser;
+import ogp.framework.util.ModelException;
+
+/**
+ * Test class for the JournalingFacade and Replay classes.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public class JournalingFacadeTest {
+
+	private static final double DT = 0.05;
+	private static final long SEED = 1L;
+
+	@Test
+	public void replayTest() throws ModelException, IOException {
+		int[][][] types = new int[12][12][6];
+		for (int x = 0; x < 12; x++)
+			for (int y = 0; y < 12; y++) {
+				types[x][y][0] = 1;
+				types[x][y][1] = (x + y) % 7 == 0 ? 2 : 1;
+			}
+		types[3][3][2] = 1;
+		types[6][6][2] = 3;
+		ByteArrayOutputStream journal = new ByteArrayOutputStream();
+		List<List<double[]>> recordedPositions = new ArrayList<>();
+		List<Unit> units = new ArrayList<>();
+		World world;
+		try (JournalingFacade facade = new JournalingFacade(journal, SEED)) {
+			world = facade.createWorld(types, new DefaultTerrainChangeListener());
+			for (int i = 0; i < 4; i++)
+				units.add(facade.spawnUnit(world, true));
+			Unit worker = facade.createUnit("Worker", new int[] { 3, 4, 2 }, 50, 50, 50, 50, false);
+			facade.addUnit(worker, world);
+			units.add(worker);
+			facade.workAt(worker, 3, 3, 2);
+			List<Task> tasks = TaskParser.parseTasksFromString(
+					"name: \"walk\"\npriority: 5\nactivities: moveTo selected;", facade.createTaskFactory(),
+					Collections.singletonList(new int[] { 9, 2, 2 }));
+			facade.schedule(facade.getScheduler(facade.getFaction(units.get(0))), tasks.get(0));
+			for (int tick = 1; tick <= 300; tick++) {
+				facade.advanceTime(world, DT);
+				if (tick == 50)
+					// Floating rock, which collapses after a while
+					facade.setCubeType(world, 0, 0, 5, 1);
+				if (tick == 100)
+					facade.setDefaultBehaviorEnabled(worker, true);
+				if (tick % 100 == 0)
+					recordedPositions.add(getPositions(facade, units));
+			}
+			assertNull(facade.getJournal().getFailure());
+			assertEquals(300, facade.getJournal().getTick());
+		}
+		try (Replay replay = new Replay(new ByteArrayInputStream(journal.toByteArray()),
+				new DefaultTerrainChangeListener())) {
+			assertEquals(SEED, replay.getWorld().getSeed());
+			JournalingFacade facade = new JournalingFacade(new ByteArrayOutputStream());
+			// Fast-forward to an intermediate tick
+			assertTrue(replay.advanceTo(200));
+			assertEquals(200, replay.getTick());
+			assertEquals(units.size(), replay.getUnits().size());
+			assertPositionsEquals(recordedPositions.get(1), getPositions(facade, replay.getUnits()));
+			assertEquals(300, replay.advanceToEnd());
+			assertTrue(replay.isFinished());
+			assertPositionsEquals(recordedPositions.get(2), getPositions(facade, replay.getUnits()));
+			for (int x = 0; x < 12; x++)
+				for (int y = 0; y < 12; y++)
+					for (int z = 0; z < 6; z++)
+						assertEquals(facade.getCubeType(world, x, y, z), facade.getCubeType(replay.getWorld(), x, y, z));
+			assertEquals(world.getMaterials(Material.class, false).size(),
+					replay.getWorld().getMaterials(Material.class, false).size());
+		}
+	}
+
+	@Test
+	public void taskReplayTest() throws ModelException, IOException {
+		int[][][] types = new int[2][1][2];
+		types[0][0][0] = 1;
+		types[1][0][0] = 1;
+		ByteArrayOutputStream journal = new ByteArrayOutputStream();
+		List<Unit> units = new ArrayList<>();
+		List<Integer> hitpoints = new ArrayList<>();
+		try (JournalingFacade facade = new JournalingFacade(journal, SEED)) {
+			World world = facade.createWorld(types, new DefaultTerrainChangeListener());
+			for (int x = 0; x < 2; x++) {
+				Unit unit = facade.createUnit("Fighter", new int[] { x, 0, 1 }, 50, 50, 50, 50, false);
+				facade.addUnit(unit, world);
+				units.add(unit);
+			}
+			assertNotSame(units.get(0).getFaction(), units.get(1).getFaction());
+			// The attacks of the task are dodged and blocked at random
+			List<Task> tasks = TaskParser.parseTasksFromString(
+					"name: \"fight\"\npriority: 5\nactivities: e := enemy; while is_alive e do attack e; done",
+					facade.createTaskFactory(), Collections.emptyList());
+			facade.schedule(facade.getScheduler(facade.getFaction(units.get(0))), tasks.get(0));
+			facade.setDefaultBehaviorEnabled(units.get(0), true);
+			for (int tick = 1; tick <= 200; tick++)
+				facade.advanceTime(world, DT);
+			assertNull(facade.getJournal().getFailure());
+			for (Unit unit : units)
+				hitpoints.add(unit.getHitpoints());
+		}
+		try (Replay replay = new Replay(new ByteArrayInputStream(journal.toByteArray()),
+				new DefaultTerrainChangeListener())) {
+			assertEquals(200, replay.advanceToEnd());
+			for (int i = 0; i < units.size(); i++)
+				assertEquals(hitpoints.get(i).intValue(), replay.getUnits().get(i).getHitpoints());
+		}
+	}
+
+	private static List<double[]> getPositions(JournalingFacade facade, List<Unit> units) throws ModelException {
+		List<double[]> positions = new ArrayList<>();
+		for (Unit unit : units)
+			positions.add(unit.isTerminated() ? null : facade.getPosition(unit));
+		return positions;
+	}
+
+	private static void assertPositionsEquals(List<double[]> expected, List<double[]> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i) == null, actual.get(i) == null);
+			if (expected.get(i) != null)
+				assertArrayEquals(expected.get(i), actual.get(i), 0);
+		}
+	}
+}
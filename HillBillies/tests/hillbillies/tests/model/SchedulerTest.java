@@ -1,6 +1,7 @@
 package hillbillies.tests.model;
 
 import hillbillies.model.*;
+import hillbillies.part2.listener.DefaultTerrainChangeListener;
 import hillbillies.part3.programs.expressions.LiteralPosition;
 import hillbillies.part3.programs.expressions.SelectedPosition;
 import hillbillies.part3.programs.statements.Assignment;
@@ -12,9 +13,17 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -236,6 +245,27 @@ public class SchedulerTest {
         assertEquals(task2, scheduler1.getHighestPriorityAssignableTask());
     }
 
+    @Test
+    public void assignableTaskOrder() throws Exception {
+        Scheduler scheduler = new Faction().getScheduler();
+        Task first = new Task("first", 50, new Print(new LiteralPosition(0,0,0)), new int[]{0,0,0});
+        Task second = new Task("second", 50, new Print(new LiteralPosition(0,0,0)), new int[]{0,0,0});
+        Task low = new Task("low", 10, new Print(new LiteralPosition(0,0,0)), new int[]{0,0,0});
+        scheduler.addTask(low);
+        scheduler.addTask(first);
+        scheduler.addTask(second);
+        assertEquals(3, scheduler.getNbAssignableTasks());
+        // Equal priorities are handed out in the order the tasks were added
+        assertEquals(first, scheduler.getHighestPriorityAssignableTask());
+        scheduler.removeTask(first);
+        assertEquals(second, scheduler.getHighestPriorityAssignableTask());
+        scheduler.removeTask(second);
+        assertEquals(low, scheduler.getHighestPriorityAssignableTask());
+        scheduler.removeTask(low);
+        assertEquals(null, scheduler.getHighestPriorityAssignableTask());
+        assertEquals(0, scheduler.getNbAssignableTasks());
+    }
+
     @Test
     public void getHighestPriorityNotRunningTask() throws Exception {
         scheduler1.addTask(task2);
@@ -325,4 +355,77 @@ public class SchedulerTest {
         assertEquals(task1, iterator.next());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void snapshotTest() throws Exception {
+        Scheduler scheduler = new Faction().getScheduler();
+        List<SchedulerChange> events = new ArrayList<>();
+        scheduler.addChangeListener(events::add);
+        SchedulerSnapshot empty = scheduler.getSnapshot();
+        assertSame(empty, scheduler.getSnapshot());
+        Task low = new Task("low", 10, new Print(new LiteralPosition(0,0,0)), null);
+        Task high = new Task("high", 20, new Print(new LiteralPosition(0,0,0)), null);
+        scheduler.addTask(low);
+        scheduler.addTask(high);
+        SchedulerSnapshot snapshot = scheduler.getSnapshot();
+        assertEquals(empty.getVersion() + 2, snapshot.getVersion());
+        assertEquals(Arrays.asList(high, low), snapshot.getTasks());
+        assertSame(snapshot, scheduler.getSnapshot());
+        assertEquals(0, empty.getNbTasks());
+        scheduler.removeTask(low);
+        assertEquals(3, events.size());
+        assertEquals(SchedulerChange.Kind.REMOVED, events.get(2).getKind());
+        assertEquals(events.subList(1, 3), scheduler.getChangesSince(empty.getVersion() + 1));
+        assertEquals(Arrays.asList(high), scheduler.getSnapshot().getTasks());
+        assertEquals(Arrays.asList(high, low), snapshot.getTasks());
+    }
+
+    @Test
+    public void concurrentClaimStressTest() throws Exception {
+        int nbThreads = 8, unitsPerThread = 4, nbTasks = 48;
+        World world = new World(new int[8][8][1], new DefaultTerrainChangeListener(), 64, 1, 64);
+        List<Unit> units = new ArrayList<>();
+        for (int i = 0; i < nbThreads * unitsPerThread; i++)
+            units.add(new Unit(world, "Unit", new Vector(i % 8, i / 8, 0), 50, 50, 50, 50));
+        Scheduler scheduler = units.get(0).getFaction().getScheduler();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < nbTasks; i++) {
+            tasks.add(new Task("task" + i, i % 6, new Print(new LiteralPosition(0,0,0)), null));
+            scheduler.addTask(tasks.get(i));
+        }
+        // Reference: the tasks claimed when the units claim one after the other
+        Set<Task> expected = new HashSet<>();
+        for (Unit unit : units)
+            expected.add(scheduler.claimHighestPriorityAssignableTask(unit));
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            for (int round = 0; round < 50; round++) {
+                for (Task task : tasks)
+                    scheduler.deschedule(task);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<List<Task>>> results = new ArrayList<>();
+                for (int t = 0; t < nbThreads; t++) {
+                    List<Unit> threadUnits = units.subList(t * unitsPerThread, (t + 1) * unitsPerThread);
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        List<Task> claimed = new ArrayList<>();
+                        for (Unit unit : threadUnits)
+                            claimed.add(scheduler.claimHighestPriorityAssignableTask(unit));
+                        return claimed;
+                    }));
+                }
+                start.countDown();
+                Set<Task> claimed = new HashSet<>();
+                for (Future<List<Task>> result : results)
+                    for (Task task : result.get())
+                        assertTrue("A task was claimed twice", claimed.add(task));
+                assertEquals(expected, claimed);
+                for (Unit unit : units)
+                    assertSame(unit, unit.getTask().getAssignedUnit());
+                assertEquals(nbTasks - units.size(), scheduler.getNbAssignableTasks());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -5,6 +5,8 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import static hillbillies.utils.Utils.randInt;
 import static org.junit.Assert.*;
@@ -315,6 +317,17 @@ public class UtilsTest {
         assertTrue(neg.getCubeCoordinates().equals(new Vector(-1,-2,-4)));
     }
 
+    @Test
+    public void testHashCodeCubeCoordinates() throws Exception {
+        // The cubes of a world are looked up by their coordinates, so these should rarely collide
+        Set<Integer> hashCodes = new HashSet<>();
+        for(int x = 0; x < 40; x++)
+            for(int y = 0; y < 40; y++)
+                for(int z = 0; z < 40; z++)
+                    hashCodes.add(new Vector(x, y, z).hashCode());
+        assertTrue(hashCodes.size() >= 0.99 * 40 * 40 * 40);
+    }
+
     @Test
     public void testGetCubeCenterCoordinates() throws Exception {
         assertTrue(origin.getCubeCenterCoordinates().equals(unitSum.multiply(0.5)));
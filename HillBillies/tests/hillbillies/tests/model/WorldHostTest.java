@@ -0,0 +1,147 @@
+package hillbillies.tests.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import hillbillies.model.Unit;
+import hillbillies.model.World;
+import hillbillies.model.WorldHost;
+import hillbillies.model.WorldHost.HostedWorld;
+import hillbillies.part2.listener.DefaultTerrainChangeListener;
+import hillbillies.utils.Vector;
+
+/**
+ * Test class for the WorldHost class.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public class WorldHostTest {
+
+	/**
+	 * World counting how many threads are advancing it at the same time.
+	 */
+	private static class CheckedWorld extends World {
+
+		private final AtomicInteger inside = new AtomicInteger();
+		private volatile boolean concurrentAccess = false;
+
+		private CheckedWorld() {
+			super(new int[5][5][2], new DefaultTerrainChangeListener());
+		}
+
+		@Override
+		public void advanceTime(double dt) {
+			if (inside.incrementAndGet() > 1)
+				concurrentAccess = true;
+			super.advanceTime(dt);
+			inside.decrementAndGet();
+		}
+	}
+
+	@Test
+	public void hostTest() throws InterruptedException {
+		List<CheckedWorld> worlds = new ArrayList<>();
+		try (WorldHost host = new WorldHost(3, 0.1, 5, TimeUnit.SECONDS.toNanos(1))) {
+			for (int i = 0; i < 8; i++) {
+				CheckedWorld world = new CheckedWorld();
+				Unit unit = new Unit(world, "Unit", new Vector(2, 2, 0), 50, 50, 50, 50);
+				unit.startDefaultBehaviour();
+				worlds.add(world);
+				host.host(world, 40);
+			}
+			assertTrue(host.awaitCompletion(30, TimeUnit.SECONDS));
+			assertEquals(0, host.getNbRunningWorlds());
+			for (CheckedWorld world : worlds) {
+				HostedWorld hostedWorld = host.getHostedWorld(world);
+				assertTrue(hostedWorld.isFinished());
+				assertNull(hostedWorld.getFailure());
+				assertEquals(40, hostedWorld.getTickCount());
+				// 40 ticks in slices of at most 5 ticks
+				assertTrue(hostedWorld.getNbSlices() >= 8);
+				assertTrue(hostedWorld.getTicksPerSecond() > 0);
+				assertEquals(4.0, world.getTime(), 1e-6);
+				assertFalse(world.concurrentAccess);
+			}
+		}
+	}
+
+	@Test
+	public void removeTest() throws InterruptedException {
+		try (WorldHost host = new WorldHost(1)) {
+			World world = new CheckedWorld();
+			HostedWorld hostedWorld = host.host(world, Long.MAX_VALUE);
+			assertEquals(1, host.getNbRunningWorlds());
+			assertSame(hostedWorld, host.remove(world));
+			assertTrue(host.awaitCompletion(10, TimeUnit.SECONDS));
+			assertTrue(hostedWorld.isFinished());
+			assertNull(host.getHostedWorld(world));
+		}
+	}
+
+	@Test
+	public void errorTest() throws InterruptedException {
+		try (WorldHost host = new WorldHost(1)) {
+			World world = new World(new int[5][5][2], new DefaultTerrainChangeListener()) {
+				@Override
+				public void advanceTime(double dt) {
+					throw new AssertionError("Broken world");
+				}
+			};
+			HostedWorld hostedWorld = host.host(world, 10);
+			// An error finishes the world like an exception
+			assertTrue(host.awaitCompletion(10, TimeUnit.SECONDS));
+			assertTrue(hostedWorld.isFinished());
+			assertTrue(hostedWorld.getFailure() instanceof AssertionError);
+		}
+	}
+
+	@Test
+	public void hostRemovedTest() throws InterruptedException {
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		World world = new World(new int[5][5][2], new DefaultTerrainChangeListener()) {
+			@Override
+			public void advanceTime(double dt) {
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.advanceTime(dt);
+			}
+		};
+		try (WorldHost host = new WorldHost(2)) {
+			HostedWorld hostedWorld = host.host(world, Long.MAX_VALUE);
+			assertTrue(entered.await(10, TimeUnit.SECONDS));
+			host.remove(world);
+			// The removed world is still advanced by its slice, so it can't be hosted again yet
+			try {
+				host.host(world, 10);
+				fail("The world is still being advanced.");
+			} catch (IllegalArgumentException expected) {
+			}
+			release.countDown();
+			assertTrue(host.awaitCompletion(10, TimeUnit.SECONDS));
+			assertTrue(hostedWorld.isFinished());
+			HostedWorld again = host.host(world, 10);
+			assertTrue(host.awaitCompletion(10, TimeUnit.SECONDS));
+			assertEquals(10, again.getTickCount());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void hostTwiceTest() {
+		try (WorldHost host = new WorldHost(1)) {
+			World world = new CheckedWorld();
+			host.host(world, 10);
+			host.host(world, 10);
+		}
+	}
+}
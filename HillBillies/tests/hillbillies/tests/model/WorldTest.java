@@ -2,14 +2,61 @@ package hillbillies.tests.model;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import hillbillies.*;
+import hillbillies.activities.Rest;
+import hillbillies.events.BorderConnectivityEvent;
+import hillbillies.model.Autosave;
+import hillbillies.model.Faction;
+import hillbillies.model.Log;
+import hillbillies.model.MappedTerrain;
+import hillbillies.model.NearestUnitQuery;
+import hillbillies.model.Scheduler;
+import hillbillies.model.Task;
+import hillbillies.model.Terrain;
+import hillbillies.model.TickProfiler;
+import hillbillies.model.Unit;
 import hillbillies.model.World;
+import hillbillies.model.WorldBuilder;
+import hillbillies.model.WorldMap;
+import hillbillies.model.WorldSnapshot;
+import hillbillies.part2.internal.map.CubeType;
+import hillbillies.part2.internal.map.GameMap;
+import hillbillies.part2.internal.map.GameMapReader;
 import hillbillies.part2.listener.DefaultTerrainChangeListener;
+import hillbillies.part3.facade.Facade;
+import hillbillies.part3.programs.expressions.SelectedPosition;
+import hillbillies.part3.programs.expressions.True;
+import hillbillies.part3.programs.statements.Assignment;
+import hillbillies.part3.programs.statements.MoveTo;
+import hillbillies.util.ConnectedToBorder;
+import hillbillies.utils.Utils;
+import hillbillies.utils.Vector;
+import ogp.framework.util.ModelException;
 
 public class WorldTest {
 
@@ -46,4 +93,525 @@ public class WorldTest {
 		assertEquals(nbZ, world.getNbCubesZ());
 	}
 
+	@Test
+	public void profilerTest() {
+		World world = new World(new int[5][5][5], new DefaultTerrainChangeListener());
+		assertFalse(world.isProfilingEnabled());
+		assertNull(world.getProfiler());
+		world.enableProfiling();
+		TickProfiler profiler = world.getProfiler();
+		assertNotNull(profiler);
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(profiler.getObjectName()));
+		for (int i = 0; i < 10; i++)
+			world.advanceTime(0.1);
+		assertEquals(10, profiler.getTickCount());
+		assertEquals(TickProfiler.Phase.values().length, profiler.getPhaseMeanMillis().size());
+		world.disableProfiling();
+		assertNull(world.getProfiler());
+		assertNull(profiler.getObjectName());
+	}
+
+	@Test
+	public void pathSearchTest() {
+		int[][][] terrainMatrix = new int[5][3][1];
+		terrainMatrix[2][0][0] = 1;
+		terrainMatrix[2][1][0] = 1;// Wall with a gap at y == 2
+		World world = new World(terrainMatrix, new DefaultTerrainChangeListener());
+		world.enableProfiling();
+		TickProfiler profiler = world.getProfiler();
+		try {
+			Unit unit = new Unit(world, "Walker", new Vector(0, 0, 0), 50, 50, 50, 50);
+			// Standing on the target => nothing is expanded
+			unit.moveToTarget(new Vector(0, 0, 0));
+			assertEquals(1, profiler.getPathSearches());
+			assertEquals(0, profiler.getNodesExpanded());
+			unit.moveToTarget(new Vector(4, 0, 0));
+			assertEquals(2, profiler.getPathSearches());
+			long expanded = profiler.getNodesExpanded();
+			assertTrue(expanded > 0);
+			for (int i = 0; i < 100 && unit.isMoving(); i++)
+				world.advanceTime(0.1);
+			assertEquals(new Vector(4, 0, 0), unit.getPosition().getCubeCoordinates());
+			// Closing the gap => the other side can't be reached, after expanding every reachable cube
+			world.getCube(new Vector(2, 2, 0)).setTerrain(Terrain.ROCK);
+			try {
+				unit.moveToTarget(new Vector(0, 0, 0));
+				fail("The target can't be reached.");
+			} catch (IllegalArgumentException e) {
+				assertEquals(3, profiler.getPathSearches());
+				assertTrue(profiler.getNodesExpanded() > expanded);
+			}
+		} finally {
+			world.disableProfiling();
+		}
+	}
+
+	@Test
+	public void connectivityVisitCountTest() throws IOException {
+		int[][][] types = new int[3][3][3];
+		for (int[][] plane : types)
+			for (int[] row : plane)
+				Arrays.fill(row, 1);
+		World world = new World(types, new DefaultTerrainChangeListener());
+		Path file = Files.createTempFile("connectivity", ".jfr");
+		try {
+			try (Recording recording = new Recording()) {
+				recording.enable(BorderConnectivityEvent.class).withThreshold(Duration.ZERO);
+				recording.start();
+				// The 6 solid neighbours of the center are border cubes
+				world.getCube(new Vector(1, 1, 1)).setTerrain(Terrain.AIR);
+				// No change in passability => no update
+				world.getCube(new Vector(1, 1, 1)).setTerrain(Terrain.WORKSHOP);
+				world.getCube(new Vector(1, 1, 1)).setTerrain(Terrain.ROCK);
+				world.getCube(new Vector(1, 1, 1)).setTerrain(Terrain.WOOD);
+				recording.stop();
+				recording.dump(file);
+			}
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+			assertEquals(2, events.size());
+			assertFalse(events.get(0).getBoolean("becameSolid"));
+			assertEquals(6, events.get(0).getInt("cubesVisited"));
+			assertTrue(events.get(1).getBoolean("becameSolid"));
+			assertEquals(1, events.get(1).getInt("cubesVisited"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void usedCubeTest() {
+		int[][][] types = new int[3][3][1];
+		types[0][0][0] = 3;
+		World world = new World(types, new DefaultTerrainChangeListener());
+		Log log = new Log(world, world.getCube(new Vector(2, 2, 0)));
+		for (int i = 0; i < 3; i++) {
+			// Cubes which aren't used anymore can be created again, the others are kept
+			for (int x = 0; x < 3; x++)
+				for (int y = 0; y < 3; y++)
+					world.getCube(new Vector(x, y, 0));
+			System.gc();
+			assertSame(log.getOwner(), world.getCube(new Vector(2, 2, 0)));
+			assertTrue(world.getCube(new Vector(2, 2, 0)).containsLogs());
+			assertTrue(world.getWorkshops().contains(world.getCube(new Vector(0, 0, 0))));
+		}
+		assertEquals(Terrain.AIR, world.getCube(new Vector(1, 1, 0)).getTerrain());
+	}
+
+	@Test
+	public void solidToSolidConnectivityTest() {
+		int[][][] types = new int[3][3][3];
+		types[1][1][1] = 1;
+		World world = new World(types, new DefaultTerrainChangeListener());
+		assertFalse(world.isSolidConnectedToBorder(1, 1, 1));
+		// The floating cube stays solid => it stays disconnected
+		world.getCube(new Vector(1, 1, 1)).setTerrain(Terrain.WOOD);
+		assertFalse(world.isSolidConnectedToBorder(1, 1, 1));
+		world.getCube(new Vector(1, 1, 0)).setTerrain(Terrain.ROCK);
+		assertTrue(world.isSolidConnectedToBorder(1, 1, 1));
+		world.getCube(new Vector(1, 1, 1)).setTerrain(Terrain.ROCK);
+		assertTrue(world.isSolidConnectedToBorder(1, 1, 1));
+	}
+
+	@Test
+	public void connectivityUpdateTest() {
+		// Random changes to a terrain with floating and enclosed solids keep the connectivity equal to a recomputation
+		Random random = new Random(7);
+		int[][][] types = new int[6][6][6];
+		for (int x = 0; x < 6; x++)
+			for (int y = 0; y < 6; y++)
+				for (int z = 0; z < 6; z++)
+					types[x][y][z] = random.nextInt(3) == 0 ? 0 : 1;
+		World world = new World(types, new DefaultTerrainChangeListener());
+		for (int i = 0; i < 300; i++) {
+			int x = random.nextInt(6), y = random.nextInt(6), z = random.nextInt(6);
+			types[x][y][z] = random.nextBoolean() ? 0 : 1 + random.nextInt(2);
+			world.getCube(new Vector(x, y, z)).setTerrain(Terrain.fromId(types[x][y][z]));
+			World expected = new World(types, new DefaultTerrainChangeListener());
+			for (int cx = 0; cx < 6; cx++)
+				for (int cy = 0; cy < 6; cy++)
+					for (int cz = 0; cz < 6; cz++)
+						assertEquals(expected.isSolidConnectedToBorder(cx, cy, cz), world.isSolidConnectedToBorder(cx, cy, cz));
+		}
+	}
+
+	@Test
+	public void spawnPositionTest() {
+		// A single passable cube among a thousand solid ones is found after the random tries fail
+		int[][][] types = new int[10][10][10];
+		for (int[][] plane : types)
+			for (int[] column : plane)
+				Arrays.fill(column, 1);
+		types[3][4][5] = 0;
+		World world = new World(types, new DefaultTerrainChangeListener());
+		for (int i = 0; i < 20; i++)
+			assertEquals(new Vector(3, 4, 5), world.getSpawnPosition().getCubeCoordinates());
+		world.getCube(new Vector(3, 4, 5)).setTerrain(Terrain.ROCK);
+		try {
+			world.getSpawnPosition();
+			fail("There are no passable cubes.");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void sleepingUnitsTest() {
+		int[][][] terrainMatrix = new int[3][3][3];
+		terrainMatrix[1][1][0] = 1;
+		World world = new World(terrainMatrix, new DefaultTerrainChangeListener());
+		Unit unit = new Unit(world, "Worker", new Vector(0, 0, 0), 50, 50, 50, 50);
+		unit.work(new Vector(1, 1, 0));
+		world.advanceTime(0.1);
+		// Working for 10s => the unit is skipped until its work is done
+		assertEquals(1, world.getNbSleepingUnits());
+		assertTrue(unit.isWorking());
+		for (int i = 0; i < 98; i++)
+			world.advanceTime(0.1);
+		assertTrue(unit.isWorking());
+		assertEquals(1, world.getNbSleepingUnits());
+		for (int i = 0; i < 3; i++)
+			world.advanceTime(0.1);
+		assertFalse(unit.isWorking());
+		// Idle without default behaviour => the unit is skipped until its next rest check
+		assertEquals(1, world.getNbSleepingUnits());
+		unit.startDefaultBehaviour();
+		assertEquals(0, world.getNbSleepingUnits());
+		assertEquals(Terrain.AIR, world.getCube(new Vector(1, 1, 0)).getTerrain());
+	}
+
+	@Test
+	public void sleepingUnitRestTest() {
+		World world = new World(new int[3][3][1], new DefaultTerrainChangeListener());
+		Unit unit = new Unit(world, "Sleeper", new Vector(0, 0, 0), 50, 50, 50, 50);
+		unit.setStamina(10);
+		// An idle unit sleeps until its rest is due, and still rests in the tick its rest timer reaches the interval
+		int restTick = (int) (Rest.REST_INTERVAL / 0.125);
+		for (int tick = 1; tick < restTick; tick++) {
+			world.advanceTime(0.125);
+			assertFalse(unit.isResting());
+		}
+		assertEquals(1, world.getNbSleepingUnits());
+		world.advanceTime(0.125);
+		assertTrue(unit.isResting());
+	}
+
+	@Test
+	public void mutualAttackTest() {
+		World world = new World(new int[2][1][1], new DefaultTerrainChangeListener(), World.DEFAULT_MAX_UNITS, 2, Faction.DEFAULT_MAX_UNITS);
+		world.setSeed(7);// Neither unit dodges, both attacks hit
+		Unit alpha = new Unit(world, "Alpha", new Vector(0, 0, 0), 50, 50, 50, 50);
+		Unit beta = new Unit(world, "Beta", new Vector(1, 0, 0), 50, 50, 50, 50);
+		assertNotSame(alpha.getFaction(), beta.getFaction());
+		int alphaHitpoints = alpha.getHitpoints(), betaHitpoints = beta.getHitpoints();
+		Random previousRandom = world.bindRandom();
+		try {
+			alpha.attack(beta);
+			// Attacking back during the attack of alpha doesn't restart that attack
+			beta.attack(alpha);
+		} finally {
+			Utils.bindRandom(previousRandom);
+		}
+		assertTrue(alpha.isAttacking() && beta.isAttacking());
+		assertEquals(alphaHitpoints - 5, alpha.getHitpoints());
+		assertEquals(betaHitpoints - 5, beta.getHitpoints());
+		for (int i = 0; i < 12; i++)
+			world.advanceTime(0.1);
+		assertFalse(alpha.isAttacking() || beta.isAttacking());
+	}
+
+	@Test
+	public void nearestUnitQueryTest() {
+		World world = new World(new int[20][1][1], new DefaultTerrainChangeListener(), World.DEFAULT_MAX_UNITS, 2, Faction.DEFAULT_MAX_UNITS);
+		Unit unit = new Unit(world, "Alpha", new Vector(0, 0, 0), 50, 50, 50, 50);
+		Unit nearEnemy = new Unit(world, "Bravo", new Vector(1, 0, 0), 50, 50, 50, 50);
+		// New units join the first of the smallest factions
+		Unit farFriend = new Unit(world, "Charlie", new Vector(19, 0, 0), 50, 50, 50, 50);
+		Unit farEnemy = new Unit(world, "Delta", new Vector(15, 0, 0), 50, 50, 50, 50);
+		assertSame(unit.getFaction(), farFriend.getFaction());
+		assertSame(nearEnemy.getFaction(), farEnemy.getFaction());
+
+		assertSame(nearEnemy, world.getNearestUnit(unit, NearestUnitQuery.ENEMY));
+		assertSame(nearEnemy, world.getNearestUnit(unit, NearestUnitQuery.ANY));
+		// Outside the search radius => found by the fallback search
+		assertSame(farFriend, world.getNearestUnit(unit, NearestUnitQuery.FRIEND));
+		assertSame(nearEnemy, world.getNearestUnit(unit, NearestUnitQuery.ENEMY));
+		assertEquals(3, world.getNbSearchedUnitQueries());
+		assertEquals(1, world.getNbCachedUnitQueries());
+
+		// Removing a unit invalidates the cached answers which are that unit
+		nearEnemy.terminate();
+		assertSame(farEnemy, world.getNearestUnit(unit, NearestUnitQuery.ENEMY));
+		assertSame(farEnemy, world.getNearestUnit(unit, NearestUnitQuery.ANY));
+		assertSame(farFriend, world.getNearestUnit(unit, NearestUnitQuery.FRIEND));
+		assertNull(world.getNearestUnit(farEnemy, NearestUnitQuery.FRIEND));
+		assertEquals(6, world.getNbSearchedUnitQueries());
+		assertEquals(2, world.getNbCachedUnitQueries());
+
+		// A new unit further away than the cached answers only invalidates the answer without a candidate
+		Unit newEnemy = new Unit(world, "Echo", new Vector(18, 0, 0), 50, 50, 50, 50);
+		assertSame(farEnemy.getFaction(), newEnemy.getFaction());
+		assertSame(farEnemy, world.getNearestUnit(unit, NearestUnitQuery.ENEMY));
+		assertSame(farEnemy, world.getNearestUnit(unit, NearestUnitQuery.ANY));
+		assertSame(newEnemy, world.getNearestUnit(farEnemy, NearestUnitQuery.FRIEND));
+		assertEquals(7, world.getNbSearchedUnitQueries());
+		assertEquals(4, world.getNbCachedUnitQueries());
+
+		// A new unit nearer than the cached answers invalidates the answers of which it is a candidate
+		Unit nearFriend = new Unit(world, "Foxtrot", new Vector(2, 0, 0), 50, 50, 50, 50);
+		assertSame(unit.getFaction(), nearFriend.getFaction());
+		assertSame(nearFriend, world.getNearestUnit(unit, NearestUnitQuery.FRIEND));
+		assertSame(nearFriend, world.getNearestUnit(unit, NearestUnitQuery.ANY));
+		assertSame(farEnemy, world.getNearestUnit(unit, NearestUnitQuery.ENEMY));
+		assertSame(newEnemy, world.getNearestUnit(farEnemy, NearestUnitQuery.FRIEND));
+		assertEquals(9, world.getNbSearchedUnitQueries());
+		assertEquals(6, world.getNbCachedUnitQueries());
+	}
+
+	@Test
+	public void batchTaskAssignmentTest() {
+		World world = new World(new int[20][1][1], new DefaultTerrainChangeListener(), World.DEFAULT_MAX_UNITS, 1, Faction.DEFAULT_MAX_UNITS);
+		Unit nearUnit = new Unit(world, "Alpha", new Vector(0, 0, 0), 50, 50, 50, 50);
+		Unit farUnit = new Unit(world, "Bravo", new Vector(19, 0, 0), 50, 50, 50, 50);
+		Scheduler scheduler = nearUnit.getFaction().getScheduler();
+		Task farTask = new Task("far", 10, new Assignment<>("done", new True()), new int[] { 19, 0, 0 });
+		Task nearTask = new Task("near", 10, new Assignment<>("done", new True()), new int[] { 0, 0, 0 });
+		Task lowTask = new Task("low", 5, new Assignment<>("done", new True()), new int[] { 0, 0, 0 });
+		scheduler.addTask(lowTask);
+		scheduler.addTask(farTask);
+		scheduler.addTask(nearTask);
+		nearUnit.startDefaultBehaviour();
+		farUnit.startDefaultBehaviour();
+		world.advanceTime(0.1);
+		// Both tasks of the highest priority are handed out, each to the unit nearest to its cube
+		assertSame(nearTask, nearUnit.getTask());
+		assertSame(farTask, farUnit.getTask());
+		assertSame(lowTask, scheduler.getHighestPriorityAssignableTask());
+	}
+
+	@Test
+	public void snapshotTest() throws IOException {
+		int[][][] terrainMatrix = new int[10][10][2];
+		terrainMatrix[5][5][0] = 1;
+		World world = new World(terrainMatrix, new DefaultTerrainChangeListener(), World.DEFAULT_MAX_UNITS, 1, Faction.DEFAULT_MAX_UNITS);
+		Unit mover = new Unit(world, "Mover", new Vector(0, 0, 0), 50, 50, 50, 50);
+		Unit worker = new Unit(world, "Worker", new Vector(4, 5, 0), 50, 50, 50, 50);
+		Unit runner = new Unit(world, "Runner", new Vector(0, 9, 0), 50, 50, 50, 50);
+		new Log(world, world.getCube(new Vector(2, 2, 0)));
+		Task task = new Task("walk", 10, new MoveTo(new SelectedPosition()), new int[] { 9, 9, 0 });
+		runner.getFaction().getScheduler().addTask(task);
+		mover.moveToTarget(new Vector(9, 0, 0));
+		worker.work(new Vector(5, 5, 0));
+		runner.startDefaultBehaviour();
+		for (int i = 0; i < 10; i++)
+			world.advanceTime(0.1);
+		assertTrue(mover.isMoving() && worker.isWorking() && runner.isMoving());
+
+		World restored = WorldSnapshot.fromByteArray(WorldSnapshot.toByteArray(world), new DefaultTerrainChangeListener());
+		assertEquals(world.getTime(), restored.getTime(), 1e-9);
+		assertEquals(Terrain.ROCK, restored.getCube(new Vector(5, 5, 0)).getTerrain());
+		assertEquals(1, restored.getLogs(false).size());
+		Map<String, Unit> units = new HashMap<>();
+		for (Unit unit : restored.getUnitsView())
+			units.put(unit.getName(), unit);
+		assertEquals(3, units.size());
+		Task restoredTask = units.get("Runner").getTask();
+		assertNotNull(restoredTask);
+		assertTrue(restoredTask.isRunning());
+		assertTrue(units.get("Runner").getFaction().getScheduler().hasAsTask(restoredTask));
+		// Both worlds continue the same way, except for the random behaviour of the unit executing the task
+		for (int i = 0; i < 150; i++) {
+			world.advanceTime(0.1);
+			restored.advanceTime(0.1);
+		}
+		for (Unit unit : new Unit[] { mover, worker }) {
+			Unit copy = units.get(unit.getName());
+			assertEquals(unit.getPosition(), copy.getPosition());
+			assertEquals(unit.isMoving(), copy.isMoving());
+			assertEquals(unit.isWorking(), copy.isWorking());
+			assertEquals(unit.getXP(), copy.getXP());
+		}
+		for (int i = 0; i < 300 && units.get("Runner").getTask() != null; i++)
+			restored.advanceTime(0.1);
+		assertNull(units.get("Runner").getTask());
+		assertFalse(restoredTask.isRunning());
+		assertEquals(world.getCube(new Vector(5, 5, 0)).getTerrain(), restored.getCube(new Vector(5, 5, 0)).getTerrain());
+	}
+
+	@Test
+	public void autosaveTest() throws Exception {
+		Path directory = Files.createTempDirectory("autosave");
+		try {
+			World world = new World(new int[10][10][2], new DefaultTerrainChangeListener(), World.DEFAULT_MAX_UNITS, 1, Faction.DEFAULT_MAX_UNITS);
+			Unit unit = new Unit(world, "Mover", new Vector(0, 0, 0), 50, 50, 50, 50);
+			unit.moveToTarget(new Vector(9, 9, 0));
+			Autosave autosave = world.enableAutosave(directory, 0.5, 2);
+			for (int i = 0; i < 30; i++) {
+				world.advanceTime(0.1);
+				assertTrue(autosave.awaitIdle(10, TimeUnit.SECONDS));
+			}
+			world.disableAutosave();
+			assertNull(world.getAutosave());
+			assertNull(autosave.getFailure());
+			assertEquals(6, autosave.getNbWritten());
+			assertEquals(2, autosave.getSnapshots().size());
+			assertEquals(autosave.getSnapshots(), Autosave.listSnapshots(directory));
+			World restored = Autosave.restoreLatest(directory, new DefaultTerrainChangeListener());
+			assertEquals(3.0, restored.getTime(), 1e-6);
+			// A new autosave continues the numbering of the retained snapshots
+			Autosave next = restored.enableAutosave(directory, 0.5, 2);
+			for (int i = 0; i < 5; i++)
+				restored.advanceTime(0.1);
+			// Closing the autosave itself disables autosaving for its world
+			next.close();
+			assertNull(restored.getAutosave());
+			for (int i = 0; i < 6; i++)
+				restored.advanceTime(0.1);
+			assertEquals(1, next.getNbWritten());
+			assertEquals(next.getSnapshots(), Autosave.listSnapshots(directory));
+			assertEquals(3.5, Autosave.restoreLatest(directory, new DefaultTerrainChangeListener()).getTime(), 1e-6);
+			// A corrupt snapshot is skipped in favour of an older one
+			Files.write(directory.resolve(Autosave.FILE_PREFIX + "9999999999" + Autosave.FILE_SUFFIX), new byte[] { 1, 2, 3 });
+			assertEquals(3.5, Autosave.restoreLatest(directory, new DefaultTerrainChangeListener()).getTime(), 1e-6);
+		} finally {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+				for (Path file : files)
+					Files.delete(file);
+			}
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void worldMapTest() throws IOException, ModelException {
+		// A floating rock in the middle of the world, wood on the ground and a workshop next to it
+		String text = "3 3 4\n\n...\n...\n...\n\n...\n.R.\n...\n\nS..\n...\n...\n\nRRR\nRRW\nRRR\n";
+		WorldMap map = WorldMap.readText(new StringReader(text));
+		assertEquals(3, map.getNbCubesX());
+		assertEquals(4, map.getNbCubesZ());
+		assertEquals(Terrain.ROCK.getId(), map.getTerrainId(1, 1, 2));
+		assertEquals(Terrain.WOOD.getId(), map.getTerrainId(0, 0, 1));
+		assertEquals(Terrain.WORKSHOP.getId(), map.getTerrainId(2, 1, 0));
+		assertFalse(map.hasConnectivity());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		map.write(out, true);
+		WorldMap binaryMap = WorldMap.read(new ByteArrayInputStream(out.toByteArray()));
+		assertTrue(binaryMap.hasConnectivity());
+		World computed = map.createWorld(new DefaultTerrainChangeListener());
+		World restored = binaryMap.createWorld(new DefaultTerrainChangeListener());
+		for (int x = 0; x < 3; x++)
+			for (int y = 0; y < 3; y++)
+				for (int z = 0; z < 4; z++) {
+					Vector position = new Vector(x, y, z);
+					assertEquals(computed.getCube(position).getTerrain(), restored.getCube(position).getTerrain());
+					assertEquals(computed.isSolidConnectedToBorder(x, y, z),
+							restored.isSolidConnectedToBorder(x, y, z));
+				}
+		assertFalse(restored.isSolidConnectedToBorder(1, 1, 2));
+		assertTrue(restored.isSolidConnectedToBorder(0, 0, 0));
+		assertEquals(1, restored.getWorkshops().size());
+		// The GUI creates its world from the binary map, through the facade
+		GameMap gameMap = new GameMapReader().readFromBinary(new ByteArrayInputStream(out.toByteArray()));
+		assertTrue(gameMap.getWorldMap().hasConnectivity());
+		assertEquals(CubeType.ROCKS, gameMap.getTypeAt(1, 1, 2));
+		World created = new Facade().createWorld(gameMap.getWorldMap(), new DefaultTerrainChangeListener());
+		assertFalse(created.isSolidConnectedToBorder(1, 1, 2));
+		assertTrue(created.isSolidConnectedToBorder(0, 0, 0));
+	}
+
+	@Test
+	public void mappedTerrainTest() throws IOException {
+		// A pillar of two rocks on the ground
+		String empty = ".....\n.....\n.....\n.....\n.....\n";
+		String pillar = ".....\n.....\n..R..\n.....\n.....\n";
+		String text = "5 5 4\n\n" + empty + "\n" + pillar + "\n" + pillar + "\nRRRRR\nRRRRR\nRRRRR\nRRRRR\nRRRRR\n";
+		Path file = Files.createTempFile("world", MappedTerrain.FILE_SUFFIX);
+		try {
+			try (MappedTerrain terrain = MappedTerrain.create(file, WorldMap.readText(new StringReader(text)))) {
+				World world = new World(terrain, new DefaultTerrainChangeListener());
+				assertEquals(Terrain.ROCK, world.getTerrain(new Vector(2, 2, 2)));
+				assertTrue(world.isSolidConnectedToBorder(2, 2, 2));
+				try {
+					new World(terrain, new DefaultTerrainChangeListener());
+					fail("A terrain can only back one world.");
+				} catch (IllegalArgumentException expected) {
+				}
+				// A capture reads the mapped terrain until a chunk changes, the changed chunk keeps its captured cubes
+				WorldSnapshot view = WorldSnapshot.capture(world);
+				byte[] captured = view.toByteArray();
+				// Digging out the bottom of the pillar disconnects its top
+				world.getCube(new Vector(2, 2, 1)).setTerrain(Terrain.AIR);
+				assertFalse(world.isSolidConnectedToBorder(2, 2, 2));
+				assertArrayEquals(captured, view.toByteArray());
+				assertFalse(Arrays.equals(captured, WorldSnapshot.capture(world).toByteArray()));
+				world.checkpoint();
+			}
+			try (MappedTerrain terrain = MappedTerrain.open(file)) {
+				assertEquals(5, terrain.getNbCubesX());
+				assertEquals(Terrain.AIR.getId(), terrain.getTerrainId(2, 2, 1));
+				assertEquals(Terrain.ROCK.getId(), terrain.getTerrainId(2, 2, 2));
+				World reopened = new World(terrain, new DefaultTerrainChangeListener());
+				assertFalse(reopened.isSolidConnectedToBorder(2, 2, 2));
+				assertTrue(reopened.isSolidConnectedToBorder(2, 2, 0));
+				assertTrue(reopened.isCubePassable(new Vector(2, 2, 1)));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void worldBuilderTest() {
+		int[][][] types = new int[9][7][7];
+		ByteBuffer slabs = ByteBuffer.allocate(9 * 7 * 7);
+		for (int z = 0; z < 7; z++)
+			for (int y = 0; y < 7; y++)
+				for (int x = 0; x < 9; x++) {
+					// Ground of rock with a workshop, a hollow box of rock around an enclosed rock and a floating tree
+					boolean inBox = x >= 1 && x <= 5 && y >= 1 && y <= 5 && z >= 1 && z <= 5;
+					boolean boxWall = inBox && (x == 1 || x == 5 || y == 1 || y == 5 || z == 1 || z == 5);
+					if (z == 0 || boxWall || (x == 3 && y == 3 && z == 3))
+						types[x][y][z] = 1;
+					else if (x == 7 && (y == 3 || y == 4) && z == 4)
+						types[x][y][z] = 2;
+					else if (x == 0 && y == 0 && z == 1)
+						types[x][y][z] = 3;
+					slabs.put((byte) types[x][y][z]);
+				}
+		slabs.flip();
+		WorldBuilder builder = new WorldBuilder(9, 7, 7).setLimits(10, 2, 5).setSlabs(slabs);
+		assertFalse(slabs.hasRemaining());
+		World built = builder.build(new DefaultTerrainChangeListener());
+		World computed = new World(types, new DefaultTerrainChangeListener());
+		// The incremental algorithm digs out the passable cubes of an all-solid world one by one
+		ConnectedToBorder expected = new ConnectedToBorder(9, 7, 7);
+		for (int x = 0; x < 9; x++)
+			for (int y = 0; y < 7; y++)
+				for (int z = 0; z < 7; z++)
+					if (Terrain.fromId(types[x][y][z]).isPassable())
+						expected.changeSolidToPassable(x, y, z);
+		assertEquals(10, built.getMaxUnits());
+		assertEquals(2, built.getMaxFactions());
+		for (int x = 0; x < 9; x++)
+			for (int y = 0; y < 7; y++)
+				for (int z = 0; z < 7; z++) {
+					Vector position = new Vector(x, y, z);
+					assertEquals(computed.getTerrain(position), built.getTerrain(position));
+					assertEquals(expected.isSolidConnectedToBorder(x, y, z), built.isSolidConnectedToBorder(x, y, z));
+					assertEquals(expected.isSolidConnectedToBorder(x, y, z), computed.isSolidConnectedToBorder(x, y, z));
+				}
+		assertTrue(built.isSolidConnectedToBorder(1, 1, 5));
+		assertFalse(built.isSolidConnectedToBorder(3, 3, 3));
+		assertFalse(built.isSolidConnectedToBorder(7, 3, 4));
+		assertFalse(built.isSolidConnectedToBorder(7, 4, 4));
+		assertEquals(1, built.getWorkshops().size());
+		try {
+			builder.build(new DefaultTerrainChangeListener());
+			fail("A builder can build only one world.");
+		} catch (IllegalStateException expectedException) {
+		}
+		try {
+			new WorldBuilder(2, 2, 2).setTerrain(0, 0, 0, 4);
+			fail("4 is not a terrain id.");
+		} catch (IllegalArgumentException expectedException) {
+		}
+	}
 }
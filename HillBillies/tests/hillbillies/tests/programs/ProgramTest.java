@@ -0,0 +1,322 @@
+package hillbillies.tests.programs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import hillbillies.activities.Activity;
+import hillbillies.model.Scheduler;
+import hillbillies.model.Task;
+import hillbillies.model.Terrain;
+import hillbillies.model.Unit;
+import hillbillies.model.World;
+import hillbillies.part2.listener.DefaultTerrainChangeListener;
+import hillbillies.part3.programs.CostModel;
+import hillbillies.part3.programs.Program;
+import hillbillies.part3.programs.TaskFactory;
+import hillbillies.part3.programs.expressions.*;
+import hillbillies.part3.programs.statements.*;
+import hillbillies.utils.Vector;
+
+/**
+ * Test class for the compilation and execution of task activities.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public class ProgramTest {
+
+	private World world;
+	private Unit unit;
+	private Scheduler scheduler;
+
+	@Before
+	public void setUp() throws Exception {
+		int[][][] terrainTypes = new int[3][3][2];
+		terrainTypes[1][0][0] = 1;
+		world = new World(terrainTypes, new DefaultTerrainChangeListener());
+		unit = new Unit(world, "Unit", new Vector(0, 0, 0), 50, 50, 50, 50);
+		scheduler = unit.getFaction().getScheduler();
+	}
+
+	private Task schedule(Statement activity) {
+		Task task = new Task("test", 0, activity, null);
+		scheduler.addTask(task);
+		unit.startDefaultBehaviour();
+		return task;
+	}
+
+	private void advance(int ticks) {
+		for (int i = 0; i < ticks; i++)
+			world.advanceTime(0.1);
+	}
+
+	@Test
+	public void compileTest() {
+		Statement activity = new While(new True(), new Sequence(Arrays.asList(
+				new Assignment<>("position", new LiteralPosition(1, 1, 0)),
+				new Break())));
+		// while: step, condition step, true, jump if false | sequence: step | assignment: step, literal, store
+		// | break: step, jump | jump back to condition
+		assertEquals(11, Program.compile(activity).getNbInstructions());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void compileBreakOutsideLoopTest() {
+		Program.compile(new Break());
+	}
+
+	@Test
+	public void optimizeTest() {
+		Statement print = new Print(new Not(new Not(new IsSolid(new LiteralPosition(1, 0, 0)))));
+		Statement activity = new Sequence(Arrays.asList(
+				new If(new Or(new False(), new And(new True(), new True())), print),
+				new While(new Not(new True()), new Break()),
+				new IfElse(new False(), new Print(new This()), new Assignment<>("x", new True()))));
+		Statement optimized = TaskFactory.optimize(activity);
+		assertTrue(optimized.check());
+		// print: step, literal, is solid, print | assignment: step, true, store | sequence: step
+		assertEquals(8, optimized.getProgram().getNbInstructions());
+
+		// Breaks outside of a loop are still rejected, even in dead branches
+		Statement breakOutsideLoop = new If(new False(), new Break());
+		assertSame(breakOutsideLoop, TaskFactory.optimize(breakOutsideLoop));
+		// The assignment in the dead branch is needed by the read
+		Statement deadAssignment = new Sequence(Arrays.asList(
+				new If(new False(), new Assignment<>("x", new True())),
+				new Print(new ReadVariable<>("x"))));
+		assertSame(deadAssignment, TaskFactory.optimize(deadAssignment));
+	}
+
+	@Test
+	public void slotTest() {
+		Program program = Program.compile(new Sequence(Arrays.asList(
+				new Assignment<>("x", new True()),
+				new Assignment<>("y", new Not(new ReadVariable<>("x"))),
+				new Assignment<>("x", new ReadVariable<>("y")))));
+		assertEquals(2, program.getNbSlots());
+		assertEquals(0, program.getSlot("x"));
+		assertEquals(1, program.getSlot("y"));
+		assertEquals(-1, program.getSlot("z"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void compileUnassignedReadTest() {
+		// The read is nested in another expression, and assigned only afterwards
+		Program.compile(new Sequence(Arrays.asList(
+				new Print(new Not(new ReadVariable<>("x"))),
+				new Assignment<>("x", new True()))));
+	}
+
+	@Test
+	public void controlFlowTest() {
+		Statement activity = new Sequence(Arrays.asList(
+				new Assignment<>("done", new False()),
+				new While(new Not(new ReadVariable<>("done")), new Sequence(Arrays.asList(
+						new IfElse(new ReadVariable<>("done"),
+								new MoveTo(new LiteralPosition(2, 2, 0)),
+								new Assignment<>("done", new True())),
+						new While(new True(), new Break())))),
+				// There are no enemies, so evaluating the right operand would stop the task
+				new If(new Or(new ReadVariable<>("done"), new IsAlive(new Enemy())),
+						new WorkAt(new LiteralPosition(1, 0, 0)))));
+		Task task = schedule(activity);
+		advance(2);
+		assertTrue(task.isRunning());
+		assertTrue(unit.isWorking());
+		advance(150);
+		assertFalse(scheduler.hasAsTask(task));
+		assertEquals(Terrain.AIR, world.getCube(new Vector(1, 0, 0)).getTerrain());
+	}
+
+	@Test
+	public void pauseTest() {
+		List<Statement> statements = new ArrayList<>();
+		for (int i = 0; i < 250; i++)
+			statements.add(new Assignment<>("done", new False()));
+		statements.add(new WorkAt(new LiteralPosition(1, 0, 0)));
+		Task task = schedule(new Sequence(statements));
+		// Only 100 statements are executed per tick of 0.1s
+		advance(3);
+		assertTrue(task.isRunning());
+		assertFalse(unit.isWorking());
+		advance(2);
+		assertTrue(unit.isWorking());
+		advance(150);
+		assertFalse(scheduler.hasAsTask(task));
+		assertEquals(Terrain.AIR, world.getCube(new Vector(1, 0, 0)).getTerrain());
+	}
+
+	@Test
+	public void waitForActivityTest() {
+		Task task = schedule(new Sequence(Arrays.asList(new WorkAt(new LiteralPosition(1, 0, 0)),
+				new Assignment<>("done", new True()))));
+		advance(2);
+		assertTrue(unit.isWorking());
+		Activity work = unit.getCurrentActivity();
+		assertTrue(task.getRunner().isWaiting());
+		assertTrue(work.hasCompletionListeners());
+		advance(150);
+		assertFalse(work.hasCompletionListeners());
+		assertFalse(scheduler.hasAsTask(task));
+		assertEquals(Terrain.AIR, world.getCube(new Vector(1, 0, 0)).getTerrain());
+	}
+
+	@Test
+	public void restartActivityTest() {
+		Task task = schedule(new WorkAt(new LiteralPosition(1, 0, 0)));
+		advance(2);
+		Activity work = unit.getCurrentActivity();
+		// Restarting the activity doesn't complete it, so the runner keeps waiting
+		unit.restartActivity();
+		assertSame(work, unit.getCurrentActivity());
+		assertTrue(unit.isWorking());
+		assertTrue(task.getRunner().isWaiting());
+		assertTrue(work.hasCompletionListeners());
+		advance(150);
+		assertFalse(work.hasCompletionListeners());
+		assertFalse(scheduler.hasAsTask(task));
+	}
+
+	/**
+	 * Schedule a task waiting for its unit to work, and return it.
+	 */
+	private Task startWorking() {
+		Task task = schedule(new Sequence(Arrays.asList(new WorkAt(new LiteralPosition(1, 0, 0)),
+				new Assignment<>("done", new True()))));
+		advance(2);
+		assertTrue(unit.isWorking());
+		return task;
+	}
+
+	@Test
+	public void unitTerminateTest() {
+		Task task = startWorking();
+		unit.terminate();
+		assertFalse(task.isRunning());
+	}
+
+	@Test
+	public void worldTerminateTest() {
+		startWorking();
+		world.terminate();
+		assertNull(unit.getTask());
+		assertTrue(world.isTerminated());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void advanceTerminatedWorldTest() {
+		world.terminate();
+		world.advanceTime(0.1);
+	}
+
+	@Test
+	public void budgetTest() {
+		world.setCostModel(CostModel.DEFAULT.withCost(Assignment.class, 30));
+		List<Statement> statements = new ArrayList<>();
+		for (int i = 0; i < 10; i++)
+			statements.add(new Assignment<>("done", new False()));
+		statements.add(new WorkAt(new LiteralPosition(1, 0, 0)));
+		Task task = schedule(new Sequence(statements));
+		// The first tick assigns the task, the overdrawn budget is paid back: 4, 3 and 3 assignments
+		// are executed in the next ticks
+		advance(4);
+		assertFalse(unit.isWorking());
+		assertEquals(-1, task.getRunner().getBudget());
+		advance(1);
+		assertTrue(unit.isWorking());
+	}
+
+	@Test
+	public void loopConditionBudgetTest() {
+		world.setCostModel(CostModel.DEFAULT.withCost(ReadVariable.class, 60));
+		Task task = schedule(new Sequence(Arrays.asList(
+				new Assignment<>("loop", new True()),
+				new While(new ReadVariable<Boolean>("loop"), new Assignment<>("loop", new False())),
+				new WorkAt(new LiteralPosition(1, 0, 0)))));
+		// The condition is charged on each evaluation: 3 statements, the condition twice and the body
+		// overdraw the budget of the second tick
+		advance(2);
+		assertFalse(unit.isWorking());
+		assertEquals(-24, task.getRunner().getBudget());
+		advance(1);
+		assertTrue(unit.isWorking());
+	}
+
+	@Test
+	public void instructionCapTest() {
+		world.setTaskBudgets(World.DEFAULT_TASK_BUDGET, 10);
+		List<Statement> statements = new ArrayList<>();
+		for (int i = 0; i < 25; i++)
+			statements.add(new Assignment<>("done", new False()));
+		statements.add(new WorkAt(new LiteralPosition(1, 0, 0)));
+		schedule(new Sequence(statements));
+		advance(3);
+		assertEquals(10, world.getNbTaskInstructions());
+		assertFalse(unit.isWorking());
+		advance(1);
+		assertTrue(unit.isWorking());
+	}
+
+	@Test
+	public void instructionCapRotationTest() {
+		// The cap only admits one runner per tick => the runners take turns instead of the first one running each tick
+		world.setTaskBudgets(World.DEFAULT_TASK_BUDGET, World.DEFAULT_TASK_BUDGET);
+		Unit other = new Unit(world, "Other", new Vector(2, 2, 0), 50, 50, 50, 50);
+		Task task = schedule(new While(new True(), new Assignment<>("x", new True())));
+		Task otherTask = new Task("other", 0, new While(new True(), new Assignment<>("x", new True())), null);
+		other.getFaction().getScheduler().addTask(otherTask);
+		other.startDefaultBehaviour();
+		// The first tick only hands out the tasks
+		advance(1);
+		int ticks = 0, otherTicks = 0;
+		for (int i = 0; i < 6; i++) {
+			advance(1);
+			assertTrue(world.getNbTaskInstructions() <= World.DEFAULT_TASK_BUDGET);
+			if (task.getRunner().getBudget() < World.DEFAULT_TASK_BUDGET)
+				ticks++;
+			if (otherTask.getRunner().getBudget() < World.DEFAULT_TASK_BUDGET)
+				otherTicks++;
+		}
+		assertEquals(3, ticks);
+		assertEquals(3, otherTicks);
+	}
+
+	@Test
+	public void sharedProgramTest() {
+		int[][][] terrainTypes = new int[3][3][2];
+		terrainTypes[0][0][0] = 1;
+		terrainTypes[1][0][0] = 1;
+		World world = new World(terrainTypes, new DefaultTerrainChangeListener());
+		// The default behaviour of the units is random once their tasks are finished
+		world.setSeed(1);
+		Unit unit1 = new Unit(world, "Unit", new Vector(0, 1, 0), 50, 50, 50, 50);
+		Unit unit2 = new Unit(world, "Unit", new Vector(1, 1, 0), 50, 50, 50, 50);
+		List<Task> tasks = new TaskFactory().createTasks("work", 0, new WorkAt(new SelectedPosition()),
+				Arrays.asList(new int[] { 0, 0, 0 }, new int[] { 1, 0, 0 }));
+		assertSame(tasks.get(0).getActivity(), tasks.get(1).getActivity());
+		// Both units are in a faction of their own
+		assertNotSame(unit1.getFaction(), unit2.getFaction());
+		unit1.getFaction().getScheduler().addTask(tasks.get(0));
+		unit2.getFaction().getScheduler().addTask(tasks.get(1));
+		unit1.startDefaultBehaviour();
+		unit2.startDefaultBehaviour();
+		world.advanceTime(0.1);
+		// Both units execute the same program, each in a frame of its own
+		assertNotSame(tasks.get(0).getRunner().getFrame(), tasks.get(1).getRunner().getFrame());
+		assertSame(tasks.get(0).getRunner().getFrame().getProgram(), tasks.get(1).getRunner().getFrame().getProgram());
+		world.advanceTime(0.1);
+		assertTrue(unit1.isWorking());
+		assertTrue(unit2.isWorking());
+		for (int i = 0; i < 150; i++)
+			world.advanceTime(0.1);
+		assertEquals(0, unit1.getFaction().getScheduler().getNbTasks());
+		assertEquals(0, unit2.getFaction().getScheduler().getNbTasks());
+		assertEquals(Terrain.AIR, world.getCube(new Vector(0, 0, 0)).getTerrain());
+		assertEquals(Terrain.AIR, world.getCube(new Vector(1, 0, 0)).getTerrain());
+	}
+}
@@ -0,0 +1,94 @@
+package hillbillies.tests.programs;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import hillbillies.model.Task;
+import hillbillies.part3.facade.Facade;
+import hillbillies.part3.programs.TaskFactory;
+import hillbillies.part3.programs.TaskLibrary;
+import hillbillies.part3.programs.TaskParser;
+import hillbillies.utils.Vector;
+
+/**
+ * Test class for the parse cache and binary format of task libraries.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public class TaskLibraryTest {
+
+	private static final String TASK = "name: \"dig\"\npriority: 5\nactivities:\n"
+			+ "if (true && !(!is_solid(selected))) then work selected; fi\n"
+			+ "while false do moveTo (1, 2, 3); done\n"
+			+ "x := friend; follow x;";
+
+	private TaskLibrary library;
+
+	@Before
+	public void setUp() throws Exception {
+		library = new TaskLibrary();
+	}
+
+	@Test
+	public void cacheTest() {
+		List<Task> tasks = library.parseString(TASK, Arrays.asList(new int[]{1, 1, 1}, new int[]{2, 2, 2}));
+		assertEquals(2, tasks.size());
+		assertEquals("dig", tasks.get(0).getName());
+		assertEquals(new Vector(2, 2, 2), tasks.get(1).getSelectedCube());
+		List<Task> moreTasks = library.parseString(TASK, Collections.emptyList());
+		assertEquals(1, moreTasks.size());
+		assertNull(moreTasks.get(0).getSelectedCube());
+		// The cached activity is shared by all instances
+		assertSame(tasks.get(0).getActivity(), moreTasks.get(0).getActivity());
+		assertEquals(1, library.getNbEntries());
+		assertEquals(1, library.getNbMisses());
+		assertEquals(1, library.getNbHits());
+	}
+
+	@Test
+	public void facadeLoadTest() throws IOException {
+		TaskFactory factory = (TaskFactory) new Facade().createTaskFactory();
+		List<Task> tasks = TaskParser.parseTasksFromString(TASK, factory, Collections.emptyList());
+		List<Task> moreTasks = TaskParser.parseTasksFromString(TASK, factory, Collections.emptyList());
+		// The facade loads tasks through its library, so the source text is parsed once
+		assertSame(tasks.get(0).getActivity(), moreTasks.get(0).getActivity());
+		assertEquals(1, factory.getLibrary().getNbMisses());
+		assertEquals(1, factory.getLibrary().getNbHits());
+		assertNull(TaskParser.parseTasksFromString("name: \"x\"\npriority: 1\nactivities: moveTo (1, 2;", factory,
+				Collections.emptyList()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidTaskTest() {
+		library.parseString("name: \"break\"\npriority: 1\nactivities: break;", Collections.emptyList());
+	}
+
+	@Test
+	public void binaryFormatTest() throws IOException {
+		TaskLibrary.CompiledTask compiledTask = library.compile(TASK);
+		TaskLibrary loaded = TaskLibrary.read(new ByteArrayInputStream(library.toByteArray()));
+		assertEquals(library.getHashes(), loaded.getHashes());
+		TaskLibrary.CompiledTask loadedTask = loaded.get(TaskLibrary.hash(TASK));
+		assertEquals(compiledTask.getName(), loadedTask.getName());
+		assertEquals(compiledTask.getPriority(), loadedTask.getPriority());
+		assertEquals(compiledTask.getActivity().getProgram().getNbInstructions(),
+				loadedTask.getActivity().getProgram().getNbInstructions());
+		// Loaded entries are found without parsing
+		loaded.parseString(TASK, Collections.emptyList());
+		assertEquals(0, loaded.getNbMisses());
+		assertTrue(Arrays.equals(library.toByteArray(), loaded.toByteArray()));
+	}
+
+	@Test(expected = IOException.class)
+	public void invalidBinaryFormatTest() throws IOException {
+		TaskLibrary.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6}));
+	}
+}
@@ -0,0 +1,109 @@
+package hillbillies.tests.programs;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import hillbillies.model.Task;
+import hillbillies.part3.programs.CommandCodec;
+import hillbillies.part3.programs.TaskFactory;
+import hillbillies.part3.programs.TaskParser;
+
+/**
+ * Test class for the reuse of TaskParsers and the parallel parsing of task files.
+ * @author Kenneth & Bram
+ * @version 1.0
+ */
+public class TaskParserTest {
+
+	/**
+	 * The task files of the game, both well-formed and not.
+	 */
+	private static final String[] TASK_FILES = { "dig.txt", "digtunnel.txt", "digtunnel_if.txt", "goto_10_10_10.txt",
+			"operate_workshop.txt", "while.txt", "wrong1.txt", "wrong2.txt", "wrong3.txt" };
+
+	private TaskParser<?, ?, Task> parser;
+
+	@Before
+	public void setUp() throws Exception {
+		parser = TaskParser.create(new TaskFactory());
+	}
+
+	@Test
+	public void reuseTest() {
+		Optional<List<Task>> tasks = parser.parseString("name: \"a\"\npriority: 1\nactivities: moveTo (1, 2, 3);",
+				Collections.emptyList());
+		assertTrue(tasks.isPresent());
+		assertEquals("a", tasks.get().get(0).getName());
+		// The syntax error is reported by the LL stage
+		assertFalse(parser.parseString("name: \"b\"\npriority: 1\nactivities: moveTo (1, 2;",
+				Collections.emptyList()).isPresent());
+		assertFalse(parser.getErrors().isEmpty());
+		tasks = parser.parseString("name: \"c\"\npriority: 2\nactivities: while true do work here; done",
+				Arrays.asList(new int[]{1, 1, 1}, new int[]{2, 2, 2}));
+		assertTrue(parser.getErrors().isEmpty());
+		assertEquals(2, tasks.get().size());
+		assertEquals(2, tasks.get().get(1).getPriority());
+	}
+
+	@Test
+	public void parseAllTest() {
+		List<String> filenames = Arrays.asList("missing1.txt", "missing2.txt");
+		List<? extends TaskParser.ParseResult<Task>> results = parser.parseAll(filenames, Collections.emptyList());
+		assertEquals(2, results.size());
+		for (int i = 0; i < filenames.size(); i++) {
+			assertEquals(filenames.get(i), results.get(i).getFilename());
+			assertFalse(results.get(i).getTasks().isPresent());
+			assertEquals(1, results.get(i).getErrors().size());
+		}
+	}
+
+	@Test
+	public void parseAllSequentialTest() throws IOException {
+		List<String> filenames = new ArrayList<>();
+		for (int i = 0; i < 4; i++)
+			for (String file : TASK_FILES)
+				filenames.add("resources/tasks/" + file);
+		List<int[]> selectedCubes = Arrays.asList(new int[] { 1, 2, 3 }, new int[] { 4, 5, 6 });
+		List<? extends TaskParser.ParseResult<Task>> results = parser.parseAll(filenames, selectedCubes);
+		assertEquals(filenames.size(), results.size());
+		int nbParsed = 0;
+		for (int i = 0; i < filenames.size(); i++) {
+			TaskParser.ParseResult<Task> result = results.get(i);
+			Optional<List<Task>> expected = parser.parseFile(filenames.get(i), selectedCubes);
+			assertEquals(filenames.get(i), result.getFilename());
+			assertEquals(parser.getErrors(), result.getErrors());
+			assertEquals(expected.isPresent(), result.getTasks().isPresent());
+			if (!expected.isPresent())
+				continue;
+			nbParsed++;
+			List<Task> tasks = result.getTasks().get();
+			assertEquals(expected.get().size(), tasks.size());
+			for (int j = 0; j < tasks.size(); j++) {
+				Task task = tasks.get(j);
+				assertEquals(expected.get().get(j).getName(), task.getName());
+				assertEquals(expected.get().get(j).getPriority(), task.getPriority());
+				assertEquals(expected.get().get(j).getSelectedCube(), task.getSelectedCube());
+				assertArrayEquals(encode(expected.get().get(j)), encode(task));
+			}
+		}
+		// Both well-formed and ill-formed files were parsed
+		assertTrue(nbParsed > 0 && nbParsed < filenames.size());
+	}
+
+	private static byte[] encode(Task task) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CommandCodec.write(new DataOutputStream(bytes), task.getActivity());
+		return bytes.toByteArray();
+	}
+}